@@ -23,9 +23,13 @@ public class ClientConfig {
     public static final String SOCKS_PROXY_CONFIG = "com.rocketmq.socks.proxy.config";
     public static final String DECODE_READ_BODY = "com.rocketmq.read.body";
     public static final String DECODE_DECOMPRESS_BODY = "com.rocketmq.decompress.body";
+    public static final String DECODE_LAZY = "com.rocketmq.decode.lazy";
     public static final String SEND_LATENCY_ENABLE = "com.rocketmq.sendLatencyEnable";
     public static final String START_DETECTOR_ENABLE = "com.rocketmq.startDetectorEnable";
     public static final String HEART_BEAT_V2 = "com.rocketmq.heartbeat.v2";
+    public static final String ROUTE_DELTA_ENABLE = "com.rocketmq.routeDeltaEnable";
+    public static final String ROUTE_BINARY_BODY_ENABLE = "com.rocketmq.routeBinaryBodyEnable";
+    public static final String BINARY_REQUEST_BODY_ENABLE = "com.rocketmq.binaryRequestBodyEnable";
     private String namesrvAddr = NameServerAddressUtils.getNameServerAddresses();
     private String clientIP = NetworkUtil.getLocalAddress();
     private String instanceName = System.getProperty("rocketmq.client.name", "DEFAULT");
@@ -55,8 +59,26 @@ public class ClientConfig {
     private String unitName;
     private boolean decodeReadBody = Boolean.parseBoolean(System.getProperty(DECODE_READ_BODY, "true"));
     private boolean decodeDecompressBody = Boolean.parseBoolean(System.getProperty(DECODE_DECOMPRESS_BODY, "true"));
+    /**
+     * 拉取 / pop 到的消息按需解码，见 {@link org.apache.rocketmq.common.message.LazyMessageClientExt}。
+     * 读 body 之前消息会引用整个拉取响应，这部分内存不计入 pullThresholdSizeForQueue，所以默认关闭
+     */
+    private boolean decodeLazy = Boolean.parseBoolean(System.getProperty(DECODE_LAZY, "false"));
     private boolean vipChannelEnabled = Boolean.parseBoolean(System.getProperty(SEND_MESSAGE_WITH_VIP_CHANNEL_PROPERTY, "false"));
     private boolean useHeartbeatV2 = Boolean.parseBoolean(System.getProperty(HEART_BEAT_V2, "false"));
+    /**
+     * 轮询路由时只拉取版本号变化了的 topic，name server 不支持时自动退回逐个 topic 拉取
+     */
+    private boolean routeDeltaEnable = Boolean.parseBoolean(System.getProperty(ROUTE_DELTA_ENABLE, "true"));
+    /**
+     * 路由查询声明可以接收 {@link org.apache.rocketmq.remoting.protocol.BinaryBodyCodec} 编码的响应体，
+     * 旧版本 name server 忽略该声明，仍返回 JSON
+     */
+    private boolean routeBinaryBodyEnable = Boolean.parseBoolean(System.getProperty(ROUTE_BINARY_BODY_ENABLE, "true"));
+    /**
+     * 心跳与批量加锁的请求体用二进制编码发送，要求 broker 能识别，默认关闭
+     */
+    private boolean binaryRequestBodyEnable = Boolean.parseBoolean(System.getProperty(BINARY_REQUEST_BODY_ENABLE, "false"));
 
     private boolean useTLS = TlsSystemConfig.tlsEnable;
 
@@ -212,8 +234,12 @@ public class ClientConfig {
         this.mqClientApiTimeout = cc.mqClientApiTimeout;
         this.decodeReadBody = cc.decodeReadBody;
         this.decodeDecompressBody = cc.decodeDecompressBody;
+        this.decodeLazy = cc.decodeLazy;
         this.enableStreamRequestType = cc.enableStreamRequestType;
         this.useHeartbeatV2 = cc.useHeartbeatV2;
+        this.routeDeltaEnable = cc.routeDeltaEnable;
+        this.routeBinaryBodyEnable = cc.routeBinaryBodyEnable;
+        this.binaryRequestBodyEnable = cc.binaryRequestBodyEnable;
         this.startDetectorEnable = cc.startDetectorEnable;
         this.sendLatencyEnable = cc.sendLatencyEnable;
         this.enableHeartbeatChannelEventListener = cc.enableHeartbeatChannelEventListener;
@@ -244,8 +270,12 @@ public class ClientConfig {
         cc.mqClientApiTimeout = mqClientApiTimeout;
         cc.decodeReadBody = decodeReadBody;
         cc.decodeDecompressBody = decodeDecompressBody;
+        cc.decodeLazy = decodeLazy;
         cc.enableStreamRequestType = enableStreamRequestType;
         cc.useHeartbeatV2 = useHeartbeatV2;
+        cc.routeDeltaEnable = routeDeltaEnable;
+        cc.routeBinaryBodyEnable = routeBinaryBodyEnable;
+        cc.binaryRequestBodyEnable = binaryRequestBodyEnable;
         cc.startDetectorEnable = startDetectorEnable;
         cc.enableHeartbeatChannelEventListener = enableHeartbeatChannelEventListener;
         cc.sendLatencyEnable = sendLatencyEnable;
@@ -378,6 +408,14 @@ public class ClientConfig {
         this.decodeDecompressBody = decodeDecompressBody;
     }
 
+    public boolean isDecodeLazy() {
+        return decodeLazy;
+    }
+
+    public void setDecodeLazy(boolean decodeLazy) {
+        this.decodeLazy = decodeLazy;
+    }
+
     @Deprecated
     public String getNamespace() {
         if (namespaceInitialized) {
@@ -483,6 +521,30 @@ public class ClientConfig {
         this.useHeartbeatV2 = useHeartbeatV2;
     }
 
+    public boolean isRouteDeltaEnable() {
+        return routeDeltaEnable;
+    }
+
+    public void setRouteDeltaEnable(boolean routeDeltaEnable) {
+        this.routeDeltaEnable = routeDeltaEnable;
+    }
+
+    public boolean isRouteBinaryBodyEnable() {
+        return routeBinaryBodyEnable;
+    }
+
+    public void setRouteBinaryBodyEnable(boolean routeBinaryBodyEnable) {
+        this.routeBinaryBodyEnable = routeBinaryBodyEnable;
+    }
+
+    public boolean isBinaryRequestBodyEnable() {
+        return binaryRequestBodyEnable;
+    }
+
+    public void setBinaryRequestBodyEnable(boolean binaryRequestBodyEnable) {
+        this.binaryRequestBodyEnable = binaryRequestBodyEnable;
+    }
+
     public boolean isEnableTrace() {
         return enableTrace;
     }
@@ -518,8 +580,12 @@ public class ClientConfig {
                 ", unitName='" + unitName + '\'' +
                 ", decodeReadBody=" + decodeReadBody +
                 ", decodeDecompressBody=" + decodeDecompressBody +
+                ", decodeLazy=" + decodeLazy +
                 ", vipChannelEnabled=" + vipChannelEnabled +
                 ", useHeartbeatV2=" + useHeartbeatV2 +
+                ", routeDeltaEnable=" + routeDeltaEnable +
+                ", routeBinaryBodyEnable=" + routeBinaryBodyEnable +
+                ", binaryRequestBodyEnable=" + binaryRequestBodyEnable +
                 ", useTLS=" + useTLS +
                 ", socksProxyConfig='" + socksProxyConfig + '\'' +
                 ", mqClientApiTimeout=" + mqClientApiTimeout +
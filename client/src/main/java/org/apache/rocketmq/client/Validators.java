@@ -9,6 +9,7 @@ import org.apache.rocketmq.common.TopicConfig;
 import org.apache.rocketmq.common.UtilAll;
 import org.apache.rocketmq.common.constant.PermName;
 import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageBatch;
 import org.apache.rocketmq.common.message.MessageConst;
 import org.apache.rocketmq.common.topic.TopicValidator;
 import org.apache.rocketmq.remoting.protocol.ResponseCode;
@@ -50,16 +51,21 @@ public class Validators {
         Validators.checkTopic(msg.getTopic());
         Validators.isNotAllowedSendTopic(msg.getTopic());
 
-        // body
-        if (null == msg.getBody()) {
+        // body，流式编码的批量消息没有 byte[] body，按编码长度检查
+        int bodyLength;
+        if (msg instanceof MessageBatch && ((MessageBatch) msg).isStreamingEncode()) {
+            bodyLength = ((MessageBatch) msg).getEncodedSize();
+        } else if (null == msg.getBody()) {
             throw new MQClientException(ResponseCode.MESSAGE_ILLEGAL, "the message body is null");
+        } else {
+            bodyLength = msg.getBody().length;
         }
 
-        if (0 == msg.getBody().length) {
+        if (0 == bodyLength) {
             throw new MQClientException(ResponseCode.MESSAGE_ILLEGAL, "the message body length is zero");
         }
 
-        if (msg.getBody().length > defaultMQProducer.getMaxMessageSize()) {
+        if (bodyLength > defaultMQProducer.getMaxMessageSize()) {
             throw new MQClientException(ResponseCode.MESSAGE_ILLEGAL,
                 "the message body size over max value, MAX: " + defaultMQProducer.getMaxMessageSize());
         }
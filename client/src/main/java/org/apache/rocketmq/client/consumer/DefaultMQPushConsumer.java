@@ -286,6 +286,26 @@ public class DefaultMQPushConsumer extends ClientConfig implements MQPushConsume
     // force to use client rebalance
     private boolean clientRebalance = true;
 
+    /**
+     * 用环形数组实现的 ProcessQueue 缓存拉到的消息，ack 不加锁，适合消费线程数较多的场景
+     */
+    private boolean processQueueRingBufferEnable = false;
+
+    /**
+     * 顺序消费时只保证同一个分片键的消息有序：同一队列的消息按分片键分到多个通道，通道之间并行消费
+     */
+    private boolean consumeOrderlyByKey = false;
+
+    /**
+     * 按键顺序消费时每个队列的通道数
+     */
+    private int consumeOrderlyLaneNums = 16;
+
+    /**
+     * 按键顺序消费时作为分片键的用户属性，不设置时用消息的 KEYS
+     */
+    private String orderlyShardingKeyProperty;
+
     private RPCHook rpcHook = null;
 
     /**
@@ -995,6 +1015,38 @@ public class DefaultMQPushConsumer extends ClientConfig implements MQPushConsume
         this.clientRebalance = clientRebalance;
     }
 
+    public boolean isProcessQueueRingBufferEnable() {
+        return processQueueRingBufferEnable;
+    }
+
+    public void setProcessQueueRingBufferEnable(boolean processQueueRingBufferEnable) {
+        this.processQueueRingBufferEnable = processQueueRingBufferEnable;
+    }
+
+    public boolean isConsumeOrderlyByKey() {
+        return consumeOrderlyByKey;
+    }
+
+    public void setConsumeOrderlyByKey(boolean consumeOrderlyByKey) {
+        this.consumeOrderlyByKey = consumeOrderlyByKey;
+    }
+
+    public int getConsumeOrderlyLaneNums() {
+        return consumeOrderlyLaneNums;
+    }
+
+    public void setConsumeOrderlyLaneNums(int consumeOrderlyLaneNums) {
+        this.consumeOrderlyLaneNums = consumeOrderlyLaneNums;
+    }
+
+    public String getOrderlyShardingKeyProperty() {
+        return orderlyShardingKeyProperty;
+    }
+
+    public void setOrderlyShardingKeyProperty(String orderlyShardingKeyProperty) {
+        this.orderlyShardingKeyProperty = orderlyShardingKeyProperty;
+    }
+
     public MessageQueueListener getMessageQueueListener() {
         return messageQueueListener;
     }
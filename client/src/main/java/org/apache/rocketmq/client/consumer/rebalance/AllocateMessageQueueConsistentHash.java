@@ -18,7 +18,9 @@ package org.apache.rocketmq.client.consumer.rebalance;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import org.apache.rocketmq.common.consistenthash.ConsistentHashRouter;
 import org.apache.rocketmq.common.consistenthash.HashFunction;
 import org.apache.rocketmq.common.consistenthash.Node;
@@ -31,6 +33,11 @@ public class AllocateMessageQueueConsistentHash extends AbstractAllocateMessageQ
 
     private final int virtualNodeCnt;
     private final HashFunction customHashFunction;
+    /**
+     * 上一次分配使用的哈希环及其 CID 集合，CID 列表不变时直接复用，变化时在副本上增删差异部分后整体替换。
+     * 发布出去的路由器不再被修改，同一个策略实例被多个消费组并发使用时各自在自己拿到的环上路由
+     */
+    private volatile CachedRouter cachedRouter;
 
     public AllocateMessageQueueConsistentHash() {
         this(10);
@@ -40,6 +47,10 @@ public class AllocateMessageQueueConsistentHash extends AbstractAllocateMessageQ
         this(virtualNodeCnt, null);
     }
 
+    /**
+     * @param customHashFunction 为 null 时使用 MD5；需要更快的哈希可以传 {@link org.apache.rocketmq.common.consistenthash.Murmur3Hash}，
+     *                           同一消费组内的客户端必须一致
+     */
     public AllocateMessageQueueConsistentHash(int virtualNodeCnt, HashFunction customHashFunction) {
         if (virtualNodeCnt < 0) {
             throw new IllegalArgumentException("illegal virtualNodeCnt :" + virtualNodeCnt);
@@ -57,17 +68,7 @@ public class AllocateMessageQueueConsistentHash extends AbstractAllocateMessageQ
             return result;
         }
 
-        Collection<ClientNode> cidNodes = new ArrayList<>();
-        for (String cid : cidAll) {
-            cidNodes.add(new ClientNode(cid));
-        }
-
-        final ConsistentHashRouter<ClientNode> router; //for building hash ring
-        if (customHashFunction != null) {
-            router = new ConsistentHashRouter<>(cidNodes, virtualNodeCnt, customHashFunction);
-        } else {
-            router = new ConsistentHashRouter<>(cidNodes, virtualNodeCnt);
-        }
+        final ConsistentHashRouter<ClientNode> router = router(cidAll);
 
         List<MessageQueue> results = new ArrayList<>();
         for (MessageQueue mq : mqAll) {
@@ -81,6 +82,55 @@ public class AllocateMessageQueueConsistentHash extends AbstractAllocateMessageQ
 
     }
 
+    private ConsistentHashRouter<ClientNode> router(List<String> cidAll) {
+        final CachedRouter cached = this.cachedRouter;
+        if (cached != null && cached.cids.size() == cidAll.size() && cached.cids.containsAll(cidAll)) {
+            return cached.router;
+        }
+        Set<String> cids = new HashSet<>(cidAll);
+        ConsistentHashRouter<ClientNode> router;
+        if (cached == null) {
+            Collection<ClientNode> cidNodes = new ArrayList<>();
+            for (String cid : cids) {
+                cidNodes.add(new ClientNode(cid));
+            }
+            if (customHashFunction != null) {
+                router = new ConsistentHashRouter<>(cidNodes, virtualNodeCnt, customHashFunction);
+            } else {
+                router = new ConsistentHashRouter<>(cidNodes, virtualNodeCnt);
+            }
+        } else {
+            List<ClientNode> removed = new ArrayList<>();
+            for (String cid : cached.cids) {
+                if (!cids.contains(cid)) {
+                    removed.add(new ClientNode(cid));
+                }
+            }
+            List<ClientNode> added = new ArrayList<>();
+            for (String cid : cids) {
+                if (!cached.cids.contains(cid)) {
+                    added.add(new ClientNode(cid));
+                }
+            }
+            router = cached.router.copy();
+            router.removeNodes(removed);
+            router.addNodes(added, virtualNodeCnt);
+        }
+        // 并发重建时后发布的覆盖先发布的，两者都是完整的环
+        this.cachedRouter = new CachedRouter(cids, router);
+        return router;
+    }
+
+    private static final class CachedRouter {
+        private final Set<String> cids;
+        private final ConsistentHashRouter<ClientNode> router;
+
+        CachedRouter(Set<String> cids, ConsistentHashRouter<ClientNode> router) {
+            this.cids = cids;
+            this.router = router;
+        }
+    }
+
     @Override
     public String getName() {
         return "CONSISTENT_HASH";
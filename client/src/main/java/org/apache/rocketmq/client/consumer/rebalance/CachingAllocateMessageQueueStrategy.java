@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.client.consumer.rebalance;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.rocketmq.client.consumer.AllocateMessageQueueStrategy;
+import org.apache.rocketmq.common.message.MessageQueue;
+
+/**
+ * 缓存分配结果的装饰器，只能包装结果只取决于入参的策略（平均分配、环形分配、一致性哈希等）。
+ * <p>
+ * 每个 consumerGroup@topic 记住上一次的 (策略, mqAll, cidAll, currentCID) 指纹和分配结果，
+ * 指纹不变时直接返回同一个结果实例，RebalanceImpl 据此跳过处理队列表的更新。
+ * mqAll 与 cidAll 需要已经排好序，RebalanceImpl 在调用前会排序。
+ */
+public class CachingAllocateMessageQueueStrategy extends AbstractAllocateMessageQueueStrategy {
+
+    private final AllocateMessageQueueStrategy delegate;
+    private final ConcurrentMap<String, Allocation> allocationTable = new ConcurrentHashMap<>();
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    public CachingAllocateMessageQueueStrategy(AllocateMessageQueueStrategy delegate) {
+        if (delegate == null) {
+            throw new NullPointerException("delegate strategy is null");
+        }
+        this.delegate = delegate;
+    }
+
+    @Override
+    public List<MessageQueue> allocate(String consumerGroup, String currentCID, List<MessageQueue> mqAll,
+        List<String> cidAll) {
+        if (!check(consumerGroup, currentCID, mqAll, cidAll)) {
+            return new ArrayList<>();
+        }
+
+        String key = consumerGroup + "@" + mqAll.get(0).getTopic();
+        Allocation allocation = allocationTable.get(key);
+        if (allocation != null && allocation.matches(currentCID, mqAll, cidAll)) {
+            hitCount.increment();
+            return allocation.result;
+        }
+
+        missCount.increment();
+        List<MessageQueue> result = delegate.allocate(consumerGroup, currentCID, mqAll, cidAll);
+        if (result == null) {
+            allocationTable.remove(key);
+            return null;
+        }
+        allocation = new Allocation(currentCID, mqAll, cidAll, Collections.unmodifiableList(new ArrayList<>(result)));
+        allocationTable.put(key, allocation);
+        return allocation.result;
+    }
+
+    /**
+     * 与被包装的策略同名，同一消费组里包装与不包装的客户端分配结果一致
+     */
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    public AllocateMessageQueueStrategy getDelegate() {
+        return delegate;
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * 一次分配的指纹和结果
+     */
+    private static final class Allocation {
+        private final String currentCID;
+        private final List<MessageQueue> mqAll;
+        private final List<String> cidAll;
+        private final List<MessageQueue> result;
+
+        Allocation(String currentCID, List<MessageQueue> mqAll, List<String> cidAll, List<MessageQueue> result) {
+            this.currentCID = currentCID;
+            this.mqAll = new ArrayList<>(mqAll);
+            this.cidAll = new ArrayList<>(cidAll);
+            this.result = result;
+        }
+
+        boolean matches(String currentCID, List<MessageQueue> mqAll, List<String> cidAll) {
+            return this.currentCID.equals(currentCID)
+                && this.mqAll.size() == mqAll.size() && this.cidAll.size() == cidAll.size()
+                && this.cidAll.equals(cidAll) && this.mqAll.equals(mqAll);
+        }
+    }
+}
@@ -239,10 +239,10 @@ public class ClientRemotingProcessor implements NettyRequestProcessor {
         try {
             final NotifyConsumerIdsChangedRequestHeader requestHeader =
                     (NotifyConsumerIdsChangedRequestHeader) request.decodeCommandCustomHeader(NotifyConsumerIdsChangedRequestHeader.class);
-            logger.info("receive broker's notification[{}], the consumer group: {} changed, rebalance immediately",
+            logger.info("receive broker's notification[{}], the consumer group: {} changed, rebalance soon",
                     RemotingHelper.parseChannelRemoteAddr(ctx.channel()),
                     requestHeader.getConsumerGroup());
-            this.mqClientFactory.rebalanceImmediately();
+            this.mqClientFactory.rebalanceConsumerGroup(requestHeader.getConsumerGroup());
         } catch (Exception e) {
             logger.error("notifyConsumerIdsChanged exception", UtilAll.exceptionSimpleDesc(e));
         }
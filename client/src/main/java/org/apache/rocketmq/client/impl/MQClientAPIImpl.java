@@ -17,6 +17,9 @@
 package org.apache.rocketmq.client.impl;
 
 import com.alibaba.fastjson.JSON;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.rocketmq.client.ClientConfig;
@@ -85,6 +88,7 @@ import org.apache.rocketmq.remoting.exception.RemotingTooMuchRequestException;
 import org.apache.rocketmq.remoting.netty.NettyClientConfig;
 import org.apache.rocketmq.remoting.netty.NettyRemotingClient;
 import org.apache.rocketmq.remoting.netty.ResponseFuture;
+import org.apache.rocketmq.remoting.protocol.BinaryBodyCodec;
 import org.apache.rocketmq.remoting.protocol.LanguageCode;
 import org.apache.rocketmq.remoting.protocol.NamespaceUtil;
 import org.apache.rocketmq.remoting.protocol.RemotingCommand;
@@ -108,6 +112,8 @@ import org.apache.rocketmq.remoting.protocol.body.ConsumerRunningInfo;
 import org.apache.rocketmq.remoting.protocol.body.CreateTopicListRequestBody;
 import org.apache.rocketmq.remoting.protocol.body.EpochEntryCache;
 import org.apache.rocketmq.remoting.protocol.body.GetConsumerStatusBody;
+import org.apache.rocketmq.remoting.protocol.body.GetRouteInfoDeltaRequestBody;
+import org.apache.rocketmq.remoting.protocol.body.GetRouteInfoDeltaResponseBody;
 import org.apache.rocketmq.remoting.protocol.body.GroupList;
 import org.apache.rocketmq.remoting.protocol.body.HARuntimeInfo;
 import org.apache.rocketmq.remoting.protocol.body.KVTable;
@@ -217,6 +223,7 @@ import org.apache.rocketmq.remoting.protocol.header.namesrv.DeleteTopicFromNames
 import org.apache.rocketmq.remoting.protocol.header.namesrv.GetKVConfigRequestHeader;
 import org.apache.rocketmq.remoting.protocol.header.namesrv.GetKVConfigResponseHeader;
 import org.apache.rocketmq.remoting.protocol.header.namesrv.GetKVListByNamespaceRequestHeader;
+import org.apache.rocketmq.remoting.protocol.header.namesrv.GetRouteInfoDeltaRequestHeader;
 import org.apache.rocketmq.remoting.protocol.header.namesrv.GetRouteInfoRequestHeader;
 import org.apache.rocketmq.remoting.protocol.header.namesrv.PutKVConfigRequestHeader;
 import org.apache.rocketmq.remoting.protocol.header.namesrv.WipeWritePermOfBrokerRequestHeader;
@@ -541,7 +548,7 @@ public class MQClientAPIImpl implements NameServerUpdateCallback, StartAndShutdo
                 request = RemotingCommand.createRequestCommand(RequestCode.SEND_MESSAGE, requestHeader);
             }
         }
-        request.setBody(msg.getBody());
+        setSendRequestBody(request, msg, communicationMode);
 
         switch (communicationMode) {
             case ONEWAY:
@@ -551,6 +558,7 @@ public class MQClientAPIImpl implements NameServerUpdateCallback, StartAndShutdo
                 final AtomicInteger times = new AtomicInteger();
                 long costTimeAsync = System.currentTimeMillis() - beginStartTime;
                 if (timeoutMillis < costTimeAsync) {
+                    request.releaseBodyBuf();
                     throw new RemotingTooMuchRequestException("sendMessage call timeout");
                 }
                 this.sendMessageAsync(addr, brokerName, msg, timeoutMillis - costTimeAsync, request, sendCallback, topicPublishInfo, instance,
@@ -559,6 +567,7 @@ public class MQClientAPIImpl implements NameServerUpdateCallback, StartAndShutdo
             case SYNC:
                 long costTimeSync = System.currentTimeMillis() - beginStartTime;
                 if (timeoutMillis < costTimeSync) {
+                    request.releaseBodyBuf();
                     throw new RemotingTooMuchRequestException("sendMessage call timeout");
                 }
                 return this.sendMessageSync(addr, brokerName, msg, timeoutMillis - costTimeSync, request);
@@ -570,6 +579,33 @@ public class MQClientAPIImpl implements NameServerUpdateCallback, StartAndShutdo
         return null;
     }
 
+    /**
+     * 开启了流式编码的批量消息直接编码进池化的 direct ByteBuf，由 NettyEncoder 原样写出，不再经过 byte[] body。
+     * 请求结束时通过 {@link RemotingCommand#releaseBodyBuf()} 回收没有写出的 ByteBuf；
+     * oneway 没有请求结束的时机，仍然编码成 byte[]。
+     */
+    private static void setSendRequestBody(RemotingCommand request, Message msg, CommunicationMode communicationMode) {
+        if (!(msg instanceof MessageBatch) || !((MessageBatch) msg).isStreamingEncode()) {
+            request.setBody(msg.getBody());
+            return;
+        }
+        MessageBatch messageBatch = (MessageBatch) msg;
+        if (communicationMode == CommunicationMode.ONEWAY) {
+            byte[] body = new byte[messageBatch.getEncodedSize()];
+            messageBatch.encodeTo(Unpooled.wrappedBuffer(body).writerIndex(0));
+            request.setBody(body);
+            return;
+        }
+        ByteBuf bodyBuf = PooledByteBufAllocator.DEFAULT.directBuffer(messageBatch.getEncodedSize());
+        try {
+            messageBatch.encodeTo(bodyBuf);
+        } catch (RuntimeException e) {
+            bodyBuf.release();
+            throw e;
+        }
+        request.setBodyBuf(bodyBuf);
+    }
+
     private SendResult sendMessageSync(
             final String addr,
             final String brokerName,
@@ -577,7 +613,12 @@ public class MQClientAPIImpl implements NameServerUpdateCallback, StartAndShutdo
             final long timeoutMillis,
             final RemotingCommand request
     ) throws RemotingException, MQBrokerException, InterruptedException {
-        RemotingCommand response = this.remotingClient.invokeSync(addr, request, timeoutMillis);
+        RemotingCommand response;
+        try {
+            response = this.remotingClient.invokeSync(addr, request, timeoutMillis);
+        } finally {
+            request.releaseBodyBuf();
+        }
         assert response != null;
         return this.processSendResponse(brokerName, msg, response, addr);
     }
@@ -614,6 +655,7 @@ public class MQClientAPIImpl implements NameServerUpdateCallback, StartAndShutdo
 
                 @Override
                 public void operationSucceed(RemotingCommand response) {
+                    request.releaseBodyBuf();
                     long cost = System.currentTimeMillis() - beginStartTime;
                     if (null == sendCallback) {
                         try {
@@ -692,6 +734,7 @@ public class MQClientAPIImpl implements NameServerUpdateCallback, StartAndShutdo
                                  final boolean needRetry,
                                  final DefaultMQProducerImpl producer
     ) {
+        request.releaseBodyBuf();
         int tmp = curTimes.incrementAndGet();
         if (needRetry && tmp <= timesTotal && timeoutMillis > 0) {
             String retryBrokerName = brokerName;//by default, it will send to the same broker
@@ -703,6 +746,10 @@ public class MQClientAPIImpl implements NameServerUpdateCallback, StartAndShutdo
             log.warn("async send msg by retry {} times. topic={}, brokerAddr={}, brokerName={}", tmp, msg.getTopic(), addr,
                     retryBrokerName, e);
             request.setOpaque(RemotingCommand.createNewRequestId());
+            if (request.getBodyBuf() != null) {
+                // 上一次的 ByteBuf 已经写出或回收，重新编码一份
+                setSendRequestBody(request, msg, CommunicationMode.ASYNC);
+            }
             sendMessageAsync(addr, retryBrokerName, msg, timeoutMillis, request, sendCallback, topicPublishInfo, instance,
                     timesTotal, curTimes, context, producer);
         } else {
@@ -1059,11 +1106,9 @@ public class MQClientAPIImpl implements NameServerUpdateCallback, StartAndShutdo
             case ResponseCode.SUCCESS:
                 popStatus = PopStatus.FOUND;
                 ByteBuffer byteBuffer = ByteBuffer.wrap(response.getBody());
-                msgFoundList = MessageDecoder.decodesBatch(
-                        byteBuffer,
-                        clientConfig.isDecodeReadBody(),
-                        clientConfig.isDecodeDecompressBody(),
-                        true);
+                msgFoundList = clientConfig.isDecodeLazy()
+                        ? MessageDecoder.decodesBatchLazy(byteBuffer, clientConfig.isDecodeReadBody(), clientConfig.isDecodeDecompressBody())
+                        : MessageDecoder.decodesBatch(byteBuffer, clientConfig.isDecodeReadBody(), clientConfig.isDecodeDecompressBody(), true);
                 break;
             case ResponseCode.POLLING_FULL:
                 popStatus = PopStatus.POLLING_FULL;
@@ -1449,7 +1494,7 @@ public class MQClientAPIImpl implements NameServerUpdateCallback, StartAndShutdo
             InterruptedException {
         RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.UPDATE_CONSUMER_OFFSET, requestHeader);
 
-        this.remotingClient.invokeOneway(MixAll.brokerVIPChannel(this.clientConfig.isVipChannelEnabled(), addr), request, timeoutMillis);
+        this.remotingClient.invokeOnewayBatched(MixAll.brokerVIPChannel(this.clientConfig.isVipChannelEnabled(), addr), request, timeoutMillis);
     }
 
     public int sendHeartbeat(
@@ -1459,7 +1504,7 @@ public class MQClientAPIImpl implements NameServerUpdateCallback, StartAndShutdo
     ) throws RemotingException, MQBrokerException, InterruptedException {
         RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.HEART_BEAT, new HeartbeatRequestHeader());
         request.setLanguage(clientConfig.getLanguage());
-        request.setBody(heartbeatData.encode());
+        request.setBody(encodeHeartbeatData(heartbeatData));
         RemotingCommand response = this.remotingClient.invokeSync(addr, request, timeoutMillis);
         assert response != null;
         switch (response.getCode()) {
@@ -1473,6 +1518,10 @@ public class MQClientAPIImpl implements NameServerUpdateCallback, StartAndShutdo
         throw new MQBrokerException(response.getCode(), response.getRemark(), addr);
     }
 
+    private byte[] encodeHeartbeatData(final HeartbeatData heartbeatData) {
+        return this.clientConfig.isBinaryRequestBodyEnable() ? BinaryBodyCodec.encode(heartbeatData) : heartbeatData.encode();
+    }
+
     public HeartbeatV2Result sendHeartbeatV2(
             final String addr,
             final HeartbeatData heartbeatData,
@@ -1480,7 +1529,7 @@ public class MQClientAPIImpl implements NameServerUpdateCallback, StartAndShutdo
     ) throws RemotingException, MQBrokerException, InterruptedException {
         RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.HEART_BEAT, new HeartbeatRequestHeader());
         request.setLanguage(clientConfig.getLanguage());
-        request.setBody(heartbeatData.encode());
+        request.setBody(encodeHeartbeatData(heartbeatData));
         RemotingCommand response = this.remotingClient.invokeSync(addr, request, timeoutMillis);
         assert response != null;
         switch (response.getCode()) {
@@ -1597,7 +1646,7 @@ public class MQClientAPIImpl implements NameServerUpdateCallback, StartAndShutdo
             final long timeoutMillis) throws RemotingException, MQBrokerException, InterruptedException {
         RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.LOCK_BATCH_MQ, new LockBatchMqRequestHeader());
 
-        request.setBody(requestBody.encode());
+        request.setBody(this.clientConfig.isBinaryRequestBodyEnable() ? BinaryBodyCodec.encode(requestBody) : requestBody.encode());
         RemotingCommand response = this.remotingClient.invokeSync(MixAll.brokerVIPChannel(this.clientConfig.isVipChannelEnabled(), addr),
                 request, timeoutMillis);
         switch (response.getCode()) {
@@ -1624,7 +1673,7 @@ public class MQClientAPIImpl implements NameServerUpdateCallback, StartAndShutdo
         request.setBody(requestBody.encode());
 
         if (oneway) {
-            this.remotingClient.invokeOneway(addr, request, timeoutMillis);
+            this.remotingClient.invokeOnewayBatched(addr, request, timeoutMillis);
         } else {
             RemotingCommand response = this.remotingClient
                     .invokeSync(MixAll.brokerVIPChannel(this.clientConfig.isVipChannelEnabled(), addr), request, timeoutMillis);
@@ -1977,6 +2026,9 @@ public class MQClientAPIImpl implements NameServerUpdateCallback, StartAndShutdo
                                                           boolean allowTopicNotExist) throws MQClientException, InterruptedException, RemotingTimeoutException, RemotingSendRequestException, RemotingConnectException {
         GetRouteInfoRequestHeader requestHeader = new GetRouteInfoRequestHeader();
         requestHeader.setTopic(topic);
+        if (this.clientConfig.isRouteBinaryBodyEnable()) {
+            requestHeader.setAcceptBinaryBody(true);
+        }
         RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.GET_ROUTEINFO_BY_TOPIC, requestHeader);
 
         RemotingCommand response = this.remotingClient.invokeSync(null, request, timeoutMillis);
@@ -1992,7 +2044,42 @@ public class MQClientAPIImpl implements NameServerUpdateCallback, StartAndShutdo
             case ResponseCode.SUCCESS: {
                 byte[] body = response.getBody();
                 if (body != null) {
-                    return TopicRouteData.decode(body, TopicRouteData.class);
+                    return BinaryBodyCodec.decodeTopicRouteData(body);
+                }
+            }
+            default:
+                break;
+        }
+
+        throw new MQClientException(response.getCode(), response.getRemark());
+    }
+
+    /**
+     * 增量路由查询，只返回版本号有变化的 topic 路由。
+     *
+     * @param topicRouteVersions 已持有的 topic 路由版本，没有时传 0
+     * @param routeEpoch         这些版本号所属的 name server epoch，没有时传 0
+     */
+    public GetRouteInfoDeltaResponseBody getTopicRouteDeltaFromNameServer(final Map<String, Long> topicRouteVersions,
+                                                                          final long routeEpoch, final long timeoutMillis)
+            throws MQClientException, InterruptedException, RemotingTimeoutException, RemotingSendRequestException, RemotingConnectException {
+        GetRouteInfoDeltaRequestHeader requestHeader = new GetRouteInfoDeltaRequestHeader();
+        requestHeader.setRouteEpoch(routeEpoch);
+        if (this.clientConfig.isRouteBinaryBodyEnable()) {
+            requestHeader.setAcceptBinaryBody(true);
+        }
+        GetRouteInfoDeltaRequestBody requestBody = new GetRouteInfoDeltaRequestBody();
+        requestBody.setTopicRouteVersions(topicRouteVersions);
+        RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.GET_ROUTEINFO_DELTA_BY_TOPICS, requestHeader);
+        request.setBody(requestBody.encode());
+
+        RemotingCommand response = this.remotingClient.invokeSync(null, request, timeoutMillis);
+        assert response != null;
+        switch (response.getCode()) {
+            case ResponseCode.SUCCESS: {
+                byte[] body = response.getBody();
+                if (body != null) {
+                    return BinaryBodyCodec.decodeRouteDelta(body);
                 }
             }
             default:
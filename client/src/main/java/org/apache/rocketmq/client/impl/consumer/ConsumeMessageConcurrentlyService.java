@@ -13,6 +13,7 @@ import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import org.apache.rocketmq.client.consumer.DefaultMQPushConsumer;
 import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyContext;
 import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyStatus;
@@ -32,8 +33,27 @@ import org.apache.rocketmq.remoting.protocol.body.ConsumeMessageDirectlyResult;
 import org.apache.rocketmq.logging.org.slf4j.Logger;
 import org.apache.rocketmq.logging.org.slf4j.LoggerFactory;
 
+/**
+ * 并发消费服务
+ * <p>
+ * 一次拉取到的消息按 consumeMessageBatchMaxSize 切成若干批，再把相邻的批次合并成不超过核心线程数的 ConsumeRequest：
+ * 一个请求依次消费自己的批次，最后一次性从 ProcessQueue 删除并更新一次位点，而不是每批各删一次、各提交一次。
+ * <p>
+ * consumeThreadMax 大于 consumeThreadMin 时，按消费耗时和积压情况在两者之间调整核心线程数。
+ */
 public class ConsumeMessageConcurrentlyService implements ConsumeMessageService {
     private static final Logger log = LoggerFactory.getLogger(ConsumeMessageConcurrentlyService.class);
+    /**
+     * 调整核心线程数的间隔
+     */
+    private static final long ADJUST_CORE_POOL_INTERVAL_MILLIS =
+        Long.parseLong(System.getProperty("rocketmq.client.consumeThreadAdjustInterval", "1000"));
+    /**
+     * 平均每批耗时低于该值时认为监听器是 CPU 密集的，线程数超过 CPU 核数后不再增加
+     */
+    private static final long BLOCKING_CONSUME_RT_MILLIS =
+        Long.parseLong(System.getProperty("rocketmq.client.blockingConsumeRT", "1"));
+    private static final int CPU_CORES = Runtime.getRuntime().availableProcessors();
     private final DefaultMQPushConsumerImpl defaultMQPushConsumerImpl;
     private final DefaultMQPushConsumer defaultMQPushConsumer;
     private final MessageListenerConcurrently messageListener;
@@ -44,6 +64,514 @@ public class ConsumeMessageConcurrentlyService implements ConsumeMessageService
     private final ScheduledExecutorService scheduledExecutorService;
     private final ScheduledExecutorService cleanExpireMsgExecutors;
 
+    /**
+     * 上次调整以来消费的批次数和总耗时
+     */
+    private final LongAdder consumedBatches = new LongAdder();
+    private final LongAdder consumeRTTotal = new LongAdder();
 
-    // ⚠️
+    public ConsumeMessageConcurrentlyService(DefaultMQPushConsumerImpl defaultMQPushConsumerImpl,
+        MessageListenerConcurrently messageListener) {
+        this.defaultMQPushConsumerImpl = defaultMQPushConsumerImpl;
+        this.messageListener = messageListener;
+
+        this.defaultMQPushConsumer = this.defaultMQPushConsumerImpl.getDefaultMQPushConsumer();
+        this.consumerGroup = this.defaultMQPushConsumer.getConsumerGroup();
+        this.consumeRequestQueue = new LinkedBlockingQueue<>();
+
+        String consumerGroupTag = (consumerGroup.length() > 100 ? consumerGroup.substring(0, 100) : consumerGroup) + "_";
+        this.consumeExecutor = new ThreadPoolExecutor(
+            this.defaultMQPushConsumer.getConsumeThreadMin(),
+            this.defaultMQPushConsumer.getConsumeThreadMax(),
+            1000 * 60,
+            TimeUnit.MILLISECONDS,
+            this.consumeRequestQueue,
+            new ThreadFactoryImpl("ConsumeMessageThread_" + consumerGroupTag));
+
+        this.scheduledExecutorService = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryImpl("ConsumeMessageScheduledThread_" + consumerGroupTag));
+        this.cleanExpireMsgExecutors = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryImpl("CleanExpireMsgScheduledThread_" + consumerGroupTag));
+    }
+
+    @Override
+    public void start() {
+        this.cleanExpireMsgExecutors.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    ConsumeMessageConcurrentlyService.this.cleanExpireMsg();
+                } catch (Throwable e) {
+                    log.error("scheduleAtFixedRate cleanExpireMsg exception", e);
+                }
+            }
+        }, this.defaultMQPushConsumer.getConsumeTimeout(), this.defaultMQPushConsumer.getConsumeTimeout(), TimeUnit.MINUTES);
+
+        if (this.defaultMQPushConsumer.getConsumeThreadMax() > this.defaultMQPushConsumer.getConsumeThreadMin()) {
+            this.scheduledExecutorService.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        ConsumeMessageConcurrentlyService.this.adjustCorePoolSize();
+                    } catch (Throwable e) {
+                        log.error("scheduleAtFixedRate adjustCorePoolSize exception", e);
+                    }
+                }
+            }, ADJUST_CORE_POOL_INTERVAL_MILLIS, ADJUST_CORE_POOL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void shutdown(long awaitTerminateMillis) {
+        this.scheduledExecutorService.shutdown();
+        ThreadUtils.shutdownGracefully(this.consumeExecutor, awaitTerminateMillis, TimeUnit.MILLISECONDS);
+        this.cleanExpireMsgExecutors.shutdown();
+    }
+
+    /**
+     * 只看有缓存消息的队列，ProcessQueue#cleanExpiredMsg 自己只检查最早的那几条
+     */
+    private void cleanExpireMsg() {
+        Iterator<Map.Entry<MessageQueue, ProcessQueue>> it =
+            this.defaultMQPushConsumerImpl.getRebalanceImpl().getProcessQueueTable().entrySet().iterator();
+        while (it.hasNext()) {
+            ProcessQueue pq = it.next().getValue();
+            if (pq.isDropped() || pq.getMsgCount().get() <= 0) {
+                continue;
+            }
+            pq.cleanExpiredMsg(this.defaultMQPushConsumer);
+        }
+    }
+
+    /**
+     * 所有线程都在忙、请求还在排队（或 ProcessQueue 里积压的消息超过 adjustThreadPoolNumsThreshold）时加一个线程；
+     * 监听器耗时很短时加到 CPU 核数为止，再多线程也只是争抢 CPU。有一半以上线程空闲且没有排队时减一个线程。
+     */
+    private void adjustCorePoolSize() {
+        long batches = this.consumedBatches.sumThenReset();
+        long rtTotal = this.consumeRTTotal.sumThenReset();
+        long avgRT = batches > 0 ? rtTotal / batches : 0;
+
+        int corePoolSize = this.consumeExecutor.getCorePoolSize();
+        int activeCount = this.consumeExecutor.getActiveCount();
+        int queued = this.consumeRequestQueue.size();
+
+        boolean backlogged = queued > 0 && activeCount >= corePoolSize
+            || cachedMessageCount() > this.defaultMQPushConsumer.getAdjustThreadPoolNumsThreshold();
+        if (backlogged) {
+            if (avgRT >= BLOCKING_CONSUME_RT_MILLIS || corePoolSize < CPU_CORES) {
+                this.incCorePoolSize();
+            }
+        } else if (queued == 0 && activeCount < corePoolSize / 2) {
+            this.decCorePoolSize();
+        }
+    }
+
+    private long cachedMessageCount() {
+        long count = 0;
+        for (ProcessQueue pq : this.defaultMQPushConsumerImpl.getRebalanceImpl().getProcessQueueTable().values()) {
+            if (!pq.isDropped()) {
+                count += pq.getMsgCount().get();
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public void updateCorePoolSize(int corePoolSize) {
+        if (corePoolSize > 0
+            && corePoolSize <= Short.MAX_VALUE
+            && corePoolSize < this.defaultMQPushConsumer.getConsumeThreadMax()) {
+            this.consumeExecutor.setCorePoolSize(corePoolSize);
+        }
+    }
+
+    @Override
+    public synchronized void incCorePoolSize() {
+        int corePoolSize = this.consumeExecutor.getCorePoolSize();
+        if (corePoolSize < this.defaultMQPushConsumer.getConsumeThreadMax()) {
+            this.consumeExecutor.setCorePoolSize(corePoolSize + 1);
+            log.info("incCorePoolSize Concurrently from {} to {}, ConsumerGroup: {}", corePoolSize, corePoolSize + 1, this.consumerGroup);
+        }
+    }
+
+    @Override
+    public synchronized void decCorePoolSize() {
+        int corePoolSize = this.consumeExecutor.getCorePoolSize();
+        if (corePoolSize > this.defaultMQPushConsumer.getConsumeThreadMin()) {
+            this.consumeExecutor.setCorePoolSize(corePoolSize - 1);
+            log.info("decCorePoolSize Concurrently from {} to {}, ConsumerGroup: {}", corePoolSize, corePoolSize - 1, this.consumerGroup);
+        }
+    }
+
+    @Override
+    public int getCorePoolSize() {
+        return this.consumeExecutor.getCorePoolSize();
+    }
+
+    @Override
+    public ConsumeMessageDirectlyResult consumeMessageDirectly(MessageExt msg, String brokerName) {
+        ConsumeMessageDirectlyResult result = new ConsumeMessageDirectlyResult();
+        result.setOrder(false);
+        result.setAutoCommit(true);
+
+        List<MessageExt> msgs = new ArrayList<>();
+        msgs.add(msg);
+        MessageQueue mq = new MessageQueue();
+        mq.setBrokerName(brokerName);
+        mq.setTopic(msg.getTopic());
+        mq.setQueueId(msg.getQueueId());
+
+        ConsumeConcurrentlyContext context = new ConsumeConcurrentlyContext(mq);
+
+        this.defaultMQPushConsumerImpl.resetRetryAndNamespace(msgs, this.consumerGroup);
+
+        final long beginTime = System.currentTimeMillis();
+
+        log.info("consumeMessageDirectly receive new message: {}", msg);
+
+        try {
+            ConsumeConcurrentlyStatus status = this.messageListener.consumeMessage(msgs, context);
+            if (status != null) {
+                switch (status) {
+                    case CONSUME_SUCCESS:
+                        result.setConsumeResult(CMResult.CR_SUCCESS);
+                        break;
+                    case RECONSUME_LATER:
+                        result.setConsumeResult(CMResult.CR_LATER);
+                        break;
+                    default:
+                        break;
+                }
+            } else {
+                result.setConsumeResult(CMResult.CR_RETURN_NULL);
+            }
+        } catch (Throwable e) {
+            result.setConsumeResult(CMResult.CR_THROW_EXCEPTION);
+            result.setRemark(UtilAll.exceptionSimpleDesc(e));
+
+            log.warn("consumeMessageDirectly exception: {} Group: {} Msgs: {} MQ: {}",
+                UtilAll.exceptionSimpleDesc(e),
+                ConsumeMessageConcurrentlyService.this.consumerGroup,
+                msgs,
+                mq, e);
+        }
+
+        result.setSpentTimeMills(System.currentTimeMillis() - beginTime);
+
+        log.info("consumeMessageDirectly Result: {}", result);
+
+        return result;
+    }
+
+    @Override
+    public void submitConsumeRequest(
+        final List<MessageExt> msgs,
+        final ProcessQueue processQueue,
+        final MessageQueue messageQueue,
+        final boolean dispatchToConsume) {
+        final int consumeBatchSize = this.defaultMQPushConsumer.getConsumeMessageBatchMaxSize();
+        if (msgs.size() <= consumeBatchSize) {
+            ConsumeRequest consumeRequest = new ConsumeRequest(msgs, processQueue, messageQueue);
+            try {
+                this.consumeExecutor.submit(consumeRequest);
+            } catch (RejectedExecutionException e) {
+                this.submitConsumeRequestLater(consumeRequest);
+            }
+            return;
+        }
+
+        // 批次数多于线程数时，一个请求串行消费多个批次
+        int batchCount = (msgs.size() + consumeBatchSize - 1) / consumeBatchSize;
+        int requestCount = Math.min(batchCount, Math.max(1, this.consumeExecutor.getCorePoolSize()));
+        int msgsPerRequest = (batchCount + requestCount - 1) / requestCount * consumeBatchSize;
+        for (int total = 0; total < msgs.size(); ) {
+            List<MessageExt> msgThis = new ArrayList<>(msgsPerRequest);
+            for (int i = 0; i < msgsPerRequest && total < msgs.size(); i++, total++) {
+                msgThis.add(msgs.get(total));
+            }
+
+            ConsumeRequest consumeRequest = new ConsumeRequest(msgThis, processQueue, messageQueue);
+            try {
+                this.consumeExecutor.submit(consumeRequest);
+            } catch (RejectedExecutionException e) {
+                for (; total < msgs.size(); total++) {
+                    msgThis.add(msgs.get(total));
+                }
+
+                this.submitConsumeRequestLater(consumeRequest);
+            }
+        }
+    }
+
+    @Override
+    public void submitPopConsumeRequest(final List<MessageExt> msgs,
+        final PopProcessQueue processQueue,
+        final MessageQueue messageQueue) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * 处理一个批次的消费结果：统计 TPS，集群模式下把失败的消息发回 broker
+     *
+     * @return 发回失败、需要稍后在本地重新消费的消息
+     */
+    public List<MessageExt> processConsumeResult(
+        final ConsumeConcurrentlyStatus status,
+        final ConsumeConcurrentlyContext context,
+        final List<MessageExt> msgs,
+        final ProcessQueue processQueue) {
+        if (msgs.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        int ackIndex = context.getAckIndex();
+        String topic = context.getMessageQueue().getTopic();
+
+        switch (status) {
+            case CONSUME_SUCCESS:
+                if (ackIndex >= msgs.size()) {
+                    ackIndex = msgs.size() - 1;
+                }
+                int ok = ackIndex + 1;
+                int failed = msgs.size() - ok;
+                this.getConsumerStatsManager().incConsumeOKTPS(consumerGroup, topic, ok);
+                this.getConsumerStatsManager().incConsumeFailedTPS(consumerGroup, topic, failed);
+                break;
+            case RECONSUME_LATER:
+                ackIndex = -1;
+                this.getConsumerStatsManager().incConsumeFailedTPS(consumerGroup, topic, msgs.size());
+                break;
+            default:
+                break;
+        }
+
+        List<MessageExt> msgBackFailed = Collections.emptyList();
+        switch (this.defaultMQPushConsumer.getMessageModel()) {
+            case BROADCASTING:
+                for (int i = ackIndex + 1; i < msgs.size(); i++) {
+                    MessageExt msg = msgs.get(i);
+                    log.warn("BROADCASTING, the message consume failed, drop it, {}", msg.toString());
+                }
+                break;
+            case CLUSTERING:
+                for (int i = ackIndex + 1; i < msgs.size(); i++) {
+                    MessageExt msg = msgs.get(i);
+                    // 可能已经过期被清理掉了
+                    if (!processQueue.containsMessage(msg)) {
+                        log.info("Message is not found in its process queue; skip send-back-procedure, topic={}, "
+                                + "brokerName={}, queueId={}, queueOffset={}", msg.getTopic(), msg.getBrokerName(),
+                            msg.getQueueId(), msg.getQueueOffset());
+                        continue;
+                    }
+                    boolean result = this.sendMessageBack(msg, context);
+                    if (!result) {
+                        msg.setReconsumeTimes(msg.getReconsumeTimes() + 1);
+                        if (msgBackFailed.isEmpty()) {
+                            msgBackFailed = new ArrayList<>(msgs.size() - i);
+                        }
+                        msgBackFailed.add(msg);
+                    }
+                }
+                break;
+            default:
+                break;
+        }
+
+        return msgBackFailed;
+    }
+
+    /**
+     * 请求里的批次全部处理完后，一次性从 ProcessQueue 删除并更新位点
+     */
+    private void commitConsumed(final ConsumeRequest consumeRequest, final List<MessageExt> msgBackFailed) {
+        List<MessageExt> consumed = consumeRequest.getMsgs();
+        if (!msgBackFailed.isEmpty()) {
+            consumed = new ArrayList<>(consumed);
+            consumed.removeAll(msgBackFailed);
+            this.submitConsumeRequestLater(msgBackFailed, consumeRequest.getProcessQueue(), consumeRequest.getMessageQueue());
+        }
+
+        long offset = consumeRequest.getProcessQueue().removeMessage(consumed);
+        if (offset >= 0 && !consumeRequest.getProcessQueue().isDropped()) {
+            this.defaultMQPushConsumerImpl.getOffsetStore().updateOffset(consumeRequest.getMessageQueue(), offset, true);
+        }
+    }
+
+    public ConsumerStatsManager getConsumerStatsManager() {
+        return this.defaultMQPushConsumerImpl.getConsumerStatsManager();
+    }
+
+    public boolean sendMessageBack(final MessageExt msg, final ConsumeConcurrentlyContext context) {
+        int delayLevel = context.getDelayLevelWhenNextConsume();
+
+        // 发回之前补上 namespace
+        msg.setTopic(this.defaultMQPushConsumer.withNamespace(msg.getTopic()));
+        try {
+            this.defaultMQPushConsumerImpl.sendMessageBack(msg, delayLevel, context.getMessageQueue());
+            return true;
+        } catch (Exception e) {
+            log.error("sendMessageBack exception, group: " + this.consumerGroup + " msg: " + msg, e);
+        }
+
+        return false;
+    }
+
+    private void submitConsumeRequestLater(
+        final List<MessageExt> msgs,
+        final ProcessQueue processQueue,
+        final MessageQueue messageQueue
+    ) {
+
+        this.scheduledExecutorService.schedule(new Runnable() {
+
+            @Override
+            public void run() {
+                ConsumeMessageConcurrentlyService.this.submitConsumeRequest(msgs, processQueue, messageQueue, true);
+            }
+        }, 5000, TimeUnit.MILLISECONDS);
+    }
+
+    private void submitConsumeRequestLater(final ConsumeRequest consumeRequest
+    ) {
+
+        this.scheduledExecutorService.schedule(new Runnable() {
+
+            @Override
+            public void run() {
+                ConsumeMessageConcurrentlyService.this.consumeExecutor.submit(consumeRequest);
+            }
+        }, 5000, TimeUnit.MILLISECONDS);
+    }
+
+    class ConsumeRequest implements Runnable {
+        private final List<MessageExt> msgs;
+        private final ProcessQueue processQueue;
+        private final MessageQueue messageQueue;
+
+        public ConsumeRequest(List<MessageExt> msgs, ProcessQueue processQueue, MessageQueue messageQueue) {
+            this.msgs = msgs;
+            this.processQueue = processQueue;
+            this.messageQueue = messageQueue;
+        }
+
+        public List<MessageExt> getMsgs() {
+            return msgs;
+        }
+
+        public ProcessQueue getProcessQueue() {
+            return processQueue;
+        }
+
+        @Override
+        public void run() {
+            if (this.processQueue.isDropped()) {
+                log.info("the message queue not be able to consume, because it's dropped. group={} {}", ConsumeMessageConcurrentlyService.this.consumerGroup, this.messageQueue);
+                return;
+            }
+
+            defaultMQPushConsumerImpl.resetRetryAndNamespace(msgs, defaultMQPushConsumer.getConsumerGroup());
+
+            final int consumeBatchSize = Math.max(1, defaultMQPushConsumer.getConsumeMessageBatchMaxSize());
+            List<MessageExt> msgBackFailed = Collections.emptyList();
+            for (int from = 0; from < msgs.size(); from += consumeBatchSize) {
+                List<MessageExt> batch = msgs.size() <= consumeBatchSize ? msgs
+                    : msgs.subList(from, Math.min(msgs.size(), from + consumeBatchSize));
+                ConsumeConcurrentlyContext context = new ConsumeConcurrentlyContext(messageQueue);
+                ConsumeConcurrentlyStatus status = this.consume(batch, context);
+
+                if (this.processQueue.isDropped()) {
+                    log.warn("processQueue is dropped without process consume result. messageQueue={}, msgs={}", messageQueue, msgs);
+                    return;
+                }
+
+                List<MessageExt> failed = ConsumeMessageConcurrentlyService.this.processConsumeResult(status, context, batch, processQueue);
+                if (!failed.isEmpty()) {
+                    if (msgBackFailed.isEmpty()) {
+                        msgBackFailed = new ArrayList<>(failed.size());
+                    }
+                    msgBackFailed.addAll(failed);
+                }
+            }
+
+            ConsumeMessageConcurrentlyService.this.commitConsumed(this, msgBackFailed);
+        }
+
+        private ConsumeConcurrentlyStatus consume(final List<MessageExt> batch, final ConsumeConcurrentlyContext context) {
+            MessageListenerConcurrently listener = ConsumeMessageConcurrentlyService.this.messageListener;
+            ConsumeConcurrentlyStatus status = null;
+
+            ConsumeMessageContext consumeMessageContext = null;
+            if (ConsumeMessageConcurrentlyService.this.defaultMQPushConsumerImpl.hasHook()) {
+                consumeMessageContext = new ConsumeMessageContext();
+                consumeMessageContext.setNamespace(defaultMQPushConsumer.getNamespace());
+                consumeMessageContext.setConsumerGroup(defaultMQPushConsumer.getConsumerGroup());
+                consumeMessageContext.setProps(new HashMap<>());
+                consumeMessageContext.setMq(messageQueue);
+                consumeMessageContext.setMsgList(batch);
+                consumeMessageContext.setSuccess(false);
+                ConsumeMessageConcurrentlyService.this.defaultMQPushConsumerImpl.executeHookBefore(consumeMessageContext);
+            }
+
+            long beginTimestamp = System.currentTimeMillis();
+            boolean hasException = false;
+            ConsumeReturnType returnType = ConsumeReturnType.SUCCESS;
+            try {
+                String consumeStartTimeStamp = String.valueOf(beginTimestamp);
+                for (MessageExt msg : batch) {
+                    MessageAccessor.setConsumeStartTimeStamp(msg, consumeStartTimeStamp);
+                }
+                status = listener.consumeMessage(Collections.unmodifiableList(batch), context);
+            } catch (Throwable e) {
+                log.warn("consumeMessage exception: {} Group: {} Msgs: {} MQ: {}",
+                    UtilAll.exceptionSimpleDesc(e),
+                    ConsumeMessageConcurrentlyService.this.consumerGroup,
+                    batch,
+                    messageQueue, e);
+                hasException = true;
+            }
+            long consumeRT = System.currentTimeMillis() - beginTimestamp;
+            if (null == status) {
+                if (hasException) {
+                    returnType = ConsumeReturnType.EXCEPTION;
+                } else {
+                    returnType = ConsumeReturnType.RETURNNULL;
+                }
+            } else if (consumeRT >= defaultMQPushConsumer.getConsumeTimeout() * 60 * 1000) {
+                returnType = ConsumeReturnType.TIME_OUT;
+            } else if (ConsumeConcurrentlyStatus.RECONSUME_LATER == status) {
+                returnType = ConsumeReturnType.FAILED;
+            } else if (ConsumeConcurrentlyStatus.CONSUME_SUCCESS == status) {
+                returnType = ConsumeReturnType.SUCCESS;
+            }
+
+            if (ConsumeMessageConcurrentlyService.this.defaultMQPushConsumerImpl.hasHook()) {
+                consumeMessageContext.getProps().put(MixAll.CONSUME_CONTEXT_TYPE, returnType.name());
+            }
+
+            if (null == status) {
+                log.warn("consumeMessage return null, Group: {} Msgs: {} MQ: {}",
+                    ConsumeMessageConcurrentlyService.this.consumerGroup,
+                    batch,
+                    messageQueue);
+                status = ConsumeConcurrentlyStatus.RECONSUME_LATER;
+            }
+
+            if (ConsumeMessageConcurrentlyService.this.defaultMQPushConsumerImpl.hasHook()) {
+                consumeMessageContext.setStatus(status.toString());
+                consumeMessageContext.setSuccess(ConsumeConcurrentlyStatus.CONSUME_SUCCESS == status);
+                consumeMessageContext.setAccessChannel(defaultMQPushConsumer.getAccessChannel());
+                ConsumeMessageConcurrentlyService.this.defaultMQPushConsumerImpl.executeHookAfter(consumeMessageContext);
+            }
+
+            ConsumeMessageConcurrentlyService.this.getConsumerStatsManager()
+                .incConsumeRT(ConsumeMessageConcurrentlyService.this.consumerGroup, messageQueue.getTopic(), consumeRT);
+            ConsumeMessageConcurrentlyService.this.consumedBatches.increment();
+            ConsumeMessageConcurrentlyService.this.consumeRTTotal.add(consumeRT);
+            return status;
+        }
+
+        public MessageQueue getMessageQueue() {
+            return messageQueue;
+        }
+
+    }
 }
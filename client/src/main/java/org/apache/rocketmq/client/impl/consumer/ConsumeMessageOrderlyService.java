@@ -1,10 +1,13 @@
 package org.apache.rocketmq.client.impl.consumer;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
@@ -45,6 +48,10 @@ public class ConsumeMessageOrderlyService implements ConsumeMessageService {
     private final ThreadPoolExecutor consumeExecutor;
     private final String consumerGroup;
     private final MessageQueueLock messageQueueLock = new MessageQueueLock();
+    /**
+     * 按键顺序消费时每个队列的通道
+     */
+    private final ConcurrentMap<MessageQueue, ConsumeLanes> consumeLanesTable = new ConcurrentHashMap<>();
     private final ScheduledExecutorService scheduledExecutorService;
     private volatile boolean stopped = false;
 
@@ -189,7 +196,9 @@ public class ConsumeMessageOrderlyService implements ConsumeMessageService {
         final MessageQueue messageQueue,
         final boolean dispatchToConsume) {
         if (dispatchToConsume) {
-            ConsumeRequest consumeRequest = new ConsumeRequest(processQueue, messageQueue);
+            Runnable consumeRequest = this.defaultMQPushConsumer.isConsumeOrderlyByKey()
+                ? new KeyOrderedConsumeRequest(processQueue, messageQueue)
+                : new ConsumeRequest(processQueue, messageQueue);
             this.consumeExecutor.submit(consumeRequest);
         }
     }
@@ -554,4 +563,311 @@ public class ConsumeMessageOrderlyService implements ConsumeMessageService {
 
     }
 
+    private ConsumeLanes consumeLanesOf(final ProcessQueue processQueue, final MessageQueue messageQueue) {
+        ConsumeLanes lanes = this.consumeLanesTable.get(messageQueue);
+        if (lanes == null || lanes.processQueue != processQueue) {
+            // 重新分配到这个队列后 ProcessQueue 是新的，旧通道里的消息已经随旧 ProcessQueue 丢弃
+            lanes = new ConsumeLanes(processQueue, messageQueue, Math.max(1, this.defaultMQPushConsumer.getConsumeOrderlyLaneNums()));
+            this.consumeLanesTable.put(messageQueue, lanes);
+        }
+        return lanes;
+    }
+
+    private boolean isLockValid(final ProcessQueue processQueue) {
+        return MessageModel.BROADCASTING.equals(this.defaultMQPushConsumerImpl.messageModel())
+            || processQueue.isLocked() && !processQueue.isLockExpired();
+    }
+
+    /**
+     * 按键顺序消费：持有队列锁时用 takeMessages 把消息取出来分到各通道，通道各自串行消费
+     */
+    class KeyOrderedConsumeRequest implements Runnable {
+        private final ProcessQueue processQueue;
+        private final MessageQueue messageQueue;
+
+        public KeyOrderedConsumeRequest(ProcessQueue processQueue, MessageQueue messageQueue) {
+            this.processQueue = processQueue;
+            this.messageQueue = messageQueue;
+        }
+
+        @Override
+        public void run() {
+            if (this.processQueue.isDropped()) {
+                log.warn("run, the message queue not be able to consume, because it's dropped. {}", this.messageQueue);
+                return;
+            }
+
+            final Object objLock = messageQueueLock.fetchLockObject(this.messageQueue);
+            synchronized (objLock) {
+                if (!isLockValid(this.processQueue)) {
+                    if (this.processQueue.isDropped()) {
+                        log.warn("the message queue not be able to consume, because it's dropped. {}", this.messageQueue);
+                        return;
+                    }
+                    ConsumeMessageOrderlyService.this.tryLockLaterAndReconsume(this.messageQueue, this.processQueue, 100);
+                    return;
+                }
+
+                ConsumeLanes lanes = consumeLanesOf(this.processQueue, this.messageQueue);
+                final int takeSize = Math.max(1, defaultMQPushConsumer.getConsumeMessageBatchMaxSize()) * lanes.lanes.length;
+                for (List<MessageExt> msgs = this.processQueue.takeMessages(takeSize); !msgs.isEmpty();
+                     msgs = this.processQueue.takeMessages(takeSize)) {
+                    defaultMQPushConsumerImpl.resetRetryAndNamespace(msgs, defaultMQPushConsumer.getConsumerGroup());
+                    lanes.dispatch(msgs);
+                }
+            }
+        }
+    }
+
+    class ConsumeLanes {
+        private final ProcessQueue processQueue;
+        private final MessageQueue messageQueue;
+        private final ConsumeLane[] lanes;
+
+        ConsumeLanes(ProcessQueue processQueue, MessageQueue messageQueue, int laneNums) {
+            this.processQueue = processQueue;
+            this.messageQueue = messageQueue;
+            this.lanes = new ConsumeLane[laneNums];
+            for (int i = 0; i < laneNums; i++) {
+                this.lanes[i] = new ConsumeLane(this);
+            }
+        }
+
+        /**
+         * 在队列锁对象内调用，msgs 按 offset 升序
+         */
+        void dispatch(final List<MessageExt> msgs) {
+            for (MessageExt msg : msgs) {
+                this.lanes[laneOf(msg)].add(msg);
+            }
+            for (ConsumeLane lane : this.lanes) {
+                lane.trigger();
+            }
+        }
+
+        /**
+         * 没有分片键的消息都落在同一个通道，彼此之间仍然有序
+         */
+        private int laneOf(final MessageExt msg) {
+            String propertyName = defaultMQPushConsumer.getOrderlyShardingKeyProperty();
+            String shardingKey = propertyName != null ? msg.getUserProperty(propertyName) : msg.getKeys();
+            if (shardingKey == null) {
+                return 0;
+            }
+            return (shardingKey.hashCode() & Integer.MAX_VALUE) % this.lanes.length;
+        }
+    }
+
+    /**
+     * 一个通道内的消息按 offset 串行消费，消费成功后用 ProcessQueue#commit(List) 提交，位点停在所有通道里最小的未完成 offset 上。
+     * 消费失败时只挂起本通道，其他通道继续消费。
+     */
+    class ConsumeLane implements Runnable {
+        private final ConsumeLanes owner;
+        private final ArrayDeque<MessageExt> pending = new ArrayDeque<>();
+        private boolean running = false;
+        private boolean suspended = false;
+
+        ConsumeLane(ConsumeLanes owner) {
+            this.owner = owner;
+        }
+
+        synchronized void add(final MessageExt msg) {
+            this.pending.addLast(msg);
+        }
+
+        void trigger() {
+            synchronized (this) {
+                if (this.running || this.suspended || this.pending.isEmpty()) {
+                    return;
+                }
+                this.running = true;
+            }
+            ConsumeMessageOrderlyService.this.consumeExecutor.submit(this);
+        }
+
+        private synchronized List<MessageExt> poll(final int batchSize) {
+            List<MessageExt> msgs = new ArrayList<>(Math.min(batchSize, this.pending.size()));
+            while (msgs.size() < batchSize && !this.pending.isEmpty()) {
+                msgs.add(this.pending.pollFirst());
+            }
+            if (msgs.isEmpty()) {
+                this.running = false;
+            }
+            return msgs;
+        }
+
+        private synchronized void stop() {
+            this.running = false;
+        }
+
+        /**
+         * 失败的消息放回通道头部，过一段时间再继续
+         */
+        private void suspend(final List<MessageExt> msgs, final long suspendTimeMillis) {
+            synchronized (this) {
+                for (int i = msgs.size() - 1; i >= 0; i--) {
+                    this.pending.addFirst(msgs.get(i));
+                }
+                this.suspended = true;
+                this.running = false;
+            }
+
+            long timeMillis = suspendTimeMillis == -1 ? defaultMQPushConsumer.getSuspendCurrentQueueTimeMillis() : suspendTimeMillis;
+            ConsumeMessageOrderlyService.this.scheduledExecutorService.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (ConsumeLane.this) {
+                        ConsumeLane.this.suspended = false;
+                    }
+                    ConsumeLane.this.trigger();
+                }
+            }, Math.min(Math.max(timeMillis, 10), 30000), TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * 队列锁失效时把通道里的消息还给 ProcessQueue，重新加锁后再分发，与分发在同一个锁对象内进行以保持顺序
+         */
+        private void giveBack() {
+            final Object objLock = messageQueueLock.fetchLockObject(this.owner.messageQueue);
+            synchronized (objLock) {
+                List<MessageExt> msgs;
+                synchronized (this) {
+                    msgs = new ArrayList<>(this.pending);
+                    this.pending.clear();
+                    this.running = false;
+                }
+                if (!msgs.isEmpty()) {
+                    this.owner.processQueue.makeMessageToConsumeAgain(msgs);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            final ProcessQueue processQueue = this.owner.processQueue;
+            final MessageQueue messageQueue = this.owner.messageQueue;
+            final long beginTime = System.currentTimeMillis();
+            while (true) {
+                if (processQueue.isDropped()) {
+                    log.warn("the message queue not be able to consume, because it's dropped. {}", messageQueue);
+                    synchronized (this) {
+                        this.pending.clear();
+                        this.running = false;
+                    }
+                    consumeLanesTable.remove(messageQueue, this.owner);
+                    return;
+                }
+
+                if (!isLockValid(processQueue)) {
+                    log.warn("the message queue not locked or lock expired, so consume later, {}", messageQueue);
+                    this.giveBack();
+                    ConsumeMessageOrderlyService.this.tryLockLaterAndReconsume(messageQueue, processQueue, 10);
+                    return;
+                }
+
+                // 让出线程给其他通道
+                if (System.currentTimeMillis() - beginTime > MAX_TIME_CONSUME_CONTINUOUSLY) {
+                    this.stop();
+                    this.trigger();
+                    return;
+                }
+
+                List<MessageExt> msgs = this.poll(Math.max(1, defaultMQPushConsumer.getConsumeMessageBatchMaxSize()));
+                if (msgs.isEmpty()) {
+                    return;
+                }
+
+                final ConsumeOrderlyContext context = new ConsumeOrderlyContext(messageQueue);
+                ConsumeOrderlyStatus status = this.consume(msgs, context, processQueue, messageQueue);
+
+                long commitOffset = -1L;
+                switch (status) {
+                    case COMMIT:
+                    case ROLLBACK:
+                        log.warn("the message queue consume result is illegal when consume orderly by key, we think you want to ack these message {}",
+                            messageQueue);
+                    case SUCCESS:
+                        commitOffset = processQueue.commit(msgs);
+                        getConsumerStatsManager().incConsumeOKTPS(consumerGroup, messageQueue.getTopic(), msgs.size());
+                        break;
+                    case SUSPEND_CURRENT_QUEUE_A_MOMENT:
+                        getConsumerStatsManager().incConsumeFailedTPS(consumerGroup, messageQueue.getTopic(), msgs.size());
+                        if (checkReconsumeTimes(msgs)) {
+                            this.suspend(msgs, context.getSuspendCurrentQueueTimeMillis());
+                            return;
+                        }
+                        commitOffset = processQueue.commit(msgs);
+                        break;
+                    default:
+                        break;
+                }
+
+                // 各通道提交的先后不确定，只允许位点前进
+                if (commitOffset >= 0 && !processQueue.isDropped()) {
+                    defaultMQPushConsumerImpl.getOffsetStore().updateOffset(messageQueue, commitOffset, true);
+                }
+            }
+        }
+
+        private ConsumeOrderlyStatus consume(final List<MessageExt> msgs, final ConsumeOrderlyContext context,
+            final ProcessQueue processQueue, final MessageQueue messageQueue) {
+            ConsumeOrderlyStatus status = null;
+
+            ConsumeMessageContext consumeMessageContext = null;
+            if (defaultMQPushConsumerImpl.hasHook()) {
+                consumeMessageContext = new ConsumeMessageContext();
+                consumeMessageContext.setConsumerGroup(defaultMQPushConsumer.getConsumerGroup());
+                consumeMessageContext.setNamespace(defaultMQPushConsumer.getNamespace());
+                consumeMessageContext.setMq(messageQueue);
+                consumeMessageContext.setMsgList(msgs);
+                consumeMessageContext.setSuccess(false);
+                consumeMessageContext.setProps(new HashMap<>());
+                defaultMQPushConsumerImpl.executeHookBefore(consumeMessageContext);
+            }
+
+            long beginTimestamp = System.currentTimeMillis();
+            ConsumeReturnType returnType = ConsumeReturnType.SUCCESS;
+            boolean hasException = false;
+            try {
+                processQueue.getConsumeLock().readLock().lock();
+                status = messageListener.consumeMessage(Collections.unmodifiableList(msgs), context);
+            } catch (Throwable e) {
+                log.warn("consumeMessage exception: {} Group: {} Msgs: {} MQ: {}",
+                    UtilAll.exceptionSimpleDesc(e),
+                    consumerGroup,
+                    msgs,
+                    messageQueue, e);
+                hasException = true;
+            } finally {
+                processQueue.getConsumeLock().readLock().unlock();
+            }
+
+            long consumeRT = System.currentTimeMillis() - beginTimestamp;
+            if (null == status) {
+                returnType = hasException ? ConsumeReturnType.EXCEPTION : ConsumeReturnType.RETURNNULL;
+            } else if (consumeRT >= defaultMQPushConsumer.getConsumeTimeout() * 60 * 1000) {
+                returnType = ConsumeReturnType.TIME_OUT;
+            } else if (ConsumeOrderlyStatus.SUSPEND_CURRENT_QUEUE_A_MOMENT == status) {
+                returnType = ConsumeReturnType.FAILED;
+            }
+
+            if (null == status || ConsumeOrderlyStatus.SUSPEND_CURRENT_QUEUE_A_MOMENT == status) {
+                log.warn("consumeMessage Orderly return not OK, Group: {} Msgs: {} MQ: {}", consumerGroup, msgs, messageQueue);
+                status = ConsumeOrderlyStatus.SUSPEND_CURRENT_QUEUE_A_MOMENT;
+            }
+
+            if (defaultMQPushConsumerImpl.hasHook()) {
+                consumeMessageContext.getProps().put(MixAll.CONSUME_CONTEXT_TYPE, returnType.name());
+                consumeMessageContext.setStatus(status.toString());
+                consumeMessageContext.setSuccess(ConsumeOrderlyStatus.SUCCESS == status || ConsumeOrderlyStatus.COMMIT == status);
+                consumeMessageContext.setAccessChannel(defaultMQPushConsumer.getAccessChannel());
+                defaultMQPushConsumerImpl.executeHookAfter(consumeMessageContext);
+            }
+
+            getConsumerStatsManager().incConsumeRT(consumerGroup, messageQueue.getTopic(), consumeRT);
+            return status;
+        }
+    }
+
 }
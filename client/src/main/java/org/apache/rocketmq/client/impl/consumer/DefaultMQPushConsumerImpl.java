@@ -133,4 +133,14 @@ public class DefaultMQPushConsumerImpl implements MQConsumerInner {
         this.pause = true;
         log.info("suspend this consumer, {}", this.defaultMQPushConsumer.getConsumerGroup());
     }
+
+    /**
+     * 按配置创建 ProcessQueue，供 RebalancePushImpl#createProcessQueue 使用
+     */
+    public ProcessQueue createProcessQueue() {
+        if (this.defaultMQPushConsumer.isProcessQueueRingBufferEnable()) {
+            return new RingBufferProcessQueue();
+        }
+        return new ProcessQueue();
+    }
 }
\ No newline at end of file
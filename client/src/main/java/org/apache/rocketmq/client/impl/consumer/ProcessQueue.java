@@ -282,6 +282,47 @@ public class ProcessQueue {
         return -1;
     }
 
+    /**
+     * 只提交 takeMessages 取出的一部分消息，供按键顺序消费时各通道分别提交
+     *
+     * @return 还没消费完的最小 offset，都消费完时为 queueOffsetMax + 1；msgs 都不在消费中时返回 -1
+     */
+    public long commit(final List<MessageExt> msgs) {
+        try {
+            this.treeMapLock.writeLock().lockInterruptibly();
+            try {
+                int removedCnt = 0;
+                for (MessageExt msg : msgs) {
+                    if (this.consumingMsgOrderlyTreeMap.remove(msg.getQueueOffset()) != null) {
+                        removedCnt++;
+                        msgSize.addAndGet(-(null == msg.getBody() ? 0 : msg.getBody().length));
+                    }
+                }
+                if (removedCnt == 0) {
+                    return -1;
+                }
+                if (msgCount.addAndGet(-removedCnt) == 0) {
+                    msgSize.set(0);
+                }
+
+                long offset = this.queueOffsetMax + 1;
+                if (!this.consumingMsgOrderlyTreeMap.isEmpty()) {
+                    offset = Math.min(offset, this.consumingMsgOrderlyTreeMap.firstKey());
+                }
+                if (!this.msgTreeMap.isEmpty()) {
+                    offset = Math.min(offset, this.msgTreeMap.firstKey());
+                }
+                return offset;
+            } finally {
+                this.treeMapLock.writeLock().unlock();
+            }
+        } catch (InterruptedException e) {
+            log.error("commit exception", e);
+        }
+
+        return -1;
+    }
+
     public void makeMessageToConsumeAgain(List<MessageExt> msgs) {
         try {
             this.treeMapLock.writeLock().lockInterruptibly();
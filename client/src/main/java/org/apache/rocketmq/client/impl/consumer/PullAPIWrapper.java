@@ -7,6 +7,7 @@ import java.util.Random;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicLong;
+import org.apache.rocketmq.client.ClientConfig;
 import org.apache.rocketmq.client.consumer.PopCallback;
 import org.apache.rocketmq.client.consumer.PullCallback;
 import org.apache.rocketmq.client.consumer.PullResult;
@@ -61,12 +62,11 @@ public class PullAPIWrapper {
         this.updatePullFromWhichNode(mq, pullResultExt.getSuggestWhichBrokerId());
         if (PullStatus.FOUND == pullResult.getPullStatus()) {
             ByteBuffer byteBuffer = ByteBuffer.wrap(pullResultExt.getMessageBinary());
-            List<MessageExt> msgList = MessageDecoder.decodesBatch(
-                byteBuffer,
-                this.mQClientFactory.getClientConfig().isDecodeReadBody(),
-                this.mQClientFactory.getClientConfig().isDecodeDecompressBody(),
-                true
-            );
+            ClientConfig clientConfig = this.mQClientFactory.getClientConfig();
+            // 懒解码时被 tag 过滤掉的消息只解出 TAGS，不拷贝 body
+            List<MessageExt> msgList = clientConfig.isDecodeLazy()
+                ? MessageDecoder.decodesBatchLazy(byteBuffer, clientConfig.isDecodeReadBody(), clientConfig.isDecodeDecompressBody())
+                : MessageDecoder.decodesBatch(byteBuffer, clientConfig.isDecodeReadBody(), clientConfig.isDecodeDecompressBody(), true);
 
             boolean needDecodeInnerMessage = false;
             for (MessageExt messageExt: msgList) {
@@ -117,10 +117,8 @@ public class PullAPIWrapper {
                 if (Boolean.parseBoolean(traFlag)) {
                     msg.setTransactionId(msg.getProperty(MessageConst.PROPERTY_UNIQ_CLIENT_MESSAGE_ID_KEYIDX));
                 }
-                MessageAccessor.putProperty(msg, MessageConst.PROPERTY_MIN_OFFSET,
-                    Long.toString(pullResult.getMinOffset()));
-                MessageAccessor.putProperty(msg, MessageConst.PROPERTY_MAX_OFFSET,
-                    Long.toString(pullResult.getMaxOffset()));
+                MessageAccessor.putLongProperty(msg, MessageConst.PROPERTY_MIN_OFFSET, pullResult.getMinOffset());
+                MessageAccessor.putLongProperty(msg, MessageConst.PROPERTY_MAX_OFFSET, pullResult.getMaxOffset());
                 msg.setBrokerName(mq.getBrokerName());
                 msg.setQueueId(mq.getQueueId());
                 if (pullResultExt.getOffsetDelta() != null) {
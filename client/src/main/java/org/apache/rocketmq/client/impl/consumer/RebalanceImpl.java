@@ -13,6 +13,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
 import org.apache.rocketmq.client.consumer.AllocateMessageQueueStrategy;
+import org.apache.rocketmq.client.consumer.rebalance.CachingAllocateMessageQueueStrategy;
 import org.apache.rocketmq.client.exception.MQClientException;
 import org.apache.rocketmq.client.impl.FindBrokerResult;
 import org.apache.rocketmq.client.impl.factory.MQClientInstance;
@@ -45,6 +46,10 @@ public abstract class RebalanceImpl {
     protected AllocateMessageQueueStrategy allocateMessageQueueStrategy;
     protected MQClientInstance mQClientFactory;
     private static final int QUERY_ASSIGNMENT_TIMEOUT = 3000;
+    /**
+     * 每个 topic 上一次用来更新处理队列表的分配结果，{@link CachingAllocateMessageQueueStrategy} 命中时返回的是同一个实例
+     */
+    private final ConcurrentMap<String /* topic */, List<MessageQueue>> lastAllocateResultTable = new ConcurrentHashMap<>();
 
     public RebalanceImpl(String consumerGroup, MessageModel messageModel,
                          AllocateMessageQueueStrategy allocateMessageQueueStrategy,
@@ -284,6 +289,7 @@ public abstract class RebalanceImpl {
                 }
 
                 if (mqSet != null && cidAll != null) {
+                    long beginTime = System.nanoTime();
                     List<MessageQueue> mqAll = new ArrayList<>();
                     mqAll.addAll(mqSet);
 
@@ -309,7 +315,28 @@ public abstract class RebalanceImpl {
                         allocateResultSet.addAll(allocateResult);
                     }
 
+                    if (strategy instanceof CachingAllocateMessageQueueStrategy) {
+                        // 分配结果和上次是同一个实例，说明 mqAll/cidAll 都没变，处理队列表也完好时不用再更新
+                        boolean hit = allocateResult != null && allocateResult == this.lastAllocateResultTable.get(topic);
+                        if (hit) {
+                            this.mQClientFactory.getConsumerStatsManager().incAllocateCacheHit(consumerGroup, topic);
+                        } else {
+                            this.mQClientFactory.getConsumerStatsManager().incAllocateCacheMiss(consumerGroup, topic);
+                        }
+                        if (hit && isProcessQueueTableUpToDate(topic, allocateResultSet)) {
+                            balanced = allocateResultSet.equals(getWorkingMessageQueue(topic));
+                            this.mQClientFactory.getConsumerStatsManager().incRebalanceRT(consumerGroup, topic,
+                                (System.nanoTime() - beginTime) / 1000);
+                            break;
+                        }
+                    }
+
                     boolean changed = this.updateProcessQueueTableInRebalance(topic, allocateResultSet, isOrder);
+                    if (allocateResult != null) {
+                        this.lastAllocateResultTable.put(topic, allocateResult);
+                    } else {
+                        this.lastAllocateResultTable.remove(topic);
+                    }
                     if (changed) {
                         log.info(
                                 "client rebalanced result changed. allocateMessageQueueStrategyName={}, group={}, topic={}, clientId={}, mqAllSize={}, cidAllSize={}, rebalanceResultSize={}, rebalanceResultSet={}",
@@ -319,6 +346,8 @@ public abstract class RebalanceImpl {
                     }
 
                     balanced = allocateResultSet.equals(getWorkingMessageQueue(topic));
+                    this.mQClientFactory.getConsumerStatsManager().incRebalanceRT(consumerGroup, topic,
+                        (System.nanoTime() - beginTime) / 1000);
                 }
                 break;
             }
@@ -329,6 +358,26 @@ public abstract class RebalanceImpl {
         return balanced;
     }
 
+    /**
+     * 处理队列表中该 topic 的队列恰好是 mqSet，且没有被丢弃或拉取停滞的队列，即 updateProcessQueueTableInRebalance 不会有任何动作
+     */
+    private boolean isProcessQueueTableUpToDate(final String topic, final Set<MessageQueue> mqSet) {
+        int count = 0;
+        for (Entry<MessageQueue, ProcessQueue> entry : this.processQueueTable.entrySet()) {
+            MessageQueue mq = entry.getKey();
+            if (!mq.getTopic().equals(topic)) {
+                continue;
+            }
+            ProcessQueue pq = entry.getValue();
+            if (pq.isDropped() || !mqSet.contains(mq)
+                || pq.isPullExpired() && this.consumeType() == ConsumeType.CONSUME_PASSIVELY) {
+                return false;
+            }
+            count++;
+        }
+        return count == mqSet.size();
+    }
+
     private boolean getRebalanceResultFromBroker(final String topic, final boolean isOrder) {
         String strategyName = this.allocateMessageQueueStrategy.getName();
         Set<MessageQueueAssignment> messageQueueAssignments;
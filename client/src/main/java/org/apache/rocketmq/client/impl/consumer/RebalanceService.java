@@ -1,5 +1,8 @@
 package org.apache.rocketmq.client.impl.consumer;
 
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import org.apache.rocketmq.client.impl.factory.MQClientInstance;
 import org.apache.rocketmq.common.ServiceThread;
 import org.apache.rocketmq.logging.org.slf4j.Logger;
@@ -9,13 +12,17 @@ import org.apache.rocketmq.logging.org.slf4j.LoggerFactory;
 /**
  * 负载平衡调度逻辑
  * <p>
+ * 由事件驱动：topic 路由变化、broker 通知消费者列表变化时调用 {@link #requestRebalance(String)}，
+ * 短时间内的多次触发会合并成一次，只对受影响的消费组做 Rebalance。
+ * 另外保留一个较长间隔的兜底轮询，防止事件丢失（例如 broker 关闭了 notifyConsumerIdsChangedEnable）。
+ * <p>
  * RebalanceService.run() 循环执行：
  * ↓
- * 每隔 20ms 检查一次是否有消费者需要做 Rebalance
+ * 等待触发事件或兜底轮询超时
  * ↓
- * 遍历所有注册的消费者（PullConsumer、PushConsumer）
+ * 在 debounceInterval 内没有新的触发（或已累计等待 maxDebounceInterval）后开始
  * ↓
- * 调用 consumer.doRebalance()
+ * 对待处理的消费组调用 consumer.tryRebalance()，兜底轮询时遍历所有消费者
  * ↓
  * 消费者根据策略（如 AllocateMessageQueueAveragely）重新计算自己该消费哪些队列
  * ↓
@@ -26,16 +33,32 @@ import org.apache.rocketmq.logging.org.slf4j.LoggerFactory;
 public class RebalanceService extends ServiceThread {
     private static long waitInterval =
             Long.parseLong(System.getProperty(
-                    "rocketmq.client.rebalance.waitInterval", "20000")); // 默认20秒平衡一次
+                    "rocketmq.client.rebalance.waitInterval", "60000")); // 兜底轮询间隔，平时靠事件触发
 
     private static long minInterval =
             Long.parseLong(System.getProperty(
                     "rocketmq.client.rebalance.minInterval", "1000")); // 最小重平衡时间
 
+    private static long debounceInterval =
+            Long.parseLong(System.getProperty(
+                    "rocketmq.client.rebalance.debounceInterval", "200")); // 最后一次触发后静默这么久才开始
+
+    private static long maxDebounceInterval =
+            Long.parseLong(System.getProperty(
+                    "rocketmq.client.rebalance.maxDebounceInterval", "2000")); // 持续有触发时最多推迟这么久
+
     private final Logger log = LoggerFactory.getLogger(RebalanceService.class);
     private final MQClientInstance mqClientFactory;
     private long lastRebalanceTimestamp = System.currentTimeMillis();
 
+    /**
+     * 等待 Rebalance 的消费组
+     */
+    private final Set<String> pendingGroups = ConcurrentHashMap.newKeySet();
+    private volatile boolean pendingAll = false;
+    private volatile long firstTriggerTimestamp = 0;
+    private volatile long lastTriggerTimestamp = 0;
+
     // 负载均衡 也被MQClient 使用
     public RebalanceService(MQClientInstance mqClientFactory) {
         this.mqClientFactory = mqClientFactory;
@@ -45,20 +68,84 @@ public class RebalanceService extends ServiceThread {
     public String getServiceName() {
         return RebalanceService.class.getSimpleName();
     }
+
+    /**
+     * 请求对某个消费组做一次 Rebalance，会和短时间内的其他请求合并
+     */
+    public void requestRebalance(final String consumerGroup) {
+        this.pendingGroups.add(consumerGroup);
+        this.trigger();
+    }
+
+    /**
+     * 请求对所有消费者做一次 Rebalance
+     */
+    public void requestRebalanceAll() {
+        this.pendingAll = true;
+        this.trigger();
+    }
+
+    private void trigger() {
+        long now = System.currentTimeMillis();
+        if (this.firstTriggerTimestamp == 0) {
+            this.firstTriggerTimestamp = now;
+        }
+        this.lastTriggerTimestamp = now;
+        this.wakeup();
+    }
+
+    private boolean hasPending() {
+        return this.pendingAll || !this.pendingGroups.isEmpty();
+    }
+
     // 控制什么时候做负载均衡
     @Override
     public void run() {
         log.info(this.getServiceName() + " service started");
 
         long realWaitInterval = waitInterval;
-        long interval = System.currentTimeMillis() - lastRebalanceTimestamp;
-        if (interval < minInterval) {
-            realWaitInterval = minInterval - interval;
-        } else {
-            boolean balanced = this.mqClientFactory.doRebalance();
+        while (!this.isStopped()) {
+            this.waitForRunning(realWaitInterval);
+
+            long now = System.currentTimeMillis();
+            boolean triggered = this.hasPending();
+            if (triggered) {
+                // 合并触发：等触发平息，但不能因为持续触发无限推迟
+                long quiet = now - this.lastTriggerTimestamp;
+                long delayed = now - this.firstTriggerTimestamp;
+                if (quiet < debounceInterval && delayed < maxDebounceInterval) {
+                    realWaitInterval = Math.min(debounceInterval - quiet, maxDebounceInterval - delayed);
+                    continue;
+                }
+            }
+
+            long interval = now - lastRebalanceTimestamp;
+            if (interval < minInterval) {
+                realWaitInterval = minInterval - interval;
+                continue;
+            }
+
+            this.firstTriggerTimestamp = 0;
+            boolean all = !triggered || this.pendingAll;
+            this.pendingAll = false;
+            Set<String> groups = new HashSet<>(this.pendingGroups);
+            this.pendingGroups.removeAll(groups);
+
+            boolean balanced = all ? this.mqClientFactory.doRebalance() : this.mqClientFactory.doRebalance(groups);
+            if (balanced) {
+                realWaitInterval = waitInterval;
+            } else {
+                // 还没平衡（例如顺序消费锁队列失败），稍后重试同一批消费组
+                if (all) {
+                    this.pendingAll = true;
+                } else {
+                    this.pendingGroups.addAll(groups);
+                }
+                realWaitInterval = minInterval;
+            }
             lastRebalanceTimestamp = System.currentTimeMillis();
         }
 
         log.info(this.getServiceName() + " service end");
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,513 @@
+package org.apache.rocketmq.client.impl.consumer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.rocketmq.client.consumer.DefaultMQPushConsumer;
+import org.apache.rocketmq.common.message.MessageAccessor;
+import org.apache.rocketmq.common.message.MessageConst;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.logging.org.slf4j.Logger;
+import org.apache.rocketmq.logging.org.slf4j.LoggerFactory;
+import org.apache.rocketmq.remoting.protocol.body.ProcessQueueInfo;
+
+/**
+ * 用按 offset 取模的环形数组代替 {@link ProcessQueue} 里加读写锁的 TreeMap，通过
+ * {@link DefaultMQPushConsumer#setProcessQueueRingBufferEnable(boolean)} 开启。
+ * <p>
+ * 槽位下标为 {@code queueOffset & mask}，同一队列的 offset 基本连续递增，插入和 ack 都是 O(1)：
+ * <ul>
+ *     <li>{@link #removeMessage}、{@link #getMaxSpan}、{@link #containsMessage} 不加锁，ack 只是对槽位做一次 CAS；</li>
+ *     <li>head 是最小的未 ack offset 的下界，ack 掉 head 处的消息后顺着往后推，提交位点时直接读 head；</li>
+ *     <li>写入（拉取线程）和顺序消费的 take / commit / rollback 仍然串行在一把锁里，与并发 ack 无关。</li>
+ * </ul>
+ * 两条存活消息落到同一个槽位时扩容。扩容期间并发的 ack 可能落在旧数组上，扩容后会把旧数组上已经被 ack 的消息在新数组里补删。
+ */
+public class RingBufferProcessQueue extends ProcessQueue {
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private final Logger log = LoggerFactory.getLogger(RingBufferProcessQueue.class);
+
+    /**
+     * 写入、扩容和顺序消费相关的操作
+     */
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile AtomicReferenceArray<MessageExt> slots;
+    /**
+     * 不大于最小的存活 offset
+     */
+    private final AtomicLong head = new AtomicLong();
+    /**
+     * 写入过的最大 offset + 1，只在 writeLock 内修改
+     */
+    private volatile long tail;
+    private final AtomicInteger liveCount = new AtomicInteger();
+    private final TreeMap<Long, MessageExt> consumingMsgOrderlyTreeMap = new TreeMap<>();
+    private volatile long queueOffsetMax = 0L;
+    private boolean consuming = false;
+
+    public RingBufferProcessQueue() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public RingBufferProcessQueue(int initialCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(initialCapacity, 2) - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    private static int indexOf(AtomicReferenceArray<MessageExt> array, long offset) {
+        return (int) (offset & (array.length() - 1));
+    }
+
+    private static boolean isAt(MessageExt msg, long offset) {
+        return msg != null && msg.getQueueOffset() == offset;
+    }
+
+    private static int bodySize(MessageExt msg) {
+        return null == msg.getBody() ? 0 : msg.getBody().length;
+    }
+
+    private MessageExt get(long offset) {
+        AtomicReferenceArray<MessageExt> array = this.slots;
+        MessageExt msg = array.get(indexOf(array, offset));
+        return isAt(msg, offset) ? msg : null;
+    }
+
+    /**
+     * 在 writeLock 内调用
+     *
+     * @return 该 offset 上原来的消息
+     */
+    private MessageExt insert(MessageExt msg) {
+        long offset = msg.getQueueOffset();
+        AtomicReferenceArray<MessageExt> array = this.slots;
+        MessageExt prev = array.get(indexOf(array, offset));
+        while ((prev != null && !isAt(prev, offset)) || offset - this.head.get() >= array.length()) {
+            array = grow(array);
+            prev = array.get(indexOf(array, offset));
+        }
+        array.set(indexOf(array, offset), msg);
+        if (offset >= this.tail) {
+            this.tail = offset + 1;
+        }
+        if (this.head.get() > offset) {
+            lowerHead(offset);
+        }
+        if (prev == null) {
+            this.liveCount.incrementAndGet();
+            return null;
+        }
+        return prev;
+    }
+
+    private AtomicReferenceArray<MessageExt> grow(AtomicReferenceArray<MessageExt> old) {
+        AtomicReferenceArray<MessageExt> grown = new AtomicReferenceArray<>(old.length() << 1);
+        MessageExt[] copied = new MessageExt[old.length()];
+        for (int i = 0; i < old.length(); i++) {
+            MessageExt msg = old.get(i);
+            if (msg != null) {
+                copied[i] = msg;
+                grown.set(indexOf(grown, msg.getQueueOffset()), msg);
+            }
+        }
+        this.slots = grown;
+        // 复制之后、发布之前在旧数组上被 ack 的消息
+        for (int i = 0; i < copied.length; i++) {
+            MessageExt msg = copied[i];
+            if (msg != null && old.get(i) != msg) {
+                grown.compareAndSet(indexOf(grown, msg.getQueueOffset()), msg, null);
+            }
+        }
+        return grown;
+    }
+
+    /**
+     * 无锁删除
+     *
+     * @return 被删除的消息，不存在时返回 null
+     */
+    private MessageExt delete(long offset) {
+        AtomicReferenceArray<MessageExt> array = this.slots;
+        while (true) {
+            int index = indexOf(array, offset);
+            MessageExt msg = array.get(index);
+            if (isAt(msg, offset)) {
+                if (array.compareAndSet(index, msg, null)) {
+                    AtomicReferenceArray<MessageExt> current = this.slots;
+                    if (current != array) {
+                        current.compareAndSet(indexOf(current, offset), msg, null);
+                    }
+                    this.liveCount.decrementAndGet();
+                    return msg;
+                }
+                continue;
+            }
+            // 读到的是扩容前的数组，消息可能只写进了新数组
+            AtomicReferenceArray<MessageExt> current = this.slots;
+            if (current == array) {
+                return null;
+            }
+            array = current;
+        }
+    }
+
+    /**
+     * head 处的消息已经不在时往后推；推过之后再确认一次，防止刚好有消息写回到这个 offset
+     */
+    private void advanceHead() {
+        while (true) {
+            long h = this.head.get();
+            if (h >= this.tail || get(h) != null) {
+                return;
+            }
+            if (this.head.compareAndSet(h, h + 1) && get(h) != null) {
+                lowerHead(h);
+                return;
+            }
+        }
+    }
+
+    private void lowerHead(long offset) {
+        long h;
+        while ((h = this.head.get()) > offset) {
+            if (this.head.compareAndSet(h, offset)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return 从 head 开始第一条存活的消息
+     */
+    private MessageExt first() {
+        advanceHead();
+        long end = this.tail;
+        for (long offset = this.head.get(); offset < end; offset++) {
+            MessageExt msg = get(offset);
+            if (msg != null) {
+                return msg;
+            }
+        }
+        return null;
+    }
+
+    private MessageExt last() {
+        long start = this.head.get();
+        for (long offset = this.tail - 1; offset >= start; offset--) {
+            MessageExt msg = get(offset);
+            if (msg != null) {
+                return msg;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void cleanExpiredMsg(DefaultMQPushConsumer pushConsumer) {
+        if (pushConsumer.isConsumeOrderly()) {
+            return;
+        }
+
+        int loop = Math.min(this.liveCount.get(), 16);
+        for (int i = 0; i < loop; i++) {
+            MessageExt msg = first();
+            if (msg == null) {
+                break;
+            }
+            String consumeStartTimeStamp = MessageAccessor.getConsumeStartTimeStamp(msg);
+            if (StringUtils.isEmpty(consumeStartTimeStamp)
+                || System.currentTimeMillis() - Long.parseLong(consumeStartTimeStamp) <= pushConsumer.getConsumeTimeout() * 60 * 1000) {
+                break;
+            }
+            try {
+                pushConsumer.sendMessageBack(msg, 3);
+                log.info("send expire msg back. topic={}, msgId={}, storeHost={}, queueId={}, queueOffset={}", msg.getTopic(), msg.getMsgId(), msg.getStoreHost(), msg.getQueueId(), msg.getQueueOffset());
+                // 只删还是同一条的消息，其他线程可能已经处理过
+                if (get(msg.getQueueOffset()) == msg) {
+                    removeMessage(Collections.singletonList(msg));
+                }
+            } catch (Exception e) {
+                log.error("send expired msg exception", e);
+            }
+        }
+    }
+
+    @Override
+    public boolean putMessage(final List<MessageExt> msgs) {
+        boolean dispatchToConsume = false;
+        this.writeLock.lock();
+        try {
+            int validMsgCnt = 0;
+            for (MessageExt msg : msgs) {
+                if (null == insert(msg)) {
+                    validMsgCnt++;
+                    this.queueOffsetMax = msg.getQueueOffset();
+                    getMsgSize().addAndGet(bodySize(msg));
+                }
+            }
+            getMsgCount().addAndGet(validMsgCnt);
+
+            if (this.liveCount.get() > 0 && !this.consuming) {
+                dispatchToConsume = true;
+                this.consuming = true;
+            }
+
+            if (!msgs.isEmpty()) {
+                MessageExt messageExt = msgs.get(msgs.size() - 1);
+                String property = messageExt.getProperty(MessageConst.PROPERTY_MAX_OFFSET);
+                if (property != null) {
+                    long accTotal = Long.parseLong(property) - messageExt.getQueueOffset();
+                    if (accTotal > 0) {
+                        setMsgAccCnt(accTotal);
+                    }
+                }
+            }
+        } finally {
+            this.writeLock.unlock();
+        }
+
+        return dispatchToConsume;
+    }
+
+    /**
+     * 以写入过的最大 offset 作为上端，尾部已经 ack 的消息也算在内，比 TreeMap 版本略大
+     */
+    @Override
+    public long getMaxSpan() {
+        if (this.liveCount.get() <= 0) {
+            return 0;
+        }
+        advanceHead();
+        return Math.max(this.tail - 1 - this.head.get(), 0);
+    }
+
+    @Override
+    public long removeMessage(final List<MessageExt> msgs) {
+        long result = -1;
+        setLastConsumeTimestamp(System.currentTimeMillis());
+        try {
+            if (this.liveCount.get() > 0) {
+                result = this.queueOffsetMax + 1;
+                int removedCnt = 0;
+                long removedSize = 0;
+                for (MessageExt msg : msgs) {
+                    if (delete(msg.getQueueOffset()) != null) {
+                        removedCnt--;
+                        removedSize += bodySize(msg);
+                    }
+                }
+                if (removedSize > 0) {
+                    getMsgSize().addAndGet(-removedSize);
+                }
+                if (getMsgCount().addAndGet(removedCnt) == 0) {
+                    getMsgSize().set(0);
+                }
+
+                advanceHead();
+                if (this.liveCount.get() > 0) {
+                    result = Math.min(this.head.get(), result);
+                }
+            }
+        } catch (Throwable t) {
+            log.error("removeMessage exception", t);
+        }
+
+        return result;
+    }
+
+    /**
+     * @return 当前缓存消息的快照，修改它不会影响本队列
+     */
+    @Override
+    public TreeMap<Long, MessageExt> getMsgTreeMap() {
+        TreeMap<Long, MessageExt> snapshot = new TreeMap<>();
+        long end = this.tail;
+        for (long offset = this.head.get(); offset < end; offset++) {
+            MessageExt msg = get(offset);
+            if (msg != null) {
+                snapshot.put(offset, msg);
+            }
+        }
+        return snapshot;
+    }
+
+    @Override
+    public void rollback() {
+        this.writeLock.lock();
+        try {
+            for (MessageExt msg : this.consumingMsgOrderlyTreeMap.values()) {
+                insert(msg);
+            }
+            this.consumingMsgOrderlyTreeMap.clear();
+        } finally {
+            this.writeLock.unlock();
+        }
+    }
+
+    @Override
+    public long commit() {
+        this.writeLock.lock();
+        try {
+            if (this.consumingMsgOrderlyTreeMap.isEmpty()) {
+                return -1;
+            }
+            Long offset = this.consumingMsgOrderlyTreeMap.lastKey();
+            if (getMsgCount().addAndGet(-this.consumingMsgOrderlyTreeMap.size()) == 0) {
+                getMsgSize().set(0);
+            } else {
+                for (MessageExt msg : this.consumingMsgOrderlyTreeMap.values()) {
+                    int bodySize = bodySize(msg);
+                    if (bodySize > 0) {
+                        getMsgSize().addAndGet(-bodySize);
+                    }
+                }
+            }
+            this.consumingMsgOrderlyTreeMap.clear();
+            return offset + 1;
+        } finally {
+            this.writeLock.unlock();
+        }
+    }
+
+    @Override
+    public long commit(final List<MessageExt> msgs) {
+        this.writeLock.lock();
+        try {
+            int removedCnt = 0;
+            for (MessageExt msg : msgs) {
+                if (this.consumingMsgOrderlyTreeMap.remove(msg.getQueueOffset()) != null) {
+                    removedCnt++;
+                    getMsgSize().addAndGet(-bodySize(msg));
+                }
+            }
+            if (removedCnt == 0) {
+                return -1;
+            }
+            if (getMsgCount().addAndGet(-removedCnt) == 0) {
+                getMsgSize().set(0);
+            }
+
+            long offset = this.queueOffsetMax + 1;
+            if (!this.consumingMsgOrderlyTreeMap.isEmpty()) {
+                offset = Math.min(offset, this.consumingMsgOrderlyTreeMap.firstKey());
+            }
+            MessageExt first = first();
+            if (first != null) {
+                offset = Math.min(offset, first.getQueueOffset());
+            }
+            return offset;
+        } finally {
+            this.writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void makeMessageToConsumeAgain(List<MessageExt> msgs) {
+        this.writeLock.lock();
+        try {
+            for (MessageExt msg : msgs) {
+                this.consumingMsgOrderlyTreeMap.remove(msg.getQueueOffset());
+                insert(msg);
+            }
+        } finally {
+            this.writeLock.unlock();
+        }
+    }
+
+    @Override
+    public List<MessageExt> takeMessages(final int batchSize) {
+        List<MessageExt> result = new ArrayList<>(batchSize);
+        setLastConsumeTimestamp(System.currentTimeMillis());
+        this.writeLock.lock();
+        try {
+            for (int i = 0; i < batchSize; i++) {
+                MessageExt msg = first();
+                if (msg == null || delete(msg.getQueueOffset()) == null) {
+                    break;
+                }
+                result.add(msg);
+                this.consumingMsgOrderlyTreeMap.put(msg.getQueueOffset(), msg);
+            }
+            advanceHead();
+
+            if (result.isEmpty()) {
+                this.consuming = false;
+            }
+        } finally {
+            this.writeLock.unlock();
+        }
+
+        return result;
+    }
+
+    @Override
+    public boolean containsMessage(MessageExt message) {
+        if (message == null) {
+            // should never reach here.
+            return false;
+        }
+        return get(message.getQueueOffset()) != null;
+    }
+
+    @Override
+    public boolean hasTempMessage() {
+        return this.liveCount.get() > 0;
+    }
+
+    @Override
+    public void clear() {
+        this.writeLock.lock();
+        try {
+            AtomicReferenceArray<MessageExt> array = this.slots;
+            for (int i = 0; i < array.length(); i++) {
+                array.set(i, null);
+            }
+            this.consumingMsgOrderlyTreeMap.clear();
+            this.liveCount.set(0);
+            getMsgCount().set(0);
+            getMsgSize().set(0);
+            this.head.set(this.tail);
+            this.queueOffsetMax = 0L;
+        } finally {
+            this.writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void fillProcessQueueInfo(final ProcessQueueInfo info) {
+        this.writeLock.lock();
+        try {
+            MessageExt first = first();
+            MessageExt last = last();
+            if (first != null && last != null) {
+                info.setCachedMsgMinOffset(first.getQueueOffset());
+                info.setCachedMsgMaxOffset(last.getQueueOffset());
+                info.setCachedMsgCount(this.liveCount.get());
+            }
+            info.setCachedMsgSizeInMiB((int) (getMsgSize().get() / (1024 * 1024)));
+
+            if (!this.consumingMsgOrderlyTreeMap.isEmpty()) {
+                info.setTransactionMsgMinOffset(this.consumingMsgOrderlyTreeMap.firstKey());
+                info.setTransactionMsgMaxOffset(this.consumingMsgOrderlyTreeMap.lastKey());
+                info.setTransactionMsgCount(this.consumingMsgOrderlyTreeMap.size());
+            }
+
+            info.setLocked(isLocked());
+            info.setTryUnlockTimes(getTryUnlockTimes());
+            info.setLastLockTimestamp(getLastLockTimestamp());
+
+            info.setDroped(isDropped());
+            info.setLastPullTimestamp(getLastPullTimestamp());
+            info.setLastConsumeTimestamp(getLastConsumeTimestamp());
+        } finally {
+            this.writeLock.unlock();
+        }
+    }
+}
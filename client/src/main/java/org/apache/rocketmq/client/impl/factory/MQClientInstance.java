@@ -3,6 +3,7 @@ package org.apache.rocketmq.client.impl.factory;
 import com.alibaba.fastjson.JSON;
 import io.netty.channel.Channel;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -61,8 +62,10 @@ import org.apache.rocketmq.remoting.exception.RemotingException;
 import org.apache.rocketmq.remoting.netty.NettyClientConfig;
 import org.apache.rocketmq.remoting.protocol.NamespaceUtil;
 import org.apache.rocketmq.remoting.protocol.RemotingCommand;
+import org.apache.rocketmq.remoting.protocol.ResponseCode;
 import org.apache.rocketmq.remoting.protocol.body.ConsumeMessageDirectlyResult;
 import org.apache.rocketmq.remoting.protocol.body.ConsumerRunningInfo;
+import org.apache.rocketmq.remoting.protocol.body.GetRouteInfoDeltaResponseBody;
 import org.apache.rocketmq.remoting.protocol.heartbeat.ConsumerData;
 import org.apache.rocketmq.remoting.protocol.heartbeat.HeartbeatData;
 import org.apache.rocketmq.remoting.protocol.heartbeat.MessageModel;
@@ -103,6 +106,10 @@ public class MQClientInstance {
     private final MQClientAPIImpl mQClientAPIImpl;
     private final MQAdminImpl mQAdminImpl;
     private final ConcurrentMap<String/* Topic */, TopicRouteData> topicRouteTable = new ConcurrentHashMap<>();
+    // 增量路由查询用：各 topic 在 name server 上的路由版本，以及这些版本号所属的 name server epoch
+    private final ConcurrentMap<String/* Topic */, Long/* route version */> topicRouteVersionTable = new ConcurrentHashMap<>();
+    private volatile long routeEpoch = 0;
+    private volatile boolean routeDeltaSupported = true;
     private final ConcurrentMap<String/* Topic */, ConcurrentMap<MessageQueue, String/*brokerName*/>> topicEndPointsTable = new ConcurrentHashMap<>();
     private final Lock lockNamesrv = new ReentrantLock(); // ns 锁
     private final Lock lockHeartbeat = new ReentrantLock(); // 心跳锁
@@ -227,6 +234,26 @@ public class MQClientInstance {
         return balanced;
     }
 
+    /**
+     * 只对指定的消费组做一次负载均衡，已注销的消费组直接跳过
+     */
+    public boolean doRebalance(final Collection<String> consumerGroups) {
+        boolean balanced = true;
+        for (String group : consumerGroups) {
+            MQConsumerInner impl = this.consumerTable.get(group);
+            if (impl != null) {
+                try {
+                    if (!impl.tryRebalance()) {
+                        balanced = false;
+                    }
+                } catch (Throwable e) {
+                    log.error("doRebalance for consumer group [{}] exception", group, e);
+                }
+            }
+        }
+        return balanced;
+    }
+
     public MQProducerInner selectProducer(final String group) {
         return this.producerTable.get(group);
     }
@@ -349,55 +376,7 @@ public class MQClientInstance {
                         topicRouteData = this.mQClientAPIImpl.getTopicRouteInfoFromNameServer(topic, clientConfig.getMqClientApiTimeout());
                     }
                     if (topicRouteData != null) {
-                        TopicRouteData old = this.topicRouteTable.get(topic);
-                        boolean changed = topicRouteData.topicRouteDataChanged(old);
-                        if (!changed) {
-                            changed = this.isNeedUpdateTopicRouteInfo(topic);
-                        } else {
-                            log.info("the topic[{}] route info changed, old[{}] ,new[{}]", topic, old, topicRouteData);
-                        }
-
-                        if (changed) {
-
-                            for (BrokerData bd : topicRouteData.getBrokerDatas()) {
-                                this.brokerAddrTable.put(bd.getBrokerName(), bd.getBrokerAddrs());
-                            }
-
-                            // Update endpoint map
-                            {
-                                ConcurrentMap<MessageQueue, String> mqEndPoints = topicRouteData2EndpointsForStaticTopic(topic, topicRouteData);
-                                if (!mqEndPoints.isEmpty()) {
-                                    topicEndPointsTable.put(topic, mqEndPoints);
-                                }
-                            }
-
-                            // Update Pub info
-                            {
-                                TopicPublishInfo publishInfo = topicRouteData2TopicPublishInfo(topic, topicRouteData);
-                                publishInfo.setHaveTopicRouterInfo(true);
-                                for (Entry<String, MQProducerInner> entry : this.producerTable.entrySet()) {
-                                    MQProducerInner impl = entry.getValue();
-                                    if (impl != null) {
-                                        impl.updateTopicPublishInfo(topic, publishInfo);
-                                    }
-                                }
-                            }
-
-                            // Update sub info
-                            if (!consumerTable.isEmpty()) {
-                                Set<MessageQueue> subscribeInfo = topicRouteData2TopicSubscribeInfo(topic, topicRouteData);
-                                for (Entry<String, MQConsumerInner> entry : this.consumerTable.entrySet()) {
-                                    MQConsumerInner impl = entry.getValue();
-                                    if (impl != null) {
-                                        impl.updateTopicSubscribeInfo(topic, subscribeInfo);
-                                    }
-                                }
-                            }
-                            TopicRouteData cloneTopicRouteData = new TopicRouteData(topicRouteData);
-                            log.info("topicRouteTable.put. Topic = {}, TopicRouteData[{}]", topic, cloneTopicRouteData);
-                            this.topicRouteTable.put(topic, cloneTopicRouteData);
-                            return true;
-                        }
+                        return this.applyTopicRouteData(topic, topicRouteData);
                     } else {
                         log.warn("updateTopicRouteInfoFromNameServer, getTopicRouteInfoFromNameServer return null, Topic: {}. [{}]", topic, this.clientId);
                     }
@@ -425,12 +404,200 @@ public class MQClientInstance {
         return updateTopicRouteInfoFromNameServer(topic, false, null);
     }
 
+    /**
+     * 定时轮询：更新所有生产者、消费者用到的 topic 路由
+     */
+    public void updateTopicRouteInfoFromNameServer() {
+        Set<String> topicList = new HashSet<>();
+
+        // Consumer
+        for (Entry<String, MQConsumerInner> entry : this.consumerTable.entrySet()) {
+            MQConsumerInner impl = entry.getValue();
+            if (impl != null) {
+                Set<SubscriptionData> subList = impl.subscriptions();
+                if (subList != null) {
+                    for (SubscriptionData subData : subList) {
+                        topicList.add(subData.getTopic());
+                    }
+                }
+            }
+        }
+
+        // Producer
+        for (Entry<String, MQProducerInner> entry : this.producerTable.entrySet()) {
+            MQProducerInner impl = entry.getValue();
+            if (impl != null) {
+                topicList.addAll(impl.getPublishTopicList());
+            }
+        }
+
+        if (topicList.isEmpty()) {
+            return;
+        }
+
+        if (this.clientConfig.isRouteDeltaEnable() && this.routeDeltaSupported
+                && this.updateTopicRouteInfoByDelta(topicList)) {
+            return;
+        }
+
+        for (String topic : topicList) {
+            this.updateTopicRouteInfoFromNameServer(topic);
+        }
+    }
+
+    /**
+     * 增量拉取路由：带上已持有的版本号，name server 只返回版本有变化的 topic。
+     *
+     * @return false 表示 name server 不支持增量查询，需要退回逐个 topic 拉取
+     */
+    private boolean updateTopicRouteInfoByDelta(final Set<String> topicList) {
+        try {
+            if (!this.lockNamesrv.tryLock(LOCK_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                log.warn("updateTopicRouteInfoByDelta tryLock timeout {}ms. [{}]", LOCK_TIMEOUT_MILLIS, this.clientId);
+                return true;
+            }
+            try {
+                Map<String, Long> knownVersions = new HashMap<>(topicList.size());
+                for (String topic : topicList) {
+                    Long version = this.topicRouteVersionTable.get(topic);
+                    knownVersions.put(topic, version == null ? 0L : version);
+                }
+
+                GetRouteInfoDeltaResponseBody delta = this.mQClientAPIImpl.getTopicRouteDeltaFromNameServer(knownVersions,
+                        this.routeEpoch, clientConfig.getMqClientApiTimeout());
+                if (delta.getRouteEpoch() != this.routeEpoch) {
+                    // 换了一台 name server 或者它重启过，旧版本号全部作废，这次返回的是全量
+                    this.topicRouteVersionTable.clear();
+                    this.routeEpoch = delta.getRouteEpoch();
+                }
+
+                for (Entry<String, TopicRouteData> entry : delta.getTopicRouteTable().entrySet()) {
+                    this.applyTopicRouteData(entry.getKey(), entry.getValue());
+                    Long version = delta.getTopicRouteVersions().get(entry.getKey());
+                    if (version != null) {
+                        this.topicRouteVersionTable.put(entry.getKey(), version);
+                    }
+                }
+
+                for (String topic : delta.getNotExistTopics()) {
+                    this.topicRouteVersionTable.remove(topic);
+                }
+
+                // 路由没变，但可能有新加入的生产者/消费者还没拿到路由
+                for (String topic : topicList) {
+                    if (delta.getTopicRouteTable().containsKey(topic) || delta.getNotExistTopics().contains(topic)) {
+                        continue;
+                    }
+                    TopicRouteData old = this.topicRouteTable.get(topic);
+                    if (old != null) {
+                        this.applyTopicRouteData(topic, old);
+                    }
+                }
+            } catch (MQClientException e) {
+                if (e.getResponseCode() == ResponseCode.REQUEST_CODE_NOT_SUPPORTED) {
+                    log.info("name server does not support route delta, fall back to per topic route query. [{}]", this.clientId);
+                    this.routeDeltaSupported = false;
+                    return false;
+                }
+                log.warn("updateTopicRouteInfoByDelta Exception", e);
+            } catch (RemotingException e) {
+                log.error("updateTopicRouteInfoByDelta Exception", e);
+            } finally {
+                this.lockNamesrv.unlock();
+            }
+        } catch (InterruptedException e) {
+            log.warn("updateTopicRouteInfoByDelta Exception", e);
+        }
+        return true;
+    }
+
+    /**
+     * 用拉到的路由更新本地各张表，路由没变且没有生产者/消费者需要时什么也不做。调用方需持有 lockNamesrv。
+     *
+     * @return 是否更新了本地路由
+     */
+    private boolean applyTopicRouteData(final String topic, final TopicRouteData topicRouteData) {
+        TopicRouteData old = this.topicRouteTable.get(topic);
+        boolean changed = topicRouteData.topicRouteDataChanged(old);
+        if (!changed) {
+            changed = this.isNeedUpdateTopicRouteInfo(topic);
+        } else {
+            log.info("the topic[{}] route info changed, old[{}] ,new[{}]", topic, old, topicRouteData);
+        }
+
+        if (changed) {
+
+            for (BrokerData bd : topicRouteData.getBrokerDatas()) {
+                this.brokerAddrTable.put(bd.getBrokerName(), bd.getBrokerAddrs());
+            }
+
+            // Update endpoint map
+            {
+                ConcurrentMap<MessageQueue, String> mqEndPoints = topicRouteData2EndpointsForStaticTopic(topic, topicRouteData);
+                if (!mqEndPoints.isEmpty()) {
+                    topicEndPointsTable.put(topic, mqEndPoints);
+                }
+            }
+
+            // Update Pub info
+            {
+                TopicPublishInfo publishInfo = topicRouteData2TopicPublishInfo(topic, topicRouteData);
+                publishInfo.setHaveTopicRouterInfo(true);
+                for (Entry<String, MQProducerInner> entry : this.producerTable.entrySet()) {
+                    MQProducerInner impl = entry.getValue();
+                    if (impl != null) {
+                        impl.updateTopicPublishInfo(topic, publishInfo);
+                    }
+                }
+            }
+
+            // Update sub info
+            if (!consumerTable.isEmpty()) {
+                Set<MessageQueue> subscribeInfo = topicRouteData2TopicSubscribeInfo(topic, topicRouteData);
+                for (Entry<String, MQConsumerInner> entry : this.consumerTable.entrySet()) {
+                    MQConsumerInner impl = entry.getValue();
+                    if (impl != null) {
+                        impl.updateTopicSubscribeInfo(topic, subscribeInfo);
+                        // 队列变了，订阅了这个 topic 的消费组马上重新分配，不用等兜底轮询
+                        if (isSubscribed(impl, topic)) {
+                            this.rebalanceService.requestRebalance(entry.getKey());
+                        }
+                    }
+                }
+            }
+            TopicRouteData cloneTopicRouteData = new TopicRouteData(topicRouteData);
+            log.info("topicRouteTable.put. Topic = {}, TopicRouteData[{}]", topic, cloneTopicRouteData);
+            this.topicRouteTable.put(topic, cloneTopicRouteData);
+            return true;
+        }
+        return false;
+    }
+
     public TopicRouteData getAnExistTopicRouteData(final String topic) {
         return this.topicRouteTable.get(topic);
     }
 
+    private static boolean isSubscribed(final MQConsumerInner impl, final String topic) {
+        Set<SubscriptionData> subList = impl.subscriptions();
+        if (subList != null) {
+            for (SubscriptionData subData : subList) {
+                if (topic.equals(subData.getTopic())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     public void rebalanceImmediately() {
-        this.rebalanceService.wakeup(); // 这里的wakeup 是 我们使用AQS实现的 可以reset的类
+        this.rebalanceService.requestRebalanceAll(); // 最终是 wakeup，我们使用AQS实现的 可以reset的类
+    }
+
+    /**
+     * 某个消费组的成员变了，合并短时间内的多次通知后只对它做 Rebalance
+     */
+    public void rebalanceConsumerGroup(final String consumerGroup) {
+        this.rebalanceService.requestRebalance(consumerGroup);
     }
 
     private void resetBrokerAddrHeartbeatFingerprintMap() {
@@ -432,10 +432,6 @@ public class DefaultMQProducer extends ClientConfig implements MQProducer {
     }
 
     private boolean canBatch(Message msg) {
-        // produceAccumulator is full
-        if (!produceAccumulator.tryAddMessage(msg)) {
-            return false;
-        }
         // delay message do not support batch processing
         if (msg.getDelayTimeLevel() > 0 || msg.getDelayTimeMs() > 0 || msg.getDelayTimeSec() > 0 || msg.getDeliverTimeMs() > 0) {
             return false;
@@ -448,7 +444,8 @@ public class DefaultMQProducer extends ClientConfig implements MQProducer {
         if (msg.getProperties().containsKey(MessageConst.PROPERTY_PRODUCER_GROUP)) {
             return false;
         }
-        return true;
+        // produceAccumulator is full, checked last so that rejected messages do not hold any quota
+        return produceAccumulator.tryAddMessage(msg);
     }
 
     /**
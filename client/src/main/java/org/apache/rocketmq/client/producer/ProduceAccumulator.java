@@ -1,21 +1,25 @@
 package org.apache.rocketmq.client.producer;
 
-import java.util.Arrays;
-import java.util.Collection;
+import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.Map;
+import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.apache.rocketmq.client.exception.MQBrokerException;
 import org.apache.rocketmq.client.exception.MQClientException;
-import org.apache.rocketmq.common.ServiceThread;
+import org.apache.rocketmq.common.ThreadFactoryImpl;
 import org.apache.rocketmq.common.message.Message;
 import org.apache.rocketmq.common.message.MessageBatch;
 import org.apache.rocketmq.common.message.MessageClientIDSetter;
@@ -28,110 +32,57 @@ import org.apache.rocketmq.remoting.exception.RemotingException;
 
 /**
  * 批量积累消息并且进行发送
+ * <p>
+ * 每个 {@link AggregateKey} 有一个当前打开的批次，发送线程通过 CAS 在批次里占一个槽位，不加锁：
+ * <ul>
+ *     <li>消息进入时就在调用线程上编码好 properties，批次以流式编码发送，body 只在写进请求的 ByteBuf 时拷贝一次；</li>
+ *     <li>批次攒够 holdSize 字节或槽位用完时由写入线程封口，否则由定时器在创建 holdMs 后封口，不再轮询；</li>
+ *     <li>封口且所有槽位都写完后，恰好一个线程负责发送：同步发送由等待中的调用方发，异步发送由最后一个写入者或定时器发；</li>
+ *     <li>{@link #tryAddMessage} 用 CAS 按消息体大小占用 totalHoldSize 的额度，批次发送完成后归还。</li>
+ * </ul>
  */
 public class ProduceAccumulator {
-    private long totalHoldSize = 32 * 1024 * 1024; // 总共可以积累的消息量 32MB
-    private long holdSize = 32 * 1024; // 单次可以积累的消息体积 32KB
-    private int holdMs = 10; // 积累消息的最大时间间隔（10ms）
+    /**
+     * 估算的单条消息编码后最小长度，用来确定一个批次的槽位数
+     */
+    private static final int MIN_ENCODED_SIZE = 64;
+    private static final int MAX_BATCH_SLOTS = 4096;
+
+    private volatile long totalHoldSize = 32 * 1024 * 1024; // 总共可以积累的消息量 32MB
+    private volatile long holdSize = 32 * 1024; // 单次可以积累的消息体积 32KB
+    private volatile int holdMs = 10; // 积累消息的最大时间间隔（10ms）
     private final Logger log = LoggerFactory.getLogger(DefaultMQProducer.class);
-    private final GuardForSyncSendService guardThreadForSyncSend; // 同步发送守护线程
-    private final GuardForAsyncSendService guardThreadForAsyncSend; // 异步发送守护线程
-    private final Map<AggregateKey, MessageAccumulation> syncSendBatchs = new ConcurrentHashMap<AggregateKey, MessageAccumulation>(); // 同步批量发送
-    private final Map<AggregateKey, MessageAccumulation> asyncSendBatchs = new ConcurrentHashMap<AggregateKey, MessageAccumulation>(); // 异步批量发送
+    private final ConcurrentMap<AggregateKey, Arena> syncSendBatchs = new ConcurrentHashMap<>(); // 同步批量发送
+    private final ConcurrentMap<AggregateKey, Arena> asyncSendBatchs = new ConcurrentHashMap<>(); // 异步批量发送
     private final AtomicLong currentlyHoldSize = new AtomicLong(0); // 目前积累的size
     private final String instanceName; // 实例名称
+    /**
+     * 到期封口的定时器
+     */
+    private final ScheduledThreadPoolExecutor lingerTimer;
 
     public ProduceAccumulator(String instanceName) {
         this.instanceName = instanceName;
-        this.guardThreadForSyncSend = new GuardForSyncSendService(this.instanceName);
-        this.guardThreadForAsyncSend = new GuardForAsyncSendService(this.instanceName);
-    }
-
-    private class GuardForSyncSendService extends ServiceThread {
-        private final String serviceName;
-
-        public GuardForSyncSendService(String clientInstanceName) {
-            serviceName = String.format("Client_%s_GuardForSyncSend", clientInstanceName);
-        }
-
-        @Override
-        public String getServiceName() {
-            return serviceName;
-        }
-
-
-        @Override
-        public void run() {
-            log.info(this.getServiceName() + " service started");
-
-            while (!this.isStopped()) {
-                try {
-                    this.doWork();
-                } catch (Exception e) {
-                    log.warn(this.getServiceName() + " service has exception. ", e);
-                }
-            }
-            log.info(this.getServiceName() + " service end");
-        }
-
-        private void doWork() throws InterruptedException {
-            Collection<MessageAccumulation> values = syncSendBatchs.values();
-        }
+        this.lingerTimer = new ScheduledThreadPoolExecutor(1,
+            new ThreadFactoryImpl(String.format("Client_%s_ProduceAccumulatorTimer", this.instanceName), true));
+        this.lingerTimer.setRemoveOnCancelPolicy(true);
     }
 
-    private class GuardForAsyncSendService extends ServiceThread {
-        private final String serviceName;
-
-        public GuardForAsyncSendService(String clientInstanceName) {
-            serviceName = String.format("Client_%s_GuardForAsyncSend", clientInstanceName);
-        }
-
-        @Override
-        public String getServiceName() {
-            return serviceName;
-        }
-
-        @Override
-        public void run() {
-            log.info(this.getServiceName() + " service started");
-            while (!this.isStopped()) {
-                try {
-                    this.doWork();
-                } catch (Exception e) {
-                    log.warn(this.getServiceName() + " service has exception. ", e);
-                }
-            }
-
-            log.info(this.getServiceName() + " service end");
-        }
-
-        private void doWork() throws Exception {
-            Collection<MessageAccumulation> values = syncSendBatchs.values();
-            final int sleepTime = Math.max(1, holdMs / 2);
-            for (MessageAccumulation v : values) {
-                if (v.readyToSend()) {
-                    v.send(null);
-                }
-                synchronized (v.closed) {
-                    if (v.messagesSize.get() == 0) {
-                        v.closed.set(true);
-                        asyncSendBatchs.remove(v.aggregateKey, v);
-                    }
-                }
-            }
-            Thread.sleep(sleepTime);
-        }
-    }
-
-
     void start() {
-        guardThreadForSyncSend.start();
-        guardThreadForAsyncSend.start();
+        this.lingerTimer.prestartCoreThread();
     }
 
+    /**
+     * 把所有还没封口的批次封口发出去
+     */
     void shutdown() {
-        guardThreadForSyncSend.shutdown();
-        guardThreadForAsyncSend.shutdown();
+        for (Arena arena : syncSendBatchs.values()) {
+            arena.sealCurrent();
+        }
+        for (Arena arena : asyncSendBatchs.values()) {
+            arena.sealCurrent();
+        }
+        this.lingerTimer.shutdown();
     }
 
     int getBatchMaxDelayMs() {
@@ -157,7 +108,7 @@ public class ProduceAccumulator {
     }
 
     long getTotalBatchMaxBytes() {
-        return holdSize;
+        return totalHoldSize;
     }
 
     void totalBatchMaxBytes(long totalHoldSize) {
@@ -167,108 +118,64 @@ public class ProduceAccumulator {
         this.totalHoldSize = totalHoldSize;
     }
 
-    /**
-     * 这一系列 send(...) 方法确实并没有真正立即向 RocketMQ Broker 发送消息，
-     * 而是将消息存入了一个“累积器”里（MessageAccumulation 容器）——等待满足某些条件（例如消息体积或等待时间）后，才统一调用 send() 方法发送批量消息。
-     *
-     * @param aggregateKey
-     * @param defaultMQProducer
-     * @return
-     */
-    private MessageAccumulation getOrCreateSyncSendBatch(AggregateKey aggregateKey,
-                                                         DefaultMQProducer defaultMQProducer) {
-        MessageAccumulation batch = syncSendBatchs.get(aggregateKey);
-        if (batch != null) {
-            return batch;
+    private Arena getOrCreateArena(ConcurrentMap<AggregateKey, Arena> arenas, AggregateKey aggregateKey,
+        DefaultMQProducer defaultMQProducer, boolean sync) {
+        Arena arena = arenas.get(aggregateKey);
+        if (arena != null) {
+            return arena;
         }
-        batch = new MessageAccumulation(aggregateKey, defaultMQProducer);
-        MessageAccumulation previous = syncSendBatchs.putIfAbsent(aggregateKey, batch);
-
-        return previous == null ? batch : previous;
-    }
-
-    private MessageAccumulation getOrCreateAsyncSendBatch(AggregateKey aggregateKey,
-                                                          DefaultMQProducer defaultMQProducer) {
-        MessageAccumulation batch = asyncSendBatchs.get(aggregateKey);
-        if (batch != null) {
-            return batch;
-        }
-        batch = new MessageAccumulation(aggregateKey, defaultMQProducer);
-        MessageAccumulation previous = asyncSendBatchs.putIfAbsent(aggregateKey, batch);
-
-        return previous == null ? batch : previous;
+        arena = new Arena(arenas, aggregateKey, defaultMQProducer, sync);
+        Arena previous = arenas.putIfAbsent(aggregateKey, arena);
+        return previous == null ? arena : previous;
     }
 
     SendResult send(Message msg,
-                    DefaultMQProducer defaultMQProducer) throws InterruptedException, MQBrokerException, RemotingException, MQClientException {
-        AggregateKey partitionKey = new AggregateKey(msg);
-        while (true) {
-            MessageAccumulation batch = getOrCreateSyncSendBatch(partitionKey, defaultMQProducer);
-            int index = batch.add(msg);
-            if (index == -1) {
-                syncSendBatchs.remove(partitionKey, batch);
-            } else {
-                return batch.sendResults[index];
-            }
-        }
+        DefaultMQProducer defaultMQProducer) throws InterruptedException, MQBrokerException, RemotingException, MQClientException {
+        return send(msg, (MessageQueue) null, defaultMQProducer);
     }
 
     SendResult send(Message msg, MessageQueue mq,
-                    DefaultMQProducer defaultMQProducer) throws InterruptedException, MQBrokerException, RemotingException, MQClientException {
+        DefaultMQProducer defaultMQProducer) throws InterruptedException, MQBrokerException, RemotingException, MQClientException {
         AggregateKey partitionKey = new AggregateKey(msg, mq);
-        while (true) {
-            MessageAccumulation batch = getOrCreateSyncSendBatch(partitionKey, defaultMQProducer);
-            int index = batch.add(msg);
-            if (index == -1) {
-                syncSendBatchs.remove(partitionKey, batch);
-            } else {
-                return batch.sendResults[index];
-            }
-        }
+        Entry entry = new Entry(msg, null);
+        Arena arena = getOrCreateArena(syncSendBatchs, partitionKey, defaultMQProducer, true);
+        Batch batch = arena.append(entry);
+        return batch.awaitResult(entry.index);
     }
 
     void send(Message msg, SendCallback sendCallback,
-              DefaultMQProducer defaultMQProducer) throws InterruptedException, RemotingException, MQClientException {
-        AggregateKey partitionKey = new AggregateKey(msg);
-        while (true) {
-            MessageAccumulation batch = getOrCreateAsyncSendBatch(partitionKey, defaultMQProducer);
-            if (!batch.add(msg, sendCallback)) {
-                asyncSendBatchs.remove(partitionKey, batch);
-            } else {
-                return;
-            }
-        }
+        DefaultMQProducer defaultMQProducer) throws InterruptedException, RemotingException, MQClientException {
+        send(msg, (MessageQueue) null, sendCallback, defaultMQProducer);
     }
 
     void send(Message msg, MessageQueue mq,
-              SendCallback sendCallback,
-              DefaultMQProducer defaultMQProducer) throws InterruptedException, RemotingException, MQClientException {
+        SendCallback sendCallback,
+        DefaultMQProducer defaultMQProducer) throws InterruptedException, RemotingException, MQClientException {
         AggregateKey partitionKey = new AggregateKey(msg, mq);
-        while (true) {
-            MessageAccumulation batch = getOrCreateAsyncSendBatch(partitionKey, defaultMQProducer);
-            if (!batch.add(msg, sendCallback)) {
-                asyncSendBatchs.remove(partitionKey, batch);
-            } else {
-                return;
-            }
+        Entry entry = new Entry(msg, sendCallback);
+        Arena arena = getOrCreateArena(asyncSendBatchs, partitionKey, defaultMQProducer, false);
+        Batch batch = arena.append(entry);
+        if (batch.tryClaimSend()) {
+            batch.sendAsync();
         }
     }
 
+    /**
+     * 按消息体大小占用额度，超过 totalHoldSize 时返回 false，占用的额度在所在批次发送完成后归还
+     */
     boolean tryAddMessage(Message message) {
-        synchronized (currentlyHoldSize) {
-            if (currentlyHoldSize.get() < totalHoldSize) {
-                int bodySize = null == message.getBody() ? 0 : message.getBody().length;
-                if (bodySize > 0) {
-                    currentlyHoldSize.addAndGet(bodySize);
-                }
-                return true;
-            } else {
+        int bodySize = null == message.getBody() ? 0 : message.getBody().length;
+        while (true) {
+            long current = currentlyHoldSize.get();
+            if (current >= totalHoldSize) {
                 return false;
             }
+            if (bodySize == 0 || currentlyHoldSize.compareAndSet(current, current + bodySize)) {
+                return true;
+            }
         }
     }
 
-
     /**
      * 用于标识消息队列的复合键类型，通常用于缓存、去重、批处理等场景。
      * 将关键的属性信息组合成为一个唯一的标识符，一遍 Map or Set 进行高效的查找去重等工作。
@@ -308,204 +215,365 @@ public class ProduceAccumulator {
         }
     }
 
+    /**
+     * 一条待发送的消息，进入累积器时就编码好 properties
+     */
+    private static class Entry {
+        private final Message message;
+        private final byte[] encodedProperties;
+        private final int encodedSize;
+        private final int bodySize;
+        private final SendCallback sendCallback;
+        private int index;
+
+        Entry(Message message, SendCallback sendCallback) {
+            this.message = message;
+            this.encodedProperties = MessageDecoder.encodeMessageProperties(message);
+            this.encodedSize = MessageDecoder.encodedMessageSize(message, this.encodedProperties);
+            this.bodySize = null == message.getBody() ? 0 : message.getBody().length;
+            this.sendCallback = sendCallback;
+        }
+    }
 
-    private class MessageAccumulation {
+    /**
+     * 一个 AggregateKey 上的批次序列，任何时刻最多一个批次在接收消息
+     */
+    private class Arena {
+        private final ConcurrentMap<AggregateKey, Arena> owner;
+        private final AggregateKey aggregateKey;
         private final DefaultMQProducer defaultMQProducer;
-        private LinkedList<Message> messages;
-        private LinkedList<SendCallback> sendCallbacks;
-        private Set<String> keys;
-        private final AtomicBoolean closed;
-        private SendResult[] sendResults;
-        private AggregateKey aggregateKey;
-        private AtomicInteger messagesSize;
-        private int count;
-        private long createTime;
+        private final boolean sync;
+        private final AtomicReference<Batch> current = new AtomicReference<>();
 
-        public MessageAccumulation(AggregateKey aggregateKey, DefaultMQProducer defaultMQProducer) {
-            this.defaultMQProducer = defaultMQProducer;
-            this.messages = new LinkedList<Message>();
-            this.sendCallbacks = new LinkedList<SendCallback>();
-            this.keys = new HashSet<String>();
-            this.closed = new AtomicBoolean(false);
-            this.messagesSize = new AtomicInteger(0);
+        Arena(ConcurrentMap<AggregateKey, Arena> owner, AggregateKey aggregateKey, DefaultMQProducer defaultMQProducer,
+            boolean sync) {
+            this.owner = owner;
             this.aggregateKey = aggregateKey;
-            this.count = 0;
-            this.createTime = System.currentTimeMillis();
+            this.defaultMQProducer = defaultMQProducer;
+            this.sync = sync;
+        }
+
+        /**
+         * @return 消息所在的批次，entry.index 为消息在批次里的下标
+         */
+        Batch append(Entry entry) {
+            while (true) {
+                Batch batch = this.current.get();
+                if (batch == null || batch.isSealed()) {
+                    Batch created = new Batch(this);
+                    if (!this.current.compareAndSet(batch, created)) {
+                        continue;
+                    }
+                    created.scheduleLinger();
+                    batch = created;
+                }
+                if (batch.append(entry)) {
+                    return batch;
+                }
+            }
         }
 
-        // 到达一定的数量，并且时间间隔达到要求
-        private boolean readyToSend() {
-            if (this.messagesSize.get() > holdSize || System.currentTimeMillis() >= this.createTime + holdMs) {
-                return true;
+        void sealCurrent() {
+            Batch batch = this.current.get();
+            if (batch != null) {
+                batch.seal();
+            }
+        }
+
+        /**
+         * 批次因超时封口后，没有新消息写入的 Arena 从表里移除
+         */
+        void onLingerSealed(Batch batch) {
+            if (this.current.compareAndSet(batch, null)) {
+                this.owner.remove(this.aggregateKey, this);
             }
-            return false;
         }
+    }
+
+    private class Batch {
+        private static final long SEALED = 1L << 62;
+        private static final long COUNT_UNIT = 1L << 32;
+        private static final long BYTES_MASK = COUNT_UNIT - 1;
+
+        private final Arena arena;
+        private final AtomicReferenceArray<Entry> slots;
+        /**
+         * 封口标记 | 已占用的槽位数 << 32 | 已占用的编码字节数
+         */
+        private final AtomicLong state = new AtomicLong();
+        private final AtomicInteger written = new AtomicInteger();
+        private final AtomicBoolean sendClaimed = new AtomicBoolean(false);
+        private final CountDownLatch sealedLatch = new CountDownLatch(1);
+        private final CountDownLatch doneLatch = new CountDownLatch(1);
+        private volatile ScheduledFuture<?> lingerFuture;
+        private SendResult[] sendResults;
+        private Throwable sendException;
 
+        Batch(Arena arena) {
+            this.arena = arena;
+            this.slots = new AtomicReferenceArray<>((int) Math.max(16, Math.min(MAX_BATCH_SLOTS, holdSize / MIN_ENCODED_SIZE + 1)));
+        }
+
+        boolean isSealed() {
+            return (this.state.get() & SEALED) != 0;
+        }
 
-        public int add(Message msg) throws InterruptedException, MQBrokerException, RemotingException, MQClientException {
-            int ret = -1;
-            // 消息累加器竞争很低，多数只有一个线程在使用，synchronized的效率反而更高。
-            synchronized (this.closed) {
-                if (this.closed.get()) {
-                    return ret;
+        void scheduleLinger() {
+            try {
+                this.lingerFuture = lingerTimer.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (Batch.this.seal()) {
+                            Batch.this.arena.onLingerSealed(Batch.this);
+                        }
+                    }
+                }, holdMs, TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                // 定时器已关闭，直接封口
+                seal();
+            }
+        }
+
+        /**
+         * 占一个槽位并写入，批次已封口时返回 false
+         */
+        boolean append(Entry entry) {
+            long s;
+            long next;
+            int index;
+            while (true) {
+                s = this.state.get();
+                if ((s & SEALED) != 0) {
+                    return false;
                 }
-                ret = this.count++;
-                this.messages.add(msg);
-                int bodySize = null == msg.getBody() ? 0 : msg.getBody().length;
-                if (bodySize > 0) {
-                    messagesSize.addAndGet(bodySize);
+                index = (int) (s >>> 32);
+                long bytes = (s & BYTES_MASK) + entry.encodedSize;
+                next = s + COUNT_UNIT + entry.encodedSize;
+                // 超过 holdSize 或槽位用完就封口，与旧实现一样允许最后一条超出 holdSize
+                if (bytes >= holdSize || index + 1 >= this.slots.length()) {
+                    next |= SEALED;
                 }
-                String msgKeys = msg.getKeys(); // 业务属性 tags
-                if (msgKeys != null) {
-                    this.keys.addAll(Arrays.asList(msgKeys.split(MessageConst.KEY_SEPARATOR)));
+                if (this.state.compareAndSet(s, next)) {
+                    break;
                 }
             }
-            synchronized (this) {
-                while (!this.closed.get()) {
-                    if (readyToSend()) {
-                        this.send();
-                        break;
-                    } else {
-                        this.wait(); // 让出同步占用 - 这里锁的是 this
+            entry.index = index;
+            this.slots.set(index, entry);
+            this.written.incrementAndGet();
+            if ((next & SEALED) != 0) {
+                onSealed();
+            }
+            return true;
+        }
+
+        /**
+         * @return 是否由本次调用封口
+         */
+        boolean seal() {
+            while (true) {
+                long s = this.state.get();
+                if ((s & SEALED) != 0) {
+                    return false;
+                }
+                if (this.state.compareAndSet(s, s | SEALED)) {
+                    onSealed();
+                    if (!this.arena.sync && tryClaimSend()) {
+                        sendAsync();
                     }
+                    return true;
                 }
             }
-            return ret;
         }
 
-        public boolean add(Message msg,
-                           SendCallback sendCallback) throws InterruptedException, RemotingException, MQClientException {
-            synchronized (this.closed) {
-                if (this.closed.get()) {
-                    return false;
+        private void onSealed() {
+            ScheduledFuture<?> future = this.lingerFuture;
+            if (future != null) {
+                future.cancel(false);
+            }
+            this.sealedLatch.countDown();
+        }
+
+        /**
+         * 封口且占用的槽位都已写完时，只有一个线程能拿到发送权
+         */
+        boolean tryClaimSend() {
+            long s = this.state.get();
+            return (s & SEALED) != 0 && this.written.get() == (int) ((s & ~SEALED) >>> 32)
+                && this.sendClaimed.compareAndSet(false, true);
+        }
+
+        /**
+         * 同步发送：等到封口，拿到发送权的调用方负责发送，其余调用方等结果
+         */
+        SendResult awaitResult(int index) throws InterruptedException, MQBrokerException, RemotingException, MQClientException {
+            if (!tryClaimSend()) {
+                try {
+                    this.sealedLatch.await();
+                } catch (InterruptedException e) {
+                    abandon(e);
+                    throw e;
                 }
-                this.count++;
-                this.messages.add(msg);
-                this.sendCallbacks.add(sendCallback);
-                int bodySize = null == msg.getBody() ? 0 : msg.getBody().length;
-                if (bodySize > 0) {
-                    messagesSize.addAndGet(bodySize);
+                if (!tryClaimSend()) {
+                    this.doneLatch.await();
+                    return result(index);
                 }
             }
-            if (readyToSend()) {
-                this.send(sendCallback);
+
+            try {
+                SendResult sendResult = this.arena.defaultMQProducer.sendDirect(batch(), this.arena.aggregateKey.mq, null);
+                splitSendResults(sendResult);
+            } catch (InterruptedException | MQBrokerException | RemotingException | MQClientException | RuntimeException e) {
+                this.sendException = e;
+                throw e;
+            } finally {
+                release();
+                this.doneLatch.countDown();
+            }
+            return this.sendResults[index];
+        }
+
+        /**
+         * 同步调用方等待封口时被中断：立即封口，不再接收新消息。如果因此拿到了发送权，
+         * 说明没有别的调用方会发送这个批次，直接按失败结束，归还额度并唤醒同批次的其他调用方；
+         * 没拿到时由最后写完槽位的调用方照常发送
+         */
+        private void abandon(InterruptedException e) {
+            seal();
+            if (tryClaimSend()) {
+                this.sendException = e;
+                release();
+                this.doneLatch.countDown();
             }
-            return true;
         }
 
-        public synchronized void wakeup() {
-            if (this.closed.get()) {
-                return;
+        private SendResult result(int index) throws MQBrokerException, RemotingException, MQClientException {
+            Throwable e = this.sendException;
+            if (e == null) {
+                return this.sendResults[index];
             }
-            this.notify();
+            if (e instanceof MQBrokerException) {
+                throw (MQBrokerException) e;
+            }
+            if (e instanceof RemotingException) {
+                throw (RemotingException) e;
+            }
+            if (e instanceof MQClientException) {
+                throw (MQClientException) e;
+            }
+            throw new MQClientException("send message batch failed", e);
+        }
+
+        void sendAsync() {
+            final int size = this.written.get();
+            try {
+                this.arena.defaultMQProducer.sendDirect(batch(), this.arena.aggregateKey.mq, new SendCallback() {
+                    @Override
+                    public void onSuccess(SendResult sendResult) {
+                        try {
+                            splitSendResults(sendResult);
+                        } catch (Exception e) {
+                            onException(e);
+                            return;
+                        }
+                        release();
+                        for (int i = 0; i < size; i++) {
+                            Batch.this.slots.get(i).sendCallback.onSuccess(Batch.this.sendResults[i]);
+                        }
+                    }
+
+                    @Override
+                    public void onException(Throwable e) {
+                        release();
+                        for (int i = 0; i < size; i++) {
+                            Batch.this.slots.get(i).sendCallback.onException(e);
+                        }
+                    }
+                });
+            } catch (Exception e) {
+                release();
+                for (int i = 0; i < size; i++) {
+                    this.slots.get(i).sendCallback.onException(e);
+                }
+            }
+        }
+
+        /**
+         * 归还 tryAddMessage 占用的额度
+         */
+        private void release() {
+            long bodySize = 0;
+            for (int i = 0, size = this.written.get(); i < size; i++) {
+                bodySize += this.slots.get(i).bodySize;
+            }
+            currentlyHoldSize.addAndGet(-bodySize);
         }
 
         private MessageBatch batch() {
-            MessageBatch messageBatch = new MessageBatch(this.messages);
-            messageBatch.setTopic(this.aggregateKey.topic);
-            messageBatch.setWaitStoreMsgOK(this.aggregateKey.waitStoreMsgOK);
-            messageBatch.setKeys(this.keys);
-            messageBatch.setTags(this.aggregateKey.tag);
+            int size = this.written.get();
+            List<Message> messages = new ArrayList<>(size);
+            Set<String> keys = new HashSet<>();
+            byte[][] encodedProperties = new byte[size][];
+            for (int i = 0; i < size; i++) {
+                Entry entry = this.slots.get(i);
+                messages.add(entry.message);
+                encodedProperties[i] = entry.encodedProperties;
+                addKeys(keys, entry.message.getKeys());
+            }
+
+            MessageBatch messageBatch = new MessageBatch(messages);
+            messageBatch.setTopic(this.arena.aggregateKey.topic);
+            messageBatch.setWaitStoreMsgOK(this.arena.aggregateKey.waitStoreMsgOK);
+            messageBatch.setKeys(keys);
+            messageBatch.setTags(this.arena.aggregateKey.tag);
             MessageClientIDSetter.setUniqID(messageBatch);
-            messageBatch.setBody(MessageDecoder.encodeMessages(this.messages));
+            messageBatch.enableStreamingEncode(encodedProperties);
             return messageBatch;
         }
 
-
         private void splitSendResults(SendResult sendResult) {
             if (sendResult == null) {
                 throw new IllegalArgumentException("sendResult is null");
             }
+            int count = this.written.get();
             boolean isBatchConsumerQueue = !sendResult.getMsgId().contains(",");
-            this.sendResults = new SendResult[this.count];
+            SendResult[] results = new SendResult[count];
             if (!isBatchConsumerQueue) {
                 String[] msgIds = sendResult.getMsgId().split(",");
                 String[] offsetMsgIds = sendResult.getOffsetMsgId().split(",");
-                if (offsetMsgIds.length != this.count || msgIds.length != this.count) {
+                if (offsetMsgIds.length != count || msgIds.length != count) {
                     throw new IllegalArgumentException("sendResult is illegal");
                 }
-                for (int i = 0; i < this.count; i++) {
-                    this.sendResults[i] = new SendResult(sendResult.getSendStatus(), msgIds[i],
-                            sendResult.getMessageQueue(), sendResult.getQueueOffset() + i,
-                            sendResult.getTransactionId(), offsetMsgIds[i], sendResult.getRegionId());
+                for (int i = 0; i < count; i++) {
+                    results[i] = new SendResult(sendResult.getSendStatus(), msgIds[i],
+                        sendResult.getMessageQueue(), sendResult.getQueueOffset() + i,
+                        sendResult.getTransactionId(), offsetMsgIds[i], sendResult.getRegionId());
                 }
             } else {
-                for (int i = 0; i < this.count; i++) {
-                    this.sendResults[i] = sendResult;
+                for (int i = 0; i < count; i++) {
+                    results[i] = sendResult;
                 }
             }
+            this.sendResults = results;
         }
+    }
 
-        private void send() throws InterruptedException, MQClientException, MQBrokerException, RemotingException {
-            synchronized (this.closed) {
-                if (this.closed.getAndSet(true)) {
-                    return;
-                }
-            }
-            MessageBatch messageBatch = this.batch();
-            SendResult sendResult = null;
-            try {
-                if (defaultMQProducer != null) {
-                    sendResult = defaultMQProducer.sendDirect(messageBatch, aggregateKey.mq, null);
-                    this.splitSendResults(sendResult);
-                } else {
-                    throw new IllegalArgumentException("defaultMQProducer is null, can not send message");
-                }
-            } finally {
-                currentlyHoldSize.addAndGet(-messagesSize.get());
-                this.notifyAll();
+    /**
+     * 按 KEY_SEPARATOR 切分 keys，不走正则
+     */
+    private static void addKeys(Set<String> keys, String msgKeys) {
+        if (msgKeys == null) {
+            return;
+        }
+        int from = 0;
+        int sep;
+        while ((sep = msgKeys.indexOf(MessageConst.KEY_SEPARATOR, from)) >= 0) {
+            if (sep > from) {
+                keys.add(msgKeys.substring(from, sep));
             }
+            from = sep + MessageConst.KEY_SEPARATOR.length();
         }
-
-        private void send(SendCallback sendCallback) {
-            synchronized (this.closed) {
-                if (this.closed.getAndSet(true)) {
-                    return;
-                }
-            }
-            MessageBatch messageBatch = this.batch();
-            SendResult sendResult = null;
-            try {
-                if (defaultMQProducer != null) {
-                    final int size = messagesSize.get();
-                    defaultMQProducer.sendDirect(messageBatch, aggregateKey.mq, new SendCallback() {
-                        @Override
-                        public void onSuccess(SendResult sendResult) {
-                            try {
-                                splitSendResults(sendResult);
-                                int i = 0;
-                                Iterator<SendCallback> it = sendCallbacks.iterator();
-                                while (it.hasNext()) {
-                                    SendCallback v = it.next();
-                                    v.onSuccess(sendResults[i++]);
-                                }
-                                if (i != count) {
-                                    throw new IllegalArgumentException("sendResult is illegal");
-                                }
-                                currentlyHoldSize.addAndGet(-size);
-                            } catch (Exception e) {
-                                onException(e);
-                            }
-                        }
-
-                        @Override
-                        public void onException(Throwable e) {
-                            for (SendCallback v : sendCallbacks) {
-                                v.onException(e);
-                            }
-                            currentlyHoldSize.addAndGet(-size);
-                        }
-                    });
-                } else {
-                    throw new IllegalArgumentException("defaultMQProducer is null, can not send message");
-                }
-            } catch (Exception e) {
-                for (SendCallback v : sendCallbacks) {
-                    v.onException(e);
-                }
-            }
+        if (from < msgKeys.length()) {
+            keys.add(msgKeys.substring(from));
         }
     }
-
-
-}
\ No newline at end of file
+}
@@ -16,12 +16,21 @@ public class ConsumerStatsManager {
     private static final String TOPIC_AND_GROUP_CONSUME_RT = "CONSUME_RT";
     private static final String TOPIC_AND_GROUP_PULL_TPS = "PULL_TPS";
     private static final String TOPIC_AND_GROUP_PULL_RT = "PULL_RT";
+    private static final String TOPIC_AND_GROUP_REBALANCE_RT = "REBALANCE_RT";
+    private static final String TOPIC_AND_GROUP_ALLOCATE_CACHE_HIT = "ALLOCATE_CACHE_HIT";
+    private static final String TOPIC_AND_GROUP_ALLOCATE_CACHE_MISS = "ALLOCATE_CACHE_MISS";
 
     private final StatsItemSet topicAndGroupConsumeOKTPS;
     private final StatsItemSet topicAndGroupConsumeRT;
     private final StatsItemSet topicAndGroupConsumeFailedTPS;
     private final StatsItemSet topicAndGroupPullTPS;
     private final StatsItemSet topicAndGroupPullRT;
+    /**
+     * 单个 topic 一次 rebalance 的耗时，单位微秒
+     */
+    private final StatsItemSet topicAndGroupRebalanceRT;
+    private final StatsItemSet topicAndGroupAllocateCacheHit;
+    private final StatsItemSet topicAndGroupAllocateCacheMiss;
 
     public ConsumerStatsManager(final ScheduledExecutorService scheduledExecutorService) {
         this.topicAndGroupConsumeOKTPS =
@@ -36,6 +45,12 @@ public class ConsumerStatsManager {
         this.topicAndGroupPullTPS = new StatsItemSet(TOPIC_AND_GROUP_PULL_TPS, scheduledExecutorService, log);
 
         this.topicAndGroupPullRT = new StatsItemSet(TOPIC_AND_GROUP_PULL_RT, scheduledExecutorService, log);
+
+        this.topicAndGroupRebalanceRT = new StatsItemSet(TOPIC_AND_GROUP_REBALANCE_RT, scheduledExecutorService, log);
+
+        this.topicAndGroupAllocateCacheHit = new StatsItemSet(TOPIC_AND_GROUP_ALLOCATE_CACHE_HIT, scheduledExecutorService, log);
+
+        this.topicAndGroupAllocateCacheMiss = new StatsItemSet(TOPIC_AND_GROUP_ALLOCATE_CACHE_MISS, scheduledExecutorService, log);
     }
 
     public void start() {
@@ -64,6 +79,35 @@ public class ConsumerStatsManager {
         this.topicAndGroupConsumeFailedTPS.addValue(topic + "@" + group, (int) msgs, 1);
     }
 
+    public void incRebalanceRT(final String group, final String topic, final long rtMicros) {
+        this.topicAndGroupRebalanceRT.addRTValue(topic + "@" + group, (int) rtMicros, 1);
+    }
+
+    public void incAllocateCacheHit(final String group, final String topic) {
+        this.topicAndGroupAllocateCacheHit.addValue(topic + "@" + group, 1, 1);
+    }
+
+    public void incAllocateCacheMiss(final String group, final String topic) {
+        this.topicAndGroupAllocateCacheMiss.addValue(topic + "@" + group, 1, 1);
+    }
+
+    /**
+     * 最近一小时分配结果缓存的命中率，没有数据时返回 -1
+     */
+    public double allocateCacheHitRate(final String group, final String topic) {
+        StatsSnapshot hit = this.topicAndGroupAllocateCacheHit.getStatsDataInHour(topic + "@" + group);
+        StatsSnapshot miss = this.topicAndGroupAllocateCacheMiss.getStatsDataInHour(topic + "@" + group);
+        long total = hit.getSum() + miss.getSum();
+        return total == 0 ? -1 : (double) hit.getSum() / total;
+    }
+
+    /**
+     * 最近一分钟 rebalance 的平均耗时，单位微秒
+     */
+    public double rebalanceRT(final String group, final String topic) {
+        return this.topicAndGroupRebalanceRT.getStatsDataInMinute(topic + "@" + group).getAvgpt();
+    }
+
     public ConsumeStatus consumeStatus(final String group, final String topic) {
         ConsumeStatus cs = new ConsumeStatus();
         {
@@ -27,6 +27,7 @@ import org.apache.rocketmq.client.hook.SendMessageHook;
 import org.apache.rocketmq.client.producer.SendStatus;
 import org.apache.rocketmq.client.trace.TraceConstants;
 import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageBatch;
 
 public class SendMessageOpenTracingHookImpl implements SendMessageHook {
 
@@ -62,7 +63,8 @@ public class SendMessageOpenTracingHookImpl implements SendMessageHook {
         span.setTag(TraceConstants.ROCKETMQ_KEYS, msg.getKeys());
         span.setTag(TraceConstants.ROCKETMQ_STORE_HOST, context.getBrokerAddr());
         span.setTag(TraceConstants.ROCKETMQ_MSG_TYPE, context.getMsgType().name());
-        span.setTag(TraceConstants.ROCKETMQ_BODY_LENGTH, null == msg.getBody() ? 0 : msg.getBody().length);
+        span.setTag(TraceConstants.ROCKETMQ_BODY_LENGTH, msg instanceof MessageBatch ? ((MessageBatch) msg).getEncodedSize()
+            : null == msg.getBody() ? 0 : msg.getBody().length);
         context.setMqTraceContext(span);
     }
 
@@ -20,6 +20,8 @@ import org.apache.rocketmq.client.hook.SendMessageContext;
 import org.apache.rocketmq.client.hook.SendMessageHook;
 import org.apache.rocketmq.client.producer.SendStatus;
 import org.apache.rocketmq.client.trace.*;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageBatch;
 import org.apache.rocketmq.remoting.protocol.NamespaceUtil;
 
 import java.util.ArrayList;
@@ -55,7 +57,9 @@ public class SendMessageTraceHookImpl implements SendMessageHook {
         traceBean.setTags(context.getMessage().getTags());
         traceBean.setKeys(context.getMessage().getKeys());
         traceBean.setStoreHost(context.getBrokerAddr());
-        int bodyLength = null == context.getMessage().getBody() ? 0 : context.getMessage().getBody().length;
+        Message message = context.getMessage();
+        int bodyLength = message instanceof MessageBatch ? ((MessageBatch) message).getEncodedSize()
+            : null == message.getBody() ? 0 : message.getBody().length;
         traceBean.setBodyLength(bodyLength);
         traceBean.setMsgType(context.getMsgType());
         traceContext.getTraceBeans().add(traceBean);
@@ -0,0 +1,253 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.client.impl.consumer;
+
+import io.netty.channel.ChannelHandlerContext;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.rocketmq.client.consumer.DefaultMQPushConsumer;
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyStatus;
+import org.apache.rocketmq.client.consumer.listener.MessageListenerConcurrently;
+import org.apache.rocketmq.common.message.MessageDecoder;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.remoting.netty.NettyRemotingServer;
+import org.apache.rocketmq.remoting.netty.NettyRequestProcessor;
+import org.apache.rocketmq.remoting.netty.NettyServerConfig;
+import org.apache.rocketmq.remoting.protocol.RemotingCommand;
+import org.apache.rocketmq.remoting.protocol.RequestCode;
+import org.apache.rocketmq.remoting.protocol.ResponseCode;
+import org.apache.rocketmq.remoting.protocol.header.GetConsumerListByGroupResponseBody;
+import org.apache.rocketmq.remoting.protocol.header.GetMaxOffsetResponseHeader;
+import org.apache.rocketmq.remoting.protocol.header.PullMessageRequestHeader;
+import org.apache.rocketmq.remoting.protocol.header.PullMessageResponseHeader;
+import org.apache.rocketmq.remoting.protocol.header.QueryConsumerOffsetResponseHeader;
+import org.apache.rocketmq.remoting.protocol.heartbeat.HeartbeatData;
+import org.apache.rocketmq.remoting.protocol.route.BrokerData;
+import org.apache.rocketmq.remoting.protocol.route.QueueData;
+import org.apache.rocketmq.remoting.protocol.route.TopicRouteData;
+
+/**
+ * 本地并发消费吞吐测试：进程内起一个假的 name server + broker，每次拉取都立即返回一批消息（永远有消息），
+ * 用 DefaultMQPushConsumer 消费并每秒打印一次消费 TPS。
+ * <p>
+ * 参数依次为：运行秒数、队列数、监听器每批耗时（微秒）、consumeThreadMin、consumeThreadMax、consumeMessageBatchMaxSize。
+ */
+public class ConsumeMessageConcurrentlyBenchmark {
+
+    private static final String TOPIC = "BenchmarkTopic";
+    private static final String BROKER_NAME = "fakeBroker";
+    private static final int BODY_SIZE = 256;
+    private static final int QUEUE_ID_POSITION = 4 + 4 + 4;
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 30;
+        int queueNums = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        long consumeRTMicros = args.length > 2 ? Long.parseLong(args[2]) : 200;
+        int threadMin = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+        int threadMax = args.length > 4 ? Integer.parseInt(args[4]) : 64;
+        int batchSize = args.length > 5 ? Integer.parseInt(args[5]) : 1;
+
+        FakeBroker broker = new FakeBroker(queueNums);
+        broker.start();
+
+        final LongAdder consumed = new LongAdder();
+        final long consumeRTNanos = TimeUnit.MICROSECONDS.toNanos(consumeRTMicros);
+        DefaultMQPushConsumer consumer = new DefaultMQPushConsumer("BenchmarkConsumerGroup");
+        consumer.setNamesrvAddr(broker.getAddr());
+        consumer.setConsumeThreadMin(threadMin);
+        consumer.setConsumeThreadMax(threadMax);
+        consumer.setConsumeMessageBatchMaxSize(batchSize);
+        consumer.subscribe(TOPIC, "*");
+        consumer.registerMessageListener((MessageListenerConcurrently) (msgs, context) -> {
+            if (consumeRTNanos > 0) {
+                LockSupport.parkNanos(consumeRTNanos);
+            }
+            consumed.add(msgs.size());
+            return ConsumeConcurrentlyStatus.CONSUME_SUCCESS;
+        });
+        consumer.start();
+
+        long total = 0;
+        for (int i = 0; i < seconds; i++) {
+            TimeUnit.SECONDS.sleep(1);
+            long tps = consumed.sumThenReset();
+            total += tps;
+            System.out.printf("second %d: consume tps %d, pulls %d%n", i + 1, tps, broker.pulls.sumThenReset());
+        }
+        System.out.printf("average consume tps %d%n", total / Math.max(1, seconds));
+
+        consumer.shutdown();
+        broker.shutdown();
+    }
+
+    /**
+     * 同时充当 name server 和 broker，只实现消费者启动和拉取用到的请求，其余请求一律返回成功
+     */
+    static class FakeBroker implements NettyRequestProcessor {
+        private final int queueNums;
+        private final NettyRemotingServer server;
+        private final ExecutorService executor = Executors.newFixedThreadPool(4);
+        private final Set<String> clientIds = ConcurrentHashMap.newKeySet();
+        private final LongAdder pulls = new LongAdder();
+        /**
+         * 编码好的消息模板，返回前只改队列 ID、队列位点和物理位点
+         */
+        private final byte[] template;
+
+        FakeBroker(int queueNums) throws Exception {
+            this.queueNums = queueNums;
+            NettyServerConfig config = new NettyServerConfig();
+            config.setListenPort(0);
+            this.server = new NettyRemotingServer(config);
+            this.server.registerDefaultProcessor(this, this.executor);
+
+            MessageExt msg = new MessageExt();
+            msg.setTopic(TOPIC);
+            msg.setBody(new byte[BODY_SIZE]);
+            msg.setTags("TagA");
+            msg.setBornHost(new InetSocketAddress("127.0.0.1", 30000));
+            msg.setStoreHost(new InetSocketAddress("127.0.0.1", 10911));
+            msg.setBornTimestamp(System.currentTimeMillis());
+            msg.setStoreTimestamp(System.currentTimeMillis());
+            this.template = MessageDecoder.encode(msg, false);
+        }
+
+        void start() {
+            this.server.start();
+        }
+
+        void shutdown() {
+            this.server.shutdown();
+            this.executor.shutdown();
+        }
+
+        String getAddr() {
+            return "127.0.0.1:" + this.server.localListenPort();
+        }
+
+        @Override
+        public RemotingCommand processRequest(ChannelHandlerContext ctx, RemotingCommand request) throws Exception {
+            switch (request.getCode()) {
+                case RequestCode.GET_ROUTEINFO_BY_TOPIC:
+                    return success(null, route().encode());
+                case RequestCode.HEART_BEAT:
+                    HeartbeatData heartbeatData = HeartbeatData.decode(request.getBody(), HeartbeatData.class);
+                    this.clientIds.add(heartbeatData.getClientID());
+                    return success(null, null);
+                case RequestCode.GET_CONSUMER_LIST_BY_GROUP:
+                    GetConsumerListByGroupResponseBody body = new GetConsumerListByGroupResponseBody();
+                    body.setConsumerIdList(new ArrayList<>(this.clientIds));
+                    return success(null, body.encode());
+                case RequestCode.QUERY_CONSUMER_OFFSET: {
+                    RemotingCommand response = RemotingCommand.createResponseCommand(QueryConsumerOffsetResponseHeader.class);
+                    ((QueryConsumerOffsetResponseHeader) response.readCustomHeader()).setOffset(0L);
+                    response.setCode(ResponseCode.SUCCESS);
+                    return response;
+                }
+                case RequestCode.GET_MAX_OFFSET: {
+                    RemotingCommand response = RemotingCommand.createResponseCommand(GetMaxOffsetResponseHeader.class);
+                    ((GetMaxOffsetResponseHeader) response.readCustomHeader()).setOffset(Long.MAX_VALUE / 2);
+                    response.setCode(ResponseCode.SUCCESS);
+                    return response;
+                }
+                case RequestCode.PULL_MESSAGE:
+                    return pull(request);
+                default:
+                    return success(null, null);
+            }
+        }
+
+        private RemotingCommand pull(RemotingCommand request) throws Exception {
+            this.pulls.increment();
+            PullMessageRequestHeader requestHeader = request.decodeCommandCustomHeader(PullMessageRequestHeader.class);
+            int nums = requestHeader.getMaxMsgNums();
+            long offset = requestHeader.getQueueOffset();
+
+            byte[] body = new byte[this.template.length * nums];
+            for (int i = 0; i < nums; i++) {
+                int pos = i * this.template.length;
+                System.arraycopy(this.template, 0, body, pos, this.template.length);
+                writeInt(body, pos + QUEUE_ID_POSITION, requestHeader.getQueueId());
+                writeLong(body, pos + MessageDecoder.QUEUE_OFFSET_POSITION, offset + i);
+                writeLong(body, pos + MessageDecoder.PHY_POS_POSITION, (offset + i) * this.queueNums + requestHeader.getQueueId());
+            }
+
+            RemotingCommand response = RemotingCommand.createResponseCommand(PullMessageResponseHeader.class);
+            PullMessageResponseHeader responseHeader = (PullMessageResponseHeader) response.readCustomHeader();
+            responseHeader.setNextBeginOffset(offset + nums);
+            responseHeader.setMinOffset(0L);
+            responseHeader.setMaxOffset(Long.MAX_VALUE / 2);
+            responseHeader.setSuggestWhichBrokerId(0L);
+            response.setCode(ResponseCode.SUCCESS);
+            response.setBody(body);
+            return response;
+        }
+
+        private TopicRouteData route() {
+            QueueData queueData = new QueueData();
+            queueData.setBrokerName(BROKER_NAME);
+            queueData.setReadQueueNums(this.queueNums);
+            queueData.setWriteQueueNums(this.queueNums);
+            queueData.setPerm(6);
+
+            HashMap<Long, String> brokerAddrs = new HashMap<>();
+            brokerAddrs.put(0L, getAddr());
+            TopicRouteData routeData = new TopicRouteData();
+            routeData.setQueueDatas(new ArrayList<>(Collections.singletonList(queueData)));
+            routeData.setBrokerDatas(new ArrayList<>(Collections.singletonList(new BrokerData("fakeCluster", BROKER_NAME, brokerAddrs))));
+            routeData.setFilterServerTable(new HashMap<>());
+            return routeData;
+        }
+
+        private static RemotingCommand success(String remark, byte[] body) {
+            RemotingCommand response = RemotingCommand.createResponseCommand(ResponseCode.SUCCESS, remark);
+            response.setBody(body);
+            return response;
+        }
+
+        private static void writeInt(byte[] buf, int pos, int value) {
+            for (int i = 3; i >= 0; i--) {
+                buf[pos + i] = (byte) value;
+                value >>>= 8;
+            }
+        }
+
+        private static void writeLong(byte[] buf, int pos, long value) {
+            for (int i = 7; i >= 0; i--) {
+                buf[pos + i] = (byte) value;
+                value >>>= 8;
+            }
+        }
+
+        @Override
+        public boolean rejectRequest() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.client.impl.consumer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.rocketmq.common.message.MessageExt;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 一个拉取线程按 32 条一批写入、64 个消费线程逐条 ack 同一个队列：{@link ProcessQueue} 与 {@link RingBufferProcessQueue}。
+ * <p>
+ * 拉取线程在缓存不超过 {@link #WINDOW} 条时写入，和 PullMessageService 一样每次先看 {@link ProcessQueue#getMaxSpan}；
+ * 消费线程按 offset 顺序领取消息后调用 {@link ProcessQueue#removeMessage}，ack 顺序由线程调度打乱。
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProcessQueueBenchmark {
+
+    private static final int BATCH_SIZE = 32;
+    private static final int WINDOW = 2048;
+    private static final int POOL_SIZE = 1 << 16;
+
+    @Param({"treeMap", "ringBuffer"})
+    private String impl;
+
+    private ProcessQueue processQueue;
+    private MessageExt[] pool;
+    private volatile long putCursor;
+    private final AtomicLong ackCursor = new AtomicLong();
+
+    @Setup
+    public void setup() {
+        processQueue = "ringBuffer".equals(impl) ? new RingBufferProcessQueue() : new ProcessQueue();
+        byte[] body = new byte[256];
+        pool = new MessageExt[POOL_SIZE];
+        for (int i = 0; i < POOL_SIZE; i++) {
+            MessageExt msg = new MessageExt();
+            msg.setTopic("BenchmarkTopic");
+            msg.setBody(body);
+            pool[i] = msg;
+        }
+        putCursor = 0;
+        ackCursor.set(0);
+    }
+
+    @Benchmark
+    @Group("pullAndConsume")
+    @GroupThreads(1)
+    public long pull() {
+        long span = processQueue.getMaxSpan();
+        long offset = putCursor;
+        if (offset - ackCursor.get() >= WINDOW) {
+            return span;
+        }
+        List<MessageExt> msgs = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            MessageExt msg = pool[(int) ((offset + i) & (POOL_SIZE - 1))];
+            msg.setQueueOffset(offset + i);
+            msgs.add(msg);
+        }
+        processQueue.putMessage(msgs);
+        putCursor = offset + BATCH_SIZE;
+        return span;
+    }
+
+    @Benchmark
+    @Group("pullAndConsume")
+    @GroupThreads(64)
+    public long consume(AckCounter counter) {
+        long offset = ackCursor.get();
+        if (offset >= putCursor || !ackCursor.compareAndSet(offset, offset + 1)) {
+            return -1;
+        }
+        MessageExt msg = pool[(int) (offset & (POOL_SIZE - 1))];
+        counter.acks++;
+        return processQueue.removeMessage(Collections.singletonList(msg));
+    }
+
+    /**
+     * 空转的调用也会计入 consume 的吞吐，真正的 ack 数看 acks
+     */
+    @AuxCounters
+    @State(Scope.Thread)
+    public static class AckCounter {
+        public long acks;
+
+        @Setup
+        public void reset() {
+            acks = 0;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+            .include(ProcessQueueBenchmark.class.getSimpleName())
+            .build();
+        new Runner(options).run();
+    }
+}
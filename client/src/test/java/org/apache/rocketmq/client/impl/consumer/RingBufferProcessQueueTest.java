@@ -0,0 +1,236 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.client.impl.consumer;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.rocketmq.common.message.MessageExt;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 以 {@link ProcessQueue} 的行为为准校验 {@link RingBufferProcessQueue}。
+ */
+public class RingBufferProcessQueueTest {
+
+    @Test
+    public void testRemoveMessageReturnsSameOffsetAsProcessQueue() {
+        ProcessQueue expected = new ProcessQueue();
+        // 初始容量故意取小，让写入过程中发生扩容
+        RingBufferProcessQueue actual = new RingBufferProcessQueue(8);
+        List<MessageExt> msgs = messages(100, 300);
+        for (int i = 0; i < msgs.size(); i += 32) {
+            List<MessageExt> batch = msgs.subList(i, Math.min(i + 32, msgs.size()));
+            assertThat(actual.putMessage(batch)).isEqualTo(expected.putMessage(batch));
+        }
+
+        List<MessageExt> shuffled = new ArrayList<>(msgs);
+        Collections.shuffle(shuffled, new Random(42));
+        for (MessageExt msg : shuffled) {
+            List<MessageExt> ack = Collections.singletonList(msg);
+            assertThat(actual.removeMessage(ack)).isEqualTo(expected.removeMessage(ack));
+            assertThat(actual.getMsgCount().get()).isEqualTo(expected.getMsgCount().get());
+            assertThat(actual.getMsgSize().get()).isEqualTo(expected.getMsgSize().get());
+        }
+        assertThat(actual.hasTempMessage()).isFalse();
+        // 空队列上重复 ack
+        assertThat(actual.removeMessage(shuffled.subList(0, 1))).isEqualTo(expected.removeMessage(shuffled.subList(0, 1)));
+    }
+
+    @Test
+    public void testRemoveMessageBatchReturnsSameOffsetAsProcessQueue() {
+        ProcessQueue expected = new ProcessQueue();
+        RingBufferProcessQueue actual = new RingBufferProcessQueue();
+        List<MessageExt> msgs = messages(0, 64);
+        expected.putMessage(msgs);
+        actual.putMessage(msgs);
+
+        // 先 ack 中间一段，head 不动
+        List<MessageExt> middle = msgs.subList(10, 20);
+        assertThat(actual.removeMessage(middle)).isEqualTo(expected.removeMessage(middle)).isEqualTo(0L);
+        // 再 ack 头部，head 越过已经 ack 的那一段
+        List<MessageExt> head = msgs.subList(0, 10);
+        assertThat(actual.removeMessage(head)).isEqualTo(expected.removeMessage(head)).isEqualTo(20L);
+        List<MessageExt> rest = msgs.subList(20, 64);
+        assertThat(actual.removeMessage(rest)).isEqualTo(expected.removeMessage(rest)).isEqualTo(64L);
+    }
+
+    @Test
+    public void testGetMaxSpan() {
+        ProcessQueue expected = new ProcessQueue();
+        RingBufferProcessQueue actual = new RingBufferProcessQueue();
+        assertThat(actual.getMaxSpan()).isEqualTo(expected.getMaxSpan()).isEqualTo(0L);
+
+        List<MessageExt> msgs = messages(10, 30);
+        expected.putMessage(msgs);
+        actual.putMessage(msgs);
+        assertThat(actual.getMaxSpan()).isEqualTo(expected.getMaxSpan()).isEqualTo(19L);
+
+        // ack 头部，两者的下端一起后移
+        expected.removeMessage(msgs.subList(0, 5));
+        actual.removeMessage(msgs.subList(0, 5));
+        assertThat(actual.getMaxSpan()).isEqualTo(expected.getMaxSpan()).isEqualTo(14L);
+
+        // ack 尾部，环形队列的上端仍是写入过的最大 offset，只会偏大
+        expected.removeMessage(msgs.subList(19, 20));
+        actual.removeMessage(msgs.subList(19, 20));
+        assertThat(expected.getMaxSpan()).isEqualTo(13L);
+        assertThat(actual.getMaxSpan()).isEqualTo(14L);
+
+        expected.removeMessage(msgs.subList(5, 19));
+        actual.removeMessage(msgs.subList(5, 19));
+        assertThat(actual.getMaxSpan()).isEqualTo(expected.getMaxSpan()).isEqualTo(0L);
+    }
+
+    @Test
+    public void testOrderlyTakeAndCommitMatchProcessQueue() {
+        ProcessQueue expected = new ProcessQueue();
+        RingBufferProcessQueue actual = new RingBufferProcessQueue();
+        List<MessageExt> msgs = messages(0, 10);
+        expected.putMessage(msgs);
+        actual.putMessage(msgs);
+
+        assertThat(offsets(actual.takeMessages(4))).isEqualTo(offsets(expected.takeMessages(4)));
+        assertThat(actual.commit()).isEqualTo(expected.commit()).isEqualTo(4L);
+
+        List<MessageExt> expectedTaken = expected.takeMessages(3);
+        List<MessageExt> actualTaken = actual.takeMessages(3);
+        assertThat(offsets(actualTaken)).isEqualTo(offsets(expectedTaken));
+        List<MessageExt> committed = actualTaken.subList(1, 3);
+        assertThat(actual.commit(committed)).isEqualTo(expected.commit(committed)).isEqualTo(4L);
+
+        expected.rollback();
+        actual.rollback();
+        assertThat(offsets(actual.takeMessages(10))).isEqualTo(offsets(expected.takeMessages(10)));
+        assertThat(actual.commit()).isEqualTo(expected.commit()).isEqualTo(10L);
+        assertThat(actual.getMsgCount().get()).isEqualTo(expected.getMsgCount().get()).isEqualTo(0L);
+        assertThat(actual.takeMessages(1)).isEmpty();
+    }
+
+    @Test
+    public void testAckDoesNotWaitForWriteLock() throws Exception {
+        RingBufferProcessQueue processQueue = new RingBufferProcessQueue();
+        List<MessageExt> msgs = messages(0, 16);
+        processQueue.putMessage(msgs);
+
+        Field field = RingBufferProcessQueue.class.getDeclaredField("writeLock");
+        field.setAccessible(true);
+        ReentrantLock writeLock = (ReentrantLock) field.get(processQueue);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        writeLock.lock();
+        try {
+            // 拉取线程或顺序消费占着写锁时，ack、提交位点和流控读数都不应该被挡住
+            Future<Long> offset = executor.submit(() -> {
+                processQueue.removeMessage(msgs.subList(0, 8));
+                assertThat(processQueue.getMaxSpan()).isEqualTo(7L);
+                assertThat(processQueue.containsMessage(msgs.get(0))).isFalse();
+                return processQueue.removeMessage(msgs.subList(8, 12));
+            });
+            assertThat(offset.get(10, TimeUnit.SECONDS)).isEqualTo(12L);
+        } finally {
+            writeLock.unlock();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testConcurrentAckNeverSkipsLiveMessage() throws Exception {
+        final int total = 20000;
+        final int threads = 8;
+        RingBufferProcessQueue processQueue = new RingBufferProcessQueue(64);
+        List<MessageExt> msgs = messages(0, total);
+        AtomicIntegerArray acked = new AtomicIntegerArray(total);
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+        try {
+            // 写入与 ack 并发，写入会触发扩容
+            Future<?> producer = executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < total; i += 32) {
+                    processQueue.putMessage(msgs.subList(i, Math.min(i + 32, total)));
+                }
+                return null;
+            });
+            List<Future<?>> consumers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                final int id = t;
+                consumers.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = id; i < total; i += threads) {
+                        MessageExt msg = msgs.get(i);
+                        while (!processQueue.containsMessage(msg)) {
+                            Thread.yield();
+                        }
+                        acked.set(i, 1);
+                        long offset = processQueue.removeMessage(Collections.singletonList(msg));
+                        // 返回的位点之前不能还有没 ack 的消息
+                        for (long o = offset - 1; o >= 0 && o > offset - 64; o--) {
+                            assertThat(acked.get((int) o)).as("offset %d before %d", o, offset).isEqualTo(1);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            producer.get(60, TimeUnit.SECONDS);
+            for (Future<?> consumer : consumers) {
+                consumer.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(processQueue.hasTempMessage()).isFalse();
+        assertThat(processQueue.getMsgCount().get()).isEqualTo(0L);
+        assertThat(processQueue.getMsgSize().get()).isEqualTo(0L);
+        assertThat(processQueue.getMaxSpan()).isEqualTo(0L);
+        assertThat(processQueue.getMsgTreeMap()).isEmpty();
+    }
+
+    private static List<MessageExt> messages(long from, long to) {
+        List<MessageExt> msgs = new ArrayList<>();
+        for (long offset = from; offset < to; offset++) {
+            MessageExt msg = new MessageExt();
+            msg.setTopic("TestTopic");
+            msg.setQueueOffset(offset);
+            msg.setBody(new byte[(int) (offset % 7) + 1]);
+            msgs.add(msg);
+        }
+        return msgs;
+    }
+
+    private static List<Long> offsets(List<MessageExt> msgs) {
+        List<Long> offsets = new ArrayList<>();
+        for (MessageExt msg : msgs) {
+            offsets.add(msg.getQueueOffset());
+        }
+        return offsets;
+    }
+}
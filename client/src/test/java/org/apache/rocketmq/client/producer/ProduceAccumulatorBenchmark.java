@@ -0,0 +1,353 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.client.producer;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.rocketmq.client.exception.MQBrokerException;
+import org.apache.rocketmq.client.exception.MQClientException;
+import org.apache.rocketmq.common.ServiceThread;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageBatch;
+import org.apache.rocketmq.common.message.MessageClientIDSetter;
+import org.apache.rocketmq.common.message.MessageDecoder;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.remoting.exception.RemotingException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 16 个线程异步发送到 {@link #keys} 个 topic：重写前的实现（{@link LegacyProduceAccumulator}）与 {@link ProduceAccumulator}。
+ * <p>
+ * sendDirect 被替换成立即回调成功，测的只是累积、封口和批量编码的开销。
+ * 旧实现的同步发送在守护线程和调用方之间可能互相等待，这里只测异步发送。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(16)
+@Fork(1)
+public class ProduceAccumulatorBenchmark {
+
+    private static final SendCallback NOOP_CALLBACK = new SendCallback() {
+        @Override
+        public void onSuccess(SendResult sendResult) {
+        }
+
+        @Override
+        public void onException(Throwable e) {
+        }
+    };
+
+    @Param({"legacy", "arena"})
+    private String impl;
+
+    @Param({"1", "16"})
+    private int keys;
+
+    private String[] topics;
+    private byte[] body;
+    private LegacyProduceAccumulator legacyAccumulator;
+    private ProduceAccumulator accumulator;
+    private DefaultMQProducer producer;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        topics = new String[keys];
+        for (int i = 0; i < keys; i++) {
+            topics[i] = "BenchmarkTopic" + i;
+        }
+        body = new byte[128];
+        producer = new ImmediateProducer();
+        if ("legacy".equals(impl)) {
+            legacyAccumulator = new LegacyProduceAccumulator("benchmark");
+            legacyAccumulator.start();
+        } else {
+            accumulator = new ProduceAccumulator("benchmark");
+            accumulator.start();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (legacyAccumulator != null) {
+            legacyAccumulator.shutdown();
+        }
+        if (accumulator != null) {
+            accumulator.shutdown();
+        }
+    }
+
+    @Benchmark
+    public boolean sendAsync(ThreadCursor cursor) throws Exception {
+        Message msg = new Message(topics[cursor.next++ % keys], "TagA", body);
+        MessageClientIDSetter.setUniqID(msg);
+        if (legacyAccumulator != null) {
+            if (!legacyAccumulator.tryAddMessage(msg)) {
+                return false;
+            }
+            legacyAccumulator.send(msg, NOOP_CALLBACK, producer);
+        } else {
+            if (!accumulator.tryAddMessage(msg)) {
+                return false;
+            }
+            accumulator.send(msg, NOOP_CALLBACK, producer);
+        }
+        return true;
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadCursor {
+        private int next;
+    }
+
+    /**
+     * 不连 broker，批次一到就按成功回调，msgId 不带逗号，按整批一个结果拆分
+     */
+    private static class ImmediateProducer extends DefaultMQProducer {
+        ImmediateProducer() {
+            super("BenchmarkProducerGroup");
+        }
+
+        @Override
+        public SendResult sendDirect(Message msg, MessageQueue mq,
+            SendCallback sendCallback) throws MQClientException, RemotingException, InterruptedException, MQBrokerException {
+            SendResult sendResult = new SendResult(SendStatus.SEND_OK, "msgId", "offsetMsgId", mq, 0);
+            if (sendCallback == null) {
+                return sendResult;
+            }
+            sendCallback.onSuccess(sendResult);
+            return null;
+        }
+    }
+
+    /**
+     * 重写前 {@link ProduceAccumulator} 的异步发送路径（synchronized 累积 + 守护线程轮询封口），只保留基准需要的部分
+     */
+    private static class LegacyProduceAccumulator {
+        private final long totalHoldSize = 32 * 1024 * 1024;
+        private final long holdSize = 32 * 1024;
+        private final int holdMs = 10;
+        private final Map<AggregateKey, MessageAccumulation> asyncSendBatchs = new ConcurrentHashMap<>();
+        private final AtomicLong currentlyHoldSize = new AtomicLong(0);
+        private final ServiceThread guardThreadForAsyncSend;
+
+        LegacyProduceAccumulator(final String instanceName) {
+            this.guardThreadForAsyncSend = new ServiceThread() {
+                @Override
+                public String getServiceName() {
+                    return String.format("Client_%s_GuardForAsyncSend", instanceName);
+                }
+
+                @Override
+                public void run() {
+                    while (!this.isStopped()) {
+                        for (MessageAccumulation v : asyncSendBatchs.values()) {
+                            if (v.readyToSend()) {
+                                v.send();
+                            }
+                            synchronized (v.closed) {
+                                if (v.messagesSize.get() == 0) {
+                                    v.closed.set(true);
+                                    asyncSendBatchs.remove(v.aggregateKey, v);
+                                }
+                            }
+                        }
+                        try {
+                            Thread.sleep(Math.max(1, holdMs / 2));
+                        } catch (InterruptedException ignored) {
+                        }
+                    }
+                }
+            };
+        }
+
+        void start() {
+            guardThreadForAsyncSend.start();
+        }
+
+        void shutdown() {
+            guardThreadForAsyncSend.shutdown();
+        }
+
+        boolean tryAddMessage(Message message) {
+            synchronized (currentlyHoldSize) {
+                if (currentlyHoldSize.get() < totalHoldSize) {
+                    int bodySize = null == message.getBody() ? 0 : message.getBody().length;
+                    if (bodySize > 0) {
+                        currentlyHoldSize.addAndGet(bodySize);
+                    }
+                    return true;
+                }
+                return false;
+            }
+        }
+
+        void send(Message msg, SendCallback sendCallback, DefaultMQProducer defaultMQProducer) {
+            AggregateKey aggregateKey = new AggregateKey(msg.getTopic(), msg.isWaitStoreMsgOK(), msg.getTags());
+            while (true) {
+                MessageAccumulation batch = asyncSendBatchs.get(aggregateKey);
+                if (batch == null) {
+                    batch = new MessageAccumulation(aggregateKey, defaultMQProducer);
+                    MessageAccumulation previous = asyncSendBatchs.putIfAbsent(aggregateKey, batch);
+                    batch = previous == null ? batch : previous;
+                }
+                if (batch.add(msg, sendCallback)) {
+                    return;
+                }
+                asyncSendBatchs.remove(aggregateKey, batch);
+            }
+        }
+
+        private static class AggregateKey {
+            private final String topic;
+            private final boolean waitStoreMsgOK;
+            private final String tag;
+
+            AggregateKey(String topic, boolean waitStoreMsgOK, String tag) {
+                this.topic = topic;
+                this.waitStoreMsgOK = waitStoreMsgOK;
+                this.tag = tag;
+            }
+
+            @Override
+            public boolean equals(Object o) {
+                if (this == o) {
+                    return true;
+                }
+                if (o == null || getClass() != o.getClass()) {
+                    return false;
+                }
+                AggregateKey key = (AggregateKey) o;
+                return waitStoreMsgOK == key.waitStoreMsgOK && topic.equals(key.topic) && Objects.equals(tag, key.tag);
+            }
+
+            @Override
+            public int hashCode() {
+                return Objects.hash(topic, waitStoreMsgOK, tag);
+            }
+        }
+
+        private class MessageAccumulation {
+            private final DefaultMQProducer defaultMQProducer;
+            private final AggregateKey aggregateKey;
+            private final List<Message> messages = new LinkedList<>();
+            private final List<SendCallback> sendCallbacks = new LinkedList<>();
+            private final AtomicBoolean closed = new AtomicBoolean(false);
+            private final AtomicInteger messagesSize = new AtomicInteger(0);
+            private final long createTime = System.currentTimeMillis();
+
+            MessageAccumulation(AggregateKey aggregateKey, DefaultMQProducer defaultMQProducer) {
+                this.aggregateKey = aggregateKey;
+                this.defaultMQProducer = defaultMQProducer;
+            }
+
+            boolean readyToSend() {
+                return this.messagesSize.get() > holdSize || System.currentTimeMillis() >= this.createTime + holdMs;
+            }
+
+            boolean add(Message msg, SendCallback sendCallback) {
+                synchronized (this.closed) {
+                    if (this.closed.get()) {
+                        return false;
+                    }
+                    this.messages.add(msg);
+                    this.sendCallbacks.add(sendCallback);
+                    int bodySize = null == msg.getBody() ? 0 : msg.getBody().length;
+                    if (bodySize > 0) {
+                        messagesSize.addAndGet(bodySize);
+                    }
+                }
+                if (readyToSend()) {
+                    this.send();
+                }
+                return true;
+            }
+
+            void send() {
+                synchronized (this.closed) {
+                    if (this.closed.getAndSet(true)) {
+                        return;
+                    }
+                }
+                MessageBatch messageBatch = new MessageBatch(this.messages);
+                messageBatch.setTopic(this.aggregateKey.topic);
+                messageBatch.setWaitStoreMsgOK(this.aggregateKey.waitStoreMsgOK);
+                messageBatch.setTags(this.aggregateKey.tag);
+                MessageClientIDSetter.setUniqID(messageBatch);
+                messageBatch.setBody(MessageDecoder.encodeMessages(this.messages));
+                final int size = messagesSize.get();
+                try {
+                    defaultMQProducer.sendDirect(messageBatch, null, new SendCallback() {
+                        @Override
+                        public void onSuccess(SendResult sendResult) {
+                            for (SendCallback v : sendCallbacks) {
+                                v.onSuccess(sendResult);
+                            }
+                            currentlyHoldSize.addAndGet(-size);
+                        }
+
+                        @Override
+                        public void onException(Throwable e) {
+                            for (SendCallback v : sendCallbacks) {
+                                v.onException(e);
+                            }
+                            currentlyHoldSize.addAndGet(-size);
+                        }
+                    });
+                } catch (Exception e) {
+                    for (SendCallback v : sendCallbacks) {
+                        v.onException(e);
+                    }
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+            .include(ProduceAccumulatorBenchmark.class.getSimpleName())
+            .build();
+        new Runner(options).run();
+    }
+}
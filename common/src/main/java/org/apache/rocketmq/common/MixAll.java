@@ -68,6 +68,8 @@ public class MixAll {
     public static final String CID_RMQ_SYS_PREFIX = "CID_RMQ_SYS_";
     public static final String IS_SUPPORT_HEART_BEAT_V2 = "IS_SUPPORT_HEART_BEAT_V2";
     public static final String IS_SUB_CHANGE = "IS_SUB_CHANGE";
+    // 心跳响应的扩展字段：broker 已确认的订阅版本号，见 HeartbeatDeltaData
+    public static final String HEARTBEAT_SUBSCRIPTION_VERSION = "HEARTBEAT_SUBSCRIPTION_VERSION";
     public static final List<String> LOCAL_INET_ADDRESS = getLocalInetAddress();
     public static final String LOCALHOST = localhost();
     public static final String DEFAULT_CHARSET = "UTF-8";
@@ -3,14 +3,26 @@ package org.apache.rocketmq.common.consistenthash;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Iterator;
-import java.util.SortedMap;
-import java.util.TreeMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+/**
+ * 哈希环存放在按 hash 升序排列的 long[] 中，与虚拟节点数组一一对应，路由时二分查找。
+ * <p>
+ * 增删节点时生成新的数组整体替换，routeNode 读取的是一致的快照，不需要加锁。
+ * hash 相同的虚拟节点都会保留，按 key 排序，路由取其中 key 最小的一个，
+ * 因此环的内容只取决于节点集合，与增删的先后顺序无关。
+ */
 public class ConsistentHashRouter<T extends Node> {
-    private final SortedMap<Long, VirtualNode<T>> ring = new TreeMap<>();
     private final HashFunction hashFunction;
+    private volatile Ring<T> ring = new Ring<>(new long[0], new Object[0]);
 
     public ConsistentHashRouter(Collection<T> pNodes, int vNodeCount) {
         this(pNodes, vNodeCount, new MD5Hash());
@@ -27,12 +39,22 @@ public class ConsistentHashRouter<T extends Node> {
         }
         this.hashFunction = hashFunction;
         if (pNodes != null) {
-            for (T pNode : pNodes) {
-                addNode(pNode, vNodeCount);
-            }
+            addNodes(pNodes, vNodeCount);
         }
     }
 
+    private ConsistentHashRouter(HashFunction hashFunction, Ring<T> ring) {
+        this.hashFunction = hashFunction;
+        this.ring = ring;
+    }
+
+    /**
+     * 复制出一个路由器，与当前路由器共享不可变的环快照，之后两者各自增删节点互不影响
+     */
+    public ConsistentHashRouter<T> copy() {
+        return new ConsistentHashRouter<>(this.hashFunction, this.ring);
+    }
+
     /**
      * add physic node to the hash ring with some virtual nodes
      *
@@ -40,27 +62,56 @@ public class ConsistentHashRouter<T extends Node> {
      * @param vNodeCount the number of virtual node of the physical node. Value should be greater than or equals to 0
      */
     public void addNode(T pNode, int vNodeCount) {
+        addNodes(Collections.singletonList(pNode), vNodeCount);
+    }
+
+    /**
+     * 批量加入物理节点，所有虚拟节点排好序后与现有的环归并一次
+     */
+    public synchronized void addNodes(Collection<T> pNodes, int vNodeCount) {
         if (vNodeCount < 0)
             throw new IllegalArgumentException("illegal virtual node counts :" + vNodeCount);
-        int existingReplicas = getExistingReplicas(pNode);
-        for (int i = 0; i < vNodeCount; i++) {
-            VirtualNode<T> vNode = new VirtualNode<>(pNode, i + existingReplicas);
-            ring.put(hashFunction.hash(vNode.getKey()), vNode);
+        Ring<T> current = this.ring;
+        int size = pNodes.size() * vNodeCount;
+        long[] hashes = new long[size];
+        Object[] vNodes = new Object[size];
+        // 同一批里重复出现的节点与逐个 addNode 一样继续往后编号
+        Map<String, Integer> batchReplicas = new HashMap<>();
+        int n = 0;
+        for (T pNode : pNodes) {
+            Integer added = batchReplicas.put(pNode.getKey(), vNodeCount);
+            int existingReplicas = current.replicasOf(pNode);
+            if (added != null) {
+                existingReplicas += added;
+                batchReplicas.put(pNode.getKey(), added + vNodeCount);
+            }
+            for (int i = 0; i < vNodeCount; i++) {
+                VirtualNode<T> vNode = new VirtualNode<>(pNode, i + existingReplicas);
+                hashes[n] = hashFunction.hash(vNode.getKey());
+                vNodes[n] = vNode;
+                n++;
+            }
         }
+        sort(hashes, vNodes);
+        this.ring = current.merge(hashes, vNodes);
     }
 
     /**
      * remove the physical node from the hash ring
      */
     public void removeNode(T pNode) {
-        Iterator<Long> it = ring.keySet().iterator();
-        while (it.hasNext()) {
-            Long key = it.next();
-            VirtualNode<T> virtualNode = ring.get(key);
-            if (virtualNode.isVirtualNodeOf(pNode)) {
-                it.remove();
-            }
+        removeNodes(Collections.singletonList(pNode));
+    }
+
+    /**
+     * 批量移除物理节点，只遍历一次环
+     */
+    public synchronized void removeNodes(Collection<T> pNodes) {
+        Set<String> keys = new HashSet<>();
+        for (T pNode : pNodes) {
+            keys.add(pNode.getKey());
         }
+        this.ring = this.ring.remove(keys);
     }
 
     /**
@@ -69,23 +120,126 @@ public class ConsistentHashRouter<T extends Node> {
      * @param objectKey the object key to find a nearest Node
      */
     public T routeNode(String objectKey) {
-        if (ring.isEmpty()) {
+        Ring<T> current = this.ring;
+        if (current.hashes.length == 0) {
             return null;
         }
-        Long hashVal = hashFunction.hash(objectKey);
-        SortedMap<Long, VirtualNode<T>> tailMap = ring.tailMap(hashVal);
-        Long nodeHashVal = !tailMap.isEmpty() ? tailMap.firstKey() : ring.firstKey();
-        return ring.get(nodeHashVal).getPhysicalNode();
+        return current.route(hashFunction.hash(objectKey));
     }
 
     public int getExistingReplicas(T pNode) {
-        int replicas = 0;
-        for (VirtualNode<T> vNode : ring.values()) {
-            if (vNode.isVirtualNodeOf(pNode)) {
-                replicas++;
+        return this.ring.replicasOf(pNode);
+    }
+
+    /**
+     * 按 (hash, key) 升序就地排序
+     */
+    @SuppressWarnings("unchecked")
+    private static <T extends Node> void sort(long[] hashes, Object[] vNodes) {
+        Integer[] order = new Integer[hashes.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> compare(hashes[a], (VirtualNode<T>) vNodes[a], hashes[b], (VirtualNode<T>) vNodes[b]));
+        long[] sortedHashes = new long[hashes.length];
+        Object[] sortedNodes = new Object[vNodes.length];
+        for (int i = 0; i < order.length; i++) {
+            sortedHashes[i] = hashes[order[i]];
+            sortedNodes[i] = vNodes[order[i]];
+        }
+        System.arraycopy(sortedHashes, 0, hashes, 0, hashes.length);
+        System.arraycopy(sortedNodes, 0, vNodes, 0, vNodes.length);
+    }
+
+    private static <T extends Node> int compare(long h1, VirtualNode<T> v1, long h2, VirtualNode<T> v2) {
+        int c = Long.compare(h1, h2);
+        return c != 0 ? c : v1.getKey().compareTo(v2.getKey());
+    }
+
+    /**
+     * 不可变的环快照
+     */
+    private static final class Ring<T extends Node> {
+        private final long[] hashes;
+        private final Object[] vNodes;
+
+        Ring(long[] hashes, Object[] vNodes) {
+            this.hashes = hashes;
+            this.vNodes = vNodes;
+        }
+
+        @SuppressWarnings("unchecked")
+        T route(long hash) {
+            // 第一个 >= hash 的位置，越过末尾则回到环首
+            int low = 0;
+            int high = hashes.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (hashes[mid] < hash) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            if (low == hashes.length) {
+                low = 0;
+            }
+            return ((VirtualNode<T>) vNodes[low]).getPhysicalNode();
+        }
+
+        @SuppressWarnings("unchecked")
+        int replicasOf(T pNode) {
+            int replicas = 0;
+            for (Object vNode : vNodes) {
+                if (((VirtualNode<T>) vNode).isVirtualNodeOf(pNode)) {
+                    replicas++;
+                }
+            }
+            return replicas;
+        }
+
+        @SuppressWarnings("unchecked")
+        Ring<T> merge(long[] addHashes, Object[] addNodes) {
+            if (addHashes.length == 0) {
+                return this;
+            }
+            int size = hashes.length + addHashes.length;
+            long[] mergedHashes = new long[size];
+            Object[] mergedNodes = new Object[size];
+            int i = 0;
+            int j = 0;
+            for (int k = 0; k < size; k++) {
+                if (j >= addHashes.length || i < hashes.length
+                    && compare(hashes[i], (VirtualNode<T>) vNodes[i], addHashes[j], (VirtualNode<T>) addNodes[j]) <= 0) {
+                    mergedHashes[k] = hashes[i];
+                    mergedNodes[k] = vNodes[i++];
+                } else {
+                    mergedHashes[k] = addHashes[j];
+                    mergedNodes[k] = addNodes[j++];
+                }
+            }
+            return new Ring<>(mergedHashes, mergedNodes);
+        }
+
+        @SuppressWarnings("unchecked")
+        Ring<T> remove(Set<String> physicalKeys) {
+            List<Integer> kept = new ArrayList<>(hashes.length);
+            for (int i = 0; i < vNodes.length; i++) {
+                if (!physicalKeys.contains(((VirtualNode<T>) vNodes[i]).getPhysicalNode().getKey())) {
+                    kept.add(i);
+                }
+            }
+            if (kept.size() == hashes.length) {
+                return this;
+            }
+            long[] keptHashes = new long[kept.size()];
+            Object[] keptNodes = new Object[kept.size()];
+            for (int k = 0; k < keptHashes.length; k++) {
+                keptHashes[k] = hashes[kept.get(k)];
+                keptNodes[k] = vNodes[kept.get(k)];
             }
+            return new Ring<>(keptHashes, keptNodes);
         }
-        return replicas;
     }
 
     private static class MD5Hash implements HashFunction {
@@ -99,8 +253,11 @@ public class ConsistentHashRouter<T extends Node> {
             }
         }
 
+        /**
+         * MessageDigest 不是线程安全的，环被缓存后可能在多个线程上路由
+         */
         @Override
-        public long hash(String key) {
+        public synchronized long hash(String key) {
             instance.reset();
             instance.update(key.getBytes(StandardCharsets.UTF_8));
             byte[] digest = instance.digest();
@@ -111,7 +268,7 @@ public class ConsistentHashRouter<T extends Node> {
                 h <<= 8;
                 h |= ((int) digest[i]) & 0xFF;
             }
-            return 0;
+            return h;
         }
     }
 }
@@ -0,0 +1,18 @@
+package org.apache.rocketmq.common.consistenthash;
+
+import com.google.common.hash.Hashing;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 非加密的 Murmur3 哈希，取 128 位结果的低 64 位，比默认的 MD5 快得多且无状态、线程安全。
+ * <p>
+ * 同一个消费组内所有客户端必须使用同一种哈希函数，否则各自算出的环不同，队列会被重复分配或漏分配。
+ */
+public class Murmur3Hash implements HashFunction {
+    private static final com.google.common.hash.HashFunction MURMUR3_128 = Hashing.murmur3_128();
+
+    @Override
+    public long hash(String key) {
+        return MURMUR3_128.hashString(key, StandardCharsets.UTF_8).asLong();
+    }
+}
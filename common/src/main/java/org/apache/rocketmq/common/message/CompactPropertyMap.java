@@ -0,0 +1,569 @@
+package org.apache.rocketmq.common.message;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * 消息属性表，替代每条消息一个 {@code HashMap(128)}。
+ * <p>
+ * 属性通常只有几个到十几个，key / value 平铺在两个数组里线性查找，没有 Entry 对象和哈希桶。
+ * 从 wire format 解析时，{@link MessageConst#STRING_HASH_SET} 里的系统 key 直接复用常量，不再为每条消息 new 一个 key；
+ * 数值型的系统属性（MIN_OFFSET / MAX_OFFSET / DELAY 等）存成 long，读成 String 时才格式化，编码时直接写数字。
+ * <p>
+ * 与 HashMap 一样不是线程安全的；遍历顺序为插入顺序。
+ */
+public class CompactPropertyMap extends AbstractMap<String, String> implements Serializable {
+    private static final long serialVersionUID = -6135738245627960312L;
+
+    private static final int DEFAULT_CAPACITY = 8;
+
+    /**
+     * 数值槽位在 values 中的占位
+     */
+    private static final Object NUMERIC = new Object();
+
+    private static final long NOT_A_NUMBER = Long.MIN_VALUE;
+
+    private static final String[] WELL_KNOWN_KEYS;
+    private static final int WELL_KNOWN_MASK;
+
+    private static final Set<String> NUMERIC_KEYS = new HashSet<>();
+
+    static {
+        int capacity = Integer.highestOneBit(MessageConst.STRING_HASH_SET.size() * 4 - 1) << 1;
+        WELL_KNOWN_KEYS = new String[capacity];
+        WELL_KNOWN_MASK = capacity - 1;
+        for (String key : MessageConst.STRING_HASH_SET) {
+            int index = key.hashCode() & WELL_KNOWN_MASK;
+            while (WELL_KNOWN_KEYS[index] != null) {
+                index = (index + 1) & WELL_KNOWN_MASK;
+            }
+            WELL_KNOWN_KEYS[index] = key;
+        }
+
+        NUMERIC_KEYS.add(MessageConst.PROPERTY_MIN_OFFSET);
+        NUMERIC_KEYS.add(MessageConst.PROPERTY_MAX_OFFSET);
+        NUMERIC_KEYS.add(MessageConst.PROPERTY_DELAY_TIME_LEVEL);
+        NUMERIC_KEYS.add(MessageConst.PROPERTY_REAL_QUEUE_ID);
+        NUMERIC_KEYS.add(MessageConst.PROPERTY_RECONSUME_TIME);
+        NUMERIC_KEYS.add(MessageConst.PROPERTY_MAX_RECONSUME_TIMES);
+        NUMERIC_KEYS.add(MessageConst.PROPERTY_CONSUME_START_TIMESTAMP);
+        NUMERIC_KEYS.add(MessageConst.PROPERTY_TRANSACTION_PREPARED_QUEUE_OFFSET);
+        NUMERIC_KEYS.add(MessageConst.PROPERTY_FIRST_POP_TIME);
+        NUMERIC_KEYS.add(MessageConst.PROPERTY_REPLY_MESSAGE_ARRIVE_TIME);
+        NUMERIC_KEYS.add(MessageConst.PROPERTY_PUSH_REPLY_TIME);
+        NUMERIC_KEYS.add(MessageConst.PROPERTY_TIMER_DELAY_SEC);
+        NUMERIC_KEYS.add(MessageConst.PROPERTY_TIMER_DELAY_MS);
+        NUMERIC_KEYS.add(MessageConst.PROPERTY_TIMER_DELIVER_MS);
+        NUMERIC_KEYS.add(MessageConst.PROPERTY_TIMER_ENQUEUE_MS);
+        NUMERIC_KEYS.add(MessageConst.PROPERTY_TIMER_DEQUEUE_MS);
+        NUMERIC_KEYS.add(MessageConst.PROPERTY_TIMER_OUT_MS);
+        NUMERIC_KEYS.add(MessageConst.PROPERTY_TIMER_ROLL_TIMES);
+        NUMERIC_KEYS.add(MessageConst.PROPERTY_BORN_TIMESTAMP);
+    }
+
+    private transient String[] keys;
+    /**
+     * String、null 或 {@link #NUMERIC}
+     */
+    private transient Object[] values;
+    private transient long[] numbers;
+    private transient int size;
+    private transient int modCount;
+    private transient Set<Map.Entry<String, String>> entrySet;
+
+    public CompactPropertyMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public CompactPropertyMap(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 1);
+        this.keys = new String[capacity];
+        this.values = new Object[capacity];
+    }
+
+    public CompactPropertyMap(Map<String, String> properties) {
+        this(properties.size());
+        putAll(properties);
+    }
+
+    /**
+     * 按 {@link MessageDecoder#string2messageProperties(String)} 的规则解析属性串
+     */
+    public static CompactPropertyMap parse(final String properties) {
+        CompactPropertyMap map = new CompactPropertyMap();
+        if (properties == null) {
+            return map;
+        }
+        int len = properties.length();
+        int index = 0;
+        while (index < len) {
+            int newIndex = properties.indexOf(MessageDecoder.PROPERTY_SEPARATOR, index);
+            if (newIndex < 0) {
+                newIndex = len;
+            }
+            if (newIndex - index >= 3) {
+                int kvSepIndex = properties.indexOf(MessageDecoder.NAME_VALUE_SEPARATOR, index);
+                if (kvSepIndex > index && kvSepIndex < newIndex - 1) {
+                    String key = wellKnownKey(properties, index, kvSepIndex);
+                    if (key == null) {
+                        key = properties.substring(index, kvSepIndex);
+                    }
+                    map.putParsed(key, properties, kvSepIndex + 1, newIndex);
+                }
+            }
+            index = newIndex + 1;
+        }
+        return map;
+    }
+
+    /**
+     * 直接从 UTF-8 编码的属性字节解析，规则同 {@link #parse(String)}。
+     * 分隔符都是单字节，不会出现在多字节 UTF-8 字符里，所以可以按字节切分。
+     */
+    public static CompactPropertyMap parse(final byte[] buf, final int offset, final int length) {
+        CompactPropertyMap map = new CompactPropertyMap();
+        int end = offset + length;
+        int index = offset;
+        while (index < end) {
+            int kvSep = -1;
+            int newIndex = index;
+            while (newIndex < end && buf[newIndex] != MessageDecoder.PROPERTY_SEPARATOR) {
+                if (kvSep < 0 && buf[newIndex] == MessageDecoder.NAME_VALUE_SEPARATOR) {
+                    kvSep = newIndex;
+                }
+                newIndex++;
+            }
+            if (kvSep > index && kvSep < newIndex - 1) {
+                String key = wellKnownKey(buf, index, kvSep);
+                if (key == null) {
+                    key = new String(buf, index, kvSep - index, MessageDecoder.CHARSET_UTF8);
+                }
+                int valueStart = kvSep + 1;
+                long number = NUMERIC_KEYS.contains(key) ? parseCanonicalLong(buf, valueStart, newIndex) : NOT_A_NUMBER;
+                if (number != NOT_A_NUMBER) {
+                    map.putLong(key, number);
+                } else {
+                    map.put(key, new String(buf, valueStart, newIndex - valueStart, MessageDecoder.CHARSET_UTF8));
+                }
+            }
+            index = newIndex + 1;
+        }
+        return map;
+    }
+
+    private void putParsed(String key, String properties, int valueStart, int valueEnd) {
+        long number = NUMERIC_KEYS.contains(key) ? parseCanonicalLong(properties, valueStart, valueEnd) : NOT_A_NUMBER;
+        if (number != NOT_A_NUMBER) {
+            putLong(key, number);
+        } else {
+            put(key, properties.substring(valueStart, valueEnd));
+        }
+    }
+
+    private static String wellKnownKey(String s, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + s.charAt(i);
+        }
+        int index = h & WELL_KNOWN_MASK;
+        String candidate;
+        while ((candidate = WELL_KNOWN_KEYS[index]) != null) {
+            if (candidate.length() == end - start && candidate.regionMatches(0, s, start, end - start)) {
+                return candidate;
+            }
+            index = (index + 1) & WELL_KNOWN_MASK;
+        }
+        return null;
+    }
+
+    /**
+     * 系统 key 都是 ASCII，非 ASCII 字节不会和它们相等
+     */
+    private static String wellKnownKey(byte[] buf, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + buf[i];
+        }
+        int index = h & WELL_KNOWN_MASK;
+        String candidate;
+        while ((candidate = WELL_KNOWN_KEYS[index]) != null) {
+            if (candidate.length() == end - start && asciiMatches(candidate, buf, start)) {
+                return candidate;
+            }
+            index = (index + 1) & WELL_KNOWN_MASK;
+        }
+        return null;
+    }
+
+    private static boolean asciiMatches(String candidate, byte[] buf, int start) {
+        for (int i = 0; i < candidate.length(); i++) {
+            if (candidate.charAt(i) != buf[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 只接受 Long.toString 能原样还原的写法（无前导 0、无 '+'、不超过 18 位），保证重新编码后与原串一致
+     */
+    private static long parseCanonicalLong(CharSequence s, int start, int end) {
+        boolean negative = start < end && s.charAt(start) == '-';
+        int digitsStart = negative ? start + 1 : start;
+        int digits = end - digitsStart;
+        if (digits <= 0 || digits > 18 || (s.charAt(digitsStart) == '0' && (digits > 1 || negative))) {
+            return NOT_A_NUMBER;
+        }
+        long value = 0;
+        for (int i = digitsStart; i < end; i++) {
+            int d = s.charAt(i) - '0';
+            if (d < 0 || d > 9) {
+                return NOT_A_NUMBER;
+            }
+            value = value * 10 + d;
+        }
+        return negative ? -value : value;
+    }
+
+    private static long parseCanonicalLong(byte[] buf, int start, int end) {
+        boolean negative = start < end && buf[start] == '-';
+        int digitsStart = negative ? start + 1 : start;
+        int digits = end - digitsStart;
+        if (digits <= 0 || digits > 18 || (buf[digitsStart] == '0' && (digits > 1 || negative))) {
+            return NOT_A_NUMBER;
+        }
+        long value = 0;
+        for (int i = digitsStart; i < end; i++) {
+            int d = buf[i] - '0';
+            if (d < 0 || d > 9) {
+                return NOT_A_NUMBER;
+            }
+            value = value * 10 + d;
+        }
+        return negative ? -value : value;
+    }
+
+    private int indexOf(Object key) {
+        String[] ks = this.keys;
+        for (int i = 0; i < this.size; i++) {
+            if (ks[i] == key) {
+                return i;
+            }
+        }
+        if (key == null) {
+            return -1;
+        }
+        for (int i = 0; i < this.size; i++) {
+            if (key.equals(ks[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int slotFor(String key) {
+        int index = indexOf(key);
+        if (index >= 0) {
+            return index;
+        }
+        if (this.size == this.keys.length) {
+            int capacity = this.size << 1;
+            this.keys = Arrays.copyOf(this.keys, capacity);
+            this.values = Arrays.copyOf(this.values, capacity);
+            if (this.numbers != null) {
+                this.numbers = Arrays.copyOf(this.numbers, capacity);
+            }
+        }
+        this.keys[this.size] = key;
+        this.modCount++;
+        return this.size++;
+    }
+
+    private String valueAt(int index) {
+        Object value = this.values[index];
+        if (value == NUMERIC) {
+            String s = Long.toString(this.numbers[index]);
+            this.values[index] = s;
+            return s;
+        }
+        return (String) value;
+    }
+
+    /**
+     * 以 long 形式写入，读成 String 时等同于 {@code Long.toString(value)}
+     */
+    public void putLong(String key, long value) {
+        int index = slotFor(key);
+        if (this.numbers == null) {
+            this.numbers = new long[this.keys.length];
+        }
+        this.values[index] = NUMERIC;
+        this.numbers[index] = value;
+    }
+
+    /**
+     * @return 属性不存在或不是合法 long 时返回 defaultValue
+     */
+    public long getLong(String key, long defaultValue) {
+        int index = indexOf(key);
+        if (index < 0) {
+            return defaultValue;
+        }
+        Object value = this.values[index];
+        if (value == NUMERIC) {
+            return this.numbers[index];
+        }
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong((String) value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public String get(Object key) {
+        int index = indexOf(key);
+        return index < 0 ? null : valueAt(index);
+    }
+
+    @Override
+    public String put(String key, String value) {
+        int index = indexOf(key);
+        if (index >= 0) {
+            String old = valueAt(index);
+            this.values[index] = value;
+            return old;
+        }
+        // slotFor 可能扩容，先拿到下标再取 values
+        int slot = slotFor(key);
+        this.values[slot] = value;
+        return null;
+    }
+
+    @Override
+    public String remove(Object key) {
+        int index = indexOf(key);
+        if (index < 0) {
+            return null;
+        }
+        String old = valueAt(index);
+        removeAt(index);
+        return old;
+    }
+
+    private void removeAt(int index) {
+        int moved = this.size - index - 1;
+        if (moved > 0) {
+            System.arraycopy(this.keys, index + 1, this.keys, index, moved);
+            System.arraycopy(this.values, index + 1, this.values, index, moved);
+            if (this.numbers != null) {
+                System.arraycopy(this.numbers, index + 1, this.numbers, index, moved);
+            }
+        }
+        this.size--;
+        this.keys[this.size] = null;
+        this.values[this.size] = null;
+        this.modCount++;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(this.keys, 0, this.size, null);
+        Arrays.fill(this.values, 0, this.size, null);
+        this.size = 0;
+        this.modCount++;
+    }
+
+    /**
+     * 按 {@link MessageDecoder#messageProperties2String(Map)} 的格式追加，跳过 null 值，数值直接写数字
+     */
+    void appendTo(StringBuilder sb) {
+        for (int i = 0; i < this.size; i++) {
+            Object value = this.values[i];
+            if (value == null) {
+                continue;
+            }
+            sb.append(this.keys[i]);
+            sb.append(MessageDecoder.NAME_VALUE_SEPARATOR);
+            if (value == NUMERIC) {
+                sb.append(this.numbers[i]);
+            } else {
+                sb.append((String) value);
+            }
+            sb.append(MessageDecoder.PROPERTY_SEPARATOR);
+        }
+    }
+
+    /**
+     * 编码后长度的估计值，数值按 20 个字符算
+     */
+    int estimateEncodedLength() {
+        int len = 0;
+        for (int i = 0; i < this.size; i++) {
+            Object value = this.values[i];
+            if (value == null) {
+                continue;
+            }
+            len += this.keys[i].length() + 2 + (value == NUMERIC ? 20 : ((String) value).length());
+        }
+        return len;
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        Set<Map.Entry<String, String>> es = this.entrySet;
+        if (es == null) {
+            es = new EntrySet();
+            this.entrySet = es;
+        }
+        return es;
+    }
+
+    private final class EntrySet extends AbstractSet<Map.Entry<String, String>> {
+        @Override
+        public Iterator<Map.Entry<String, String>> iterator() {
+            return new EntryIterator();
+        }
+
+        @Override
+        public int size() {
+            return CompactPropertyMap.this.size;
+        }
+
+        @Override
+        public void clear() {
+            CompactPropertyMap.this.clear();
+        }
+    }
+
+    private final class EntryIterator implements Iterator<Map.Entry<String, String>> {
+        private int next;
+        private int last = -1;
+        private int expectedModCount = modCount;
+
+        @Override
+        public boolean hasNext() {
+            return this.next < size;
+        }
+
+        @Override
+        public Map.Entry<String, String> next() {
+            if (modCount != this.expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (this.next >= size) {
+                throw new NoSuchElementException();
+            }
+            this.last = this.next++;
+            return new Entry(keys[this.last]);
+        }
+
+        @Override
+        public void remove() {
+            if (this.last < 0) {
+                throw new IllegalStateException();
+            }
+            if (modCount != this.expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            removeAt(this.last);
+            this.next = this.last;
+            this.last = -1;
+            this.expectedModCount = modCount;
+        }
+    }
+
+    /**
+     * 按 key 回查当前值，遍历中 setValue 也能写回
+     */
+    private final class Entry implements Map.Entry<String, String> {
+        private final String key;
+
+        Entry(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public String getKey() {
+            return this.key;
+        }
+
+        @Override
+        public String getValue() {
+            return get(this.key);
+        }
+
+        @Override
+        public String setValue(String value) {
+            return put(this.key, value);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            return eq(this.key, e.getKey()) && eq(getValue(), e.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            String value = getValue();
+            return (this.key == null ? 0 : this.key.hashCode()) ^ (value == null ? 0 : value.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return this.key + "=" + getValue();
+        }
+    }
+
+    private static boolean eq(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(this.size);
+        for (int i = 0; i < this.size; i++) {
+            out.writeObject(this.keys[i]);
+            out.writeObject(valueAt(i));
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int n = in.readInt();
+        this.keys = new String[Math.max(n, 1)];
+        this.values = new Object[Math.max(n, 1)];
+        for (int i = 0; i < n; i++) {
+            put((String) in.readObject(), (String) in.readObject());
+        }
+    }
+}
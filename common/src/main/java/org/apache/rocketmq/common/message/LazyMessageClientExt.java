@@ -0,0 +1,390 @@
+package org.apache.rocketmq.common.message;
+
+import org.apache.rocketmq.common.UtilAll;
+import org.apache.rocketmq.common.compression.CompressionType;
+import org.apache.rocketmq.common.compression.CompressorFactory;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * 拉消息响应里的消息视图，由 {@link MessageDecoder#decodeLazy} 创建。
+ * <p>
+ * 定长字段在解码时直接读出；body / topic / properties / bornHost / storeHost / offsetMsgId 只记下它们在响应缓冲区里的位置，
+ * 第一次访问时才从缓冲区里解出来。在 properties 表建出来之前，{@link #getProperty} 直接在缓冲区上查找，
+ * 所以被 tag 过滤掉的消息只会解出 TAGS 这一个值，不会拷贝 body，也不会建 properties 表。
+ * <p>
+ * 懒字段全部解出之后释放对缓冲区的引用。body 被拷出（或被替换）时剩下的懒字段一并解出，
+ * 这样进入 ProcessQueue 的消息（入队时要读 body 长度）不会继续持有整个拉取响应的 byte[]，
+ * 只有被过滤掉、还没读过 body 的消息在短时间内引用缓冲区。
+ */
+public class LazyMessageClientExt extends MessageClientExt {
+    private static final long serialVersionUID = -2830410765385434297L;
+
+    private static final int BODY = 1;
+    private static final int TOPIC = 1 << 1;
+    private static final int PROPERTIES = 1 << 2;
+    private static final int BORN_HOST = 1 << 3;
+    private static final int STORE_HOST = 1 << 4;
+    private static final int OFFSET_MSG_ID = 1 << 5;
+    private static final int ALL = BODY | TOPIC | PROPERTIES | BORN_HOST | STORE_HOST | OFFSET_MSG_ID;
+
+    /**
+     * 还没解出来的字段
+     */
+    private transient volatile int pending;
+    private transient volatile byte[] buffer;
+
+    private final transient int msgStart;
+    private final transient int bornHostOffset;
+    private final transient int bornHostIPLength;
+    private final transient int storeHostOffset;
+    private final transient int storeHostIPLength;
+    private final transient int bodyOffset;
+    private final transient int bodyLength;
+    private final transient CompressionType compressionType;
+    private final transient int topicOffset;
+    private final transient int topicLength;
+    private final transient int propertiesOffset;
+    private final transient int propertiesLength;
+
+    /**
+     * @param bodyLength      不读 body 时传 -1
+     * @param compressionType body 需要解压时的压缩类型，不需要解压时为 null
+     */
+    LazyMessageClientExt(byte[] buffer, int msgStart, int bornHostOffset, int bornHostIPLength,
+        int storeHostOffset, int storeHostIPLength, int bodyOffset, int bodyLength, CompressionType compressionType,
+        int topicOffset, int topicLength, int propertiesOffset, int propertiesLength) {
+        this.buffer = buffer;
+        this.msgStart = msgStart;
+        this.bornHostOffset = bornHostOffset;
+        this.bornHostIPLength = bornHostIPLength;
+        this.storeHostOffset = storeHostOffset;
+        this.storeHostIPLength = storeHostIPLength;
+        this.bodyOffset = bodyOffset;
+        this.bodyLength = bodyLength;
+        this.compressionType = compressionType;
+        this.topicOffset = topicOffset;
+        this.topicLength = topicLength;
+        this.propertiesOffset = propertiesOffset;
+        this.propertiesLength = propertiesLength;
+
+        int fields = TOPIC | BORN_HOST | STORE_HOST | OFFSET_MSG_ID;
+        if (bodyLength > 0) {
+            fields |= BODY;
+        }
+        if (propertiesLength > 0) {
+            fields |= PROPERTIES;
+        }
+        this.pending = fields;
+    }
+
+    /**
+     * 把所有懒字段解出来并释放缓冲区
+     */
+    public void materialize() {
+        if (this.pending != 0) {
+            decode(ALL);
+        }
+    }
+
+    /**
+     * @return 是否还有字段引用着拉取响应的缓冲区
+     */
+    public boolean isMaterialized() {
+        return this.pending == 0;
+    }
+
+    private void ensure(int field) {
+        if ((this.pending & field) != 0) {
+            decode(field);
+        }
+    }
+
+    private synchronized void decode(int fields) {
+        int todo = this.pending & fields;
+        if (todo == 0) {
+            return;
+        }
+        // body 一旦不再依赖缓冲区，其余字段解码都很便宜，一次解完好释放缓冲区
+        if ((todo & BODY) != 0 || (this.pending & BODY) == 0) {
+            todo = this.pending;
+        }
+        byte[] buf = this.buffer;
+        if ((todo & BODY) != 0) {
+            super.setBody(decodeBody(buf));
+        }
+        if ((todo & TOPIC) != 0) {
+            super.setTopic(new String(buf, this.topicOffset, this.topicLength, MessageDecoder.CHARSET_UTF8));
+        }
+        if ((todo & PROPERTIES) != 0) {
+            super.setProperties(CompactPropertyMap.parse(buf, this.propertiesOffset, this.propertiesLength));
+        }
+        if ((todo & BORN_HOST) != 0) {
+            super.setBornHost(decodeHost(buf, this.bornHostOffset, this.bornHostIPLength));
+        }
+        if ((todo & STORE_HOST) != 0) {
+            super.setStoreHost(decodeHost(buf, this.storeHostOffset, this.storeHostIPLength));
+        }
+        if ((todo & OFFSET_MSG_ID) != 0) {
+            super.setOffsetMsgId(decodeOffsetMsgId(buf));
+        }
+        done(todo);
+    }
+
+    /**
+     * 字段被外部赋值后不再需要从缓冲区解码
+     */
+    private synchronized void done(int fields) {
+        int rest = this.pending & ~fields;
+        this.pending = rest;
+        if (rest == 0) {
+            this.buffer = null;
+        }
+    }
+
+    private byte[] decodeBody(byte[] buf) {
+        byte[] body = new byte[this.bodyLength];
+        System.arraycopy(buf, this.bodyOffset, body, 0, this.bodyLength);
+        if (this.compressionType == null) {
+            return body;
+        }
+        try {
+            return CompressorFactory.getCompressor(this.compressionType).decompress(body);
+        } catch (IOException e) {
+            throw new IllegalStateException("Decompress message body failed, offsetMsgId=" + decodeOffsetMsgId(buf), e);
+        }
+    }
+
+    private static SocketAddress decodeHost(byte[] buf, int offset, int ipLength) {
+        byte[] ip = new byte[ipLength];
+        System.arraycopy(buf, offset, ip, 0, ipLength);
+        int port = ByteBuffer.wrap(buf, offset + ipLength, 4).getInt();
+        try {
+            return new InetSocketAddress(InetAddress.getByAddress(ip), port);
+        } catch (UnknownHostException e) {
+            // ip 长度只会是 4 或 16
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 与 {@link MessageDecoder#createMessageId(ByteBuffer, ByteBuffer, long)} 结果相同：storeHost(ip + port) + 物理偏移量
+     */
+    private String decodeOffsetMsgId(byte[] buf) {
+        int hostLength = this.storeHostIPLength + 4;
+        byte[] msgId = new byte[hostLength + 8];
+        System.arraycopy(buf, this.storeHostOffset, msgId, 0, hostLength);
+        System.arraycopy(buf, this.msgStart + MessageDecoder.MESSAGE_PHYSIC_OFFSET_POSITION, msgId, hostLength, 8);
+        return UtilAll.bytes2string(msgId);
+    }
+
+    /**
+     * 在缓冲区里的 properties 上查找，找不到返回 -1，找到返回值的起始位置；key 重复时与 HashMap 一样取最后一个
+     */
+    private static int findPropertyValue(byte[] buf, int from, int to, byte[] name) {
+        int found = -1;
+        int index = from;
+        while (index < to) {
+            int kvSep = -1;
+            int end = index;
+            while (end < to && buf[end] != MessageDecoder.PROPERTY_SEPARATOR) {
+                if (kvSep < 0 && buf[end] == MessageDecoder.NAME_VALUE_SEPARATOR) {
+                    kvSep = end;
+                }
+                end++;
+            }
+            // 与 string2messageProperties 一致：key、value 都不能为空
+            if (kvSep > index && kvSep - index == name.length && kvSep < end - 1 && regionMatches(buf, index, name)) {
+                found = kvSep + 1;
+            }
+            index = end + 1;
+        }
+        return found;
+    }
+
+    private static boolean regionMatches(byte[] buf, int offset, byte[] name) {
+        for (int i = 0; i < name.length; i++) {
+            if (buf[offset + i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String getProperty(final String name) {
+        if ((this.pending & PROPERTIES) != 0 && name != null) {
+            byte[] buf = this.buffer;
+            if (buf != null) {
+                int to = this.propertiesOffset + this.propertiesLength;
+                int valueStart = findPropertyValue(buf, this.propertiesOffset, to, name.getBytes(MessageDecoder.CHARSET_UTF8));
+                if (valueStart < 0) {
+                    return null;
+                }
+                int valueEnd = valueStart;
+                while (valueEnd < to && buf[valueEnd] != MessageDecoder.PROPERTY_SEPARATOR) {
+                    valueEnd++;
+                }
+                return new String(buf, valueStart, valueEnd - valueStart, MessageDecoder.CHARSET_UTF8);
+            }
+        }
+        return super.getProperty(name);
+    }
+
+    @Override
+    public boolean hasProperty(final String name) {
+        if ((this.pending & PROPERTIES) != 0 && name != null) {
+            byte[] buf = this.buffer;
+            if (buf != null) {
+                return findPropertyValue(buf, this.propertiesOffset, this.propertiesOffset + this.propertiesLength,
+                    name.getBytes(MessageDecoder.CHARSET_UTF8)) >= 0;
+            }
+        }
+        return super.hasProperty(name);
+    }
+
+    @Override
+    void putProperty(final String name, final String value) {
+        ensure(PROPERTIES);
+        super.putProperty(name, value);
+    }
+
+    @Override
+    void putLongProperty(final String name, final long value) {
+        ensure(PROPERTIES);
+        super.putLongProperty(name, value);
+    }
+
+    @Override
+    void clearProperty(final String name) {
+        ensure(PROPERTIES);
+        super.clearProperty(name);
+    }
+
+    @Override
+    public Map<String, String> getProperties() {
+        ensure(PROPERTIES);
+        return super.getProperties();
+    }
+
+    @Override
+    void setProperties(Map<String, String> properties) {
+        done(PROPERTIES);
+        super.setProperties(properties);
+    }
+
+    @Override
+    public byte[] getBody() {
+        ensure(BODY);
+        return super.getBody();
+    }
+
+    @Override
+    public void setBody(byte[] body) {
+        decode(ALL & ~BODY);
+        done(BODY);
+        super.setBody(body);
+    }
+
+    @Override
+    public String getTopic() {
+        ensure(TOPIC);
+        return super.getTopic();
+    }
+
+    @Override
+    public void setTopic(String topic) {
+        done(TOPIC);
+        super.setTopic(topic);
+    }
+
+    @Override
+    public SocketAddress getBornHost() {
+        ensure(BORN_HOST);
+        return super.getBornHost();
+    }
+
+    @Override
+    public void setBornHost(SocketAddress bornHost) {
+        done(BORN_HOST);
+        super.setBornHost(bornHost);
+    }
+
+    @Override
+    public String getBornHostString() {
+        ensure(BORN_HOST);
+        return super.getBornHostString();
+    }
+
+    @Override
+    public String getBornHostNameString() {
+        ensure(BORN_HOST);
+        return super.getBornHostNameString();
+    }
+
+    @Override
+    public ByteBuffer getBornHostBytes() {
+        ensure(BORN_HOST);
+        return super.getBornHostBytes();
+    }
+
+    @Override
+    public ByteBuffer getBornHostBytes(ByteBuffer byteBuffer) {
+        ensure(BORN_HOST);
+        return super.getBornHostBytes(byteBuffer);
+    }
+
+    @Override
+    public SocketAddress getStoreHost() {
+        ensure(STORE_HOST);
+        return super.getStoreHost();
+    }
+
+    @Override
+    public void setStoreHost(SocketAddress storeHost) {
+        done(STORE_HOST);
+        super.setStoreHost(storeHost);
+    }
+
+    @Override
+    public ByteBuffer getStoreHostBytes() {
+        ensure(STORE_HOST);
+        return super.getStoreHostBytes();
+    }
+
+    @Override
+    public ByteBuffer getStoreHostBytes(ByteBuffer byteBuffer) {
+        ensure(STORE_HOST);
+        return super.getStoreHostBytes(byteBuffer);
+    }
+
+    @Override
+    public String getOffsetMsgId() {
+        ensure(OFFSET_MSG_ID);
+        return super.getOffsetMsgId();
+    }
+
+    @Override
+    public void setOffsetMsgId(String offsetMsgId) {
+        done(OFFSET_MSG_ID);
+        super.setOffsetMsgId(offsetMsgId);
+    }
+
+    @Override
+    public String toString() {
+        materialize();
+        return super.toString();
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        materialize();
+        out.defaultWriteObject();
+    }
+}
@@ -4,7 +4,6 @@ package org.apache.rocketmq.common.message;
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Map;
 
 // 这就是 Broker 处理的消息。
@@ -54,12 +53,27 @@ public class Message implements Serializable {
 
     void putProperty(final String name, final String value) {
         if (null == this.properties) {
-            this.properties = new HashMap<>();
+            this.properties = new CompactPropertyMap();
         }
 
         this.properties.put(name, value);
     }
 
+    /**
+     * 数值型属性，{@link CompactPropertyMap} 上不生成 String
+     */
+    void putLongProperty(final String name, final long value) {
+        if (null == this.properties) {
+            this.properties = new CompactPropertyMap();
+        }
+
+        if (this.properties instanceof CompactPropertyMap) {
+            ((CompactPropertyMap) this.properties).putLong(name, value);
+        } else {
+            this.properties.put(name, Long.toString(value));
+        }
+    }
+
     void clearProperty(final String name) {
         if (null != this.properties) {
             this.properties.remove(name);
@@ -84,7 +98,7 @@ public class Message implements Serializable {
 
     public String getProperty(final String name) {
         if (null == this.properties) {
-            this.properties = new HashMap<>();
+            this.properties = new CompactPropertyMap();
         }
 
         return this.properties.get(name);
@@ -21,6 +21,10 @@ public class MessageAccessor {
         msg.putProperty(name, value);
     }
 
+    public static void putLongProperty(final Message msg, final String name, final long value) {
+        msg.putLongProperty(name, value);
+    }
+
 
     public static String getTransferFlag(final Message msg) {
         return msg.getProperty(MessageConst.PROPERTY_TRANSFER_FLAG);
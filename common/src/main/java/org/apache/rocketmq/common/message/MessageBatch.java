@@ -1,5 +1,6 @@
 package org.apache.rocketmq.common.message;
 
+import io.netty.buffer.ByteBuf;
 import org.apache.rocketmq.common.MixAll;
 
 import java.util.ArrayList;
@@ -12,6 +13,11 @@ public class MessageBatch extends Message implements Iterable<Message> {
 
     private static final long serialVersionUID = 621335151046335557L;
     private final List<Message> messages;
+    /**
+     * 流式编码时每条消息编码好的 properties，为 null 时按 byte[] body 发送
+     */
+    private transient byte[][] encodedProperties;
+    private transient int encodedSize;
 
     public MessageBatch(List<Message> messages) {
         this.messages = messages;
@@ -21,6 +27,50 @@ public class MessageBatch extends Message implements Iterable<Message> {
         return MessageDecoder.encodeMessages(messages);
     }
 
+    /**
+     * 开启流式编码：不生成 byte[] body（{@link #getBody()} 为 null），发送时由 {@link #encodeTo(ByteBuf)}
+     * 把每条消息直接写进请求的 ByteBuf。
+     *
+     * @param encodedProperties 与 messages 一一对应的 {@link MessageDecoder#encodeMessageProperties} 结果
+     */
+    public void enableStreamingEncode(byte[][] encodedProperties) {
+        if (encodedProperties.length != messages.size()) {
+            throw new IllegalArgumentException("encodedProperties size " + encodedProperties.length
+                + " does not match messages size " + messages.size());
+        }
+        int size = 0;
+        for (int i = 0; i < encodedProperties.length; i++) {
+            size += MessageDecoder.encodedMessageSize(messages.get(i), encodedProperties[i]);
+        }
+        this.encodedProperties = encodedProperties;
+        this.encodedSize = size;
+    }
+
+    public boolean isStreamingEncode() {
+        return encodedProperties != null;
+    }
+
+    /**
+     * 发送时 body 的长度，流式编码时为各条消息编码长度之和
+     */
+    public int getEncodedSize() {
+        return isStreamingEncode() ? encodedSize : getBody() == null ? 0 : getBody().length;
+    }
+
+    /**
+     * 按 {@link #encode()} 的格式把所有消息写入 out
+     */
+    public void encodeTo(ByteBuf out) {
+        if (!isStreamingEncode()) {
+            out.writeBytes(getBody());
+            return;
+        }
+        out.ensureWritable(encodedSize);
+        for (int i = 0; i < encodedProperties.length; i++) {
+            MessageDecoder.encodeMessage(messages.get(i), encodedProperties[i], out);
+        }
+    }
+
     public Iterator<Message> iterator() {
         return messages.iterator();
     }
@@ -1,6 +1,7 @@
 package org.apache.rocketmq.common.message;
 
 import org.apache.rocketmq.common.UtilAll;
+import org.apache.rocketmq.common.compression.CompressionType;
 import org.apache.rocketmq.common.compression.Compressor;
 import org.apache.rocketmq.common.compression.CompressorFactory;
 import org.apache.rocketmq.common.sysflag.MessageSysFlag;
@@ -12,7 +13,6 @@ import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -581,6 +581,122 @@ public class MessageDecoder {
         return null;
     }
 
+    /**
+     * 客户端解码拉取 / pop 响应用的懒解码：只读出定长字段，其余字段在 {@link LazyMessageClientExt} 上第一次访问时才解出来，
+     * 结果与 {@code decode(byteBuffer, readBody, deCompressBody, true)} 相同。不支持 CRC 校验。
+     * <p>
+     * 返回的消息直接引用 byteBuffer 的底层数组，调用方之后不能再改写这块缓冲区；非 heap 缓冲区退回到普通解码。
+     */
+    public static MessageExt decodeLazy(ByteBuffer byteBuffer, final boolean readBody, final boolean deCompressBody) {
+        if (!byteBuffer.hasArray()) {
+            return decode(byteBuffer, readBody, deCompressBody, true);
+        }
+        try {
+            final byte[] array = byteBuffer.array();
+            final int arrayOffset = byteBuffer.arrayOffset();
+            final int msgStart = byteBuffer.position();
+
+            // 1 TOTALSIZE
+            int storeSize = byteBuffer.getInt();
+            // 2 MAGICCODE
+            MessageVersion version = MessageVersion.valueOfMagicCode(byteBuffer.getInt());
+            // 3 BODYCRC
+            int bodyCRC = byteBuffer.getInt();
+            // 4 QUEUEID
+            int queueId = byteBuffer.getInt();
+            // 5 FLAG
+            int flag = byteBuffer.getInt();
+            // 6 QUEUEOFFSET
+            long queueOffset = byteBuffer.getLong();
+            // 7 PHYSICALOFFSET
+            long physicOffset = byteBuffer.getLong();
+            // 8 SYSFLAG
+            int sysFlag = byteBuffer.getInt();
+            // 9 BORNTIMESTAMP
+            long bornTimeStamp = byteBuffer.getLong();
+
+            // 10 BORNHOST
+            int bornHostIPLength = (sysFlag & MessageSysFlag.BORNHOST_V6_FLAG) == 0 ? 4 : 16;
+            int bornHostOffset = byteBuffer.position();
+            byteBuffer.position(bornHostOffset + bornHostIPLength + 4);
+
+            // 11 STORETIMESTAMP
+            long storeTimestamp = byteBuffer.getLong();
+
+            // 12 STOREHOST
+            int storeHostIPLength = (sysFlag & MessageSysFlag.STOREHOSTADDRESS_V6_FLAG) == 0 ? 4 : 16;
+            int storeHostOffset = byteBuffer.position();
+            byteBuffer.position(storeHostOffset + storeHostIPLength + 4);
+
+            // 13 RECONSUMETIMES
+            int reconsumeTimes = byteBuffer.getInt();
+            // 14 Prepared Transaction Offset
+            long preparedTransactionOffset = byteBuffer.getLong();
+
+            // 15 BODY
+            int bodyLen = byteBuffer.getInt();
+            int bodyOffset = byteBuffer.position();
+            CompressionType compressionType = null;
+            if (bodyLen > 0) {
+                byteBuffer.position(bodyOffset + bodyLen);
+                if (readBody && deCompressBody
+                    && (sysFlag & MessageSysFlag.COMPRESSED_FLAG) == MessageSysFlag.COMPRESSED_FLAG) {
+                    compressionType = MessageSysFlag.getCompressionType(sysFlag);
+                    // body 解压推迟到 getBody，sysFlag 与普通解码一样立即去掉压缩标记
+                    sysFlag &= ~MessageSysFlag.COMPRESSED_FLAG;
+                }
+            }
+
+            // 16 TOPIC
+            int topicLen = version.getTopicLength(byteBuffer);
+            int topicOffset = byteBuffer.position();
+            byteBuffer.position(topicOffset + topicLen);
+
+            // 17 properties
+            short propertiesLength = byteBuffer.getShort();
+            int propertiesOffset = byteBuffer.position();
+            if (propertiesLength > 0) {
+                byteBuffer.position(propertiesOffset + propertiesLength);
+            }
+
+            LazyMessageClientExt msgExt = new LazyMessageClientExt(array, arrayOffset + msgStart,
+                arrayOffset + bornHostOffset, bornHostIPLength, arrayOffset + storeHostOffset, storeHostIPLength,
+                arrayOffset + bodyOffset, readBody ? bodyLen : -1, compressionType,
+                arrayOffset + topicOffset, topicLen, arrayOffset + propertiesOffset, propertiesLength);
+            msgExt.setStoreSize(storeSize);
+            msgExt.setBodyCRC(bodyCRC);
+            msgExt.setQueueId(queueId);
+            msgExt.setFlag(flag);
+            msgExt.setQueueOffset(queueOffset);
+            msgExt.setCommitLogOffset(physicOffset);
+            msgExt.setSysFlag(sysFlag);
+            msgExt.setBornTimestamp(bornTimeStamp);
+            msgExt.setStoreTimestamp(storeTimestamp);
+            msgExt.setReconsumeTimes(reconsumeTimes);
+            msgExt.setPreparedTransactionOffset(preparedTransactionOffset);
+            return msgExt;
+        } catch (Exception e) {
+            byteBuffer.position(byteBuffer.limit());
+        }
+
+        return null;
+    }
+
+    public static List<MessageExt> decodesBatchLazy(ByteBuffer byteBuffer,
+                                                    final boolean readBody,
+                                                    final boolean decompressBody) {
+        List<MessageExt> msgExts = new ArrayList<>();
+        while (byteBuffer.hasRemaining()) {
+            MessageExt msgExt = decodeLazy(byteBuffer, readBody, decompressBody);
+            if (null != msgExt) {
+                msgExts.add(msgExt);
+            } else {
+                break;
+            }
+        }
+        return msgExts;
+    }
+
     public static List<MessageExt> decodes(ByteBuffer byteBuffer) {
         return decodes(byteBuffer, true);
     }
@@ -618,6 +734,12 @@ public class MessageDecoder {
         if (properties == null) {
             return "";
         }
+        if (properties instanceof CompactPropertyMap) {
+            CompactPropertyMap compact = (CompactPropertyMap) properties;
+            StringBuilder sb = new StringBuilder(compact.estimateEncodedLength());
+            compact.appendTo(sb);
+            return sb.toString();
+        }
         int len = 0;
         for (final Map.Entry<String, String> entry : properties.entrySet()) {
             final String name = entry.getKey();
@@ -648,28 +770,7 @@ public class MessageDecoder {
     }
 
     public static Map<String, String> string2messageProperties(final String properties) {
-        Map<String, String> map = new HashMap<>(128);
-        if (properties != null) {
-            int len = properties.length();
-            int index = 0;
-            while (index < len) {
-                int newIndex = properties.indexOf(PROPERTY_SEPARATOR, index);
-                if (newIndex < 0) {
-                    newIndex = len;
-                }
-                if (newIndex - index >= 3) {
-                    int kvSepIndex = properties.indexOf(NAME_VALUE_SEPARATOR, index);
-                    if (kvSepIndex > index && kvSepIndex < newIndex - 1) {
-                        String k = properties.substring(index, kvSepIndex);
-                        String v = properties.substring(kvSepIndex + 1, newIndex);
-                        map.put(k, v);
-                    }
-                }
-                index = newIndex + 1;
-            }
-        }
-
-        return map;
+        return CompactPropertyMap.parse(properties);
     }
 
     public static byte[] encodeMessage(Message message) {
@@ -711,6 +812,48 @@ public class MessageDecoder {
         return byteBuffer.array();
     }
 
+    /**
+     * 消息 properties 的编码结果，与 {@link #encodeMessage(Message, byte[], ByteBuf)} 配合使用
+     */
+    public static byte[] encodeMessageProperties(Message message) {
+        return messageProperties2String(message.getProperties()).getBytes(CHARSET_UTF8);
+    }
+
+    /**
+     * 按 {@link #encodeMessage(Message)} 的格式编码后的长度
+     */
+    public static int encodedMessageSize(Message message, byte[] propertiesBytes) {
+        return 4 // 1 TOTALSIZE
+            + 4 // 2 MAGICCOD
+            + 4 // 3 BODYCRC
+            + 4 // 4 FLAG
+            + 4 + message.getBody().length // 4 BODY
+            + 2 + (short) propertiesBytes.length;
+    }
+
+    /**
+     * 与 {@link #encodeMessage(Message)} 格式相同，直接写入 out，body 只拷贝这一次
+     */
+    public static void encodeMessage(Message message, byte[] propertiesBytes, ByteBuf out) {
+        byte[] body = message.getBody();
+        //note properties length must not more than Short.MAX
+        short propertiesLength = (short) propertiesBytes.length;
+        // 1 TOTALSIZE
+        out.writeInt(encodedMessageSize(message, propertiesBytes));
+        // 2 MAGICCODE
+        out.writeInt(0);
+        // 3 BODYCRC
+        out.writeInt(0);
+        // 4 FLAG
+        out.writeInt(message.getFlag());
+        // 5 BODY
+        out.writeInt(body.length);
+        out.writeBytes(body);
+        // 6 properties
+        out.writeShort(propertiesLength);
+        out.writeBytes(propertiesBytes, 0, propertiesLength);
+    }
+
     public static Message decodeMessage(ByteBuffer byteBuffer) throws Exception {
         Message message = new Message();
 
@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.common.consistenthash;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ConsistentHashRouterTest {
+
+    private static final int VIRTUAL_NODES = 10;
+
+    @Test
+    public void testRouteMatchesTreeMapRing() {
+        HashFunction hashFunction = new Murmur3Hash();
+        List<TestNode> nodes = nodes(0, 50);
+        ConsistentHashRouter<TestNode> router = new ConsistentHashRouter<>(nodes, VIRTUAL_NODES, hashFunction);
+
+        TreeMap<Long, TestNode> reference = new TreeMap<>();
+        for (TestNode node : nodes) {
+            for (int i = 0; i < VIRTUAL_NODES; i++) {
+                reference.put(hashFunction.hash(new VirtualNode<>(node, i).getKey()), node);
+            }
+        }
+        for (int i = 0; i < 2000; i++) {
+            String key = "queue-" + i;
+            long hash = hashFunction.hash(key);
+            SortedMap<Long, TestNode> tail = reference.tailMap(hash);
+            TestNode expected = tail.isEmpty() ? reference.firstEntry().getValue() : tail.get(tail.firstKey());
+            assertThat(router.routeNode(key)).isSameAs(expected);
+        }
+    }
+
+    @Test
+    public void testIncrementalUpdateMatchesRebuild() {
+        ConsistentHashRouter<TestNode> router = new ConsistentHashRouter<>(nodes(0, 30), VIRTUAL_NODES);
+        List<TestNode> removed = new ArrayList<>();
+        for (int i = 0; i < 30; i += 3) {
+            removed.add(new TestNode("client-" + i));
+        }
+        router.removeNodes(removed);
+        router.addNodes(nodes(30, 40), VIRTUAL_NODES);
+
+        List<TestNode> expectedNodes = new ArrayList<>();
+        for (TestNode node : nodes(0, 40)) {
+            if (!removed.contains(node)) {
+                expectedNodes.add(node);
+            }
+        }
+        ConsistentHashRouter<TestNode> rebuilt = new ConsistentHashRouter<>(expectedNodes, VIRTUAL_NODES);
+        for (int i = 0; i < 2000; i++) {
+            String key = "queue-" + i;
+            assertThat(router.routeNode(key).getKey()).isEqualTo(rebuilt.routeNode(key).getKey());
+        }
+        assertThat(router.getExistingReplicas(new TestNode("client-1"))).isEqualTo(VIRTUAL_NODES);
+        assertThat(router.getExistingReplicas(new TestNode("client-0"))).isZero();
+    }
+
+    @Test
+    public void testCopyIsIndependent() {
+        ConsistentHashRouter<TestNode> router = new ConsistentHashRouter<>(nodes(0, 10), VIRTUAL_NODES);
+        List<String> before = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            before.add(router.routeNode("queue-" + i).getKey());
+        }
+
+        ConsistentHashRouter<TestNode> copy = router.copy();
+        copy.removeNodes(nodes(0, 5));
+        copy.addNodes(nodes(10, 15), VIRTUAL_NODES);
+        for (int i = 0; i < 500; i++) {
+            assertThat(router.routeNode("queue-" + i).getKey()).isEqualTo(before.get(i));
+        }
+        assertThat(router.getExistingReplicas(new TestNode("client-12"))).isEqualTo(0);
+        assertThat(copy.getExistingReplicas(new TestNode("client-12"))).isEqualTo(VIRTUAL_NODES);
+        assertThat(copy.getExistingReplicas(new TestNode("client-2"))).isEqualTo(0);
+    }
+
+    @Test
+    public void testDefaultHashSpreadsQueues() {
+        ConsistentHashRouter<TestNode> router = new ConsistentHashRouter<>(nodes(0, 8), VIRTUAL_NODES);
+        Set<String> owners = new HashSet<>();
+        for (int i = 0; i < 256; i++) {
+            owners.add(router.routeNode("queue-" + i).getKey());
+        }
+        assertThat(owners.size()).isGreaterThan(1);
+    }
+
+    @Test
+    public void testEmptyRing() {
+        ConsistentHashRouter<TestNode> router = new ConsistentHashRouter<>(null, VIRTUAL_NODES);
+        assertThat(router.routeNode("queue-0")).isNull();
+        router.addNode(new TestNode("client-0"), VIRTUAL_NODES);
+        assertThat(router.routeNode("queue-0").getKey()).isEqualTo("client-0");
+        router.removeNode(new TestNode("client-0"));
+        assertThat(router.routeNode("queue-0")).isNull();
+    }
+
+    private static List<TestNode> nodes(int from, int to) {
+        List<TestNode> nodes = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            nodes.add(new TestNode("client-" + i));
+        }
+        return nodes;
+    }
+
+    private static class TestNode implements Node {
+        private final String key;
+
+        TestNode(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof TestNode && key.equals(((TestNode) o).key);
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode();
+        }
+    }
+}
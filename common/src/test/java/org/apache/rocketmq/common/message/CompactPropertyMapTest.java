@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.common.message;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CompactPropertyMapTest {
+
+    @Test
+    public void testParseMatchesHashMap() {
+        Map<String, String> expect = new HashMap<>();
+        expect.put(MessageConst.PROPERTY_TAGS, "TagA");
+        expect.put(MessageConst.PROPERTY_KEYS, "k1 k2");
+        expect.put(MessageConst.PROPERTY_MIN_OFFSET, "123");
+        expect.put(MessageConst.PROPERTY_MAX_OFFSET, "00123");
+        expect.put(MessageConst.PROPERTY_DELAY_TIME_LEVEL, "-0");
+        expect.put(MessageConst.PROPERTY_RECONSUME_TIME, "99999999999999999999");
+        expect.put("userKey", "中文");
+
+        String encoded = MessageDecoder.messageProperties2String(expect);
+        CompactPropertyMap fromString = CompactPropertyMap.parse(encoded);
+        byte[] bytes = encoded.getBytes(StandardCharsets.UTF_8);
+        CompactPropertyMap fromBytes = CompactPropertyMap.parse(bytes, 0, bytes.length);
+
+        assertThat(fromString).isEqualTo(expect);
+        assertThat(fromBytes).isEqualTo(expect);
+        assertThat(MessageDecoder.string2messageProperties(MessageDecoder.messageProperties2String(fromBytes)))
+            .isEqualTo(expect);
+    }
+
+    @Test
+    public void testWellKnownKeysAreShared() {
+        String encoded = MessageConst.PROPERTY_TAGS + MessageDecoder.NAME_VALUE_SEPARATOR + "TagA"
+            + MessageDecoder.PROPERTY_SEPARATOR;
+        CompactPropertyMap map = CompactPropertyMap.parse(new String(encoded.toCharArray()));
+        assertThat(map.keySet().iterator().next()).isSameAs(MessageConst.PROPERTY_TAGS);
+
+        byte[] bytes = encoded.getBytes(StandardCharsets.UTF_8);
+        map = CompactPropertyMap.parse(bytes, 0, bytes.length);
+        assertThat(map.keySet().iterator().next()).isSameAs(MessageConst.PROPERTY_TAGS);
+    }
+
+    @Test
+    public void testLongSlots() {
+        CompactPropertyMap map = new CompactPropertyMap(1);
+        map.putLong(MessageConst.PROPERTY_MIN_OFFSET, 10L);
+        map.put(MessageConst.PROPERTY_TAGS, "TagA");
+        map.putLong(MessageConst.PROPERTY_MAX_OFFSET, -20L);
+
+        assertThat(map.getLong(MessageConst.PROPERTY_MIN_OFFSET, 0L)).isEqualTo(10L);
+        assertThat(map.get(MessageConst.PROPERTY_MAX_OFFSET)).isEqualTo("-20");
+        assertThat(map.getLong(MessageConst.PROPERTY_TAGS, -1L)).isEqualTo(-1L);
+        assertThat(map.getLong("absent", -1L)).isEqualTo(-1L);
+        assertThat(MessageDecoder.string2messageProperties(MessageDecoder.messageProperties2String(map)))
+            .containsEntry(MessageConst.PROPERTY_MIN_OFFSET, "10")
+            .containsEntry(MessageConst.PROPERTY_MAX_OFFSET, "-20")
+            .containsEntry(MessageConst.PROPERTY_TAGS, "TagA");
+
+        assertThat(map.put(MessageConst.PROPERTY_MIN_OFFSET, "11")).isEqualTo("10");
+        assertThat(map.getLong(MessageConst.PROPERTY_MIN_OFFSET, 0L)).isEqualTo(11L);
+    }
+
+    @Test
+    public void testRemove() {
+        CompactPropertyMap map = new CompactPropertyMap();
+        for (int i = 0; i < 20; i++) {
+            map.put("k" + i, "v" + i);
+        }
+        map.putLong(MessageConst.PROPERTY_MIN_OFFSET, 1L);
+        assertThat(map.remove("k0")).isEqualTo("v0");
+        assertThat(map.remove("absent")).isNull();
+
+        Iterator<Map.Entry<String, String>> it = map.entrySet().iterator();
+        while (it.hasNext()) {
+            if (it.next().getKey().startsWith("k1")) {
+                it.remove();
+            }
+        }
+        assertThat(map).hasSize(9);
+        assertThat(map.get("k2")).isEqualTo("v2");
+        assertThat(map.get(MessageConst.PROPERTY_MIN_OFFSET)).isEqualTo("1");
+        map.clear();
+        assertThat(map).isEmpty();
+    }
+}
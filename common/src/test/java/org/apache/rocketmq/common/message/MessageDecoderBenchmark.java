@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.common.message;
+
+import java.io.ByteArrayOutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 按客户端处理一次拉取响应的方式解码 32 条消息的批次：{@link MessageDecoder#decodesBatch} 与 {@link MessageDecoder#decodesBatchLazy}。
+ * <p>
+ * filter* 只有 1/{@code keepEvery} 的消息 tag 命中，命中的才读 body / topic / msgId，其余只读 tag；
+ * consumeAll* 每条消息都读完 body / topic / properties / msgId / bornHost。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageDecoderBenchmark {
+
+    private static final int BATCH_SIZE = 32;
+    private static final String KEEP_TAG = "TagKeep";
+
+    @Param({"1024"})
+    private int bodySize;
+
+    @Param({"4"})
+    private int keepEvery;
+
+    private byte[] pullResponse;
+
+    @Setup
+    public void setup() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] body = new byte[bodySize];
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            MessageExt msg = new MessageExt();
+            msg.setTopic("BenchmarkTopic");
+            msg.setBody(body);
+            msg.setBornHost(new InetSocketAddress("127.0.0.1", 30000 + i));
+            msg.setStoreHost(new InetSocketAddress("127.0.0.2", 10911));
+            msg.setQueueId(1);
+            msg.setQueueOffset(i);
+            msg.setCommitLogOffset(1024L * i);
+            msg.setBornTimestamp(System.currentTimeMillis());
+            msg.setStoreTimestamp(System.currentTimeMillis());
+            msg.setTags(i % keepEvery == 0 ? KEEP_TAG : "TagDrop");
+            msg.setKeys("key-" + i);
+            MessageAccessor.putProperty(msg, MessageConst.PROPERTY_UNIQ_CLIENT_MESSAGE_ID_KEYIDX,
+                "7F00000100002A9F0000000000" + String.format("%06d", i));
+            msg.putUserProperty("userKey", "userValue-" + i);
+            out.write(MessageDecoder.encode(msg, false));
+        }
+        pullResponse = out.toByteArray();
+    }
+
+    @Benchmark
+    public void filterEager(Blackhole bh) {
+        filter(MessageDecoder.decodesBatch(ByteBuffer.wrap(pullResponse), true, true, true), bh);
+    }
+
+    @Benchmark
+    public void filterLazy(Blackhole bh) {
+        filter(MessageDecoder.decodesBatchLazy(ByteBuffer.wrap(pullResponse), true, true), bh);
+    }
+
+    @Benchmark
+    public void consumeAllEager(Blackhole bh) {
+        consumeAll(MessageDecoder.decodesBatch(ByteBuffer.wrap(pullResponse), true, true, true), bh);
+    }
+
+    @Benchmark
+    public void consumeAllLazy(Blackhole bh) {
+        consumeAll(MessageDecoder.decodesBatchLazy(ByteBuffer.wrap(pullResponse), true, true), bh);
+    }
+
+    private static void filter(List<MessageExt> msgList, Blackhole bh) {
+        for (MessageExt msg : msgList) {
+            if (KEEP_TAG.equals(msg.getTags())) {
+                bh.consume(msg.getTopic());
+                bh.consume(msg.getBody());
+                bh.consume(msg.getMsgId());
+            }
+        }
+    }
+
+    private static void consumeAll(List<MessageExt> msgList, Blackhole bh) {
+        for (MessageExt msg : msgList) {
+            bh.consume(msg.getTopic());
+            bh.consume(msg.getBody());
+            bh.consume(msg.getProperties());
+            bh.consume(msg.getMsgId());
+            bh.consume(msg.getBornHost());
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+            .include(MessageDecoderBenchmark.class.getSimpleName())
+            .build();
+        new Runner(options).run();
+    }
+}
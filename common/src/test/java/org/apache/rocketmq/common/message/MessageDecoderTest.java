@@ -17,6 +17,8 @@
 
 package org.apache.rocketmq.common.message;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import org.apache.rocketmq.common.UtilAll;
 import org.apache.rocketmq.common.sysflag.MessageSysFlag;
 import org.junit.Test;
@@ -25,6 +27,8 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import static org.apache.rocketmq.common.message.MessageDecoder.*;
@@ -415,6 +419,101 @@ public class MessageDecoderTest {
         verifyMessageId(msgExt);
     }
 
+    @Test
+    public void testDecodeLazyMatchesDecode() throws Exception {
+        MessageExt plain = new MessageExt();
+        plain.setTopic("lazyTopic");
+        plain.setBody("hello lazy".getBytes());
+        plain.setBornHost(new InetSocketAddress("127.0.0.1", 10911));
+        plain.setStoreHost(new InetSocketAddress("127.0.0.2", 10912));
+        plain.setCommitLogOffset(123456);
+        plain.setQueueOffset(7);
+        plain.setTags("TagA");
+        plain.putUserProperty("a", "1");
+        plain.putUserProperty("key", "中文");
+
+        MessageExt compressed = new MessageExt();
+        compressed.setBornHostV6Flag();
+        compressed.setStoreHostAddressV6Flag();
+        compressed.setSysFlag(compressed.getSysFlag() | MessageSysFlag.COMPRESSED_FLAG | MessageSysFlag.COMPRESSION_ZLIB_TYPE);
+        compressed.setTopic("lazyTopic");
+        compressed.setBody("hello compressed hello compressed".getBytes());
+        compressed.setBornHost(new InetSocketAddress(InetAddress.getByName("1050:0000:0000:0000:0005:0600:300c:326b"), 1));
+        compressed.setStoreHost(new InetSocketAddress(InetAddress.getByName("::1"), 2));
+        compressed.setCommitLogOffset(654321);
+
+        byte[] first = MessageDecoder.encode(plain, false);
+        byte[] second = MessageDecoder.encode(compressed, true);
+        byte[] batch = new byte[first.length + second.length];
+        System.arraycopy(first, 0, batch, 0, first.length);
+        System.arraycopy(second, 0, batch, first.length, second.length);
+
+        List<MessageExt> eager = MessageDecoder.decodesBatch(ByteBuffer.wrap(batch), true, true, true);
+        List<MessageExt> lazy = MessageDecoder.decodesBatchLazy(ByteBuffer.wrap(batch), true, true);
+        assertThat(lazy).hasSize(2);
+        for (int i = 0; i < lazy.size(); i++) {
+            MessageExt expect = eager.get(i);
+            MessageExt actual = lazy.get(i);
+            assertThat(actual).isInstanceOf(LazyMessageClientExt.class);
+            assertThat(actual.getSysFlag()).isEqualTo(expect.getSysFlag());
+            assertThat(actual.getQueueOffset()).isEqualTo(expect.getQueueOffset());
+            assertThat(actual.getTags()).isEqualTo(expect.getTags());
+            assertThat(actual.getProperty("key")).isEqualTo(expect.getProperty("key"));
+            assertThat(actual.hasProperty("absent")).isFalse();
+            assertThat(((LazyMessageClientExt) actual).isMaterialized()).isFalse();
+
+            assertThat(actual.getTopic()).isEqualTo(expect.getTopic());
+            assertThat(((LazyMessageClientExt) actual).isMaterialized()).isFalse();
+            // 拷出 body 后不再持有缓冲区
+            assertThat(actual.getBody()).isEqualTo(expect.getBody());
+            assertThat(((LazyMessageClientExt) actual).isMaterialized()).isTrue();
+            assertThat(actual.getBornHost()).isEqualTo(expect.getBornHost());
+            assertThat(actual.getStoreHost()).isEqualTo(expect.getStoreHost());
+            assertThat(actual.getMsgId()).isEqualTo(expect.getMsgId());
+            assertThat(((MessageClientExt) actual).getOffsetMsgId()).isEqualTo(((MessageClientExt) expect).getOffsetMsgId());
+            assertThat(actual.getProperties()).isEqualTo(expect.getProperties());
+            assertThat(((LazyMessageClientExt) actual).isMaterialized()).isTrue();
+        }
+    }
+
+    @Test
+    public void testDecodeLazyAfterSetter() throws Exception {
+        MessageExt msg = new MessageExt();
+        msg.setTopic("lazyTopic");
+        msg.setBody("body".getBytes());
+        msg.setBornHost(new InetSocketAddress("127.0.0.1", 0));
+        msg.setStoreHost(new InetSocketAddress("127.0.0.1", 0));
+        msg.setTags("TagA");
+
+        MessageExt lazy = MessageDecoder.decodeLazy(ByteBuffer.wrap(MessageDecoder.encode(msg, false)), true, true);
+        assertThat(lazy).isNotNull();
+        lazy.setBody("other".getBytes());
+        assertThat(((LazyMessageClientExt) lazy).isMaterialized()).isTrue();
+        lazy.setTopic("otherTopic");
+        MessageAccessor.putProperty(lazy, MessageConst.PROPERTY_MIN_OFFSET, "3");
+
+        assertThat(lazy.getBody()).isEqualTo("other".getBytes());
+        assertThat(lazy.getTopic()).isEqualTo("otherTopic");
+        assertThat(lazy.getTags()).isEqualTo("TagA");
+        assertThat(lazy.getProperty(MessageConst.PROPERTY_MIN_OFFSET)).isEqualTo("3");
+    }
+
+    @Test
+    public void testDecodeLazyTruncated() throws Exception {
+        MessageExt msg = new MessageExt();
+        msg.setTopic("lazyTopic");
+        msg.setBody("body".getBytes());
+        msg.setBornHost(new InetSocketAddress("127.0.0.1", 0));
+        msg.setStoreHost(new InetSocketAddress("127.0.0.1", 0));
+
+        byte[] bytes = MessageDecoder.encode(msg, false);
+        byte[] batch = new byte[bytes.length * 2 - 3];
+        System.arraycopy(bytes, 0, batch, 0, bytes.length);
+        System.arraycopy(bytes, 0, batch, bytes.length, bytes.length - 3);
+
+        assertThat(MessageDecoder.decodesBatchLazy(ByteBuffer.wrap(batch), true, true)).hasSize(1);
+    }
+
     private void verifyMessageId(MessageExt msgExt) throws UnknownHostException {
         int storehostIPLength = (msgExt.getSysFlag() & MessageSysFlag.STOREHOSTADDRESS_V6_FLAG) == 0 ? 4 : 16;
         int msgIDLength = storehostIPLength + 4 + 8;
@@ -425,4 +524,37 @@ public class MessageDecoderTest {
         assertThat(messageId.getAddress()).isEqualTo(msgExt.getStoreHost());
         assertThat(messageId.getOffset()).isEqualTo(msgExt.getCommitLogOffset());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testStreamingBatchEncodeMatchesEncode() throws Exception {
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Message message = new Message("topic", "tag" + i, "key" + i, ("body-" + i).getBytes());
+            message.setFlag(i);
+            MessageClientIDSetter.setUniqID(message);
+            messages.add(message);
+        }
+        byte[] expected = encodeMessages(messages);
+
+        byte[][] encodedProperties = new byte[messages.size()][];
+        for (int i = 0; i < messages.size(); i++) {
+            encodedProperties[i] = encodeMessageProperties(messages.get(i));
+        }
+        MessageBatch messageBatch = new MessageBatch(messages);
+        messageBatch.enableStreamingEncode(encodedProperties);
+        assertThat(messageBatch.isStreamingEncode()).isTrue();
+        assertThat(messageBatch.getBody()).isNull();
+        assertThat(messageBatch.getEncodedSize()).isEqualTo(expected.length);
+
+        ByteBuf out = Unpooled.buffer(1);
+        messageBatch.encodeTo(out);
+        byte[] actual = new byte[out.readableBytes()];
+        out.readBytes(actual);
+        assertThat(actual).isEqualTo(expected);
+
+        List<Message> decoded = decodeMessages(ByteBuffer.wrap(actual));
+        assertThat(decoded).hasSize(3);
+        assertThat(decoded.get(2).getFlag()).isEqualTo(2);
+        assertThat(decoded.get(2).getKeys()).isEqualTo("key2");
+    }
+}
@@ -3,11 +3,13 @@ package org.apache.rocketmq.namesrv.kvconfig;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.rocketmq.common.MixAll;
 import org.apache.rocketmq.common.constant.LoggerName;
+import org.apache.rocketmq.common.namesrv.NamesrvUtil;
 import org.apache.rocketmq.logging.org.slf4j.Logger;
 import org.apache.rocketmq.logging.org.slf4j.LoggerFactory;
 import org.apache.rocketmq.namesrv.NamesrvController;
@@ -42,6 +44,7 @@ public class KVConfigManager {
     }
 
     public void putKVConfig(final String namespace, final String key, final String value) {
+        boolean changed = false;
         try {
             this.lock.writeLock().lockInterruptibly();
             try {
@@ -53,6 +56,7 @@ public class KVConfigManager {
                 }
 
                 final String prev = kvTable.put(key, value);
+                changed = !Objects.equals(prev, value);
                 if (null != prev) {
                     log.info("putKVConfig update config item, Namespace: {} Key: {} Value: {}",
                             namespace, key, value);
@@ -68,6 +72,9 @@ public class KVConfigManager {
         }
 
         this.persist();
+        if (changed) {
+            this.onConfigChanged(namespace, key);
+        }
     }
 
     // 持久化
@@ -95,12 +102,14 @@ public class KVConfigManager {
     }
 
     public void deleteKVConfig(final String namespace, final String key) {
+        boolean changed = false;
         try {
             this.lock.writeLock().lockInterruptibly();
             try {
                 HashMap<String, String> kvTable = this.configTable.get(namespace);
                 if (null != kvTable) {
                     String value = kvTable.remove(key);
+                    changed = value != null;
                     log.info("deleteKVConfig delete a config item, Namespace: {} Key: {} Value: {}",
                             namespace, key, value);
                 }
@@ -112,6 +121,19 @@ public class KVConfigManager {
         }
 
         this.persist();
+        if (changed) {
+            this.onConfigChanged(namespace, key);
+        }
+    }
+
+    /**
+     * 顺序 topic 配置随路由一起下发，变化时要让该 topic 的路由版本号前进，否则增量路由客户端收不到。
+     * 在 KV 锁外调用，避免与路由表的锁嵌套
+     */
+    private void onConfigChanged(final String namespace, final String key) {
+        if (NamesrvUtil.NAMESPACE_ORDER_TOPIC_CONFIG.equals(namespace)) {
+            this.namesrvController.getRouteInfoManager().onOrderTopicConfChanged(key);
+        }
     }
 
 
@@ -0,0 +1,8 @@
+package org.apache.rocketmq.namesrv.metrics;
+
+public class NamesrvMetricsConstant {
+    public static final String COUNTER_ROUTE_CACHE_HIT_TOTAL = "rocketmq_namesrv_route_cache_hit_total";
+    public static final String COUNTER_ROUTE_CACHE_MISS_TOTAL = "rocketmq_namesrv_route_cache_miss_total";
+    public static final String COUNTER_ROUTE_CACHE_BYTES_SAVED_TOTAL = "rocketmq_namesrv_route_cache_bytes_saved_total";
+    public static final String GAUGE_ROUTE_CACHE_SIZE = "rocketmq_namesrv_route_cache_size";
+}
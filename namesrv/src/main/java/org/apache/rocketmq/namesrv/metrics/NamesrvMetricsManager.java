@@ -0,0 +1,43 @@
+package org.apache.rocketmq.namesrv.metrics;
+
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.common.AttributesBuilder;
+import io.opentelemetry.api.metrics.Meter;
+import java.util.function.Supplier;
+import org.apache.rocketmq.namesrv.routeinfo.TopicRouteResponseCache;
+
+import static org.apache.rocketmq.namesrv.metrics.NamesrvMetricsConstant.COUNTER_ROUTE_CACHE_BYTES_SAVED_TOTAL;
+import static org.apache.rocketmq.namesrv.metrics.NamesrvMetricsConstant.COUNTER_ROUTE_CACHE_HIT_TOTAL;
+import static org.apache.rocketmq.namesrv.metrics.NamesrvMetricsConstant.COUNTER_ROUTE_CACHE_MISS_TOTAL;
+import static org.apache.rocketmq.namesrv.metrics.NamesrvMetricsConstant.GAUGE_ROUTE_CACHE_SIZE;
+
+public class NamesrvMetricsManager {
+    public static Supplier<AttributesBuilder> attributesBuilderSupplier;
+
+    public static AttributesBuilder newAttributesBuilder() {
+        if (attributesBuilderSupplier == null) {
+            return Attributes.builder();
+        }
+        return attributesBuilderSupplier.get();
+    }
+
+    public static void initMetrics(Meter meter, Supplier<AttributesBuilder> attributesBuilderSupplier,
+        TopicRouteResponseCache routeResponseCache) {
+        NamesrvMetricsManager.attributesBuilderSupplier = attributesBuilderSupplier;
+        // 命中率 = hit / (hit + miss)，由监控端计算
+        meter.counterBuilder(COUNTER_ROUTE_CACHE_HIT_TOTAL)
+            .setDescription("Route responses served from the encoded route cache")
+            .buildWithCallback(measurement -> measurement.record(routeResponseCache.getHitCount(), newAttributesBuilder().build()));
+        meter.counterBuilder(COUNTER_ROUTE_CACHE_MISS_TOTAL)
+            .setDescription("Route responses encoded because the route cache missed")
+            .buildWithCallback(measurement -> measurement.record(routeResponseCache.getMissCount(), newAttributesBuilder().build()));
+        meter.counterBuilder(COUNTER_ROUTE_CACHE_BYTES_SAVED_TOTAL)
+            .setDescription("Route response bytes served without re-encoding")
+            .setUnit("bytes")
+            .buildWithCallback(measurement -> measurement.record(routeResponseCache.getBytesSaved(), newAttributesBuilder().build()));
+        meter.gaugeBuilder(GAUGE_ROUTE_CACHE_SIZE)
+            .setDescription("Topics with a cached route response")
+            .ofLongs()
+            .buildWithCallback(measurement -> measurement.record(routeResponseCache.size(), newAttributesBuilder().build()));
+    }
+}
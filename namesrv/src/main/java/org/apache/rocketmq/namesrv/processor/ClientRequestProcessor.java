@@ -3,8 +3,10 @@ package org.apache.rocketmq.namesrv.processor;
 import com.alibaba.fastjson.serializer.SerializerFeature;
 import io.netty.channel.ChannelHandlerContext;
 
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.rocketmq.common.MQVersion;
 import org.apache.rocketmq.common.constant.LoggerName;
@@ -13,10 +15,16 @@ import org.apache.rocketmq.common.namesrv.NamesrvUtil;
 import org.apache.rocketmq.logging.org.slf4j.Logger;
 import org.apache.rocketmq.logging.org.slf4j.LoggerFactory;
 import org.apache.rocketmq.namesrv.NamesrvController;
+import org.apache.rocketmq.namesrv.routeinfo.TopicRouteResponseCache;
 import org.apache.rocketmq.remoting.exception.RemotingCommandException;
 import org.apache.rocketmq.remoting.netty.NettyRequestProcessor;
+import org.apache.rocketmq.remoting.protocol.BinaryBodyCodec;
 import org.apache.rocketmq.remoting.protocol.RemotingCommand;
+import org.apache.rocketmq.remoting.protocol.RequestCode;
 import org.apache.rocketmq.remoting.protocol.ResponseCode;
+import org.apache.rocketmq.remoting.protocol.body.GetRouteInfoDeltaRequestBody;
+import org.apache.rocketmq.remoting.protocol.body.GetRouteInfoDeltaResponseBody;
+import org.apache.rocketmq.remoting.protocol.header.namesrv.GetRouteInfoDeltaRequestHeader;
 import org.apache.rocketmq.remoting.protocol.header.namesrv.GetRouteInfoRequestHeader;
 import org.apache.rocketmq.remoting.protocol.route.TopicRouteData;
 
@@ -25,6 +33,7 @@ public class ClientRequestProcessor implements NettyRequestProcessor {
 
     protected NamesrvController namesrvController;
     private long startupTimeMillis;
+    private AtomicBoolean needCheckNamesrvReady = new AtomicBoolean(true);
 
     public ClientRequestProcessor(final NamesrvController namesrvController) {
         this.namesrvController = namesrvController;
@@ -33,7 +42,107 @@ public class ClientRequestProcessor implements NettyRequestProcessor {
 
     @Override
     public RemotingCommand processRequest(ChannelHandlerContext ctx, RemotingCommand request) throws Exception {
-        return null;
+        if (request.getCode() == RequestCode.GET_ROUTEINFO_DELTA_BY_TOPICS) {
+            return this.getRouteInfoDeltaByTopics(ctx, request);
+        }
+        return this.getRouteInfoByTopic(ctx, request);
+    }
+
+    public RemotingCommand getRouteInfoByTopic(ChannelHandlerContext ctx,
+        RemotingCommand request) throws RemotingCommandException {
+        final RemotingCommand response = RemotingCommand.createResponseCommand(null);
+        final GetRouteInfoRequestHeader requestHeader =
+            (GetRouteInfoRequestHeader) request.decodeCommandCustomHeader(GetRouteInfoRequestHeader.class);
+
+        boolean namesrvReady = needCheckNamesrvReady.get() && System.currentTimeMillis() - startupTimeMillis >= TimeUnit.SECONDS.toMillis(namesrvController.getNamesrvConfig().getWaitSecondsForService());
+
+        if (namesrvController.getNamesrvConfig().isNeedWaitForService() && !namesrvReady) {
+            log.warn("name remoting_server not ready. request code {} ", request.getCode());
+            response.setCode(ResponseCode.SYSTEM_ERROR);
+            response.setRemark("name remoting_server not ready");
+            return response;
+        }
+
+        String orderTopicConf = null;
+        if (this.namesrvController.getNamesrvConfig().isOrderMessageEnable()) {
+            orderTopicConf = this.namesrvController.getKvConfigManager().getKVConfig(NamesrvUtil.NAMESPACE_ORDER_TOPIC_CONFIG,
+                requestHeader.getTopic());
+        }
+
+        // 响应体按 topic 缓存在 TopicRouteResponseCache 里，路由没有变化时直接复用编码好的字节
+        Boolean standardJsonOnly = Optional.ofNullable(requestHeader.getAcceptStandardJsonOnly()).orElse(false);
+        Boolean binaryBody = Optional.ofNullable(requestHeader.getAcceptBinaryBody()).orElse(false);
+        TopicRouteResponseCache.BodyFormat format;
+        if (standardJsonOnly) {
+            format = TopicRouteResponseCache.BodyFormat.STANDARD_JSON;
+        } else if (binaryBody) {
+            format = TopicRouteResponseCache.BodyFormat.BINARY;
+        } else if (request.getVersion() >= MQVersion.Version.V4_9_4.ordinal()) {
+            format = TopicRouteResponseCache.BodyFormat.STANDARD_JSON;
+        } else {
+            format = TopicRouteResponseCache.BodyFormat.JSON;
+        }
+        byte[] content = this.namesrvController.getRouteInfoManager().pickupTopicRouteBody(requestHeader.getTopic(),
+            orderTopicConf, format);
+
+        if (content != null) {
+            //topic route info register success ,so disable namesrvReady check
+            if (needCheckNamesrvReady.get()) {
+                needCheckNamesrvReady.set(false);
+            }
+
+            response.setBody(content);
+            response.setCode(ResponseCode.SUCCESS);
+            response.setRemark(null);
+            return response;
+        }
+
+        response.setCode(ResponseCode.TOPIC_NOT_EXIST);
+        response.setRemark("No topic route info in name server for the topic: " + requestHeader.getTopic()
+            + FAQUrl.suggestTodo(FAQUrl.APPLY_TOPIC_URL));
+        return response;
+    }
+
+    public RemotingCommand getRouteInfoDeltaByTopics(ChannelHandlerContext ctx,
+        RemotingCommand request) throws RemotingCommandException {
+        final RemotingCommand response = RemotingCommand.createResponseCommand(null);
+        final GetRouteInfoDeltaRequestHeader requestHeader =
+            (GetRouteInfoDeltaRequestHeader) request.decodeCommandCustomHeader(GetRouteInfoDeltaRequestHeader.class);
+
+        if (request.getBody() == null) {
+            response.setCode(ResponseCode.SYSTEM_ERROR);
+            response.setRemark("topic route versions are required");
+            return response;
+        }
+        GetRouteInfoDeltaRequestBody requestBody = GetRouteInfoDeltaRequestBody.decode(request.getBody(),
+            GetRouteInfoDeltaRequestBody.class);
+
+        long routeEpoch = Optional.ofNullable(requestHeader.getRouteEpoch()).orElse(0L);
+        GetRouteInfoDeltaResponseBody responseBody = this.namesrvController.getRouteInfoManager()
+            .pickupTopicRouteDelta(requestBody.getTopicRouteVersions(), routeEpoch);
+
+        // 顺序 topic 配置变化时 KVConfigManager 会推进该 topic 的路由版本号，这里随变化了的 topic 一起下发
+        if (this.namesrvController.getNamesrvConfig().isOrderMessageEnable()) {
+            for (Map.Entry<String, TopicRouteData> entry : responseBody.getTopicRouteTable().entrySet()) {
+                entry.getValue().setOrderTopicConf(this.namesrvController.getKvConfigManager()
+                    .getKVConfig(NamesrvUtil.NAMESPACE_ORDER_TOPIC_CONFIG, entry.getKey()));
+            }
+        }
+
+        Boolean standardJsonOnly = Optional.ofNullable(requestHeader.getAcceptStandardJsonOnly()).orElse(false);
+        Boolean binaryBody = Optional.ofNullable(requestHeader.getAcceptBinaryBody()).orElse(false);
+        if (!standardJsonOnly && binaryBody) {
+            response.setBody(BinaryBodyCodec.encode(responseBody));
+        } else if (standardJsonOnly) {
+            response.setBody(responseBody.encode(SerializerFeature.BrowserCompatible,
+                SerializerFeature.QuoteFieldNames, SerializerFeature.SkipTransientField,
+                SerializerFeature.MapSortField));
+        } else {
+            response.setBody(responseBody.encode());
+        }
+        response.setCode(ResponseCode.SUCCESS);
+        response.setRemark(null);
+        return response;
     }
 
     @Override
@@ -8,13 +8,15 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -40,6 +42,7 @@ import org.apache.rocketmq.remoting.protocol.RemotingCommand;
 import org.apache.rocketmq.remoting.protocol.RequestCode;
 import org.apache.rocketmq.remoting.protocol.body.BrokerMemberGroup;
 import org.apache.rocketmq.remoting.protocol.body.ClusterInfo;
+import org.apache.rocketmq.remoting.protocol.body.GetRouteInfoDeltaResponseBody;
 import org.apache.rocketmq.remoting.protocol.body.TopicConfigAndMappingSerializeWrapper;
 import org.apache.rocketmq.remoting.protocol.body.TopicConfigSerializeWrapper;
 import org.apache.rocketmq.remoting.protocol.body.TopicList;
@@ -61,6 +64,13 @@ public class RouteInfoManager {
     private final Map<BrokerAddrInfo/* brokerAddr */, BrokerLiveInfo> brokerLiveTable;
     private final Map<BrokerAddrInfo/* brokerAddr */, List<String>/* Filter Server */> filterServerTable;
     private final Map<String/* topic */, Map<String/*brokerName*/, TopicQueueMappingInfo>> topicQueueMappingInfoTable;
+    // 路由快照，查询路径无锁读取；影响某个 topic 路由的写操作都在写锁内给该 topic 打一个新的版本号，使旧快照失效
+    private final ConcurrentMap<String/* topic */, TopicRouteSnapshot> topicRouteSnapshotTable;
+    private final ConcurrentMap<String/* topic */, Long/* route version */> topicRouteVersionTable;
+    private final AtomicLong routeVersion = new AtomicLong(0);
+    // 路由版本号只在本实例内有意义，客户端换了 name server 或本实例重启后靠 epoch 识别
+    private final long routeEpoch = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+    private final TopicRouteResponseCache topicRouteResponseCache;
 
     private final BatchUnregistrationService unRegisterService;
 
@@ -74,6 +84,9 @@ public class RouteInfoManager {
         this.brokerLiveTable = new ConcurrentHashMap<>(256);
         this.filterServerTable = new ConcurrentHashMap<>(256);
         this.topicQueueMappingInfoTable = new ConcurrentHashMap<>(1024);
+        this.topicRouteSnapshotTable = new ConcurrentHashMap<>(1024);
+        this.topicRouteVersionTable = new ConcurrentHashMap<>(1024);
+        this.topicRouteResponseCache = new TopicRouteResponseCache();
         this.unRegisterService = new BatchUnregistrationService(this, namesrvConfig);
         this.namesrvConfig = namesrvConfig;
         this.namesrvController = namesrvController;
@@ -112,9 +125,14 @@ public class RouteInfoManager {
             this.lock.writeLock().lockInterruptibly();
             if (this.topicQueueTable.containsKey(topic)) {
                 Map<String, QueueData> queueDataMap = this.topicQueueTable.get(topic);
-                for (QueueData queueData : queueDatas) {
+                for (int i = 0; i < queueDatas.size(); i++) {
+                    QueueData queueData = queueDatas.get(i);
                     if (!this.brokerAddrTable.containsKey(queueData.getBrokerName())) {
                         log.warn("Register topic contains illegal broker, {}, {}", topic, queueData);
+                        // 前面已经写入的 queueData 同样是路由变化
+                        if (i > 0) {
+                            this.markTopicRouteChanged(topic);
+                        }
                         return;
                     }
                     queueDataMap.put(queueData.getBrokerName(), queueData);
@@ -134,6 +152,7 @@ public class RouteInfoManager {
                 this.topicQueueTable.put(topic, queueDataMap);
                 log.info("Register topic route:{}, {}", topic, queueDatas);
             }
+            this.markTopicRouteChanged(topic);
         } catch (Exception e) {
             log.error("registerTopic Exception", e);
         } finally {
@@ -145,6 +164,7 @@ public class RouteInfoManager {
         try {
             this.lock.writeLock().lockInterruptibly();
             this.topicQueueTable.remove(topic);
+            this.removeTopicRoute(topic);
         } catch (Exception e) {
             log.error("deleteTopic Exception", e);
         } finally {
@@ -172,6 +192,9 @@ public class RouteInfoManager {
                 if (queueDataMap.isEmpty()) {
                     log.info("deleteTopic, remove the topic all queue {} {}", clusterName, topic);
                     this.topicQueueTable.remove(topic);
+                    this.removeTopicRoute(topic);
+                } else {
+                    this.markTopicRouteChanged(topic);
                 }
             }
         } catch (Exception e) {
@@ -222,6 +245,10 @@ public class RouteInfoManager {
             final List<String> filterServerList,
             final Channel channel) {
         RegisterBrokerResult result = new RegisterBrokerResult();
+        // 心跳多数情况下不改变路由，只有真正变化时才让相关 topic 的路由快照失效
+        boolean filterServerChanged = false;
+        BrokerData brokerDataBefore = null;
+        BrokerData brokerData = null;
         try {
             this.lock.writeLock().lockInterruptibly();
 
@@ -231,11 +258,13 @@ public class RouteInfoManager {
 
             boolean registerFirst = false;
 
-            BrokerData brokerData = this.brokerAddrTable.get(brokerName);
+            brokerData = this.brokerAddrTable.get(brokerName);
             if (null == brokerData) {
                 registerFirst = true;
                 brokerData = new BrokerData(clusterName, brokerName, new HashMap<>());
                 this.brokerAddrTable.put(brokerName, brokerData);
+            } else {
+                brokerDataBefore = new BrokerData(brokerData);
             }
 
             boolean isOldVersionBroker = enableActingMaster == null;
@@ -312,11 +341,13 @@ public class RouteInfoManager {
                             final QueueData removedQD = queueDataMap.remove(brokerName);
                             if (removedQD != null) {
                                 log.info("deleteTopic, remove one broker's topic {} {} {}", brokerName, toDeleteTopic, removedQD);
+                                markTopicRouteChanged(toDeleteTopic);
                             }
 
                             if (queueDataMap.isEmpty()) {
                                 log.info("deleteTopic, remove the topic all queue {}", toDeleteTopic);
                                 topicQueueTable.remove(toDeleteTopic);
+                                removeTopicRoute(toDeleteTopic);
                             }
                         }
                     }
@@ -331,7 +362,9 @@ public class RouteInfoManager {
                                 // Wipe write perm for prime slave
                                 topicConfig.setPerm(topicConfig.getPerm() & (~PermName.PERM_WRITE));
                             }
-                            this.createAndUpdateQueueData(brokerName, topicConfig);
+                            if (this.createAndUpdateQueueData(brokerName, topicConfig)) {
+                                this.markTopicRouteChanged(topicConfig.getTopicName());
+                            }
                         }
                     }
 
@@ -344,6 +377,7 @@ public class RouteInfoManager {
                             //Note asset brokerName equal entry.getValue().getBname()
                             //here use the mappingDetail.bname
                             topicQueueMappingInfoTable.get(entry.getKey()).put(entry.getValue().getBname(), entry.getValue());
+                            markTopicRouteChanged(entry.getKey());
                         }
                     }
                 }
@@ -362,10 +396,13 @@ public class RouteInfoManager {
             }
 
             if (filterServerList != null) {
+                List<String> prevFilterServerList;
                 if (filterServerList.isEmpty()) {
-                    this.filterServerTable.remove(brokerAddrInfo);
+                    prevFilterServerList = this.filterServerTable.remove(brokerAddrInfo);
+                    filterServerChanged = prevFilterServerList != null;
                 } else {
-                    this.filterServerTable.put(brokerAddrInfo, filterServerList);
+                    prevFilterServerList = this.filterServerTable.put(brokerAddrInfo, filterServerList);
+                    filterServerChanged = !filterServerList.equals(prevFilterServerList);
                 }
             }
 
@@ -388,12 +425,88 @@ public class RouteInfoManager {
         } catch (Exception e) {
             log.error("registerBroker Exception", e);
         } finally {
+            if (filterServerChanged || isBrokerDataChanged(brokerDataBefore, brokerData)) {
+                this.markBrokerRouteChanged(brokerName);
+            }
             this.lock.writeLock().unlock();
         }
 
         return result;
     }
 
+    private static boolean isBrokerDataChanged(final BrokerData before, final BrokerData after) {
+        if (after == null) {
+            return false;
+        }
+        if (before == null) {
+            return true;
+        }
+        // BrokerData.equals 不比较 zoneName 和 enableActingMaster，这里单独判断
+        return !before.equals(after)
+                || before.isEnableActingMaster() != after.isEnableActingMaster()
+                || !Objects.equals(before.getZoneName(), after.getZoneName());
+    }
+
+    /**
+     * topic 路由发生变化：打一个新的版本号，旧快照随之失效，同时丢弃缓存的响应体。必须在写锁内调用。
+     */
+    private void markTopicRouteChanged(final String topic) {
+        this.topicRouteVersionTable.put(topic, this.routeVersion.incrementAndGet());
+        this.topicRouteResponseCache.invalidate(topic);
+    }
+
+    /**
+     * 顺序 topic 配置（KV 中的 ORDER_TOPIC_CONFIG）变化时调用，让增量路由客户端重新拉取该 topic
+     */
+    public void onOrderTopicConfChanged(final String topic) {
+        try {
+            this.lock.writeLock().lockInterruptibly();
+            try {
+                if (this.topicQueueTable.containsKey(topic)) {
+                    this.markTopicRouteChanged(topic);
+                }
+            } finally {
+                this.lock.writeLock().unlock();
+            }
+        } catch (InterruptedException e) {
+            log.error("onOrderTopicConfChanged InterruptedException", e);
+        }
+    }
+
+    /**
+     * broker 本身的信息（地址、zone、filter server 等）变化，所有引用它的 topic 都要失效。必须在写锁内调用。
+     */
+    private void markBrokerRouteChanged(final String brokerName) {
+        for (String topic : topicSetOfBrokerName(brokerName)) {
+            this.markTopicRouteChanged(topic);
+        }
+    }
+
+    /**
+     * topic 已被删除。必须在写锁内调用。
+     */
+    private void removeTopicRoute(final String topic) {
+        this.topicRouteVersionTable.remove(topic);
+        this.topicRouteSnapshotTable.remove(topic);
+        this.topicRouteResponseCache.invalidate(topic);
+    }
+
+    /**
+     * @return topic 当前的路由版本，topic 不存在时为 0
+     */
+    public long getTopicRouteVersion(final String topic) {
+        Long version = this.topicRouteVersionTable.get(topic);
+        return version == null ? 0 : version;
+    }
+
+    public long getRouteEpoch() {
+        return routeEpoch;
+    }
+
+    public TopicRouteResponseCache getTopicRouteResponseCache() {
+        return topicRouteResponseCache;
+    }
+
     private Set<String> topicSetOfBrokerName(final String brokerName) {
         Set<String> topicOfBroker = new HashSet<>();
         for (final Entry<String, Map<String, QueueData>> entry : this.topicQueueTable.entrySet()) {
@@ -460,7 +573,10 @@ public class RouteInfoManager {
         }
     }
 
-    private void createAndUpdateQueueData(final String brokerName, final TopicConfig topicConfig) {
+    /**
+     * @return queue data 是否有变化
+     */
+    private boolean createAndUpdateQueueData(final String brokerName, final TopicConfig topicConfig) {
         QueueData queueData = new QueueData();
         queueData.setBrokerName(brokerName);
         queueData.setWriteQueueNums(topicConfig.getWriteQueueNums());
@@ -474,16 +590,20 @@ public class RouteInfoManager {
             queueDataMap.put(brokerName, queueData);
             this.topicQueueTable.put(topicConfig.getTopicName(), queueDataMap);
             log.info("new topic registered, {} {}", topicConfig.getTopicName(), queueData);
+            return true;
         } else {
             final QueueData existedQD = queueDataMap.get(brokerName);
             if (existedQD == null) {
                 queueDataMap.put(brokerName, queueData);
+                return true;
             } else if (!existedQD.equals(queueData)) {
                 log.info("topic changed, {} OLD: {} NEW: {}", topicConfig.getTopicName(), existedQD,
                         queueData);
                 queueDataMap.put(brokerName, queueData);
+                return true;
             }
         }
+        return false;
     }
 
     public int wipeWritePermOfBrokerByLock(final String brokerName) {
@@ -535,6 +655,7 @@ public class RouteInfoManager {
                     break;
             }
             qd.setPerm(perm);
+            this.markTopicRouteChanged(entry.getKey());
             topicCnt++;
         }
         return topicCnt;
@@ -647,18 +768,23 @@ public class RouteInfoManager {
                 final QueueData removedQD = queueDataMap.remove(brokerName);
                 if (removedQD != null) {
                     log.debug("removeTopicByBrokerName, remove one broker's topic {} {}", topic, removedQD);
+                    this.markTopicRouteChanged(topic);
                 }
             }
 
             if (queueDataMap.isEmpty()) {
                 log.debug("removeTopicByBrokerName, remove the topic all queue {}", topic);
                 itMap.remove();
+                this.removeTopicRoute(topic);
+                continue;
             }
 
             for (final String brokerName : reducedBroker) {
                 final QueueData queueData = queueDataMap.get(brokerName);
 
                 if (queueData != null) {
+                    // broker 少了一个地址，路由里的 BrokerData 也随之变化
+                    this.markTopicRouteChanged(topic);
                     if (this.brokerAddrTable.get(brokerName).isEnableActingMaster()) {
                         // Master has been unregistered, wipe the write perm
                         if (isNoMasterExists(brokerName)) {
@@ -684,10 +810,83 @@ public class RouteInfoManager {
     }
 
     public TopicRouteData pickupTopicRouteData(final String topic) {
+        TopicRouteSnapshot snapshot = this.pickupTopicRouteSnapshot(topic);
+        // 浅拷贝一层，调用方可以设置 orderTopicConf 等字段而不影响共享快照
+        return snapshot == null ? null : snapshot.getTopicRouteData().cloneTopicRouteData();
+    }
+
+    /**
+     * 取编码好的路由响应体，命中 {@link TopicRouteResponseCache} 时不再重新编码。
+     *
+     * @param orderTopicConf   顺序 topic 配置，没有时为 null
+     * @param standardJsonOnly 是否按标准 JSON 编码
+     * @return topic 不存在时返回 null
+     */
+    public byte[] pickupTopicRouteBody(final String topic, final String orderTopicConf, final boolean standardJsonOnly) {
+        return this.pickupTopicRouteBody(topic, orderTopicConf,
+            standardJsonOnly ? TopicRouteResponseCache.BodyFormat.STANDARD_JSON : TopicRouteResponseCache.BodyFormat.JSON);
+    }
+
+    public byte[] pickupTopicRouteBody(final String topic, final String orderTopicConf,
+        final TopicRouteResponseCache.BodyFormat format) {
+        TopicRouteSnapshot snapshot = this.pickupTopicRouteSnapshot(topic);
+        if (snapshot == null) {
+            return null;
+        }
+        return this.topicRouteResponseCache.getOrEncode(topic, snapshot, orderTopicConf, format);
+    }
+
+    /**
+     * 增量路由查询：只返回版本号与客户端持有的不一致的 topic。
+     *
+     * @param knownRouteVersions 客户端持有的 topic 路由版本
+     * @param knownRouteEpoch    这些版本号所属的 epoch，与本实例不一致时全部当作没有
+     */
+    public GetRouteInfoDeltaResponseBody pickupTopicRouteDelta(final Map<String, Long> knownRouteVersions,
+                                                                final long knownRouteEpoch) {
+        GetRouteInfoDeltaResponseBody delta = new GetRouteInfoDeltaResponseBody();
+        delta.setRouteEpoch(this.routeEpoch);
+        final boolean sameEpoch = knownRouteEpoch == this.routeEpoch;
+        for (Entry<String, Long> entry : knownRouteVersions.entrySet()) {
+            final String topic = entry.getKey();
+            TopicRouteSnapshot snapshot = this.pickupTopicRouteSnapshot(topic);
+            if (snapshot == null) {
+                delta.getNotExistTopics().add(topic);
+                continue;
+            }
+            if (sameEpoch && entry.getValue() != null && entry.getValue() == snapshot.getVersion()) {
+                continue;
+            }
+            delta.getTopicRouteTable().put(topic, snapshot.getTopicRouteData().cloneTopicRouteData());
+            delta.getTopicRouteVersions().put(topic, snapshot.getVersion());
+        }
+        return delta;
+    }
+
+    private TopicRouteSnapshot pickupTopicRouteSnapshot(final String topic) {
+        final boolean supportActingMaster = namesrvConfig.isSupportActingMaster();
+        TopicRouteSnapshot snapshot = this.topicRouteSnapshotTable.get(topic);
+        if (snapshot != null && snapshot.isValid(this.getTopicRouteVersion(topic), supportActingMaster)) {
+            return snapshot;
+        }
+
+        snapshot = this.buildTopicRouteSnapshot(topic, supportActingMaster);
+        if (snapshot == null) {
+            this.topicRouteSnapshotTable.remove(topic);
+            return null;
+        }
+        // 并发重建时保留版本更新的那一份
+        this.topicRouteSnapshotTable.merge(topic, snapshot,
+                (prev, current) -> prev.getVersion() > current.getVersion() ? prev : current);
+        return snapshot;
+    }
+
+    private TopicRouteSnapshot buildTopicRouteSnapshot(final String topic, final boolean supportActingMaster) {
         TopicRouteData topicRouteData = new TopicRouteData();
+        long version;
         boolean foundQueueData = false;
         boolean foundBrokerData = false;
-        List<BrokerData> brokerDataList = new LinkedList<>();
+        List<BrokerData> brokerDataList = new ArrayList<>();
         topicRouteData.setBrokerDatas(brokerDataList);
 
         HashMap<String, List<String>> filterServerMap = new HashMap<>();
@@ -695,14 +894,25 @@ public class RouteInfoManager {
 
         try {
             this.lock.readLock().lockInterruptibly();
+        } catch (InterruptedException e) {
+            log.error("pickupTopicRouteData Exception", e);
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        try {
+            // 读锁内写操作不会发生，拿到的版本号与下面读到的路由表一致
+            version = this.getTopicRouteVersion(topic);
             Map<String, QueueData> queueDataMap = this.topicQueueTable.get(topic);
             if (queueDataMap != null) {
-                topicRouteData.setQueueDatas(new ArrayList<>(queueDataMap.values()));
+                // QueueData 会被原地修改权限，快照里放拷贝
+                List<QueueData> queueDataList = new ArrayList<>(queueDataMap.size());
+                for (QueueData queueData : queueDataMap.values()) {
+                    queueDataList.add(new QueueData(queueData));
+                }
+                topicRouteData.setQueueDatas(queueDataList);
                 foundQueueData = true;
 
-                Set<String> brokerNameSet = new HashSet<>(queueDataMap.keySet());
-
-                for (String brokerName : brokerNameSet) {
+                for (String brokerName : queueDataMap.keySet()) {
                     BrokerData brokerData = this.brokerAddrTable.get(brokerName);
                     if (null == brokerData) {
                         continue;
@@ -719,71 +929,69 @@ public class RouteInfoManager {
                         List<String> filterServerList = this.filterServerTable.get(brokerAddrInfo);
                         filterServerMap.put(brokerAddr, filterServerList);
                     }
-
                 }
             }
+
+            Map<String, TopicQueueMappingInfo> mappingInfoMap = this.topicQueueMappingInfoTable.get(topic);
+            if (mappingInfoMap != null) {
+                topicRouteData.setTopicQueueMappingByBroker(new HashMap<>(mappingInfoMap));
+            }
         } catch (Exception e) {
             log.error("pickupTopicRouteData Exception", e);
+            return null;
         } finally {
             this.lock.readLock().unlock();
         }
 
         log.debug("pickupTopicRouteData {} {}", topic, topicRouteData);
 
-        if (foundBrokerData && foundQueueData) {
+        if (!foundBrokerData || !foundQueueData) {
+            return null;
+        }
 
-            topicRouteData.setTopicQueueMappingByBroker(this.topicQueueMappingInfoTable.get(topic));
+        if (supportActingMaster && !topic.startsWith(TopicValidator.SYNC_BROKER_MEMBER_GROUP_PREFIX)) {
+            this.applyActingMaster(topicRouteData);
+        }
+        return new TopicRouteSnapshot(version, supportActingMaster, topicRouteData);
+    }
 
-            if (!namesrvConfig.isSupportActingMaster()) {
-                return topicRouteData;
-            }
+    private void applyActingMaster(final TopicRouteData topicRouteData) {
+        if (topicRouteData.getBrokerDatas().size() == 0 || topicRouteData.getQueueDatas().size() == 0) {
+            return;
+        }
 
-            if (topic.startsWith(TopicValidator.SYNC_BROKER_MEMBER_GROUP_PREFIX)) {
-                return topicRouteData;
-            }
+        boolean needActingMaster = false;
 
-            if (topicRouteData.getBrokerDatas().size() == 0 || topicRouteData.getQueueDatas().size() == 0) {
-                return topicRouteData;
+        for (final BrokerData brokerData : topicRouteData.getBrokerDatas()) {
+            if (brokerData.getBrokerAddrs().size() != 0
+                    && !brokerData.getBrokerAddrs().containsKey(MixAll.MASTER_ID)) {
+                needActingMaster = true;
+                break;
             }
+        }
 
-            boolean needActingMaster = false;
-
-            for (final BrokerData brokerData : topicRouteData.getBrokerDatas()) {
-                if (brokerData.getBrokerAddrs().size() != 0
-                        && !brokerData.getBrokerAddrs().containsKey(MixAll.MASTER_ID)) {
-                    needActingMaster = true;
-                    break;
-                }
-            }
+        if (!needActingMaster) {
+            return;
+        }
 
-            if (!needActingMaster) {
-                return topicRouteData;
+        for (final BrokerData brokerData : topicRouteData.getBrokerDatas()) {
+            final HashMap<Long, String> brokerAddrs = brokerData.getBrokerAddrs();
+            if (brokerAddrs.size() == 0 || brokerAddrs.containsKey(MixAll.MASTER_ID) || !brokerData.isEnableActingMaster()) {
+                continue;
             }
 
-            for (final BrokerData brokerData : topicRouteData.getBrokerDatas()) {
-                final HashMap<Long, String> brokerAddrs = brokerData.getBrokerAddrs();
-                if (brokerAddrs.size() == 0 || brokerAddrs.containsKey(MixAll.MASTER_ID) || !brokerData.isEnableActingMaster()) {
-                    continue;
-                }
-
-                // No master
-                for (final QueueData queueData : topicRouteData.getQueueDatas()) {
-                    if (queueData.getBrokerName().equals(brokerData.getBrokerName())) {
-                        if (!PermName.isWriteable(queueData.getPerm())) {
-                            final Long minBrokerId = Collections.min(brokerAddrs.keySet());
-                            final String actingMasterAddr = brokerAddrs.remove(minBrokerId);
-                            brokerAddrs.put(MixAll.MASTER_ID, actingMasterAddr);
-                        }
-                        break;
+            // No master
+            for (final QueueData queueData : topicRouteData.getQueueDatas()) {
+                if (queueData.getBrokerName().equals(brokerData.getBrokerName())) {
+                    if (!PermName.isWriteable(queueData.getPerm())) {
+                        final Long minBrokerId = Collections.min(brokerAddrs.keySet());
+                        final String actingMasterAddr = brokerAddrs.remove(minBrokerId);
+                        brokerAddrs.put(MixAll.MASTER_ID, actingMasterAddr);
                     }
+                    break;
                 }
-
             }
-
-            return topicRouteData;
         }
-
-        return null;
     }
 
     public void scanNotActiveBroker() {
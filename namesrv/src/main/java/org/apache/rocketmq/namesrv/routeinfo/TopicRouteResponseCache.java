@@ -0,0 +1,134 @@
+package org.apache.rocketmq.namesrv.routeinfo;
+
+import com.alibaba.fastjson.serializer.SerializerFeature;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.rocketmq.remoting.protocol.BinaryBodyCodec;
+import org.apache.rocketmq.remoting.protocol.route.TopicRouteData;
+
+/**
+ * GET_ROUTEINFO_BY_TOPIC 响应体的缓存，按 topic 存放编码好的字节。
+ * <p>
+ * {@link RouteInfoManager} 在 topic 路由变化（registerBroker / unRegisterBroker / deleteTopic 等）时调用
+ * {@link #invalidate(String)}；另外每个缓存项都记着它编码自哪个 {@link TopicRouteSnapshot}，
+ * 快照已经被替换时即使失效通知还没到也不会返回旧数据。
+ */
+public class TopicRouteResponseCache {
+    private final ConcurrentMap<String/* topic */, CachedRouteBody> cacheTable = new ConcurrentHashMap<>(1024);
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder bytesSaved = new LongAdder();
+
+    byte[] getOrEncode(final String topic, final TopicRouteSnapshot snapshot, final String orderTopicConf,
+        final BodyFormat format) {
+        CachedRouteBody cached = this.cacheTable.get(topic);
+        if (cached == null || !cached.matches(snapshot, orderTopicConf)) {
+            cached = new CachedRouteBody(snapshot, orderTopicConf);
+            // 失效与重建并发时，旧快照编出来的缓存项会在下一次 matches 时被淘汰
+            this.cacheTable.put(topic, cached);
+        }
+
+        byte[] body = cached.getBody(format);
+        if (body != null) {
+            this.hitCount.increment();
+            this.bytesSaved.add(body.length);
+            return body;
+        }
+
+        this.missCount.increment();
+        return cached.encode(format);
+    }
+
+    public void invalidate(final String topic) {
+        this.cacheTable.remove(topic);
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * @return 命中缓存而省下的编码字节数
+     */
+    public long getBytesSaved() {
+        return bytesSaved.sum();
+    }
+
+    public int size() {
+        return cacheTable.size();
+    }
+
+    /**
+     * 响应体格式，由请求头决定
+     */
+    public enum BodyFormat {
+        JSON,
+        /**
+         * 字段名加引号、map 按 key 排序，给非 Java 客户端用
+         */
+        STANDARD_JSON,
+        /**
+         * {@link BinaryBodyCodec}
+         */
+        BINARY
+    }
+
+    private static class CachedRouteBody {
+        private final TopicRouteSnapshot snapshot;
+        private final String orderTopicConf;
+        private volatile byte[] standardJsonBody;
+        private volatile byte[] body;
+        private volatile byte[] binaryBody;
+
+        CachedRouteBody(TopicRouteSnapshot snapshot, String orderTopicConf) {
+            this.snapshot = snapshot;
+            this.orderTopicConf = orderTopicConf;
+        }
+
+        boolean matches(TopicRouteSnapshot snapshot, String orderTopicConf) {
+            return this.snapshot == snapshot && Objects.equals(this.orderTopicConf, orderTopicConf);
+        }
+
+        byte[] getBody(BodyFormat format) {
+            switch (format) {
+                case STANDARD_JSON:
+                    return standardJsonBody;
+                case BINARY:
+                    return binaryBody;
+                default:
+                    return body;
+            }
+        }
+
+        byte[] encode(BodyFormat format) {
+            // 快照是共享的，orderTopicConf 设置在浅拷贝上
+            TopicRouteData topicRouteData = this.snapshot.getTopicRouteData().cloneTopicRouteData();
+            topicRouteData.setOrderTopicConf(this.orderTopicConf);
+            // 并发下可能重复编码，结果相同，不加锁
+            if (format == BodyFormat.BINARY) {
+                byte[] content = BinaryBodyCodec.encode(topicRouteData);
+                this.binaryBody = content;
+                return content;
+            }
+            if (format == BodyFormat.STANDARD_JSON) {
+                byte[] content = topicRouteData.encode(SerializerFeature.BrowserCompatible,
+                    SerializerFeature.QuoteFieldNames, SerializerFeature.SkipTransientField,
+                    SerializerFeature.MapSortField);
+                this.standardJsonBody = content;
+                return content;
+            }
+            byte[] content = topicRouteData.encode();
+            this.body = content;
+            return content;
+        }
+    }
+}
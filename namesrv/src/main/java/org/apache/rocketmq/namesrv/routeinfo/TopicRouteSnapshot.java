@@ -0,0 +1,36 @@
+package org.apache.rocketmq.namesrv.routeinfo;
+
+import org.apache.rocketmq.remoting.protocol.route.TopicRouteData;
+
+/**
+ * 某个 topic 在某个路由版本下的只读路由快照。
+ * <p>
+ * 快照内的 QueueData / BrokerData 都是构建时拷贝出来的私有对象，发布后不再修改；
+ * 影响该 topic 路由的变更都会在 {@link RouteInfoManager} 中给它打一个新的版本号，旧快照随之失效，下次查询时重建。
+ */
+class TopicRouteSnapshot {
+    private final long version;
+    private final boolean supportActingMaster;
+    private final TopicRouteData topicRouteData;
+
+    TopicRouteSnapshot(long version, boolean supportActingMaster, TopicRouteData topicRouteData) {
+        this.version = version;
+        this.supportActingMaster = supportActingMaster;
+        this.topicRouteData = topicRouteData;
+    }
+
+    boolean isValid(long currentVersion, boolean currentSupportActingMaster) {
+        return this.version == currentVersion && this.supportActingMaster == currentSupportActingMaster;
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    /**
+     * 快照共享的路由数据，调用方不能修改
+     */
+    TopicRouteData getTopicRouteData() {
+        return topicRouteData;
+    }
+}
@@ -0,0 +1,139 @@
+package org.apache.rocketmq.namesrv.routeinfo;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.rocketmq.common.TopicConfig;
+import org.apache.rocketmq.common.namesrv.NamesrvConfig;
+import org.apache.rocketmq.remoting.protocol.DataVersion;
+import org.apache.rocketmq.remoting.protocol.body.TopicConfigSerializeWrapper;
+import org.apache.rocketmq.remoting.protocol.namesrv.RegisterBrokerResult;
+import org.apache.rocketmq.remoting.protocol.route.TopicRouteData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 256 个 broker 不停地重新注册（每 16 次心跳有一次真正改变 topic 配置）的同时，
+ * 8 个线程查询 512 个 topic 的路由，分别取 {@link TopicRouteData} 和缓存的编码后响应体。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouteInfoManagerBenchmark {
+
+    private static final String CLUSTER_NAME = "DefaultCluster";
+    private static final int BROKER_COUNT = 256;
+    private static final int TOPIC_COUNT = 512;
+    private static final int TOPICS_PER_BROKER = 16;
+    private static final int CHANGE_INTERVAL = 16;
+
+    private RouteInfoManager routeInfoManager;
+    private TopicConfigSerializeWrapper[] wrappers;
+    private final AtomicInteger registerIndex = new AtomicInteger();
+    private final AtomicInteger queryIndex = new AtomicInteger();
+
+    @Setup
+    public void setup() {
+        routeInfoManager = new RouteInfoManager(new NamesrvConfig(), null);
+        wrappers = new TopicConfigSerializeWrapper[BROKER_COUNT];
+        for (int i = 0; i < BROKER_COUNT; i++) {
+            ConcurrentMap<String, TopicConfig> topicConfigTable = new ConcurrentHashMap<>();
+            for (int k = 0; k < TOPICS_PER_BROKER; k++) {
+                String topic = topicName((i * 2 + k) % TOPIC_COUNT);
+                topicConfigTable.put(topic, new TopicConfig(topic, 8, 8));
+            }
+            TopicConfigSerializeWrapper wrapper = new TopicConfigSerializeWrapper();
+            wrapper.setTopicConfigTable(topicConfigTable);
+            wrapper.setDataVersion(new DataVersion());
+            wrappers[i] = wrapper;
+            register(i);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        routeInfoManager.shutdown();
+    }
+
+    @Benchmark
+    @Group("routeData")
+    @GroupThreads(8)
+    public TopicRouteData pickupTopicRouteData() {
+        return routeInfoManager.pickupTopicRouteData(nextTopic());
+    }
+
+    @Benchmark
+    @Group("routeData")
+    @GroupThreads(1)
+    public RegisterBrokerResult reRegisterForRouteData() {
+        return reRegister();
+    }
+
+    @Benchmark
+    @Group("routeBody")
+    @GroupThreads(8)
+    public byte[] pickupTopicRouteBody() {
+        return routeInfoManager.pickupTopicRouteBody(nextTopic(), null, true);
+    }
+
+    @Benchmark
+    @Group("routeBody")
+    @GroupThreads(1)
+    public RegisterBrokerResult reRegisterForRouteBody() {
+        return reRegister();
+    }
+
+    private String nextTopic() {
+        return topicName((queryIndex.getAndIncrement() & Integer.MAX_VALUE) % TOPIC_COUNT);
+    }
+
+    private RegisterBrokerResult reRegister() {
+        int count = registerIndex.getAndIncrement() & Integer.MAX_VALUE;
+        int index = count % BROKER_COUNT;
+        if (count % CHANGE_INTERVAL == 0) {
+            // 换一个新的 DataVersion 实例，否则与 brokerLiveTable 中的是同一个对象，比较不出变化
+            TopicConfigSerializeWrapper wrapper = wrappers[index];
+            DataVersion dataVersion = new DataVersion();
+            dataVersion.assignNewOne(wrapper.getDataVersion());
+            dataVersion.nextVersion();
+            wrapper.setDataVersion(dataVersion);
+        }
+        return register(index);
+    }
+
+    private RegisterBrokerResult register(int index) {
+        return routeInfoManager.registerBroker(CLUSTER_NAME, "127.0.0." + index + ":10911", "broker-" + index,
+                0, "127.0.0." + index + ":10912", null, 30000L, wrappers[index], null, null);
+    }
+
+    private static String topicName(int index) {
+        return "BenchmarkTopic-" + index;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+            .include(RouteInfoManagerBenchmark.class.getSimpleName())
+            .build();
+        new Runner(options).run();
+    }
+}
@@ -83,6 +83,20 @@ public interface RemotingClient extends RemotingService {
      */
     void invokeOneway(final String addr, final RemotingCommand request, final long timeoutMillis) throws InterruptedException, RemotingConnectException, RemotingTooMuchRequestException, RemotingTimeoutException, RemotingSendRequestException;
 
+    /**
+     * 攒批的单向调用：同一地址在一个短时间窗口内的请求装进一个信封命令发送，服务端需要支持
+     * {@link org.apache.rocketmq.remoting.protocol.RequestCode#REMOTING_COMMAND_BATCH}。
+     * 连接无法建立、或本次调用恰好攒满批次并在调用线程上发送失败时同步抛出；
+     * 其余情况请求放入批次后立即返回，窗口到期后的发送失败只记录日志，调用方收不到。默认实现不攒批，直接单向发送。
+     *
+     * @param addr          目标服务地址
+     * @param request       请求命令
+     * @param timeoutMillis 超时时间（毫秒）
+     */
+    default void invokeOnewayBatched(final String addr, final RemotingCommand request, final long timeoutMillis) throws InterruptedException, RemotingConnectException, RemotingTooMuchRequestException, RemotingTimeoutException, RemotingSendRequestException {
+        invokeOneway(addr, request, timeoutMillis);
+    }
+
     /**
      * 单向调用，发送请求但不等待响应，适用于无需响应的场景。
      *
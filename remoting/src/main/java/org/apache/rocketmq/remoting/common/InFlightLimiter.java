@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.remoting.common;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在途请求限流器，替代 async / oneway 调用路径上的 Semaphore。
+ * <p>
+ * 同时限制请求数量和请求体字节数；每次 acquire 成功后必须用同样的 bytes 调用一次 {@link #release(int)}。
+ */
+public interface InFlightLimiter {
+
+    /**
+     * 不阻塞的快速路径
+     *
+     * @param bytes 请求占用的字节数，不限制字节时传 0 即可
+     * @return 是否拿到许可
+     */
+    boolean tryAcquire(int bytes);
+
+    /**
+     * 快速路径失败后等待，直到拿到许可或超时
+     */
+    boolean tryAcquire(int bytes, long timeout, TimeUnit unit) throws InterruptedException;
+
+    void release(int bytes);
+
+    int availablePermits();
+
+    long availableBytes();
+
+    /**
+     * @return 正在等待许可的线程数
+     */
+    int getQueueLength();
+}
@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.remoting.common;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 分段、非公平的 {@link InFlightLimiter} 实现。
+ * <p>
+ * 数量许可平均分到若干个 stripe 上，每个 stripe 独占一条缓存行，线程按自己的 id 选 stripe 做 CAS，
+ * 本 stripe 用完再去其他 stripe 借；释放时随机还到某个 stripe，使许可保持均匀分布。
+ * 快速路径没有锁也没有排队，只有全部 stripe 都耗尽时才进入带超时的等待。
+ * <p>
+ * 字节维度只有配置了上限才生效，用一个 AtomicLong 计数；单个请求超过上限时，只要当前没有在途字节也放行，避免永远发不出去。
+ */
+public class StripedInFlightLimiter implements InFlightLimiter {
+
+    /**
+     * 每个 stripe 占 16 个 long（128 字节），避免伪共享
+     */
+    private static final int PAD = 16;
+
+    private final int maxPermits;
+    private final long maxBytes;
+    private final int stripeMask;
+    private final AtomicLongArray stripes;
+    private final AtomicLong inFlightBytes = new AtomicLong(0);
+
+    private final AtomicInteger waiters = new AtomicInteger(0);
+    private final ReentrantLock waitLock = new ReentrantLock();
+    private final Condition released = waitLock.newCondition();
+
+    public StripedInFlightLimiter(int maxPermits) {
+        this(maxPermits, 0);
+    }
+
+    /**
+     * @param maxPermits 最大在途请求数
+     * @param maxBytes   最大在途字节数，&lt;= 0 表示不限制
+     */
+    public StripedInFlightLimiter(int maxPermits, long maxBytes) {
+        this.maxPermits = Math.max(0, maxPermits);
+        this.maxBytes = maxBytes;
+        int stripeCount = stripeCount(this.maxPermits);
+        this.stripeMask = stripeCount - 1;
+        this.stripes = new AtomicLongArray(stripeCount * PAD);
+        for (int i = 0; i < stripeCount; i++) {
+            int permits = this.maxPermits / stripeCount + (i < this.maxPermits % stripeCount ? 1 : 0);
+            this.stripes.set(i * PAD, permits);
+        }
+    }
+
+    /**
+     * stripe 数为 2 的幂，不超过 CPU 数，并保证每个 stripe 至少有 8 个许可，许可很少时退化为单 stripe
+     */
+    private static int stripeCount(int maxPermits) {
+        int byCpu = Runtime.getRuntime().availableProcessors();
+        int byPermits = Math.max(1, maxPermits / 8);
+        return Integer.highestOneBit(Math.max(1, Math.min(byCpu, byPermits)));
+    }
+
+    @Override
+    public boolean tryAcquire(int bytes) {
+        int start = (int) Thread.currentThread().getId();
+        for (int i = 0; i <= this.stripeMask; i++) {
+            int index = ((start + i) & this.stripeMask) * PAD;
+            long permits;
+            while ((permits = this.stripes.get(index)) > 0) {
+                if (this.stripes.compareAndSet(index, permits, permits - 1)) {
+                    if (acquireBytes(bytes)) {
+                        return true;
+                    }
+                    this.stripes.incrementAndGet(index);
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean tryAcquire(int bytes, long timeout, TimeUnit unit) throws InterruptedException {
+        if (tryAcquire(bytes)) {
+            return true;
+        }
+        long nanos = unit.toNanos(timeout);
+        if (nanos <= 0) {
+            return false;
+        }
+        this.waitLock.lockInterruptibly();
+        try {
+            // 先登记为等待者再重试，保证 release 看到 waiters > 0 时一定会唤醒；
+            // 登记放在 try 里，拿锁时被中断也不会让计数泄漏
+            this.waiters.incrementAndGet();
+            while (!tryAcquire(bytes)) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = this.released.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            this.waiters.decrementAndGet();
+            this.waitLock.unlock();
+        }
+    }
+
+    @Override
+    public void release(int bytes) {
+        if (this.maxBytes > 0 && bytes > 0) {
+            this.inFlightBytes.addAndGet(-bytes);
+        }
+        int index = (ThreadLocalRandom.current().nextInt() & this.stripeMask) * PAD;
+        this.stripes.incrementAndGet(index);
+        if (this.waiters.get() > 0) {
+            this.waitLock.lock();
+            try {
+                this.released.signalAll();
+            } finally {
+                this.waitLock.unlock();
+            }
+        }
+    }
+
+    private boolean acquireBytes(int bytes) {
+        if (this.maxBytes <= 0 || bytes <= 0) {
+            return true;
+        }
+        long current;
+        do {
+            current = this.inFlightBytes.get();
+            if (current + bytes > this.maxBytes && current > 0) {
+                return false;
+            }
+        }
+        while (!this.inFlightBytes.compareAndSet(current, current + bytes));
+        return true;
+    }
+
+    @Override
+    public int availablePermits() {
+        long sum = 0;
+        for (int i = 0; i <= this.stripeMask; i++) {
+            sum += this.stripes.get(i * PAD);
+        }
+        return (int) sum;
+    }
+
+    @Override
+    public long availableBytes() {
+        return this.maxBytes > 0 ? this.maxBytes - this.inFlightBytes.get() : Long.MAX_VALUE;
+    }
+
+    @Override
+    public int getQueueLength() {
+        return this.waiters.get();
+    }
+
+    public int getMaxPermits() {
+        return maxPermits;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+}
@@ -18,14 +18,22 @@ package org.apache.rocketmq.remoting.metrics;
 
 public class RemotingMetricsConstant {
     public static final String HISTOGRAM_RPC_LATENCY = "rocketmq_rpc_latency";
+    public static final String HISTOGRAM_LIMITER_ACQUIRE_WAIT = "rocketmq_remoting_limiter_acquire_wait";
+    public static final String HISTOGRAM_REQUEST_QUEUE_WAIT = "rocketmq_remoting_request_queue_wait";
+    public static final String GAUGE_REQUEST_QUEUE_DEPTH = "rocketmq_remoting_request_queue_depth";
     public static final String LABEL_PROTOCOL_TYPE = "protocol_type";
     public static final String LABEL_REQUEST_CODE = "request_code";
     public static final String LABEL_RESPONSE_CODE = "response_code";
     public static final String LABEL_IS_LONG_POLLING = "is_long_polling";
     public static final String LABEL_RESULT = "result";
+    public static final String LABEL_INVOKE_TYPE = "invoke_type";
+    public static final String LABEL_EXECUTOR = "executor";
 
     public static final String PROTOCOL_TYPE_REMOTING = "remoting";
 
+    public static final String INVOKE_TYPE_ASYNC = "async";
+    public static final String INVOKE_TYPE_ONEWAY = "oneway";
+
     public static final String RESULT_ONEWAY = "oneway";
     public static final String RESULT_SUCCESS = "success";
     public static final String RESULT_CANCELED = "cancelled";
@@ -22,6 +22,7 @@ import io.opentelemetry.api.common.Attributes;
 import io.opentelemetry.api.common.AttributesBuilder;
 import io.opentelemetry.api.metrics.LongHistogram;
 import io.opentelemetry.api.metrics.Meter;
+import io.opentelemetry.api.metrics.ObservableLongGauge;
 import io.opentelemetry.sdk.metrics.Aggregation;
 import io.opentelemetry.sdk.metrics.InstrumentSelector;
 import io.opentelemetry.sdk.metrics.InstrumentType;
@@ -30,12 +31,20 @@ import io.opentelemetry.sdk.metrics.ViewBuilder;
 import java.time.Duration;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Supplier;
 import org.apache.rocketmq.common.Pair;
 import org.apache.rocketmq.common.metrics.NopLongHistogram;
+import org.apache.rocketmq.remoting.common.RemotingHelper;
+import org.apache.rocketmq.remoting.netty.AdaptiveRequestExecutor;
 
+import static org.apache.rocketmq.remoting.metrics.RemotingMetricsConstant.GAUGE_REQUEST_QUEUE_DEPTH;
+import static org.apache.rocketmq.remoting.metrics.RemotingMetricsConstant.HISTOGRAM_LIMITER_ACQUIRE_WAIT;
+import static org.apache.rocketmq.remoting.metrics.RemotingMetricsConstant.HISTOGRAM_REQUEST_QUEUE_WAIT;
 import static org.apache.rocketmq.remoting.metrics.RemotingMetricsConstant.HISTOGRAM_RPC_LATENCY;
+import static org.apache.rocketmq.remoting.metrics.RemotingMetricsConstant.LABEL_EXECUTOR;
 import static org.apache.rocketmq.remoting.metrics.RemotingMetricsConstant.LABEL_PROTOCOL_TYPE;
+import static org.apache.rocketmq.remoting.metrics.RemotingMetricsConstant.LABEL_REQUEST_CODE;
 import static org.apache.rocketmq.remoting.metrics.RemotingMetricsConstant.PROTOCOL_TYPE_REMOTING;
 import static org.apache.rocketmq.remoting.metrics.RemotingMetricsConstant.RESULT_CANCELED;
 import static org.apache.rocketmq.remoting.metrics.RemotingMetricsConstant.RESULT_SUCCESS;
@@ -43,7 +52,10 @@ import static org.apache.rocketmq.remoting.metrics.RemotingMetricsConstant.RESUL
 
 public class RemotingMetricsManager {
     public static LongHistogram rpcLatency = new NopLongHistogram();
+    public static LongHistogram limiterAcquireWait = new NopLongHistogram();
+    public static LongHistogram requestQueueWait = new NopLongHistogram();
     public static Supplier<AttributesBuilder> attributesBuilderSupplier;
+    private static volatile Meter meter;
 
     public static AttributesBuilder newAttributesBuilder() {
         if (attributesBuilderSupplier == null) {
@@ -55,11 +67,45 @@ public class RemotingMetricsManager {
 
     public static void initMetrics(Meter meter, Supplier<AttributesBuilder> attributesBuilderSupplier) {
         RemotingMetricsManager.attributesBuilderSupplier = attributesBuilderSupplier;
+        RemotingMetricsManager.meter = meter;
         rpcLatency = meter.histogramBuilder(HISTOGRAM_RPC_LATENCY)
             .setDescription("Rpc latency")
             .setUnit("milliseconds")
             .ofLongs()
             .build();
+        limiterAcquireWait = meter.histogramBuilder(HISTOGRAM_LIMITER_ACQUIRE_WAIT)
+            .setDescription("Time spent waiting for an in-flight permit")
+            .setUnit("microseconds")
+            .ofLongs()
+            .build();
+        requestQueueWait = meter.histogramBuilder(HISTOGRAM_REQUEST_QUEUE_WAIT)
+            .setDescription("Time a request waits in its request code queue")
+            .setUnit("milliseconds")
+            .ofLongs()
+            .build();
+    }
+
+    /**
+     * 为一个 {@link AdaptiveRequestExecutor} 注册按请求码的队列深度 gauge，持有它的 server 关闭时负责 close
+     *
+     * @return 指标尚未初始化时返回 null
+     */
+    public static ObservableLongGauge registerQueueDepthGauge(AdaptiveRequestExecutor executor) {
+        Meter meter = RemotingMetricsManager.meter;
+        if (meter == null) {
+            return null;
+        }
+        return meter.gaugeBuilder(GAUGE_REQUEST_QUEUE_DEPTH)
+            .setDescription("Queued requests per request code")
+            .ofLongs()
+            .buildWithCallback(measurement -> {
+                for (Map.Entry<Integer, Integer> entry : executor.getQueueDepths().entrySet()) {
+                    measurement.record(entry.getValue(), newAttributesBuilder()
+                        .put(LABEL_EXECUTOR, executor.getName())
+                        .put(LABEL_REQUEST_CODE, RemotingHelper.getRequestCodeDesc(entry.getKey()))
+                        .build());
+                }
+            });
     }
 
     public static List<Pair<InstrumentSelector, ViewBuilder>> getMetricsView() {
@@ -0,0 +1,390 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.remoting.netty;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.rocketmq.common.ThreadFactoryImpl;
+import org.apache.rocketmq.common.constant.LoggerName;
+import org.apache.rocketmq.logging.org.slf4j.Logger;
+import org.apache.rocketmq.logging.org.slf4j.LoggerFactory;
+import org.apache.rocketmq.remoting.common.RemotingHelper;
+import org.apache.rocketmq.remoting.metrics.RemotingMetricsManager;
+import org.apache.rocketmq.remoting.protocol.RemotingCommand;
+import org.apache.rocketmq.remoting.protocol.RemotingSysResponseCode;
+
+import static org.apache.rocketmq.remoting.metrics.RemotingMetricsConstant.LABEL_REQUEST_CODE;
+
+/**
+ * 按请求码排队的请求执行器，可以直接作为 {@code registerProcessor} 的 executor 使用。
+ * <p>
+ * - 每个请求码一个有界队列，队列满时抛 {@link RejectedExecutionException}，沿用 processRequestCommand 里 SYSTEM_BUSY 的处理；
+ * - 各请求码之间轮询出队，某个请求码积压不会饿死其他请求码；
+ * - 出队时请求从解码（processTimer）起算已超过该请求码的 SLA，说明客户端大概率已经超时，直接回 SYSTEM_BUSY 不再执行；
+ * - 运行线程可以是固定大小的平台线程池，也可以在 JDK 支持时使用虚拟线程，适合会阻塞的处理器；
+ * - 每个请求码的排队时间通过 {@link RemotingMetricsManager} 导出，队列深度由持有它的 {@link NettyRemotingServer} 注册 gauge 导出。
+ */
+public class AdaptiveRequestExecutor extends AbstractExecutorService {
+    private static final Logger log = LoggerFactory.getLogger(LoggerName.ROCKETMQ_REMOTING_NAME);
+
+    /**
+     * 不是 {@link RequestTask} 的普通任务归到这个队列，不做过期丢弃
+     */
+    private static final int GENERIC_CODE = -1;
+
+    private final String name;
+    private final ExecutorService runner;
+    private final boolean virtualThread;
+    private final int maxConcurrency;
+    private final int defaultQueueCapacity;
+    private final long defaultQueueSlaMillis;
+
+    private final ConcurrentMap<Integer, CodeQueue> codeQueues = new ConcurrentHashMap<>();
+    private final Queue<CodeQueue> readyQueues = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger activeDrainers = new AtomicInteger(0);
+    private volatile boolean shutdown = false;
+
+    /**
+     * @param name                  线程名前缀
+     * @param maxConcurrency        同时执行的请求数上限，平台线程模式下即线程数
+     * @param defaultQueueCapacity  每个请求码默认的队列长度
+     * @param defaultQueueSlaMillis 每个请求码默认的排队 SLA，超过即丢弃
+     * @param useVirtualThread      JDK 支持时是否使用虚拟线程
+     */
+    public AdaptiveRequestExecutor(String name, int maxConcurrency, int defaultQueueCapacity, long defaultQueueSlaMillis,
+        boolean useVirtualThread) {
+        this.name = name;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.defaultQueueCapacity = Math.max(1, defaultQueueCapacity);
+        this.defaultQueueSlaMillis = defaultQueueSlaMillis;
+        ExecutorService virtualExecutor = useVirtualThread ? newVirtualThreadExecutor() : null;
+        if (useVirtualThread && virtualExecutor == null) {
+            log.warn("{} virtual thread is not supported by current JDK, fall back to platform threads", name);
+        }
+        this.virtualThread = virtualExecutor != null;
+        this.runner = virtualExecutor != null ? virtualExecutor
+            : Executors.newFixedThreadPool(this.maxConcurrency, new ThreadFactoryImpl(name + "_"));
+    }
+
+    /**
+     * JDK 21+ 的 Executors.newVirtualThreadPerTaskExecutor，代码按 1.8 编译，只能反射调用
+     */
+    static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (Throwable e) {
+            return null;
+        }
+    }
+
+    /**
+     * 单独设置某个请求码的队列长度和排队 SLA。队列已存在时原地更新，已排队的请求保留在原队列里继续执行
+     */
+    public void configureRequestCode(int requestCode, int queueCapacity, long queueSlaMillis) {
+        CodeQueue codeQueue = this.codeQueues.computeIfAbsent(requestCode,
+            k -> new CodeQueue(k, Math.max(1, queueCapacity), queueSlaMillis));
+        codeQueue.configure(Math.max(1, queueCapacity), queueSlaMillis);
+    }
+
+    @Override
+    protected <T> FutureTask<T> newTaskFor(Runnable runnable, T value) {
+        return new CodedFutureTask<>(runnable, value);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (this.shutdown) {
+            throw new RejectedExecutionException(this.name + " has been shutdown");
+        }
+        RequestTask requestTask = unwrapRequestTask(command);
+        int code = requestTask != null ? requestTask.getRequest().getCode() : GENERIC_CODE;
+        CodeQueue codeQueue = getCodeQueue(code);
+        if (!codeQueue.offer(new Entry(command, requestTask))) {
+            throw new RejectedExecutionException(this.name + " queue of request code " + code + " is full, size: " + codeQueue.size());
+        }
+        markReady(codeQueue);
+        tryStartDrainer();
+    }
+
+    private static RequestTask unwrapRequestTask(Runnable command) {
+        if (command instanceof RequestTask) {
+            return (RequestTask) command;
+        }
+        if (command instanceof CodedFutureTask && ((CodedFutureTask<?>) command).origin instanceof RequestTask) {
+            return (RequestTask) ((CodedFutureTask<?>) command).origin;
+        }
+        return null;
+    }
+
+    private CodeQueue getCodeQueue(int code) {
+        CodeQueue codeQueue = this.codeQueues.get(code);
+        if (codeQueue == null) {
+            codeQueue = this.codeQueues.computeIfAbsent(code,
+                k -> new CodeQueue(k, this.defaultQueueCapacity, k == GENERIC_CODE ? Long.MAX_VALUE : this.defaultQueueSlaMillis));
+        }
+        return codeQueue;
+    }
+
+    private void markReady(CodeQueue codeQueue) {
+        if (!codeQueue.isEmpty() && codeQueue.ready.compareAndSet(false, true)) {
+            this.readyQueues.offer(codeQueue);
+        }
+    }
+
+    private void tryStartDrainer() {
+        for (; ; ) {
+            int active = this.activeDrainers.get();
+            if (active >= this.maxConcurrency) {
+                return;
+            }
+            if (this.activeDrainers.compareAndSet(active, active + 1)) {
+                try {
+                    this.runner.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    this.activeDrainers.decrementAndGet();
+                }
+                return;
+            }
+        }
+    }
+
+    private void drain() {
+        for (; ; ) {
+            Entry entry = pollNext();
+            if (entry != null) {
+                runEntry(entry);
+                continue;
+            }
+            this.activeDrainers.decrementAndGet();
+            // 退出前再检查一次，避免刚入队的任务没有线程处理
+            if (this.readyQueues.isEmpty() || this.shutdown) {
+                return;
+            }
+            int active = this.activeDrainers.get();
+            if (active >= this.maxConcurrency || !this.activeDrainers.compareAndSet(active, active + 1)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 各请求码轮流出队：取一个后，队列仍非空就放回就绪队列尾部
+     */
+    private Entry pollNext() {
+        CodeQueue codeQueue;
+        while ((codeQueue = this.readyQueues.poll()) != null) {
+            Entry entry = codeQueue.poll();
+            codeQueue.ready.set(false);
+            markReady(codeQueue);
+            if (entry != null) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private void runEntry(Entry entry) {
+        RequestTask requestTask = entry.requestTask;
+        if (requestTask != null) {
+            CodeQueue codeQueue = getCodeQueue(requestTask.getRequest().getCode());
+            long waitMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - entry.enqueueNanos);
+            RemotingMetricsManager.requestQueueWait.record(waitMillis, RemotingMetricsManager.newAttributesBuilder()
+                .put(LABEL_REQUEST_CODE, RemotingHelper.getRequestCodeDesc(codeQueue.code)).build());
+            long ageMillis = requestTask.getRequest().getProcessTimer() != null
+                ? requestTask.getRequest().getProcessTimer().elapsed(TimeUnit.MILLISECONDS) : waitMillis;
+            if (ageMillis > codeQueue.slaMillis) {
+                shed(entry, codeQueue, ageMillis);
+                return;
+            }
+        }
+        try {
+            entry.command.run();
+        } catch (Throwable e) {
+            log.warn("{} execute request task exception", this.name, e);
+        }
+    }
+
+    private void shed(Entry entry, CodeQueue codeQueue, long ageMillis) {
+        RequestTask requestTask = entry.requestTask;
+        requestTask.setStopRun(true);
+        if (entry.command instanceof FutureTask) {
+            ((FutureTask<?>) entry.command).cancel(false);
+        }
+        RemotingCommand request = requestTask.getRequest();
+        if (!request.isOnewayRPC()) {
+            requestTask.returnResponse(RemotingSysResponseCode.SYSTEM_BUSY, String.format(
+                "[TIMEOUT_CLEAN_QUEUE]system busy, start flow control for a while, period in queue: %sms, size of queue: %d",
+                ageMillis, codeQueue.size()));
+        }
+        if ((System.currentTimeMillis() % 1000) == 0) {
+            log.warn("{} drop expired request, code: {}, age: {}ms, sla: {}ms", this.name, codeQueue.code, ageMillis, codeQueue.slaMillis);
+        }
+    }
+
+    /**
+     * @return 请求码 - 当前排队数
+     */
+    public Map<Integer, Integer> getQueueDepths() {
+        Map<Integer, Integer> depths = new HashMap<>();
+        for (CodeQueue codeQueue : this.codeQueues.values()) {
+            depths.put(codeQueue.code, codeQueue.size());
+        }
+        return depths;
+    }
+
+    public boolean isVirtualThread() {
+        return virtualThread;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void shutdown() {
+        this.shutdown = true;
+        this.runner.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        this.shutdown = true;
+        List<Runnable> pending = new ArrayList<>();
+        for (CodeQueue codeQueue : this.codeQueues.values()) {
+            Entry entry;
+            while ((entry = codeQueue.poll()) != null) {
+                pending.add(entry.command);
+            }
+        }
+        pending.addAll(this.runner.shutdownNow());
+        return pending;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return this.shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return this.shutdown && this.runner.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return this.runner.awaitTermination(timeout, unit);
+    }
+
+    @Override
+    public String toString() {
+        return "AdaptiveRequestExecutor{name=" + name + ", virtualThread=" + virtualThread + ", maxConcurrency=" + maxConcurrency
+            + ", activeDrainers=" + activeDrainers.get() + ", queueDepths=" + getQueueDepths() + "}";
+    }
+
+    /**
+     * 容量和 SLA 可以在运行中调整，所以不用定长的 ArrayBlockingQueue，入队前先占一个计数名额
+     */
+    private static final class CodeQueue {
+        private final int code;
+        private volatile int capacity;
+        private volatile long slaMillis;
+        private final ConcurrentLinkedQueue<Entry> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger(0);
+        private final AtomicBoolean ready = new AtomicBoolean(false);
+
+        CodeQueue(int code, int capacity, long slaMillis) {
+            this.code = code;
+            this.capacity = capacity;
+            this.slaMillis = slaMillis;
+        }
+
+        /**
+         * 调小容量时已排队的请求不受影响，只是新请求要等队列降到新容量以下才能进来
+         */
+        void configure(int capacity, long slaMillis) {
+            this.capacity = capacity;
+            this.slaMillis = slaMillis;
+        }
+
+        boolean offer(Entry entry) {
+            for (; ; ) {
+                int current = size.get();
+                if (current >= capacity) {
+                    return false;
+                }
+                if (size.compareAndSet(current, current + 1)) {
+                    break;
+                }
+            }
+            queue.offer(entry);
+            return true;
+        }
+
+        Entry poll() {
+            Entry entry = queue.poll();
+            if (entry != null) {
+                size.decrementAndGet();
+            }
+            return entry;
+        }
+
+        boolean isEmpty() {
+            return queue.isEmpty();
+        }
+
+        int size() {
+            return size.get();
+        }
+    }
+
+    private static final class Entry {
+        private final Runnable command;
+        private final RequestTask requestTask;
+        private final long enqueueNanos = System.nanoTime();
+
+        Entry(Runnable command, RequestTask requestTask) {
+            this.command = command;
+            this.requestTask = requestTask;
+        }
+    }
+
+    private static final class CodedFutureTask<T> extends FutureTask<T> {
+        private final Runnable origin;
+
+        CodedFutureTask(Runnable runnable, T value) {
+            super(runnable, value);
+            this.origin = runnable;
+        }
+    }
+}
@@ -9,9 +9,18 @@ public class NettyClientConfig {
      * Worker thread number
      */
     private int clientWorkerThreads = NettySystemConfig.clientWorkerSize;
+    /**
+     * IO 线程数，每条连接固定在其中一个线程上，连接多时调大可以分摊读写
+     */
+    private int clientSelectorThreads = NettySystemConfig.clientSelectorSize;
     private int clientCallbackExecutorThreads = Runtime.getRuntime().availableProcessors();
     private int clientOnewaySemaphoreValue = NettySystemConfig.CLIENT_ONEWAY_SEMAPHORE_VALUE;
     private int clientAsyncSemaphoreValue = NettySystemConfig.CLIENT_ASYNC_SEMAPHORE_VALUE;
+    /**
+     * 在途请求体字节上限，&lt;= 0 表示只按请求数限流
+     */
+    private long clientOnewayBytesLimit = 0;
+    private long clientAsyncBytesLimit = 0;
     private int connectTimeoutMillis = NettySystemConfig.connectTimeoutMillis;
     private long channelNotActiveInterval = 1000 * 60;
 
@@ -43,6 +52,51 @@ public class NettyClientConfig {
 
     private boolean enableReconnectForGoAway = true;
 
+    /**
+     * 每个 broker 地址维护的连接数，默认 1 即单连接；NameServer 始终只用一条连接
+     */
+    private int channelPoolSize = 1;
+    /**
+     * 连接池选择策略：false 为轮询，true 为选择在途请求最少的连接
+     */
+    private boolean channelPoolLeastPendingEnable = false;
+
+    /**
+     * 在 Linux 上使用 native epoll（边缘触发），不可用时自动回退到 NIO
+     */
+    private boolean useEpollNativeSelector = false;
+    /**
+     * epoll 下开启 TCP_QUICKACK，减少小请求应答的延迟确认
+     */
+    private boolean clientEpollQuickAck = false;
+    /**
+     * epoll 下的 SO_BUSY_POLL 微秒数，0 表示不开启
+     */
+    private int clientEpollBusyPollMicros = 0;
+
+    /**
+     * 合并 flush，见 {@link RemotingFlushConsolidationHandler}
+     */
+    private boolean flushConsolidationEnable = false;
+    /**
+     * 积压这么多次 flush 后不再等待，立即刷出
+     */
+    private int flushConsolidationMaxPendingFlushes = 256;
+    /**
+     * 参与合并的请求码，逗号分隔，为空表示全部
+     */
+    private String flushConsolidationRequestCodes = "";
+
+    /**
+     * invokeOnewayBatched 的攒批窗口，毫秒，&lt;= 0 表示不攒批；对端必须支持信封命令
+     */
+    private int onewayBatchWindowMillis = NettySystemConfig.clientOnewayBatchWindowMillis;
+    /**
+     * 一个信封最多装的命令数和 body 字节数，任一达到就立即发送
+     */
+    private int onewayBatchMaxCommands = 64;
+    private int onewayBatchMaxBytes = 256 * 1024;
+
     public boolean isClientCloseSocketIfTimeout() {
         return clientCloseSocketIfTimeout;
     }
@@ -59,6 +113,14 @@ public class NettyClientConfig {
         this.clientWorkerThreads = clientWorkerThreads;
     }
 
+    public int getClientSelectorThreads() {
+        return clientSelectorThreads;
+    }
+
+    public void setClientSelectorThreads(int clientSelectorThreads) {
+        this.clientSelectorThreads = clientSelectorThreads;
+    }
+
     public int getClientOnewaySemaphoreValue() {
         return clientOnewaySemaphoreValue;
     }
@@ -99,6 +161,22 @@ public class NettyClientConfig {
         this.clientAsyncSemaphoreValue = clientAsyncSemaphoreValue;
     }
 
+    public long getClientOnewayBytesLimit() {
+        return clientOnewayBytesLimit;
+    }
+
+    public void setClientOnewayBytesLimit(long clientOnewayBytesLimit) {
+        this.clientOnewayBytesLimit = clientOnewayBytesLimit;
+    }
+
+    public long getClientAsyncBytesLimit() {
+        return clientAsyncBytesLimit;
+    }
+
+    public void setClientAsyncBytesLimit(long clientAsyncBytesLimit) {
+        this.clientAsyncBytesLimit = clientAsyncBytesLimit;
+    }
+
     public int getClientChannelMaxIdleTimeSeconds() {
         return clientChannelMaxIdleTimeSeconds;
     }
@@ -202,4 +280,92 @@ public class NettyClientConfig {
     public void setScanAvailableNameSrv(boolean scanAvailableNameSrv) {
         this.isScanAvailableNameSrv = scanAvailableNameSrv;
     }
+
+    public int getChannelPoolSize() {
+        return channelPoolSize;
+    }
+
+    public void setChannelPoolSize(int channelPoolSize) {
+        this.channelPoolSize = channelPoolSize;
+    }
+
+    public boolean isChannelPoolLeastPendingEnable() {
+        return channelPoolLeastPendingEnable;
+    }
+
+    public void setChannelPoolLeastPendingEnable(boolean channelPoolLeastPendingEnable) {
+        this.channelPoolLeastPendingEnable = channelPoolLeastPendingEnable;
+    }
+
+    public boolean isUseEpollNativeSelector() {
+        return useEpollNativeSelector;
+    }
+
+    public void setUseEpollNativeSelector(boolean useEpollNativeSelector) {
+        this.useEpollNativeSelector = useEpollNativeSelector;
+    }
+
+    public boolean isClientEpollQuickAck() {
+        return clientEpollQuickAck;
+    }
+
+    public void setClientEpollQuickAck(boolean clientEpollQuickAck) {
+        this.clientEpollQuickAck = clientEpollQuickAck;
+    }
+
+    public int getClientEpollBusyPollMicros() {
+        return clientEpollBusyPollMicros;
+    }
+
+    public void setClientEpollBusyPollMicros(int clientEpollBusyPollMicros) {
+        this.clientEpollBusyPollMicros = clientEpollBusyPollMicros;
+    }
+
+    public boolean isFlushConsolidationEnable() {
+        return flushConsolidationEnable;
+    }
+
+    public void setFlushConsolidationEnable(boolean flushConsolidationEnable) {
+        this.flushConsolidationEnable = flushConsolidationEnable;
+    }
+
+    public int getFlushConsolidationMaxPendingFlushes() {
+        return flushConsolidationMaxPendingFlushes;
+    }
+
+    public void setFlushConsolidationMaxPendingFlushes(int flushConsolidationMaxPendingFlushes) {
+        this.flushConsolidationMaxPendingFlushes = flushConsolidationMaxPendingFlushes;
+    }
+
+    public String getFlushConsolidationRequestCodes() {
+        return flushConsolidationRequestCodes;
+    }
+
+    public void setFlushConsolidationRequestCodes(String flushConsolidationRequestCodes) {
+        this.flushConsolidationRequestCodes = flushConsolidationRequestCodes;
+    }
+
+    public int getOnewayBatchWindowMillis() {
+        return onewayBatchWindowMillis;
+    }
+
+    public void setOnewayBatchWindowMillis(int onewayBatchWindowMillis) {
+        this.onewayBatchWindowMillis = onewayBatchWindowMillis;
+    }
+
+    public int getOnewayBatchMaxCommands() {
+        return onewayBatchMaxCommands;
+    }
+
+    public void setOnewayBatchMaxCommands(int onewayBatchMaxCommands) {
+        this.onewayBatchMaxCommands = onewayBatchMaxCommands;
+    }
+
+    public int getOnewayBatchMaxBytes() {
+        return onewayBatchMaxBytes;
+    }
+
+    public void setOnewayBatchMaxBytes(int onewayBatchMaxBytes) {
+        this.onewayBatchMaxBytes = onewayBatchMaxBytes;
+    }
 }
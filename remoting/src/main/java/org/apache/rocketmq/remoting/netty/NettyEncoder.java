@@ -1,9 +1,12 @@
 package org.apache.rocketmq.remoting.netty;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
 import io.netty.handler.codec.MessageToByteEncoder;
+import io.netty.util.ReferenceCountUtil;
 import org.apache.rocketmq.common.constant.LoggerName;
 import org.apache.rocketmq.logging.org.slf4j.Logger;
 import org.apache.rocketmq.logging.org.slf4j.LoggerFactory;
@@ -16,6 +19,45 @@ import org.apache.rocketmq.remoting.protocol.RemotingCommand;
 public class NettyEncoder extends MessageToByteEncoder<RemotingCommand> {
     private static final Logger log = LoggerFactory.getLogger(LoggerName.ROCKETMQ_REMOTING_NAME);
 
+    /**
+     * body 以 ByteBuf 形式携带时不走 {@link #encode}：header 单独编码到一个池化缓冲区，
+     * 再与 body 组合成 CompositeByteBuf 写出，body 不会被拷贝进输出缓冲区。
+     */
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (msg instanceof RemotingCommand && ((RemotingCommand) msg).getBodyBuf() != null) {
+            writeComposite(ctx, (RemotingCommand) msg, promise);
+            return;
+        }
+        super.write(ctx, msg, promise);
+    }
+
+    private void writeComposite(ChannelHandlerContext ctx, RemotingCommand remotingCommand, ChannelPromise promise) {
+        if (!remotingCommand.markBodyBufWritten()) {
+            // 调用方已放弃该请求并释放了 bodyBuf
+            promise.tryFailure(new IllegalStateException("body ByteBuf of request " + remotingCommand.getOpaque() + " has been released"));
+            return;
+        }
+        ByteBuf bodyBuf = remotingCommand.getBodyBuf();
+        ByteBuf header = null;
+        try {
+            header = ctx.alloc().ioBuffer();
+            remotingCommand.fastEncodeHeader(header);
+            CompositeByteBuf composite = ctx.alloc().compositeDirectBuffer(2);
+            composite.addComponents(true, header, bodyBuf);
+            ctx.write(composite, promise);
+        } catch (Exception e) {
+            log.error("encode exception, " + RemotingHelper.parseChannelRemoteAddr(ctx.channel()), e);
+            log.error(remotingCommand.toString());
+            ReferenceCountUtil.safeRelease(bodyBuf);
+            if (header != null) {
+                ReferenceCountUtil.safeRelease(header);
+            }
+            promise.tryFailure(e);
+            RemotingHelper.closeChannel(ctx.channel());
+        }
+    }
+
     @Override
     protected void encode(ChannelHandlerContext ctx, RemotingCommand remotingCommand, ByteBuf out) throws Exception {
         try {
@@ -1,10 +1,12 @@
 package org.apache.rocketmq.remoting.netty;
 
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslHandler;
+import io.netty.util.HashedWheelTimer;
 import io.netty.util.concurrent.Future;
 import io.opentelemetry.api.common.AttributesBuilder;
 
@@ -21,7 +23,6 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
-import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -33,6 +34,7 @@ import org.apache.rocketmq.common.AbortProcessException;
 import org.apache.rocketmq.common.MQVersion;
 import org.apache.rocketmq.common.Pair;
 import org.apache.rocketmq.common.ServiceThread;
+import org.apache.rocketmq.common.ThreadFactoryImpl;
 import org.apache.rocketmq.common.UtilAll;
 import org.apache.rocketmq.common.constant.LoggerName;
 import org.apache.rocketmq.common.utils.ExceptionUtils;
@@ -42,16 +44,22 @@ import org.apache.rocketmq.remoting.ChannelEventListener;
 import org.apache.rocketmq.remoting.InvokeCallback;
 import org.apache.rocketmq.remoting.RPCHook;
 import org.apache.rocketmq.remoting.common.RemotingHelper;
-import org.apache.rocketmq.remoting.common.SemaphoreReleaseOnlyOnce;
+import org.apache.rocketmq.remoting.common.InFlightLimiter;
+import org.apache.rocketmq.remoting.common.StripedInFlightLimiter;
+import org.apache.rocketmq.remoting.exception.RemotingCommandException;
 import org.apache.rocketmq.remoting.exception.RemotingSendRequestException;
 import org.apache.rocketmq.remoting.exception.RemotingTimeoutException;
 import org.apache.rocketmq.remoting.exception.RemotingTooMuchRequestException;
 import org.apache.rocketmq.remoting.metrics.RemotingMetricsManager;
 import org.apache.rocketmq.remoting.pipeline.RequestPipeline;
 import org.apache.rocketmq.remoting.protocol.RemotingCommand;
+import org.apache.rocketmq.remoting.protocol.RemotingCommandBatch;
 import org.apache.rocketmq.remoting.protocol.RemotingSysResponseCode;
 import org.apache.rocketmq.remoting.protocol.ResponseCode;
 
+import static org.apache.rocketmq.remoting.metrics.RemotingMetricsConstant.INVOKE_TYPE_ASYNC;
+import static org.apache.rocketmq.remoting.metrics.RemotingMetricsConstant.INVOKE_TYPE_ONEWAY;
+import static org.apache.rocketmq.remoting.metrics.RemotingMetricsConstant.LABEL_INVOKE_TYPE;
 import static org.apache.rocketmq.remoting.metrics.RemotingMetricsConstant.LABEL_IS_LONG_POLLING;
 import static org.apache.rocketmq.remoting.metrics.RemotingMetricsConstant.LABEL_REQUEST_CODE;
 import static org.apache.rocketmq.remoting.metrics.RemotingMetricsConstant.LABEL_RESPONSE_CODE;
@@ -72,14 +80,22 @@ public abstract class NettyRemotingAbstract {
     private static final Logger log = LoggerFactory.getLogger(LoggerName.ROCKETMQ_REMOTING_NAME);
 
     /**
-     * 信号量限制 单项请求的数量 ， 保护 sys 内存
+     * 请求超时时间轮，进程内所有 client / server 共用一个守护线程。
+     * 每个 ResponseFuture 在 invoke0 时登记、收到应答时取消，到期直接回调，不再周期性扫描整张 responseTable。
+     * 超过一圈（tick * ticksPerWheel）的超时由 HashedWheelTimer 按剩余圈数处理。
      */
-    protected final Semaphore semaphoreOneway;
+    private static final HashedWheelTimer RESPONSE_TIMEOUT_TIMER = new HashedWheelTimer(
+        new ThreadFactoryImpl("NettyResponseTimeoutTimer_", true), 10, TimeUnit.MILLISECONDS, 1024);
 
     /**
-     * 信号量，限制最大的 异步请求数量，保护内存
+     * 限制 单项请求的数量 ， 保护 sys 内存
      */
-    protected final Semaphore semaphoreAsync;
+    protected final InFlightLimiter onewayLimiter;
+
+    /**
+     * 限制最大的 异步请求数量（以及可选的在途字节数），保护内存
+     */
+    protected final InFlightLimiter asyncLimiter;
 
     /**
      * 缓存正在运行的请求 隐藏码 - Response 未来容器
@@ -126,8 +142,18 @@ public abstract class NettyRemotingAbstract {
      * @param permitsAsync  Number of permits for asynchronous requests.
      */
     public NettyRemotingAbstract(final int permitsOneway, final int permitsAsync) {
-        this.semaphoreOneway = new Semaphore(permitsOneway, true);
-        this.semaphoreAsync = new Semaphore(permitsAsync, true);
+        this(new StripedInFlightLimiter(permitsOneway), new StripedInFlightLimiter(permitsAsync));
+    }
+
+    /**
+     * 构造函数，自定义限流器
+     *
+     * @param onewayLimiter limiter for one-way requests.
+     * @param asyncLimiter  limiter for asynchronous requests.
+     */
+    public NettyRemotingAbstract(final InFlightLimiter onewayLimiter, final InFlightLimiter asyncLimiter) {
+        this.onewayLimiter = onewayLimiter;
+        this.asyncLimiter = asyncLimiter;
     }
 
     /**
@@ -165,7 +191,11 @@ public abstract class NettyRemotingAbstract {
         if (msg != null) {
             switch (msg.getType()) {
                 case REQUEST_COMMAND:
-                    processRequestCommand(ctx, msg);
+                    if (RemotingCommandBatch.isBatch(msg)) {
+                        processBatchRequestCommand(ctx, msg);
+                    } else {
+                        processRequestCommand(ctx, msg);
+                    }
                     break;
                 case RESPONSE_COMMAND:
                     processResponseCommand(ctx, msg);
@@ -211,7 +241,7 @@ public abstract class NettyRemotingAbstract {
         response.setOpaque(request.getOpaque());
         response.markResponseType();
         try {
-            channel.writeAndFlush(response).addListener((ChannelFutureListener) future -> {
+            RemotingFlushConsolidationHandler.writeAndFlush(channel, response, request.getCode()).addListener((ChannelFutureListener) future -> {
                 if (future.isSuccess()) {
                     log.debug("Response[request code: {}, response code: {}, opaque: {}] is written to channel{}", request.getCode(), response.getCode(), response.getOpaque(), channel);
                 } else {
@@ -232,6 +262,27 @@ public abstract class NettyRemotingAbstract {
         }
     }
 
+    /**
+     * 拆开信封，子命令按原来的顺序逐条走 processRequestCommand，信封本身没有响应
+     */
+    public void processBatchRequestCommand(final ChannelHandlerContext ctx, final RemotingCommand envelope) {
+        List<RemotingCommand> commands;
+        try {
+            commands = RemotingCommandBatch.decode(envelope);
+        } catch (RemotingCommandException e) {
+            // 帧边界已经错乱，后面的子命令也无法信任
+            log.error("decode batch command exception, " + RemotingHelper.parseChannelRemoteAddr(ctx.channel()), e);
+            return;
+        }
+        for (RemotingCommand cmd : commands) {
+            if (RemotingCommandBatch.isBatch(cmd) || cmd.isResponseType()) {
+                log.warn("ignore nested batch or response command in batch, code: {}, from {}", cmd.getCode(), RemotingHelper.parseChannelRemoteAddr(ctx.channel()));
+                continue;
+            }
+            processRequestCommand(ctx, cmd);
+        }
+    }
+
     /**
      * Process incoming request command issued by remote peer.
      *
@@ -369,6 +420,7 @@ public abstract class NettyRemotingAbstract {
             responseFuture.setResponseCommand(cmd);
 
             responseTable.remove(opaque);
+            responseFuture.cancelTimeout();
 
             if (responseFuture.getInvokeCallback() != null) {
                 executeInvokeCallback(responseFuture);
@@ -450,8 +502,7 @@ public abstract class NettyRemotingAbstract {
 
     /**
      * <p>
-     * 周期性扫描、过期弃用的请求
-     * This method is periodically invoked to scan and expire deprecated request.
+     * 扫描、过期弃用的请求。超时已经由 {@link #RESPONSE_TIMEOUT_TIMER} 逐个处理，这里只作为兜底手动调用，不再定时执行。
      * </p>
      */
     public void scanResponseTable() {
@@ -463,6 +514,7 @@ public abstract class NettyRemotingAbstract {
             // 超时之后清理 ResponseFuture，防止堆积。
             if ((rep.getBeginTimestamp() + rep.getTimeoutMillis() + 1000) <= System.currentTimeMillis()) {
                 rep.release();
+                rep.cancelTimeout();
                 it.remove();
                 rfList.add(rep);
                 log.warn("remove timeout request, " + rep);
@@ -482,6 +534,10 @@ public abstract class NettyRemotingAbstract {
         try {
             return invokeImpl(channel, request, timeoutMillis).thenApply(ResponseFuture::getResponseCommand).get(timeoutMillis, TimeUnit.MILLISECONDS);
         } catch (ExecutionException e) {
+            // 时间轮可能先于 get 判定超时，这种情况仍按超时抛出
+            if (e.getCause() instanceof RemotingTimeoutException) {
+                throw (RemotingTimeoutException) e.getCause();
+            }
             throw new RemotingSendRequestException(channel.remoteAddress().toString(), e.getCause());
         } catch (TimeoutException e) {
             throw new RemotingTimeoutException(channel.remoteAddress().toString(), timeoutMillis, e.getCause());
@@ -497,18 +553,18 @@ public abstract class NettyRemotingAbstract {
         long beginStartTime = System.currentTimeMillis();
         final int opaque = request.getOpaque();
 
+        final int permitBytes = requestBytes(request);
         boolean acquired;
         try {
-            acquired = this.semaphoreAsync.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS);
+            acquired = acquirePermit(this.asyncLimiter, permitBytes, timeoutMillis, INVOKE_TYPE_ASYNC);
         } catch (Throwable t) {
             future.completeExceptionally(t); // 锁定超时异常
             return future;
         }
         if (acquired) {
-            final SemaphoreReleaseOnlyOnce once = new SemaphoreReleaseOnlyOnce(this.semaphoreAsync);
             long costTime = System.currentTimeMillis() - beginStartTime;
             if (timeoutMillis < costTime) {
-                once.release();
+                this.asyncLimiter.release(permitBytes);
                 future.completeExceptionally(new RemotingTimeoutException("invokeAsyncImpl call timeout"));
                 return future;
             }
@@ -529,11 +585,13 @@ public abstract class NettyRemotingAbstract {
                 public void operationFail(Throwable throwable) {
                     future.completeExceptionally(throwable);
                 }
-            }, once);
+            }, this.asyncLimiter, permitBytes);
             responseFutureReference.set(responseFuture); // 原子性引用
             this.responseTable.put(opaque, responseFuture);
+            responseFuture.setTimeout(RESPONSE_TIMEOUT_TIMER.newTimeout(
+                timeout -> onResponseTimeout(responseFuture), responseFuture.getTimeoutMillis(), TimeUnit.MILLISECONDS));
             try {
-                channel.writeAndFlush(request).addListener((ChannelFutureListener) f -> {
+                RemotingFlushConsolidationHandler.writeAndFlush(channel, request, request.getCode()).addListener((ChannelFutureListener) f -> {
                     if (f.isSuccess()) {
                         responseFuture.setSendRequestOK(true);
                         return;
@@ -544,6 +602,7 @@ public abstract class NettyRemotingAbstract {
                 return future;
             } catch (Exception e) {
                 responseTable.remove(opaque);
+                responseFuture.cancelTimeout();
                 responseFuture.release();
                 log.warn("send a request command to channel <{}> channelId={} Exception", RemotingHelper.parseChannelRemoteAddr(channel), channel.id(), e);
                 future.completeExceptionally(new RemotingSendRequestException(RemotingHelper.parseChannelRemoteAddr(channel), e));
@@ -553,7 +612,7 @@ public abstract class NettyRemotingAbstract {
             if (timeoutMillis <= 0) {
                 future.completeExceptionally(new RemotingTooMuchRequestException("invokeAsyncImpl invoke too fast"));
             } else {
-                String info = String.format("invokeAsyncImpl tryAcquire semaphore timeout, %dms, waiting thread nums: %d semaphoreAsyncValue: %d", timeoutMillis, this.semaphoreAsync.getQueueLength(), this.semaphoreAsync.availablePermits());
+                String info = String.format("invokeAsyncImpl tryAcquire semaphore timeout, %dms, waiting thread nums: %d semaphoreAsyncValue: %d availableBytes: %d", timeoutMillis, this.asyncLimiter.getQueueLength(), this.asyncLimiter.availablePermits(), this.asyncLimiter.availableBytes());
                 log.warn(info);
                 future.completeExceptionally(new RemotingTimeoutException(info));
             }
@@ -579,9 +638,27 @@ public abstract class NettyRemotingAbstract {
                 });
     }
 
+    /**
+     * 时间轮到期回调：只有仍在 responseTable 中（未收到应答、未失败）的请求才按超时处理
+     */
+    private void onResponseTimeout(final ResponseFuture responseFuture) {
+        if (!responseTable.remove(responseFuture.getOpaque(), responseFuture)) {
+            return;
+        }
+        responseFuture.markTimeout();
+        responseFuture.release();
+        log.warn("remove timeout request, " + responseFuture);
+        try {
+            executeInvokeCallback(responseFuture);
+        } catch (Throwable e) {
+            log.warn("execute callback in onResponseTimeout, and callback throw", e);
+        }
+    }
+
     private void requestFail(final int opaque) {
         ResponseFuture responseFuture = responseTable.remove(opaque);
         if (responseFuture != null) {
+            responseFuture.cancelTimeout();
             responseFuture.setSendRequestOK(false);
             responseFuture.putResponse(null);
             try {
@@ -613,21 +690,24 @@ public abstract class NettyRemotingAbstract {
     public void invokeOnewayImpl(final Channel channel, final RemotingCommand request, final long timeoutMillis)
             throws InterruptedException, RemotingTooMuchRequestException, RemotingTimeoutException, RemotingSendRequestException {
         request.markOnewayRPC();
-        boolean acquired = this.semaphoreOneway.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS);
+        final int permitBytes = requestBytes(request);
+        boolean acquired = acquirePermit(this.onewayLimiter, permitBytes, timeoutMillis, INVOKE_TYPE_ONEWAY);
         if (acquired) {
-            final SemaphoreReleaseOnlyOnce once = new SemaphoreReleaseOnlyOnce(this.semaphoreOneway);
+            // writeAndFlush 抛异常时监听器不会注册，两处释放互斥，不再需要 SemaphoreReleaseOnlyOnce
+            ChannelFuture channelFuture;
             try {
-                channel.writeAndFlush(request).addListener((ChannelFutureListener) f -> {
-                    once.release();
-                    if (!f.isSuccess()) {
-                        log.warn("send a request command to channel <" + channel.remoteAddress() + "> failed.");
-                    }
-                });
+                channelFuture = RemotingFlushConsolidationHandler.writeAndFlush(channel, request, request.getCode());
             } catch (Exception e) {
-                once.release();
+                this.onewayLimiter.release(permitBytes);
                 log.warn("write send a request command to channel <" + channel.remoteAddress() + "> failed.");
                 throw new RemotingSendRequestException(RemotingHelper.parseChannelRemoteAddr(channel), e);
             }
+            channelFuture.addListener((ChannelFutureListener) f -> {
+                this.onewayLimiter.release(permitBytes);
+                if (!f.isSuccess()) {
+                    log.warn("send a request command to channel <" + channel.remoteAddress() + "> failed.");
+                }
+            });
         } else {
             if (timeoutMillis <= 0) {
                 throw new RemotingTooMuchRequestException("invokeOnewayImpl invoke too fast");
@@ -635,8 +715,8 @@ public abstract class NettyRemotingAbstract {
                 String info = String.format(
                         "invokeOnewayImpl tryAcquire semaphore timeout, %dms, waiting thread nums: %d semaphoreOnewayValue: %d",
                         timeoutMillis,
-                        this.semaphoreOneway.getQueueLength(),
-                        this.semaphoreOneway.availablePermits()
+                        this.onewayLimiter.getQueueLength(),
+                        this.onewayLimiter.availablePermits()
                 );
                 log.warn(info);
                 throw new RemotingTimeoutException(info);
@@ -644,6 +724,30 @@ public abstract class NettyRemotingAbstract {
         }
     }
 
+    /**
+     * 先走限流器的无锁快速路径，失败才进入等待，并记录等待耗时
+     */
+    private boolean acquirePermit(InFlightLimiter limiter, int permitBytes, long timeoutMillis, String invokeType) throws InterruptedException {
+        if (limiter.tryAcquire(permitBytes)) {
+            return true;
+        }
+        long begin = System.nanoTime();
+        boolean acquired = limiter.tryAcquire(permitBytes, timeoutMillis, TimeUnit.MILLISECONDS);
+        RemotingMetricsManager.limiterAcquireWait.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - begin),
+            RemotingMetricsManager.newAttributesBuilder().put(LABEL_INVOKE_TYPE, invokeType).build());
+        return acquired;
+    }
+
+    /**
+     * 请求占用限流器的字节数，按 body 计算
+     */
+    private static int requestBytes(RemotingCommand request) {
+        if (request.getBody() != null) {
+            return request.getBody().length;
+        }
+        return request.getBodyBuf() != null ? request.getBodyBuf().readableBytes() : 0;
+    }
+
     public HashMap<Integer, Pair<NettyRequestProcessor, ExecutorService>> getProcessorTable() {
         return processorTable;
     }
@@ -6,6 +6,11 @@ import com.google.common.base.Stopwatch;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.*;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollMode;
+import io.netty.channel.epoll.EpollSocketChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioSocketChannel;
@@ -32,11 +37,13 @@ import org.apache.rocketmq.remoting.ChannelEventListener;
 import org.apache.rocketmq.remoting.InvokeCallback;
 import org.apache.rocketmq.remoting.RemotingClient;
 import org.apache.rocketmq.remoting.common.RemotingHelper;
+import org.apache.rocketmq.remoting.common.StripedInFlightLimiter;
 import org.apache.rocketmq.remoting.exception.RemotingConnectException;
 import org.apache.rocketmq.remoting.exception.RemotingSendRequestException;
 import org.apache.rocketmq.remoting.exception.RemotingTimeoutException;
 import org.apache.rocketmq.remoting.exception.RemotingTooMuchRequestException;
 import org.apache.rocketmq.remoting.protocol.RemotingCommand;
+import org.apache.rocketmq.remoting.protocol.RemotingCommandBatch;
 import org.apache.rocketmq.remoting.protocol.RequestCode;
 import org.apache.rocketmq.remoting.protocol.ResponseCode;
 import org.apache.rocketmq.remoting.proxy.SocksProxyConfig;
@@ -49,6 +56,7 @@ import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -65,10 +73,9 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
     protected final NettyClientConfig nettyClientConfig;
     private final Bootstrap bootstrap = new Bootstrap();
     private final EventLoopGroup eventLoopGroupWorker; // 主要执行线程池，用来通信的
-    private final Lock lockChannelTables = new ReentrantLock();
     private final Map<String /* cidr */, SocksProxyConfig /* proxy */> proxyMap = new HashMap<>(); // IP:PORT - Socks5配置
     private final ConcurrentHashMap<String /* cidr */, Bootstrap> bootstrapMap = new ConcurrentHashMap<>(); // IP:PORT - Bootstrap启动对象
-    private final ConcurrentMap<String /* addr */, ChannelWrapper> channelTables = new ConcurrentHashMap<>(); // IP - ChannelWrapper
+    private final ConcurrentMap<String /* addr */, ChannelWrapperPool> channelTables = new ConcurrentHashMap<>(); // IP - 连接池
     private final ConcurrentMap<Channel, ChannelWrapper> channelWrapperTables = new ConcurrentHashMap<>(); // Channel - ChannelWrapper
     // 它是 Netty 提供的 高性能定时器实现类，基于哈希时间轮（Timing Wheel）算法，专门用于 延迟、超时等“近似”定时任务调度，尤其适合大量 I/O 相关的定时处理场景（如心跳、连接超时）
     // 插入新任务 o(1) ，用于心跳检测等等.... 定时器，比 ScheduledThreadPoolExecutor 高效
@@ -88,6 +95,9 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
      */
     private ExecutorService callbackExecutor; // 回调函数执行器
     private final ChannelEventListener channelEventListener; // channel 回调
+    private final RemotingFlushConsolidationHandler.Policy flushConsolidationPolicy; // 未开启合并 flush 时为 null
+    private final ConcurrentMap<String /* addr */, OnewayBatch> onewayBatchTable = new ConcurrentHashMap<>(); // 攒批中的单向请求
+    private final ScheduledExecutorService onewayBatchExecutor; // 到窗口时间发送批次，未开启攒批时为 null
     private EventExecutorGroup defaultEventExecutorGroup; // workers
 
 
@@ -109,9 +119,16 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
      */
     public NettyRemotingClient(final NettyClientConfig nettyClientConfig, final ChannelEventListener channelEventListener, final EventLoopGroup eventLoopGroup, final EventExecutorGroup eventExecutorGroup) {
         // NettyRemotingAbstract
-        super(nettyClientConfig.getClientOnewaySemaphoreValue(), nettyClientConfig.getClientAsyncSemaphoreValue());
+        super(new StripedInFlightLimiter(nettyClientConfig.getClientOnewaySemaphoreValue(), nettyClientConfig.getClientOnewayBytesLimit()),
+            new StripedInFlightLimiter(nettyClientConfig.getClientAsyncSemaphoreValue(), nettyClientConfig.getClientAsyncBytesLimit()));
         this.nettyClientConfig = nettyClientConfig;
         this.channelEventListener = channelEventListener;
+        this.flushConsolidationPolicy = nettyClientConfig.isFlushConsolidationEnable()
+            ? new RemotingFlushConsolidationHandler.Policy(nettyClientConfig.getFlushConsolidationMaxPendingFlushes(), nettyClientConfig.getFlushConsolidationRequestCodes())
+            : null;
+        this.onewayBatchExecutor = nettyClientConfig.getOnewayBatchWindowMillis() > 0
+            ? ThreadUtils.newSingleThreadScheduledExecutor(new ThreadFactoryImpl("NettyClientOnewayBatch_"))
+            : null;
 
         this.loadSocksProxyJson(); // 从代理 json 中加载相关信息
 
@@ -127,8 +144,7 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
         if (eventLoopGroup != null) {
             this.eventLoopGroupWorker = eventLoopGroup;
         } else {
-            // NioEventLoopGroup 使用 ThreadFactory 的方式是通过构造函数注入的。
-            this.eventLoopGroupWorker = new NioEventLoopGroup(1, new ThreadFactoryImpl("NettyClientSelector_"));
+            this.eventLoopGroupWorker = buildEventLoopGroupWorker();
         }
         this.defaultEventExecutorGroup = eventExecutorGroup;
 
@@ -145,6 +161,58 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
         }
     }
 
+    /**
+     * 多个 IO 线程时，新建的连接由 EventLoopGroup.next() 轮询分配，同一 broker 的连接池也会分散到不同线程上
+     */
+    private EventLoopGroup buildEventLoopGroupWorker() {
+        int threads = Math.max(1, nettyClientConfig.getClientSelectorThreads());
+        // EventLoopGroup 使用 ThreadFactory 的方式是通过构造函数注入的。
+        if (useEpoll()) {
+            return new EpollEventLoopGroup(threads, new ThreadFactoryImpl("NettyClientEPOLLSelector_"));
+        }
+        return new NioEventLoopGroup(threads, new ThreadFactoryImpl("NettyClientSelector_"));
+    }
+
+    // 只有 Linux 能用 Epoll；外部传入的 EventLoopGroup 决定了能用哪种 Channel，与 useEpollNativeSelector 无关
+    private boolean useEpoll() {
+        if (this.eventLoopGroupWorker != null) {
+            return this.eventLoopGroupWorker instanceof EpollEventLoopGroup;
+        }
+        return NetworkUtil.isLinuxPlatform() && nettyClientConfig.isUseEpollNativeSelector() && Epoll.isAvailable();
+    }
+
+    /**
+     * 按是否使用 epoll 设置 Channel 类型和对应的 epoll 参数
+     */
+    private Bootstrap configChannel(final Bootstrap bootstrap) {
+        if (!useEpoll()) {
+            return bootstrap.channel(NioSocketChannel.class);
+        }
+        bootstrap.channel(EpollSocketChannel.class)
+                .option(EpollChannelOption.EPOLL_MODE, EpollMode.EDGE_TRIGGERED);
+        if (nettyClientConfig.isClientEpollQuickAck()) {
+            bootstrap.option(EpollChannelOption.TCP_QUICKACK, true);
+        }
+        if (nettyClientConfig.getClientEpollBusyPollMicros() > 0) {
+            bootstrap.option(EpollChannelOption.SO_BUSY_POLL, nettyClientConfig.getClientEpollBusyPollMicros());
+        }
+        return bootstrap;
+    }
+
+    /**
+     * 合并 flush 的 handler 放在编解码器之前，能看到一次读事件的开始和结束
+     */
+    private void addFlushConsolidationHandler(ChannelPipeline pipeline) {
+        if (flushConsolidationPolicy != null) {
+            pipeline.addLast(nettyClientConfig.isDisableNettyWorkerGroup() ? null : defaultEventExecutorGroup,
+                RemotingFlushConsolidationHandler.HANDLER_NAME, new RemotingFlushConsolidationHandler(flushConsolidationPolicy));
+        }
+    }
+
+    public RemotingFlushConsolidationHandler.Policy getFlushConsolidationPolicy() {
+        return flushConsolidationPolicy;
+    }
+
     /**
      * 随机数生成器
      *
@@ -178,7 +246,7 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
                     new ThreadFactoryImpl("NettyClientWorkerThread_")); // ThreadFactoryImpl - 创建线程，设定名称，
         }
 
-        Bootstrap handler = this.bootstrap.group(this.eventLoopGroupWorker).channel(NioSocketChannel.class) // nio
+        Bootstrap handler = configChannel(this.bootstrap.group(this.eventLoopGroupWorker)) // nio 或 epoll
                 .option(ChannelOption.TCP_NODELAY, true) // 禁用 nagle算法
                 .option(ChannelOption.SO_KEEPALIVE, false) // 探测 TCP Keep-Alive
                 .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, nettyClientConfig.getConnectTimeoutMillis()) // 连接超时时间，默认 3000 ms
@@ -195,6 +263,7 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
                                 LOGGER.warn("Connections are insecure as SSLContext is null!");
                             }
                         }
+                        addFlushConsolidationHandler(pipeline);
                         // 如果关闭了worker线程池，那么使用 NIO 默认主线程池 -- null
                         pipeline.addLast(nettyClientConfig.isDisableNettyWorkerGroup() ? null : defaultEventExecutorGroup, new NettyEncoder(), // RemotingCommand 编码器
                                 new NettyDecoder(), // RemotingCommand 解码器
@@ -220,21 +289,7 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
         }
 
         nettyEventExecutor.start();
-        // 简单定时任务 - 扫描一下 需要回复的对象: 初始延迟 3 秒，之后每隔约 1 秒重复执行一次
-        TimerTask timerTaskScanResponseTable = new TimerTask() {
-            @Override
-            public void run(Timeout timeout) {
-                try {
-                    NettyRemotingClient.this.scanResponseTable();
-                } catch (Throwable e) {
-                    LOGGER.error("scanResponseTable exception", e);
-                } finally {
-                    timer.newTimeout(this, 1000, TimeUnit.MILLISECONDS);
-                }
-            }
-        };
-        // timer 是 时间轮的方式
-        this.timer.newTimeout(timerTaskScanResponseTable, 1000 * 3, TimeUnit.MILLISECONDS);
+        // 请求超时由 NettyRemotingAbstract 的时间轮逐个处理，不再定时扫描 responseTable
 
         if (nettyClientConfig.isScanAvailableNameSrv()) {
             int connectTimeoutMillis = this.nettyClientConfig.getConnectTimeoutMillis();
@@ -300,8 +355,7 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
 
     private Bootstrap createBootstrap(final SocksProxyConfig proxy) {
         Bootstrap bootstrap = new Bootstrap();
-        bootstrap.group(this.eventLoopGroupWorker) // 工作线程
-                .channel(NioSocketChannel.class) // 客户端通道
+        configChannel(bootstrap.group(this.eventLoopGroupWorker)) // 工作线程，客户端通道
                 .option(ChannelOption.TCP_NODELAY, true) // 禁用 Nagle 算法：在频繁写入小数据的时候会延迟发送，并且合并成为更大的段
                 .option(ChannelOption.SO_KEEPALIVE, false) // TCP底层（Linux中2h）发送一次侦测包，已检测是否端对端可达。
                 .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, nettyClientConfig.getConnectTimeoutMillis()) // 防止目标不可达，阻塞太长时间
@@ -333,6 +387,7 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
                             pipeline.addFirst(new Socks5ProxyHandler(new InetSocketAddress(hostAndPort[0], Integer.parseInt(hostAndPort[1])), proxy.getUsername(), proxy.getPassword()));
 
                         }
+                        addFlushConsolidationHandler(pipeline);
                         pipeline.addLast(nettyClientConfig.isDisableNettyWorkerGroup() ? null : defaultEventExecutorGroup, new NettyEncoder(), // MessageToByte 将 RemotingCommand -> ByteBuf
                                 new NettyDecoder(), // ByteBuf -> RemotingCommand ; 实现了 LengthFieldBasedFrameDecoder
                                 new IdleStateHandler(0, 0, nettyClientConfig.getClientChannelMaxIdleTimeSeconds()), // 默认 120 秒，
@@ -359,11 +414,18 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
      */
     @Override
     public void shutdown() {
+        if (this.onewayBatchExecutor != null) {
+            // 先把还在窗口里的单向请求发出去
+            this.onewayBatchExecutor.shutdown();
+            for (OnewayBatch batch : this.onewayBatchTable.values()) {
+                batch.flush();
+            }
+        }
         try {
             this.timer.stop(); // 停止 HashWheelTimer
             // 关闭所有的channel
-            for (Map.Entry<String, ChannelWrapper> channel : this.channelTables.entrySet()) {
-                channel.getValue().close();
+            for (ChannelWrapperPool pool : this.channelTables.values()) {
+                pool.closeAll();
             }
             // 清空 HashMap
             this.channelWrapperTables.clear();
@@ -414,40 +476,22 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
         final String addrRemote = null == addr ? RemotingHelper.parseChannelRemoteAddr(channel) : addr;
 
         try {
-            if (this.lockChannelTables.tryLock(LOCK_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
-                try {
-                    boolean removeItemFromTable = true;
-                    final ChannelWrapper prevCW = this.channelTables.get(addrRemote);
+            // 无锁：channelWrapperTables.remove 保证同一个 channel 只会被一个线程摘除
+            final ChannelWrapper prevCW = this.channelWrapperTables.remove(channel);
 
-                    LOGGER.info("closeChannel: begin close the channel[addr={}, id={}] Found: {}", addrRemote, channel.id(), prevCW != null);
+            LOGGER.info("closeChannel: begin close the channel[addr={}, id={}] Found: {}", addrRemote, channel.id(), prevCW != null);
 
-                    if (null == prevCW) {
-                        LOGGER.info("closeChannel: the channel[addr={}, id={}] has been removed from the channel table before", addrRemote, channel.id());
-                        removeItemFromTable = false;
-                    } else if (prevCW.isWrapperOf(channel)) {
-                        LOGGER.info("closeChannel: the channel[addr={}, id={}] has been closed before, and has been created again, nothing to do.", addrRemote, channel.id());
-                        removeItemFromTable = false;
-                    }
-
-                    if (removeItemFromTable) {
-                        ChannelWrapper channelWrapper = this.channelWrapperTables.remove(channel);
-                        if (channelWrapper != null && channelWrapper.tryClose(channel)) {
-                            this.channelTables.remove(addrRemote);
-                        }
-                        LOGGER.info("closeChannel: the channel[addr={}, id={}] was removed from channel table", addrRemote, channel.id());
-                    }
-
-                    RemotingHelper.closeChannel(channel);
-                } catch (Exception e) {
-                    LOGGER.error("closeChannel: close the channel exception", e);
-                } finally {
-                    this.lockChannelTables.unlock();
-                }
-            } else {
-                LOGGER.warn("closeChannel: try to lock channel table, but timeout, {}ms", LOCK_TIMEOUT_MILLIS);
+            if (null == prevCW) {
+                LOGGER.info("closeChannel: the channel[addr={}, id={}] has been removed from the channel table before", addrRemote, channel.id());
+            } else if (!prevCW.tryClose(channel)) {
+                LOGGER.info("closeChannel: the channel[addr={}, id={}] has been closed before, and has been created again, nothing to do.", addrRemote, channel.id());
+            } else if (removeFromPool(prevCW)) {
+                LOGGER.info("closeChannel: the channel[addr={}, id={}] was removed from channel table", addrRemote, channel.id());
             }
-        } catch (InterruptedException e) {
-            LOGGER.error("closeChannel exception", e);
+
+            RemotingHelper.closeChannel(channel);
+        } catch (Exception e) {
+            LOGGER.error("closeChannel: close the channel exception", e);
         }
     }
 
@@ -461,47 +505,55 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
             return;
         }
         try {
-            if (this.lockChannelTables.tryLock(LOCK_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) { // 锁定ChannelTables
-                try {
-                    boolean removeItemFromTable = true;
-                    ChannelWrapper prevCW = null;
-                    String addrRemote = null;
-                    // 在 Map 中搜索 channel 所对应的 ChannelWrapper
-                    for (Map.Entry<String, ChannelWrapper> entry : channelTables.entrySet()) {
-                        String key = entry.getKey();
-                        ChannelWrapper prev = entry.getValue();
-                        if (prev.isWrapperOf(channel)) {
-                            prevCW = prev;
-                            addrRemote = key;
-                            break;
-                        }
-                    }
-                    // 没找到
-                    if (null == prevCW) {
-                        LOGGER.info("eventCloseChannel: the channel[addr={}, id={}] has been removed from the channel table before", RemotingHelper.parseChannelRemoteAddr(channel), channel.id());
-                        removeItemFromTable = false;
-                    }
-                    // 找到的逻辑
-                    if (removeItemFromTable) {
-                        // 删除 channelWrapperTables 和 channelTables 中的 对象
-                        ChannelWrapper channelWrapper = this.channelWrapperTables.remove(channel);
-                        if (channelWrapper != null && channelWrapper.tryClose(channel)) {
-                            this.channelTables.remove(addrRemote);
-                        }
-                        LOGGER.info("closeChannel: the channel[addr={}, id={}] was removed from channel table", addrRemote, channel.id());
-                        RemotingHelper.closeChannel(channel);
+            // 通过 channelWrapperTables 直接定位，不再遍历 channelTables
+            ChannelWrapper prevCW = this.channelWrapperTables.remove(channel);
+            // 没找到
+            if (null == prevCW) {
+                LOGGER.info("eventCloseChannel: the channel[addr={}, id={}] has been removed from the channel table before", RemotingHelper.parseChannelRemoteAddr(channel), channel.id());
+                return;
+            }
+            String addrRemote = prevCW.getChannelAddress();
+            if (prevCW.tryClose(channel) && removeFromPool(prevCW)) {
+                LOGGER.info("closeChannel: the channel[addr={}, id={}] was removed from channel table", addrRemote, channel.id());
+            }
+            RemotingHelper.closeChannel(channel);
+        } catch (Exception e) {
+            LOGGER.error("closeChannel: close the channel[id={}] exception", channel.id(), e);
+        }
+    }
+
+    /**
+     * 把 ChannelWrapper 从所属地址的连接池里摘掉；池里最后一条连接关闭后把池也从 channelTables 移除，下线的地址不会一直留在表里
+     */
+    private boolean removeFromPool(ChannelWrapper channelWrapper) {
+        String addr = channelWrapper.getChannelAddress();
+        ChannelWrapperPool pool = this.channelTables.get(addr);
+        if (pool == null || !pool.remove(channelWrapper)) {
+            return false;
+        }
+        if (pool.isEmpty() && this.channelTables.remove(addr, pool) && !pool.isEmpty()) {
+            // 移除的同时 createChannelAsync 往池里放了新连接
+            ChannelWrapperPool current = reattachPool(pool);
+            if (current != pool) {
+                for (ChannelWrapper cw : pool.wrappers()) {
+                    if (pool.remove(cw)) {
+                        this.channelWrapperTables.remove(cw.getChannel(), cw);
+                        RemotingHelper.closeChannel(cw.getChannel());
                     }
-                } catch (Exception e) {
-                    LOGGER.error("closeChannel: close the channel[id={}] exception", channel.id(), e);
-                } finally {
-                    this.lockChannelTables.unlock();
                 }
-            } else {
-                LOGGER.warn("closeChannel: try to lock channel table, but timeout, {}ms", LOCK_TIMEOUT_MILLIS);
             }
-        } catch (InterruptedException e) {
-            LOGGER.error("closeChannel exception", e);
         }
+        return true;
+    }
+
+    /**
+     * 把可能已经被 removeFromPool 移出 channelTables 的池放回去
+     *
+     * @return 表里已经有同地址的新池时返回新池，否则返回 pool
+     */
+    private ChannelWrapperPool reattachPool(ChannelWrapperPool pool) {
+        ChannelWrapperPool current = this.channelTables.putIfAbsent(pool.getAddr(), pool);
+        return current == null ? pool : current;
     }
 
     /**
@@ -536,12 +588,9 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
                 String chosenNameServerAddr = this.namesrvAddrChoosed.get();
                 if (chosenNameServerAddr != null && !addrs.contains(chosenNameServerAddr)) {
                     namesrvAddrChoosed.compareAndSet(chosenNameServerAddr, null);
-                    for (String addr : this.channelTables.keySet()) {
-                        if (addr.contains(chosenNameServerAddr)) {
-                            ChannelWrapper channelWrapper = this.channelTables.get(addr);
-                            if (channelWrapper != null) {
-                                channelWrapper.close();
-                            }
+                    for (Map.Entry<String, ChannelWrapperPool> entry : this.channelTables.entrySet()) {
+                        if (entry.getKey().contains(chosenNameServerAddr)) {
+                            entry.getValue().closeAll();
                         }
                     }
                 }
@@ -563,7 +612,7 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
                     throw new RemotingTimeoutException("invokeSync call the addr[" + channelRemoteAddr + "] timeout");
                 }
                 RemotingCommand response = this.invokeSyncImpl(channel, request, left);
-                updateChannelLastResponseTime(addr);
+                updateChannelLastResponseTime(channel);
                 return response;
 
             } catch (RemotingSendRequestException e) { // 发送异常
@@ -589,11 +638,13 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
     @Override
     public void closeChannels(List<String> addrList) {
         for (String addr : addrList) {
-            ChannelWrapper cw = this.channelTables.get(addr);
-            if (cw == null) {
+            ChannelWrapperPool pool = this.channelTables.get(addr);
+            if (pool == null) {
                 continue;
             }
-            this.closeChannel(addr, cw.getChannel());
+            for (ChannelWrapper cw : pool.wrappers()) {
+                this.closeChannel(addr, cw.getChannel());
+            }
         }
         interruptPullRequests(new HashSet<>(addrList));
     }
@@ -621,18 +672,10 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
     /**
      * 更新上一次的应答时间戳
      *
-     * @param addr - 地址
+     * @param channel - 收到应答的通道
      */
-    private void updateChannelLastResponseTime(final String addr) {
-        String address = addr;
-        if (address == null) {
-            address = this.namesrvAddrChoosed.get();
-        }
-        if (address == null) {
-            LOGGER.warn("[updateChannelLastResponseTime] could not find address!!");
-            return;
-        }
-        ChannelWrapper channelWrapper = this.channelTables.get(address);
+    private void updateChannelLastResponseTime(final Channel channel) {
+        ChannelWrapper channelWrapper = this.channelWrapperTables.get(channel);
         if (channelWrapper != null && channelWrapper.isOK()) {
             channelWrapper.updateLastResponseTime(); // channelWrapper 中的时间。
         }
@@ -650,12 +693,8 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
             return getAndCreateNameserverChannelAsync();
         }
 
-        ChannelWrapper cw = this.channelTables.get(addr);
-        if (cw != null && cw.isOK()) {
-            return cw.getChannelFuture();
-        }
-
-        return this.createChannelAsync(addr);
+        ChannelWrapperPool pool = getOrCreatePool(addr);
+        return this.createChannelAsync(pool, pool.select());
     }
 
     /**
@@ -674,40 +713,64 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
     }
 
     /**
-     * 异步创建channel
+     * 地址对应的连接池，NameServer 地址只有一个槽位
+     */
+    private ChannelWrapperPool getOrCreatePool(final String addr) {
+        ChannelWrapperPool pool = this.channelTables.get(addr);
+        if (pool == null) {
+            List<String> nameServerList = this.namesrvAddrList.get();
+            boolean isNameServer = nameServerList != null && nameServerList.contains(addr);
+            int size = isNameServer ? 1 : Math.max(1, this.nettyClientConfig.getChannelPoolSize());
+            pool = this.channelTables.computeIfAbsent(addr, k -> new ChannelWrapperPool(k, size));
+        }
+        return pool;
+    }
+
+    /**
+     * 取连接池指定槽位上的连接，槽位为空或连接已失效时新建。
+     * <p>
+     * 不加锁：新连接通过 CAS 放入槽位，并发创建时输掉的一方关闭自己建的连接，改用胜出者的。
      *
-     * @param addr
+     * @param pool  地址对应的连接池
+     * @param index 槽位
      * @return
-     * @throws InterruptedException
      */
-    private ChannelFuture createChannelAsync(final String addr) throws InterruptedException {
-        ChannelWrapper cw = this.channelTables.get(addr);
-        if (cw != null && cw.isOK()) {
-            return cw.getChannelFuture();
-        }
-
-        if (this.lockChannelTables.tryLock(LOCK_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+    private ChannelFuture createChannelAsync(final ChannelWrapperPool pool, final int index) {
+        for (; ; ) {
+            ChannelWrapper cw = pool.get(index);
+            if (cw != null) {
+                // channelFuture 是 isActive 状态 或者 链接尚未完成
+                if (cw.isOK() || !cw.getChannelFuture().isDone()) {
+                    return cw.getChannelFuture();
+                }
+                // 这时候旧的 ChannelWrapper 没意义了；
+                if (pool.compareAndSet(index, cw, null)) {
+                    this.channelWrapperTables.remove(cw.getChannel(), cw);
+                }
+                continue;
+            }
             try {
-                cw = this.channelTables.get(addr); // 同样的锁定后判断
-                if (cw != null) {
-                    // channelFuture 是 isActive 状态 或者 链接尚未完成
-                    if (cw.isOK() || !cw.getChannelFuture().isDone()) {
-                        return cw.getChannelFuture();
-                    } else {
-                        // 这时候旧的 ChannelWrapper 没意义了；
-                        this.channelTables.remove(addr);
+                ChannelWrapper created = createChannel(pool.getAddr());
+                if (pool.compareAndSet(index, null, created)) {
+                    // 池可能在放入前刚因为最后一条连接关闭被移出 channelTables
+                    ChannelWrapperPool current = reattachPool(pool);
+                    if (current == pool) {
+                        return created.getChannelFuture();
                     }
+                    // 已经换成了新池，改到新池上建连
+                    if (pool.compareAndSet(index, created, null)) {
+                        this.channelWrapperTables.remove(created.getChannel(), created);
+                        RemotingHelper.closeChannel(created.getChannel());
+                    }
+                    return createChannelAsync(current, current.select());
                 }
-                return createChannel(addr).getChannelFuture();
+                this.channelWrapperTables.remove(created.getChannel(), created);
+                RemotingHelper.closeChannel(created.getChannel());
             } catch (Exception e) {
                 LOGGER.error("createChannel: create channel exception", e);
-            } finally {
-                this.lockChannelTables.unlock();
+                return null;
             }
-        } else {
-            LOGGER.warn("createChannel: try to lock channel table, but timeout, {}ms", LOCK_TIMEOUT_MILLIS);
         }
-        return null;
     }
 
     /**
@@ -720,8 +783,7 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
         ChannelFuture channelFuture = doConnect(addr);
         LOGGER.info("createChannel: begin to connect remote host[{}] asynchronously", addr);
         ChannelWrapper cw = new ChannelWrapper(addr, channelFuture); // 包装上 channelFuture
-        // 成功后 塞一下！
-        this.channelTables.put(addr, cw);
+        // 先登记 channel，放入连接池槽位由调用方 CAS 完成
         this.channelWrapperTables.put(channelFuture.channel(), cw);
         return cw;
     }
@@ -758,7 +820,7 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
                     if (timeoutMillis < costTime) {
                         invokeCallback.operationFail(new RemotingTooMuchRequestException("invokeAsync call the addr[" + channelRemoteAddr + "] timeout"));
                     }
-                    this.invokeAsyncImpl(channel, request, timeoutMillis - costTime, new InvokeCallbackWrapper(invokeCallback, addr)); // 执行回调
+                    this.invokeAsyncImpl(channel, request, timeoutMillis - costTime, new InvokeCallbackWrapper(invokeCallback, channel)); // 执行回调
                 } else {
                     this.closeChannel(addr, channel);
                     invokeCallback.operationFail(new RemotingConnectException(addr));
@@ -790,6 +852,41 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
         });
     }
 
+    @Override
+    public void invokeOnewayBatched(String addr, RemotingCommand request, long timeoutMillis) throws InterruptedException, RemotingConnectException, RemotingTooMuchRequestException, RemotingTimeoutException, RemotingSendRequestException {
+        // 发往 NameServer 的请求和带 ByteBuf body 的请求不攒批
+        if (this.onewayBatchExecutor == null || addr == null || request.getBodyBuf() != null) {
+            this.invokeOneway(addr, request, timeoutMillis);
+            return;
+        }
+        // 连接在入批前解析，连不上的地址与 invokeOneway 一样同步抛出
+        if (this.getAndCreateChannelAsync(addr) == null) {
+            throw new RemotingConnectException(addr);
+        }
+        request.markOnewayRPC();
+        this.onewayBatchTable.computeIfAbsent(addr, OnewayBatch::new).add(request, timeoutMillis);
+    }
+
+    /**
+     * 发送信封命令。子命令已经逐条执行过 RPC hook，信封本身不再执行，服务端也不会看到信封的请求码需要鉴权
+     */
+    private void invokeOnewayEnvelope(final String addr, final RemotingCommand envelope, final long timeoutMillis) throws InterruptedException, RemotingConnectException {
+        final ChannelFuture channelFuture = this.getAndCreateChannelAsync(addr);
+        if (channelFuture == null) {
+            throw new RemotingConnectException(addr);
+        }
+        channelFuture.addListener(future -> {
+            if (future.isSuccess()) {
+                Channel channel = channelFuture.channel();
+                if (channel != null && channel.isActive()) {
+                    this.invokeOnewayImpl(channel, envelope, timeoutMillis);
+                } else {
+                    this.closeChannel(addr, channel);
+                }
+            }
+        });
+    }
+
     @Override
     public CompletableFuture<RemotingCommand> invoke(String addr, RemotingCommand request, long timeoutMillis) {
         CompletableFuture<RemotingCommand> future = new CompletableFuture<>();
@@ -806,7 +903,7 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
                         // 异步唤醒调用链 - 执行 callback
                         invokeImpl(channel, request, timeoutMillis).whenComplete((v, t) -> {
                             if (t == null) {
-                                updateChannelLastResponseTime(addr); // 更新时间
+                                updateChannelLastResponseTime(channel); // 更新时间
                             }
                         }).thenApply(ResponseFuture::getResponseCommand).whenComplete((v, t) -> {
                             if (t != null) {
@@ -844,6 +941,11 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
         String channelRemoteAddr = RemotingHelper.parseChannelRemoteAddr(channel);
         doBeforeRpcHooks(channelRemoteAddr, request);
 
+        // 在途请求计数，供连接池按最少在途选择连接
+        final ChannelWrapper pendingWrapper = channelWrapperTables.get(channel);
+        if (pendingWrapper != null) {
+            pendingWrapper.incrementPending();
+        }
         return super.invokeImpl(channel, request, timeoutMillis)
                 .thenCompose(responseFuture -> { // 合并 上一个 回调的计算结果 Function(responseFuture) -> CompletionStage 【CompletableFuture】
                     RemotingCommand response = responseFuture.getResponseCommand();
@@ -861,7 +963,8 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
                                 }
                                 return channelWrapper0;
                             });
-                            if (channelWrapper != null && !channelWrapper.isWrapperOf(channel)) {
+                            // ByteBuf body 在第一次发送后已被释放，无法重发
+                            if (channelWrapper != null && !channelWrapper.isWrapperOf(channel) && request.getBodyBuf() == null) {
                                 RemotingCommand retryRequest = RemotingCommand.createRequestCommand(request.getCode(), request.readCustomHeader());
                                 retryRequest.setBody(request.getBody());
                                 retryRequest.setExtFields(request.getExtFields());
@@ -887,6 +990,9 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
                     return CompletableFuture.completedFuture(responseFuture);
                 })
                 .whenComplete((v, t) -> {
+                    if (pendingWrapper != null) {
+                        pendingWrapper.decrementPending();
+                    }
                     if (t == null) {
                         doAfterRpcHooks(channelRemoteAddr, request, v.getResponseCommand()); // 后回调函数
                     }
@@ -913,11 +1019,21 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
      */
     @Override
     public boolean isChannelWritable(String addr) {
-        ChannelWrapper cw = this.channelTables.get(addr);
-        if (cw != null && cw.isOK()) {
-            return cw.isWritable();
+        ChannelWrapperPool pool = this.channelTables.get(addr);
+        if (pool == null) {
+            return true;
+        }
+        // 池里任意一条可用连接可写即认为可写
+        boolean hasActive = false;
+        for (ChannelWrapper cw : pool.wrappers()) {
+            if (cw.isOK()) {
+                if (cw.isWritable()) {
+                    return true;
+                }
+                hasActive = true;
+            }
         }
-        return true;
+        return !hasActive;
     }
 
     @Override
@@ -973,16 +1089,13 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
             return;
         }
         //  ConcurrentMap<String, NettyRemotingClient.ChannelWrapper>
-        for (Map.Entry<String, ChannelWrapper> entry : this.channelTables.entrySet()) {
+        for (Map.Entry<String, ChannelWrapperPool> entry : this.channelTables.entrySet()) {
             String addr = entry.getKey();
-            ChannelWrapper channelWrapper = entry.getValue();
-            if (channelWrapper == null) {
-                continue;
-            }
-
-            if ((System.currentTimeMillis() - channelWrapper.getLastResponseTime()) > this.nettyClientConfig.getChannelNotActiveInterval()) {
-                LOGGER.warn("[SCAN] No response after {} from name server {}, so close it!", channelWrapper.getLastResponseTime(), addr);
-                closeChannel(addr, channelWrapper.getChannel());
+            for (ChannelWrapper channelWrapper : entry.getValue().wrappers()) {
+                if ((System.currentTimeMillis() - channelWrapper.getLastResponseTime()) > this.nettyClientConfig.getChannelNotActiveInterval()) {
+                    LOGGER.warn("[SCAN] No response after {} from name server {}, so close it!", channelWrapper.getLastResponseTime(), addr);
+                    closeChannel(addr, channelWrapper.getChannel());
+                }
             }
         }
     }
@@ -1027,7 +1140,7 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
     private ChannelFuture getAndCreateNameserverChannelAsync() throws InterruptedException {
         String addr = this.namesrvAddrChoosed.get(); // 当前选择的NS
         if (addr != null) {
-            ChannelWrapper cw = this.channelTables.get(addr);
+            ChannelWrapper cw = getNameserverChannelWrapper(addr);
             if (cw != null && cw.isOK()) {
                 return cw.getChannelFuture();
             }
@@ -1038,7 +1151,7 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
             try {
                 addr = this.namesrvAddrChoosed.get();
                 if (addr != null) { // 锁定后双判断
-                    ChannelWrapper cw = this.channelTables.get(addr); // addr - ChannelWrapper
+                    ChannelWrapper cw = getNameserverChannelWrapper(addr); // addr - ChannelWrapper
                     if (cw != null && cw.isOK()) {
                         return cw.getChannelFuture();
                     }
@@ -1053,7 +1166,7 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
 
                     this.namesrvAddrChoosed.set(newAddr);
                     LOGGER.info("new name server is chosen. OLD: {} , NEW: {}. namesrvIndex = {}", addr, newAddr, namesrvIndex);
-                    return this.createChannelAsync(newAddr);
+                    return this.createChannelAsync(getOrCreatePool(newAddr), 0);
                 }
             } catch (Exception e) {
                 LOGGER.error("getAndCreateNameserverChannel: create name server channel exception", e);
@@ -1064,6 +1177,11 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
         return null; // 是会得到空的 ChannelFuture 对象的
     }
 
+    private ChannelWrapper getNameserverChannelWrapper(String addr) {
+        ChannelWrapperPool pool = this.channelTables.get(addr);
+        return pool == null ? null : pool.get(0);
+    }
+
 
     protected ChannelFuture doConnect(String addr) {
         String[] hostAndPort = getHostAndPort(addr);
@@ -1094,6 +1212,7 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
         private ChannelFuture channelToClose;
         private long lastResponseTime; // 上一次的应答时间戳
         private final String channelAddress;
+        private final AtomicInteger pendingRequests = new AtomicInteger(0); // 在途请求数
 
         public ChannelWrapper(String address, ChannelFuture channelFuture) {
             this.lock = new ReentrantReadWriteLock();
@@ -1146,6 +1265,18 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
             return channelAddress;
         }
 
+        public int getPendingRequests() {
+            return pendingRequests.get();
+        }
+
+        void incrementPending() {
+            pendingRequests.incrementAndGet();
+        }
+
+        void decrementPending() {
+            pendingRequests.decrementAndGet();
+        }
+
         public boolean reconnect(final Channel channel) {
             // 该 wrapper 已经不是 channel 的包装了， 说明已经重新连接了
             if (!isWrapperOf(channel)) {
@@ -1201,14 +1332,108 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
         }
     }
 
+    /**
+     * 同一地址的多条连接，槽位通过 CAS 增删，不需要全局锁
+     */
+    class ChannelWrapperPool {
+        private final String addr;
+        private final AtomicReferenceArray<ChannelWrapper> slots;
+        private final AtomicInteger roundRobin = new AtomicInteger(0);
+
+        ChannelWrapperPool(String addr, int size) {
+            this.addr = addr;
+            this.slots = new AtomicReferenceArray<>(size);
+        }
+
+        public String getAddr() {
+            return addr;
+        }
+
+        public int size() {
+            return slots.length();
+        }
+
+        public ChannelWrapper get(int index) {
+            return slots.get(index);
+        }
+
+        public boolean compareAndSet(int index, ChannelWrapper expect, ChannelWrapper update) {
+            return slots.compareAndSet(index, expect, update);
+        }
+
+        /**
+         * 选一个槽位：轮询，或者选在途请求最少的连接；空槽视为 0 在途，会被优先补建
+         */
+        public int select() {
+            int size = slots.length();
+            if (size == 1) {
+                return 0;
+            }
+            int start = (roundRobin.getAndIncrement() & Integer.MAX_VALUE) % size;
+            if (!nettyClientConfig.isChannelPoolLeastPendingEnable()) {
+                return start;
+            }
+            int best = start;
+            int bestPending = Integer.MAX_VALUE;
+            for (int i = 0; i < size; i++) {
+                int index = (start + i) % size;
+                ChannelWrapper cw = slots.get(index);
+                int pending = cw == null || !cw.isOK() ? 0 : cw.getPendingRequests();
+                if (pending < bestPending) {
+                    best = index;
+                    bestPending = pending;
+                    if (pending == 0) {
+                        break;
+                    }
+                }
+            }
+            return best;
+        }
+
+        public boolean remove(ChannelWrapper cw) {
+            for (int i = 0; i < slots.length(); i++) {
+                if (slots.compareAndSet(i, cw, null)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public boolean isEmpty() {
+            for (int i = 0; i < slots.length(); i++) {
+                if (slots.get(i) != null) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public List<ChannelWrapper> wrappers() {
+            List<ChannelWrapper> list = new ArrayList<>(slots.length());
+            for (int i = 0; i < slots.length(); i++) {
+                ChannelWrapper cw = slots.get(i);
+                if (cw != null) {
+                    list.add(cw);
+                }
+            }
+            return list;
+        }
+
+        public void closeAll() {
+            for (ChannelWrapper cw : wrappers()) {
+                cw.close();
+            }
+        }
+    }
+
     class InvokeCallbackWrapper implements InvokeCallback {
 
         private final InvokeCallback invokeCallback;
-        private final String addr;
+        private final Channel channel;
 
-        public InvokeCallbackWrapper(InvokeCallback invokeCallback, String addr) {
+        public InvokeCallbackWrapper(InvokeCallback invokeCallback, Channel channel) {
             this.invokeCallback = invokeCallback;
-            this.addr = addr;
+            this.channel = channel;
         }
 
         @Override
@@ -1218,7 +1443,7 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
 
         @Override
         public void operationSucceed(RemotingCommand response) {
-            updateChannelLastResponseTime(addr); // 记录操作成功的网络状态，用来跟业务解耦。
+            updateChannelLastResponseTime(channel); // 记录操作成功的网络状态，用来跟业务解耦。
             this.invokeCallback.operationSucceed(response);
         }
 
@@ -1330,4 +1555,86 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
         }
     }
 
-}
\ No newline at end of file
+    /**
+     * 发往同一地址的单向请求批次。第一条请求进来时开始计时，窗口到期或数量/字节数达到上限时整批发出
+     */
+    class OnewayBatch {
+        private final String addr;
+        private List<RemotingCommand> commands = new ArrayList<>();
+        private int bodyBytes;
+        private long timeoutMillis;
+        private boolean flushScheduled;
+
+        OnewayBatch(String addr) {
+            this.addr = addr;
+        }
+
+        /**
+         * 批次在调用线程上攒满时由调用方发送，发送失败同步抛出（异常同时代表批内其他请求也没有发出）；
+         * 定时窗口到期后的发送在定时线程上执行，失败只记录日志
+         */
+        void add(RemotingCommand request, long timeoutMillis) throws InterruptedException, RemotingConnectException, RemotingTooMuchRequestException, RemotingTimeoutException, RemotingSendRequestException {
+            List<RemotingCommand> full = null;
+            long sendTimeoutMillis;
+            synchronized (this) {
+                commands.add(request);
+                bodyBytes += request.getBody() == null ? 0 : request.getBody().length;
+                this.timeoutMillis = Math.max(this.timeoutMillis, timeoutMillis);
+                sendTimeoutMillis = this.timeoutMillis;
+                if (commands.size() >= nettyClientConfig.getOnewayBatchMaxCommands() || bodyBytes >= nettyClientConfig.getOnewayBatchMaxBytes()) {
+                    full = drain();
+                } else if (!flushScheduled) {
+                    flushScheduled = true;
+                    try {
+                        onewayBatchExecutor.schedule(this::flush, nettyClientConfig.getOnewayBatchWindowMillis(), TimeUnit.MILLISECONDS);
+                    } catch (RejectedExecutionException e) {
+                        // 客户端正在关闭，直接发送
+                        flushScheduled = false;
+                        full = drain();
+                    }
+                }
+            }
+            if (full != null) {
+                send(full, sendTimeoutMillis);
+            }
+        }
+
+        void flush() {
+            List<RemotingCommand> pending;
+            long sendTimeoutMillis;
+            synchronized (this) {
+                flushScheduled = false;
+                sendTimeoutMillis = this.timeoutMillis;
+                pending = drain();
+            }
+            try {
+                send(pending, sendTimeoutMillis);
+            } catch (Exception e) {
+                LOGGER.warn("send oneway batch of {} commands to {} failed", pending.size(), addr, e);
+            }
+        }
+
+        private List<RemotingCommand> drain() {
+            List<RemotingCommand> drained = commands;
+            commands = new ArrayList<>();
+            bodyBytes = 0;
+            timeoutMillis = 0;
+            return drained;
+        }
+
+        private void send(List<RemotingCommand> batch, long timeoutMillis) throws InterruptedException, RemotingConnectException, RemotingTooMuchRequestException, RemotingTimeoutException, RemotingSendRequestException {
+            if (batch.isEmpty()) {
+                return;
+            }
+            if (batch.size() == 1) {
+                invokeOneway(addr, batch.get(0), timeoutMillis);
+                return;
+            }
+            // 子命令在装进信封前逐条执行 RPC hook，签名等信息随子命令一起编码
+            for (RemotingCommand request : batch) {
+                doBeforeRpcHooks(addr, request);
+            }
+            invokeOnewayEnvelope(addr, RemotingCommandBatch.encode(batch), timeoutMillis);
+        }
+    }
+}
@@ -23,6 +23,8 @@ import io.netty.handler.timeout.IdleStateEvent;
 import io.netty.handler.timeout.IdleStateHandler;
 import io.netty.util.*;
 import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.EventExecutorGroup;
+import io.opentelemetry.api.metrics.ObservableLongGauge;
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.rocketmq.common.Pair;
@@ -42,6 +44,7 @@ import org.apache.rocketmq.remoting.common.TlsMode;
 import org.apache.rocketmq.remoting.exception.RemotingSendRequestException;
 import org.apache.rocketmq.remoting.exception.RemotingTimeoutException;
 import org.apache.rocketmq.remoting.exception.RemotingTooMuchRequestException;
+import org.apache.rocketmq.remoting.metrics.RemotingMetricsManager;
 import org.apache.rocketmq.remoting.protocol.RemotingCommand;
 
 import java.io.IOException;
@@ -69,10 +72,11 @@ public class NettyRemotingServer extends NettyRemotingAbstract implements Remoti
     protected final NettyServerConfig nettyServerConfig;
 
     private final ExecutorService publicExecutor;
+    private volatile AdaptiveRequestExecutor adaptiveExecutor; // 按请求码排队的执行器，首次使用时创建
+    private ObservableLongGauge queueDepthGauge; // adaptiveExecutor 的队列深度指标，在 this 上同步
     private final ScheduledExecutorService scheduledExecutorService; // 定时任务执行线程
     private final ChannelEventListener channelEventListener;
 
-    private final HashedWheelTimer timer = new HashedWheelTimer(r -> new Thread(r, "ServerHouseKeepingService")); // 定时任务哈希轮
 
     private DefaultEventExecutorGroup defaultEventExecutorGroup;
 
@@ -95,6 +99,7 @@ public class NettyRemotingServer extends NettyRemotingAbstract implements Remoti
     protected final NettyConnectManageHandler connectionManageHandler = new NettyConnectManageHandler();
     protected final NettyServerHandler serverHandler = new NettyServerHandler();
     protected final RemotingCodeDistributionHandler distributionHandler = new RemotingCodeDistributionHandler();
+    protected final RemotingFlushConsolidationHandler.Policy flushConsolidationPolicy; // 未开启合并 flush 时为 null
 
 
     public NettyRemotingServer(final NettyServerConfig nettyServerConfig) {
@@ -113,6 +118,10 @@ public class NettyRemotingServer extends NettyRemotingAbstract implements Remoti
         this.eventLoopGroupBoss = buildEventLoopGroupBoss();
         this.eventLoopGroupSelector = buildEventLoopGroupSelector();
 
+        this.flushConsolidationPolicy = nettyServerConfig.isFlushConsolidationEnable()
+            ? new RemotingFlushConsolidationHandler.Policy(nettyServerConfig.getFlushConsolidationMaxPendingFlushes(), nettyServerConfig.getFlushConsolidationRequestCodes())
+            : null;
+
         loadSslContext();
     }
 
@@ -203,6 +212,7 @@ public class NettyRemotingServer extends NettyRemotingAbstract implements Remoti
                 this.nettyServerConfig.setListenPort(addr.getPort());
             }
             this.remotingServerTable.put(this.nettyServerConfig.getListenPort(), this);
+            registerQueueDepthGauge();
         } catch (Exception e) {
             throw new IllegalStateException(String.format("Failed to bind to %s:%d", nettyServerConfig.getBindAddress(), nettyServerConfig.getListenPort()), e);
         }
@@ -211,22 +221,7 @@ public class NettyRemotingServer extends NettyRemotingAbstract implements Remoti
             this.nettyEventExecutor.start();
         }
 
-        // 配置定时任务 - 扫描 ResponseTable
-        TimerTask timerScanResponseTable = new TimerTask() {
-
-            @Override
-            public void run(Timeout timeout) throws Exception {
-                try {
-                    System.out.println("扫描 ResponseTable");
-                    NettyRemotingServer.this.scanResponseTable();
-                } catch (Throwable e) {
-                    log.error("scanResponseTable exception", e);
-                } finally {
-                    NettyRemotingServer.this.timer.newTimeout(this, 1000, TimeUnit.MILLISECONDS);
-                }
-            }
-        };
-        this.timer.newTimeout(timerScanResponseTable, 1000 * 3, TimeUnit.MILLISECONDS);
+        // 请求超时由 NettyRemotingAbstract 的时间轮逐个处理，不再定时扫描 responseTable
 
         // 1秒 执行一次
         scheduledExecutorService.scheduleWithFixedDelay(() -> {
@@ -239,10 +234,14 @@ public class NettyRemotingServer extends NettyRemotingAbstract implements Remoti
     }
 
     protected ChannelPipeline configChannel(SocketChannel ch) {
-        return ch.pipeline().addLast(nettyServerConfig.isServerNettyWorkerGroupEnable() ? defaultEventExecutorGroup : null, // 如果是 null 那么则使用 boss 的 EventLoop
-                HANDSHAKE_HANDLER_NAME,
-                new HandshakeHandler())
-                .addLast(nettyServerConfig.isServerNettyWorkerGroupEnable() ? defaultEventExecutorGroup : null, encoder, new NettyDecoder(), distributionHandler, new IdleStateHandler(0, 0, nettyServerConfig.getServerChannelMaxIdleTimeSeconds()), connectionManageHandler, serverHandler);
+        EventExecutorGroup group = nettyServerConfig.isServerNettyWorkerGroupEnable() ? defaultEventExecutorGroup : null; // 如果是 null 那么则使用 boss 的 EventLoop
+        ChannelPipeline pipeline = ch.pipeline().addLast(group, HANDSHAKE_HANDLER_NAME, new HandshakeHandler())
+                .addLast(group, encoder);
+        if (flushConsolidationPolicy != null) {
+            // 放在解码器之前，才能看到一次读事件的开始和结束
+            pipeline.addLast(group, RemotingFlushConsolidationHandler.HANDLER_NAME, new RemotingFlushConsolidationHandler(flushConsolidationPolicy));
+        }
+        return pipeline.addLast(group, new NettyDecoder(), distributionHandler, new IdleStateHandler(0, 0, nettyServerConfig.getServerChannelMaxIdleTimeSeconds()), connectionManageHandler, serverHandler);
     }
 
     private void addCustomConfig(ServerBootstrap childHandler) {
@@ -278,8 +277,6 @@ public class NettyRemotingServer extends NettyRemotingAbstract implements Remoti
                 Thread.sleep(Duration.ofSeconds(nettyServerConfig.getShutdownWaitTimeSeconds()).toMillis());
             }
 
-            this.timer.stop();
-
             this.eventLoopGroupBoss.shutdownGracefully();
 
             this.eventLoopGroupSelector.shutdownGracefully();
@@ -300,13 +297,27 @@ public class NettyRemotingServer extends NettyRemotingAbstract implements Remoti
                 log.error("NettyRemotingServer shutdown exception, ", e);
             }
         }
+
+        if (this.adaptiveExecutor != null) {
+            try {
+                synchronized (this) {
+                    if (this.queueDepthGauge != null) {
+                        this.queueDepthGauge.close();
+                        this.queueDepthGauge = null;
+                    }
+                }
+                this.adaptiveExecutor.shutdown();
+            } catch (Exception e) {
+                log.error("NettyRemotingServer shutdown exception, ", e);
+            }
+        }
     }
 
     @Override
     public void registerProcessor(int requestCode, NettyRequestProcessor processor, ExecutorService executor) {
         ExecutorService executorThis = executor;
         if (null == executor) {
-            executorThis = this.publicExecutor;
+            executorThis = this.nettyServerConfig.isAdaptiveExecutorEnable() ? getOrCreateAdaptiveExecutor() : this.publicExecutor;
         }
 
         Pair<NettyRequestProcessor, ExecutorService> pair = new Pair<>(processor, executorThis);
@@ -314,6 +325,45 @@ public class NettyRemotingServer extends NettyRemotingAbstract implements Remoti
     }
 
 
+    /**
+     * 注册处理器并使用 {@link AdaptiveRequestExecutor}，为该请求码单独指定队列长度和排队 SLA
+     *
+     * @param requestCode    请求码
+     * @param processor      处理器
+     * @param queueCapacity  该请求码的队列长度
+     * @param queueSlaMillis 请求从解码起超过该时间仍未执行则直接回 SYSTEM_BUSY
+     */
+    public void registerAdaptiveProcessor(int requestCode, NettyRequestProcessor processor, int queueCapacity, long queueSlaMillis) {
+        AdaptiveRequestExecutor executor = getOrCreateAdaptiveExecutor();
+        executor.configureRequestCode(requestCode, queueCapacity, queueSlaMillis);
+        this.processorTable.put(requestCode, new Pair<>(processor, executor));
+    }
+
+    public AdaptiveRequestExecutor getOrCreateAdaptiveExecutor() {
+        if (this.adaptiveExecutor == null) {
+            synchronized (this) {
+                if (this.adaptiveExecutor == null) {
+                    this.adaptiveExecutor = new AdaptiveRequestExecutor("NettyServerAdaptiveExecutor",
+                        this.nettyServerConfig.getAdaptiveExecutorMaxConcurrency(),
+                        this.nettyServerConfig.getAdaptiveExecutorQueueCapacity(),
+                        this.nettyServerConfig.getAdaptiveExecutorQueueSlaMillis(),
+                        this.nettyServerConfig.isAdaptiveExecutorVirtualThreadEnable());
+                    registerQueueDepthGauge();
+                }
+            }
+        }
+        return this.adaptiveExecutor;
+    }
+
+    /**
+     * 执行器创建时指标可能还没初始化，start 时再补注册一次
+     */
+    private synchronized void registerQueueDepthGauge() {
+        if (this.adaptiveExecutor != null && this.queueDepthGauge == null) {
+            this.queueDepthGauge = RemotingMetricsManager.registerQueueDepthGauge(this.adaptiveExecutor);
+        }
+    }
+
     @Override
     public void registerDefaultProcessor(NettyRequestProcessor processor, ExecutorService executor) {
         this.defaultRequestProcessorPair = new Pair<>(processor, executor);
@@ -388,6 +438,16 @@ public class NettyRemotingServer extends NettyRemotingAbstract implements Remoti
                 TRAFFIC_LOGGER.info("Port: {}, ResponseCode Distribution: {}", nettyServerConfig.getListenPort(), outBoundSnapshotString);
             }
         }
+        if (flushConsolidationPolicy != null) {
+            String flushSnapshotString = flushConsolidationPolicy.snapshotString();
+            if (flushSnapshotString != null) {
+                TRAFFIC_LOGGER.info("Port: {}, Flush Consolidation: {}", nettyServerConfig.getListenPort(), flushSnapshotString);
+            }
+        }
+    }
+
+    public RemotingFlushConsolidationHandler.Policy getFlushConsolidationPolicy() {
+        return flushConsolidationPolicy;
     }
 
     public DefaultEventExecutorGroup getDefaultEventExecutorGroup() {
@@ -24,6 +24,21 @@ public class NettyServerConfig implements Cloneable {
     private boolean serverPooledByteBufAllocatorEnable = true;
 
     private boolean enableShutdownGracefully = false;
+
+    /**
+     * registerProcessor 未指定 executor 时，使用按请求码排队的 {@link AdaptiveRequestExecutor} 代替 publicExecutor
+     */
+    private boolean adaptiveExecutorEnable = false;
+    /**
+     * JDK 支持时用虚拟线程执行请求，适合会阻塞的处理器
+     */
+    private boolean adaptiveExecutorVirtualThreadEnable = false;
+    private int adaptiveExecutorMaxConcurrency = 64;
+    private int adaptiveExecutorQueueCapacity = 10000;
+    /**
+     * 请求从解码起超过这个时间仍在排队就直接回 SYSTEM_BUSY，默认与客户端默认超时一致
+     */
+    private long adaptiveExecutorQueueSlaMillis = 3000;
     private int shutdownWaitTimeSeconds = 30;
 
     /**
@@ -35,6 +50,19 @@ public class NettyServerConfig implements Cloneable {
      */
     private boolean useEpollNativeSelector = false;
 
+    /**
+     * 合并 flush，见 {@link RemotingFlushConsolidationHandler}
+     */
+    private boolean flushConsolidationEnable = false;
+    /**
+     * 积压这么多次 flush 后不再等待，立即刷出
+     */
+    private int flushConsolidationMaxPendingFlushes = 256;
+    /**
+     * 参与合并的请求码，逗号分隔，为空表示全部
+     */
+    private String flushConsolidationRequestCodes = "";
+
     public String getBindAddress() {
         return bindAddress;
     }
@@ -176,6 +204,46 @@ public class NettyServerConfig implements Cloneable {
         this.enableShutdownGracefully = enableShutdownGracefully;
     }
 
+    public boolean isAdaptiveExecutorEnable() {
+        return adaptiveExecutorEnable;
+    }
+
+    public void setAdaptiveExecutorEnable(boolean adaptiveExecutorEnable) {
+        this.adaptiveExecutorEnable = adaptiveExecutorEnable;
+    }
+
+    public boolean isAdaptiveExecutorVirtualThreadEnable() {
+        return adaptiveExecutorVirtualThreadEnable;
+    }
+
+    public void setAdaptiveExecutorVirtualThreadEnable(boolean adaptiveExecutorVirtualThreadEnable) {
+        this.adaptiveExecutorVirtualThreadEnable = adaptiveExecutorVirtualThreadEnable;
+    }
+
+    public int getAdaptiveExecutorMaxConcurrency() {
+        return adaptiveExecutorMaxConcurrency;
+    }
+
+    public void setAdaptiveExecutorMaxConcurrency(int adaptiveExecutorMaxConcurrency) {
+        this.adaptiveExecutorMaxConcurrency = adaptiveExecutorMaxConcurrency;
+    }
+
+    public int getAdaptiveExecutorQueueCapacity() {
+        return adaptiveExecutorQueueCapacity;
+    }
+
+    public void setAdaptiveExecutorQueueCapacity(int adaptiveExecutorQueueCapacity) {
+        this.adaptiveExecutorQueueCapacity = adaptiveExecutorQueueCapacity;
+    }
+
+    public long getAdaptiveExecutorQueueSlaMillis() {
+        return adaptiveExecutorQueueSlaMillis;
+    }
+
+    public void setAdaptiveExecutorQueueSlaMillis(long adaptiveExecutorQueueSlaMillis) {
+        this.adaptiveExecutorQueueSlaMillis = adaptiveExecutorQueueSlaMillis;
+    }
+
     public int getShutdownWaitTimeSeconds() {
         return shutdownWaitTimeSeconds;
     }
@@ -183,4 +251,28 @@ public class NettyServerConfig implements Cloneable {
     public void setShutdownWaitTimeSeconds(int shutdownWaitTimeSeconds) {
         this.shutdownWaitTimeSeconds = shutdownWaitTimeSeconds;
     }
+
+    public boolean isFlushConsolidationEnable() {
+        return flushConsolidationEnable;
+    }
+
+    public void setFlushConsolidationEnable(boolean flushConsolidationEnable) {
+        this.flushConsolidationEnable = flushConsolidationEnable;
+    }
+
+    public int getFlushConsolidationMaxPendingFlushes() {
+        return flushConsolidationMaxPendingFlushes;
+    }
+
+    public void setFlushConsolidationMaxPendingFlushes(int flushConsolidationMaxPendingFlushes) {
+        this.flushConsolidationMaxPendingFlushes = flushConsolidationMaxPendingFlushes;
+    }
+
+    public String getFlushConsolidationRequestCodes() {
+        return flushConsolidationRequestCodes;
+    }
+
+    public void setFlushConsolidationRequestCodes(String flushConsolidationRequestCodes) {
+        this.flushConsolidationRequestCodes = flushConsolidationRequestCodes;
+    }
 }
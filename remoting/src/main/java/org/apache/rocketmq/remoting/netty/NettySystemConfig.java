@@ -45,6 +45,18 @@ public class NettySystemConfig {
     public static final String COM_ROCKETMQ_REMOTING_CLIENT_WORKER_SIZE =
             "com.rocketmq.remoting.client.worker.size";
 
+    /**
+     * 客户端 IO 线程（selector / EventLoop）数，连接按轮询分摊到各个线程上。默认：1。
+     */
+    public static final String COM_ROCKETMQ_REMOTING_CLIENT_SELECTOR_SIZE =
+            "com.rocketmq.remoting.client.selector.size";
+
+    /**
+     * 客户端单向请求攒批的时间窗口，单位毫秒，0 表示不攒批。默认：0。
+     */
+    public static final String COM_ROCKETMQ_REMOTING_CLIENT_ONEWAY_BATCH_WINDOW_MILLIS =
+            "com.rocketmq.remoting.client.onewayBatchWindowMillis";
+
     /**
      * 客户端连接超时时间，单位毫秒。默认：3000 ms。
      */
@@ -140,6 +152,24 @@ public class NettySystemConfig {
                             COM_ROCKETMQ_REMOTING_CLIENT_WORKER_SIZE,
                             "4"));
 
+    /**
+     * 客户端 IO 线程数，默认为 1
+     */
+    public static int clientSelectorSize =
+            Integer.parseInt(
+                    System.getProperty(
+                            COM_ROCKETMQ_REMOTING_CLIENT_SELECTOR_SIZE,
+                            "1"));
+
+    /**
+     * 客户端单向请求攒批的时间窗口，默认 0 即不攒批
+     */
+    public static int clientOnewayBatchWindowMillis =
+            Integer.parseInt(
+                    System.getProperty(
+                            COM_ROCKETMQ_REMOTING_CLIENT_ONEWAY_BATCH_WINDOW_MILLIS,
+                            "0"));
+
     /**
      * 客户端连接超时时间，单位 ms，默认 3000
      */
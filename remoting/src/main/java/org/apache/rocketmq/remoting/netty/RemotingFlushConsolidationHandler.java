@@ -0,0 +1,247 @@
+package org.apache.rocketmq.remoting.netty;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.concurrent.Future;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * 合并 flush：读事件处理期间的 flush 推迟到 channelReadComplete，其余的 flush 提交到 handler 所在线程稍后执行，
+ * 这样流水线上连续写出的多条命令只触发一次 write 系统调用。积压的 flush 次数达到 maxPendingFlushes 时立即 flush。
+ * <p>
+ * 与 Netty 的 FlushConsolidationHandler 相同，区别是可以按请求码选择：不在 requestCodes 里的命令通过
+ * {@link #writeAndFlush(Channel, Object, int)} 写出时立即 flush，不受合并影响。
+ * 每条连接一个实例，统计数据由同一个 server/client 的所有连接共享。
+ */
+public class RemotingFlushConsolidationHandler extends ChannelDuplexHandler {
+    public static final String HANDLER_NAME = "flushConsolidationHandler";
+
+    private final Policy policy;
+    private int flushPendingCount;
+    private int writesSinceFlush;
+    private boolean readInProgress;
+    private ChannelHandlerContext ctx;
+    private Future<?> nextScheduledFlush;
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            nextScheduledFlush = null;
+            if (flushPendingCount > 0 && !readInProgress) {
+                flushNow(ctx);
+            }
+        }
+    };
+
+    public RemotingFlushConsolidationHandler(Policy policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * 写出命令，requestCode 不参与合并时跳过本 handler 的 flush 直接刷到 socket
+     */
+    public static ChannelFuture writeAndFlush(Channel channel, Object msg, int requestCode) {
+        RemotingFlushConsolidationHandler handler = channel.pipeline().get(RemotingFlushConsolidationHandler.class);
+        if (handler == null || handler.policy.isConsolidated(requestCode)) {
+            return channel.writeAndFlush(msg);
+        }
+        ChannelFuture future = channel.write(msg);
+        handler.flushImmediately();
+        return future;
+    }
+
+    private void flushImmediately() {
+        final ChannelHandlerContext context = this.ctx;
+        if (context == null) {
+            return;
+        }
+        policy.flushRequests.increment();
+        // 与前面的 write 在同一个 executor 上排队，保证先写后刷
+        if (context.executor().inEventLoop()) {
+            flushNow(context);
+        } else {
+            context.executor().execute(() -> flushNow(context));
+        }
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        this.ctx = ctx;
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        policy.writes.increment();
+        writesSinceFlush++;
+        ctx.write(msg, promise);
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) throws Exception {
+        policy.flushRequests.increment();
+        if (++flushPendingCount >= policy.maxPendingFlushes) {
+            flushNow(ctx);
+        } else if (!readInProgress && nextScheduledFlush == null) {
+            nextScheduledFlush = ctx.executor().submit(flushTask);
+        }
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        readInProgress = true;
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+        resetReadAndFlushIfNeeded(ctx);
+        ctx.fireChannelReadComplete();
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+        resetReadAndFlushIfNeeded(ctx);
+        ctx.fireExceptionCaught(cause);
+    }
+
+    @Override
+    public void disconnect(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+        resetReadAndFlushIfNeeded(ctx);
+        ctx.disconnect(promise);
+    }
+
+    @Override
+    public void close(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+        resetReadAndFlushIfNeeded(ctx);
+        ctx.close(promise);
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        // 不可写时把积压的数据刷出去，否则永远等不到可写
+        if (!ctx.channel().isWritable()) {
+            flushIfNeeded(ctx);
+        }
+        ctx.fireChannelWritabilityChanged();
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        flushIfNeeded(ctx);
+    }
+
+    private void resetReadAndFlushIfNeeded(ChannelHandlerContext ctx) {
+        readInProgress = false;
+        flushIfNeeded(ctx);
+    }
+
+    private void flushIfNeeded(ChannelHandlerContext ctx) {
+        if (flushPendingCount > 0) {
+            flushNow(ctx);
+        }
+    }
+
+    private void flushNow(ChannelHandlerContext ctx) {
+        if (nextScheduledFlush != null) {
+            nextScheduledFlush.cancel(false);
+            nextScheduledFlush = null;
+        }
+        flushPendingCount = 0;
+        // 之前排队的 flush 可能已经把数据刷走了，空 flush 不算一次系统调用
+        if (writesSinceFlush > 0) {
+            writesSinceFlush = 0;
+            policy.flushes.increment();
+        }
+        ctx.flush();
+    }
+
+    /**
+     * 合并策略与统计，一个 server/client 一份
+     */
+    public static class Policy {
+        private final int maxPendingFlushes;
+        /**
+         * 为空表示所有请求码都参与合并
+         */
+        private final Set<Integer> requestCodes;
+        private final LongAdder writes = new LongAdder();
+        private final LongAdder flushRequests = new LongAdder();
+        private final LongAdder flushes = new LongAdder();
+        private long lastWrites;
+        private long lastFlushRequests;
+        private long lastFlushes;
+
+        public Policy(int maxPendingFlushes, String requestCodes) {
+            this.maxPendingFlushes = Math.max(1, maxPendingFlushes);
+            this.requestCodes = parseCodes(requestCodes);
+        }
+
+        private static Set<Integer> parseCodes(String requestCodes) {
+            Set<Integer> codes = new HashSet<>();
+            if (StringUtils.isNotBlank(requestCodes)) {
+                for (String code : StringUtils.split(requestCodes, ',')) {
+                    if (StringUtils.isNotBlank(code)) {
+                        codes.add(Integer.parseInt(code.trim()));
+                    }
+                }
+            }
+            return codes;
+        }
+
+        public boolean isConsolidated(int requestCode) {
+            return requestCodes.isEmpty() || requestCodes.contains(requestCode);
+        }
+
+        public long getWrites() {
+            return writes.sum();
+        }
+
+        public long getFlushRequests() {
+            return flushRequests.sum();
+        }
+
+        /**
+         * 真正刷到 socket 的次数，即 write 系统调用次数（不计半包写）
+         */
+        public long getFlushes() {
+            return flushes.sum();
+        }
+
+        /**
+         * 合并掉的 flush，即省下的系统调用次数
+         */
+        public long getSavedSyscalls() {
+            return Math.max(0, getFlushRequests() - getFlushes());
+        }
+
+        public double getWritesPerFlush() {
+            long flushes = getFlushes();
+            return flushes == 0 ? 0 : (double) getWrites() / flushes;
+        }
+
+        /**
+         * 距上次调用以来的增量，没有写出时返回 null
+         */
+        public synchronized String snapshotString() {
+            long totalWrites = getWrites();
+            long totalFlushRequests = getFlushRequests();
+            long totalFlushes = getFlushes();
+            long writes = totalWrites - lastWrites;
+            long flushRequests = totalFlushRequests - lastFlushRequests;
+            long flushes = totalFlushes - lastFlushes;
+            lastWrites = totalWrites;
+            lastFlushRequests = totalFlushRequests;
+            lastFlushes = totalFlushes;
+            if (writes == 0 && flushes == 0) {
+                return null;
+            }
+            return String.format("writes=%d, flushes=%d, writesPerFlush=%.2f, savedSyscalls=%d", writes, flushes,
+                flushes == 0 ? 0 : (double) writes / flushes, Math.max(0, flushRequests - flushes));
+        }
+    }
+}
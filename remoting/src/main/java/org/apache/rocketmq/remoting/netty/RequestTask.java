@@ -49,6 +49,14 @@ public class RequestTask implements Runnable {
         return createTimestamp;
     }
 
+    public RemotingCommand getRequest() {
+        return request;
+    }
+
+    public Channel getChannel() {
+        return channel;
+    }
+
     public boolean isStopRun() {
         return stopRun;
     }
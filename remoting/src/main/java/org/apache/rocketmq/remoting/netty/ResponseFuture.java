@@ -1,13 +1,16 @@
 package org.apache.rocketmq.remoting.netty;
 
 import io.netty.channel.Channel;
+import io.netty.util.Timeout;
 
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 import org.apache.rocketmq.remoting.InvokeCallback;
 import org.apache.rocketmq.remoting.RemotingClient;
+import org.apache.rocketmq.remoting.common.InFlightLimiter;
 import org.apache.rocketmq.remoting.common.SemaphoreReleaseOnlyOnce;
 import org.apache.rocketmq.remoting.exception.RemotingException;
 import org.apache.rocketmq.remoting.exception.RemotingSendRequestException;
@@ -41,13 +44,21 @@ public class ResponseFuture {
     private final long beginTimestamp = System.currentTimeMillis(); // 开始时间戳
     private final CountDownLatch countDownLatch = new CountDownLatch(1); // 同步控制模块
 
+    private static final AtomicIntegerFieldUpdater<ResponseFuture> PERMIT_RELEASED_UPDATER =
+        AtomicIntegerFieldUpdater.newUpdater(ResponseFuture.class, "permitReleased");
+
     private final SemaphoreReleaseOnlyOnce once; // 信号量释放工具，只释放一次。
+    private final InFlightLimiter limiter; // 在途限流器，与 once 二选一
+    private final int permitBytes; // 占用限流器的字节数
+    private volatile int permitReleased = 0; // 限流器许可只释放一次，用字段更新器避免每次请求再分配对象
 
     private final AtomicBoolean executeCallbackOnlyOnce = new AtomicBoolean(false); // 并发标记安全位，确保回调只执行一次。
     private volatile RemotingCommand responseCommand; // 存放收到的响应命令
     private volatile boolean sendRequestOK = true; // 是否发送成功
     private volatile Throwable cause; // 异常原因
     private volatile boolean interrupted = false; // 线程中断标识符
+    private volatile Timeout timeout; // 超时时间轮中的登记项
+    private volatile boolean timeoutExpired = false; // 时间轮已判定超时
 
     public ResponseFuture(Channel channel, int opaque, long timeoutMillis, InvokeCallback invokeCallback,
                           SemaphoreReleaseOnlyOnce once) {
@@ -62,6 +73,20 @@ public class ResponseFuture {
         this.timeoutMillis = timeoutMillis;
         this.invokeCallback = invokeCallback;
         this.once = once;
+        this.limiter = null;
+        this.permitBytes = 0;
+    }
+
+    public ResponseFuture(Channel channel, int opaque, RemotingCommand request, long timeoutMillis, InvokeCallback invokeCallback,
+                          InFlightLimiter limiter, int permitBytes) {
+        this.channel = channel;
+        this.opaque = opaque;
+        this.request = request;
+        this.timeoutMillis = timeoutMillis;
+        this.invokeCallback = invokeCallback;
+        this.once = null;
+        this.limiter = limiter;
+        this.permitBytes = permitBytes;
     }
 
     public void executeInvokeCallback() {
@@ -93,13 +118,37 @@ public class ResponseFuture {
         if (this.once != null) {
             this.once.release();
         }
+        if (this.limiter != null && PERMIT_RELEASED_UPDATER.compareAndSet(this, 0, 1)) {
+            this.limiter.release(this.permitBytes);
+        }
     }
 
     public boolean isTimeout() {
+        if (this.timeoutExpired) {
+            return true;
+        }
         long diff = System.currentTimeMillis() - this.beginTimestamp;
         return diff > this.timeoutMillis;
     }
 
+    public void setTimeout(Timeout timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * 收到应答或请求失败时取消时间轮中的超时任务
+     */
+    public void cancelTimeout() {
+        Timeout timeout = this.timeout;
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    void markTimeout() {
+        this.timeoutExpired = true;
+    }
+
     public RemotingCommand waitResponse(final long timeoutMillis) throws InterruptedException {
         this.countDownLatch.await(timeoutMillis, TimeUnit.MILLISECONDS);
         return this.responseCommand;
@@ -0,0 +1,460 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.remoting.protocol;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.TypeReference;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.rocketmq.common.consumer.ConsumeFromWhere;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.remoting.protocol.body.GetRouteInfoDeltaResponseBody;
+import org.apache.rocketmq.remoting.protocol.body.LockBatchRequestBody;
+import org.apache.rocketmq.remoting.protocol.heartbeat.ConsumeType;
+import org.apache.rocketmq.remoting.protocol.heartbeat.ConsumerData;
+import org.apache.rocketmq.remoting.protocol.heartbeat.HeartbeatData;
+import org.apache.rocketmq.remoting.protocol.heartbeat.MessageModel;
+import org.apache.rocketmq.remoting.protocol.heartbeat.ProducerData;
+import org.apache.rocketmq.remoting.protocol.heartbeat.SubscriptionData;
+import org.apache.rocketmq.remoting.protocol.route.BrokerData;
+import org.apache.rocketmq.remoting.protocol.route.QueueData;
+import org.apache.rocketmq.remoting.protocol.route.TopicRouteData;
+import org.apache.rocketmq.remoting.protocol.statictopic.TopicQueueMappingInfo;
+
+/**
+ * 高频 body 的紧凑二进制编码，替代 {@link RemotingSerializable} 的 fastjson 文本。格式：
+ * <pre>
+ * | MAGIC (1) | VERSION (1) | TYPE (1) | 字段 ... |
+ * </pre>
+ * 字段按固定顺序写出，不带字段名；字符串、集合的长度用 varint 表示，长度 + 1 写出，0 表示 null。
+ * JSON 的第一个字节不可能是 {@link #MAGIC}，因此 decodeXxx 可以直接识别两种格式，对端不支持时退回 JSON。
+ * 是否发送二进制由请求方在请求头里声明（如 {@code acceptBinaryBody}），不认识该字段的旧版本仍然收发 JSON。
+ * <p>
+ * 很少出现的 {@code TopicRouteData#topicQueueMappingByBroker} 仍以 JSON 内嵌，解析失败与 JSON 解码一样抛出运行时异常。
+ */
+public class BinaryBodyCodec {
+    public static final byte MAGIC = (byte) 0xB7;
+    public static final byte VERSION = 1;
+
+    private static final byte TYPE_TOPIC_ROUTE_DATA = 1;
+    private static final byte TYPE_ROUTE_DELTA = 2;
+    private static final byte TYPE_HEARTBEAT_DATA = 3;
+    private static final byte TYPE_LOCK_BATCH_REQUEST = 4;
+
+    private BinaryBodyCodec() {
+    }
+
+    public static boolean isBinary(byte[] data) {
+        return data != null && data.length >= 3 && data[0] == MAGIC;
+    }
+
+    public static byte[] encode(TopicRouteData topicRouteData) {
+        ByteBuf buf = newBuffer(TYPE_TOPIC_ROUTE_DATA, 256);
+        writeTopicRouteData(buf, topicRouteData);
+        return toBytes(buf);
+    }
+
+    public static TopicRouteData decodeTopicRouteData(byte[] data) {
+        if (!isBinary(data)) {
+            return RemotingSerializable.decode(data, TopicRouteData.class);
+        }
+        return readTopicRouteData(openBuffer(data, TYPE_TOPIC_ROUTE_DATA));
+    }
+
+    public static byte[] encode(GetRouteInfoDeltaResponseBody delta) {
+        ByteBuf buf = newBuffer(TYPE_ROUTE_DELTA, 256 * Math.max(1, delta.getTopicRouteTable().size()));
+        buf.writeLong(delta.getRouteEpoch());
+        writeVarInt(buf, delta.getTopicRouteTable().size());
+        for (Map.Entry<String, TopicRouteData> entry : delta.getTopicRouteTable().entrySet()) {
+            writeStr(buf, entry.getKey());
+            Long version = delta.getTopicRouteVersions().get(entry.getKey());
+            buf.writeLong(version == null ? 0L : version);
+            writeTopicRouteData(buf, entry.getValue());
+        }
+        writeStrings(buf, delta.getNotExistTopics());
+        return toBytes(buf);
+    }
+
+    public static GetRouteInfoDeltaResponseBody decodeRouteDelta(byte[] data) {
+        if (!isBinary(data)) {
+            return RemotingSerializable.decode(data, GetRouteInfoDeltaResponseBody.class);
+        }
+        ByteBuf buf = openBuffer(data, TYPE_ROUTE_DELTA);
+        GetRouteInfoDeltaResponseBody delta = new GetRouteInfoDeltaResponseBody();
+        delta.setRouteEpoch(buf.readLong());
+        int size = readVarInt(buf);
+        for (int i = 0; i < size; i++) {
+            String topic = readStr(buf);
+            delta.getTopicRouteVersions().put(topic, buf.readLong());
+            delta.getTopicRouteTable().put(topic, readTopicRouteData(buf));
+        }
+        delta.setNotExistTopics(readStrings(buf, new HashSet<>()));
+        return delta;
+    }
+
+    public static byte[] encode(HeartbeatData heartbeatData) {
+        ByteBuf buf = newBuffer(TYPE_HEARTBEAT_DATA, 256);
+        writeStr(buf, heartbeatData.getClientID());
+        writeCount(buf, heartbeatData.getProducerDataSet());
+        if (heartbeatData.getProducerDataSet() != null) {
+            for (ProducerData producerData : heartbeatData.getProducerDataSet()) {
+                writeStr(buf, producerData.getGroupName());
+            }
+        }
+        writeCount(buf, heartbeatData.getConsumerDataSet());
+        if (heartbeatData.getConsumerDataSet() != null) {
+            for (ConsumerData consumerData : heartbeatData.getConsumerDataSet()) {
+                writeConsumerData(buf, consumerData);
+            }
+        }
+        buf.writeInt(heartbeatData.getHeartbeatFingerprint());
+        buf.writeBoolean(heartbeatData.isWithoutSub());
+        return toBytes(buf);
+    }
+
+    public static HeartbeatData decodeHeartbeatData(byte[] data) {
+        if (!isBinary(data)) {
+            return RemotingSerializable.decode(data, HeartbeatData.class);
+        }
+        ByteBuf buf = openBuffer(data, TYPE_HEARTBEAT_DATA);
+        HeartbeatData heartbeatData = new HeartbeatData();
+        heartbeatData.setClientID(readStr(buf));
+        int producers = readCount(buf);
+        if (producers < 0) {
+            heartbeatData.setProducerDataSet(null);
+        }
+        for (int i = 0; i < producers; i++) {
+            ProducerData producerData = new ProducerData();
+            producerData.setGroupName(readStr(buf));
+            heartbeatData.getProducerDataSet().add(producerData);
+        }
+        int consumers = readCount(buf);
+        if (consumers < 0) {
+            heartbeatData.setConsumerDataSet(null);
+        }
+        for (int i = 0; i < consumers; i++) {
+            heartbeatData.getConsumerDataSet().add(readConsumerData(buf));
+        }
+        heartbeatData.setHeartbeatFingerprint(buf.readInt());
+        heartbeatData.setWithoutSub(buf.readBoolean());
+        return heartbeatData;
+    }
+
+    public static byte[] encode(LockBatchRequestBody requestBody) {
+        ByteBuf buf = newBuffer(TYPE_LOCK_BATCH_REQUEST, 64 + 48 * requestBody.getMqSet().size());
+        writeStr(buf, requestBody.getConsumerGroup());
+        writeStr(buf, requestBody.getClientId());
+        buf.writeBoolean(requestBody.isOnlyThisBroker());
+        writeCount(buf, requestBody.getMqSet());
+        if (requestBody.getMqSet() != null) {
+            for (MessageQueue mq : requestBody.getMqSet()) {
+                writeStr(buf, mq.getTopic());
+                writeStr(buf, mq.getBrokerName());
+                writeVarInt(buf, mq.getQueueId());
+            }
+        }
+        return toBytes(buf);
+    }
+
+    public static LockBatchRequestBody decodeLockBatchRequestBody(byte[] data) {
+        if (!isBinary(data)) {
+            return RemotingSerializable.decode(data, LockBatchRequestBody.class);
+        }
+        ByteBuf buf = openBuffer(data, TYPE_LOCK_BATCH_REQUEST);
+        LockBatchRequestBody requestBody = new LockBatchRequestBody();
+        requestBody.setConsumerGroup(readStr(buf));
+        requestBody.setClientId(readStr(buf));
+        requestBody.setOnlyThisBroker(buf.readBoolean());
+        int size = readCount(buf);
+        if (size < 0) {
+            requestBody.setMqSet(null);
+        }
+        for (int i = 0; i < size; i++) {
+            requestBody.getMqSet().add(new MessageQueue(readStr(buf), readStr(buf), readVarInt(buf)));
+        }
+        return requestBody;
+    }
+
+    private static void writeTopicRouteData(ByteBuf buf, TopicRouteData topicRouteData) {
+        writeStr(buf, topicRouteData.getOrderTopicConf());
+        writeCount(buf, topicRouteData.getQueueDatas());
+        if (topicRouteData.getQueueDatas() != null) {
+            for (QueueData queueData : topicRouteData.getQueueDatas()) {
+                writeStr(buf, queueData.getBrokerName());
+                writeVarInt(buf, queueData.getReadQueueNums());
+                writeVarInt(buf, queueData.getWriteQueueNums());
+                writeVarInt(buf, queueData.getPerm());
+                writeVarInt(buf, queueData.getTopicSysFlag());
+            }
+        }
+        writeCount(buf, topicRouteData.getBrokerDatas());
+        if (topicRouteData.getBrokerDatas() != null) {
+            for (BrokerData brokerData : topicRouteData.getBrokerDatas()) {
+                writeStr(buf, brokerData.getCluster());
+                writeStr(buf, brokerData.getBrokerName());
+                writeStr(buf, brokerData.getZoneName());
+                buf.writeBoolean(brokerData.isEnableActingMaster());
+                writeCount(buf, brokerData.getBrokerAddrs() == null ? null : brokerData.getBrokerAddrs().keySet());
+                if (brokerData.getBrokerAddrs() != null) {
+                    for (Map.Entry<Long, String> entry : brokerData.getBrokerAddrs().entrySet()) {
+                        buf.writeLong(entry.getKey());
+                        writeStr(buf, entry.getValue());
+                    }
+                }
+            }
+        }
+        writeCount(buf, topicRouteData.getFilterServerTable() == null ? null : topicRouteData.getFilterServerTable().keySet());
+        if (topicRouteData.getFilterServerTable() != null) {
+            for (Map.Entry<String, List<String>> entry : topicRouteData.getFilterServerTable().entrySet()) {
+                writeStr(buf, entry.getKey());
+                writeStrings(buf, entry.getValue());
+            }
+        }
+        Map<String, TopicQueueMappingInfo> mapping = topicRouteData.getTopicQueueMappingByBroker();
+        writeStr(buf, mapping == null ? null : RemotingSerializable.toJson(mapping, false));
+    }
+
+    private static TopicRouteData readTopicRouteData(ByteBuf buf) {
+        TopicRouteData topicRouteData = new TopicRouteData();
+        topicRouteData.setOrderTopicConf(readStr(buf));
+        int queueDatas = readCount(buf);
+        if (queueDatas < 0) {
+            topicRouteData.setQueueDatas(null);
+        }
+        for (int i = 0; i < queueDatas; i++) {
+            QueueData queueData = new QueueData();
+            queueData.setBrokerName(readStr(buf));
+            queueData.setReadQueueNums(readVarInt(buf));
+            queueData.setWriteQueueNums(readVarInt(buf));
+            queueData.setPerm(readVarInt(buf));
+            queueData.setTopicSysFlag(readVarInt(buf));
+            topicRouteData.getQueueDatas().add(queueData);
+        }
+        int brokerDatas = readCount(buf);
+        if (brokerDatas < 0) {
+            topicRouteData.setBrokerDatas(null);
+        }
+        for (int i = 0; i < brokerDatas; i++) {
+            BrokerData brokerData = new BrokerData();
+            brokerData.setCluster(readStr(buf));
+            brokerData.setBrokerName(readStr(buf));
+            brokerData.setZoneName(readStr(buf));
+            brokerData.setEnableActingMaster(buf.readBoolean());
+            int addrs = readCount(buf);
+            if (addrs >= 0) {
+                HashMap<Long, String> brokerAddrs = new HashMap<>(addrs * 2);
+                for (int j = 0; j < addrs; j++) {
+                    brokerAddrs.put(buf.readLong(), readStr(buf));
+                }
+                brokerData.setBrokerAddrs(brokerAddrs);
+            }
+            topicRouteData.getBrokerDatas().add(brokerData);
+        }
+        int filterServers = readCount(buf);
+        if (filterServers < 0) {
+            topicRouteData.setFilterServerTable(null);
+        }
+        for (int i = 0; i < filterServers; i++) {
+            topicRouteData.getFilterServerTable().put(readStr(buf), readStrings(buf, new ArrayList<>()));
+        }
+        String mapping = readStr(buf);
+        if (mapping != null) {
+            topicRouteData.setTopicQueueMappingByBroker(JSON.parseObject(mapping,
+                new TypeReference<Map<String, TopicQueueMappingInfo>>() {
+                }));
+        }
+        return topicRouteData;
+    }
+
+    private static void writeConsumerData(ByteBuf buf, ConsumerData consumerData) {
+        writeStr(buf, consumerData.getGroupName());
+        writeStr(buf, consumerData.getConsumeType() == null ? null : consumerData.getConsumeType().name());
+        writeStr(buf, consumerData.getMessageModel() == null ? null : consumerData.getMessageModel().name());
+        writeStr(buf, consumerData.getConsumeFromWhere() == null ? null : consumerData.getConsumeFromWhere().name());
+        buf.writeBoolean(consumerData.isUnitMode());
+        writeCount(buf, consumerData.getSubscriptionDataSet());
+        if (consumerData.getSubscriptionDataSet() != null) {
+            for (SubscriptionData subscriptionData : consumerData.getSubscriptionDataSet()) {
+                // filterClassSource 在 JSON 里也不序列化
+                buf.writeBoolean(subscriptionData.isClassFilterMode());
+                writeStr(buf, subscriptionData.getTopic());
+                writeStr(buf, subscriptionData.getSubString());
+                writeStrings(buf, subscriptionData.getTagsSet());
+                writeCount(buf, subscriptionData.getCodeSet());
+                if (subscriptionData.getCodeSet() != null) {
+                    for (Integer code : subscriptionData.getCodeSet()) {
+                        buf.writeInt(code);
+                    }
+                }
+                buf.writeLong(subscriptionData.getSubVersion());
+                writeStr(buf, subscriptionData.getExpressionType());
+            }
+        }
+    }
+
+    private static ConsumerData readConsumerData(ByteBuf buf) {
+        ConsumerData consumerData = new ConsumerData();
+        consumerData.setGroupName(readStr(buf));
+        String consumeType = readStr(buf);
+        consumerData.setConsumeType(consumeType == null ? null : ConsumeType.valueOf(consumeType));
+        String messageModel = readStr(buf);
+        consumerData.setMessageModel(messageModel == null ? null : MessageModel.valueOf(messageModel));
+        String consumeFromWhere = readStr(buf);
+        consumerData.setConsumeFromWhere(consumeFromWhere == null ? null : ConsumeFromWhere.valueOf(consumeFromWhere));
+        consumerData.setUnitMode(buf.readBoolean());
+        int subscriptions = readCount(buf);
+        if (subscriptions < 0) {
+            consumerData.setSubscriptionDataSet(null);
+        }
+        for (int i = 0; i < subscriptions; i++) {
+            SubscriptionData subscriptionData = new SubscriptionData();
+            subscriptionData.setClassFilterMode(buf.readBoolean());
+            subscriptionData.setTopic(readStr(buf));
+            subscriptionData.setSubString(readStr(buf));
+            subscriptionData.setTagsSet(readStrings(buf, new HashSet<>()));
+            int codes = readCount(buf);
+            if (codes >= 0) {
+                Set<Integer> codeSet = new HashSet<>(codes * 2);
+                for (int j = 0; j < codes; j++) {
+                    codeSet.add(buf.readInt());
+                }
+                subscriptionData.setCodeSet(codeSet);
+            } else {
+                subscriptionData.setCodeSet(null);
+            }
+            subscriptionData.setSubVersion(buf.readLong());
+            subscriptionData.setExpressionType(readStr(buf));
+            // 字段齐全后再放进 HashSet，hashCode 依赖这些字段
+            consumerData.getSubscriptionDataSet().add(subscriptionData);
+        }
+        return consumerData;
+    }
+
+    private static ByteBuf newBuffer(byte type, int initialCapacity) {
+        ByteBuf buf = Unpooled.buffer(initialCapacity);
+        buf.writeByte(MAGIC);
+        buf.writeByte(VERSION);
+        buf.writeByte(type);
+        return buf;
+    }
+
+    private static ByteBuf openBuffer(byte[] data, byte type) {
+        ByteBuf buf = Unpooled.wrappedBuffer(data);
+        buf.skipBytes(1);
+        byte version = buf.readByte();
+        if (version > VERSION) {
+            throw new IllegalArgumentException("unsupported binary body version: " + version);
+        }
+        byte actualType = buf.readByte();
+        if (actualType != type) {
+            throw new IllegalArgumentException("binary body type mismatch, expected " + type + " but was " + actualType);
+        }
+        return buf;
+    }
+
+    private static byte[] toBytes(ByteBuf buf) {
+        byte[] bytes = new byte[buf.readableBytes()];
+        buf.readBytes(bytes);
+        return bytes;
+    }
+
+    private static void writeCount(ByteBuf buf, Collection<?> collection) {
+        writeVarInt(buf, collection == null ? 0 : collection.size() + 1);
+    }
+
+    /**
+     * @return 集合大小，null 时返回 -1
+     */
+    private static int readCount(ByteBuf buf) {
+        int count = readVarInt(buf) - 1;
+        if (count > buf.readableBytes()) {
+            throw new IllegalArgumentException("bad binary body, collection size " + count + " exceeds remaining bytes");
+        }
+        return count;
+    }
+
+    private static void writeStrings(ByteBuf buf, Collection<String> strings) {
+        writeCount(buf, strings);
+        if (strings != null) {
+            for (String str : strings) {
+                writeStr(buf, str);
+            }
+        }
+    }
+
+    private static <C extends Collection<String>> C readStrings(ByteBuf buf, C strings) {
+        int size = readCount(buf);
+        if (size < 0) {
+            return null;
+        }
+        for (int i = 0; i < size; i++) {
+            strings.add(readStr(buf));
+        }
+        return strings;
+    }
+
+    private static void writeStr(ByteBuf buf, String str) {
+        if (str == null) {
+            writeVarInt(buf, 0);
+            return;
+        }
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(buf, bytes.length + 1);
+        buf.writeBytes(bytes);
+    }
+
+    private static String readStr(ByteBuf buf) {
+        int length = readVarInt(buf) - 1;
+        if (length < 0) {
+            return null;
+        }
+        if (length > buf.readableBytes()) {
+            throw new IllegalArgumentException("bad binary body, string length " + length + " exceeds remaining bytes");
+        }
+        String str = buf.toString(buf.readerIndex(), length, StandardCharsets.UTF_8);
+        buf.skipBytes(length);
+        return str;
+    }
+
+    private static void writeVarInt(ByteBuf buf, int value) {
+        while ((value & ~0x7F) != 0) {
+            buf.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buf.writeByte(value);
+    }
+
+    private static int readVarInt(ByteBuf buf) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buf.readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("bad binary body, varint too long");
+    }
+}
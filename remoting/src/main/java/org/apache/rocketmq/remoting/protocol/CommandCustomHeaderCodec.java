@@ -0,0 +1,297 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.remoting.protocol;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.rocketmq.common.BoundaryType;
+import org.apache.rocketmq.remoting.CommandCustomHeader;
+import org.apache.rocketmq.remoting.exception.RemotingCommandException;
+
+/**
+ * 非 {@link FastCodesHeader} 的 header 的编解码器。
+ * <p>
+ * 每个 header 类型只解析一次：构造器、字段列表、字段类型、是否可空都在第一次使用时算好并缓存，
+ * 之后每次编解码只按预先算好的类型直接读写字段，不再做 canonical name 字符串比较、
+ * getDeclaredConstructor 查找以及 setAccessible 调用，基本类型字段也不再装箱。
+ */
+public final class CommandCustomHeaderCodec {
+
+    private static final ConcurrentMap<Class<?>, CommandCustomHeaderCodec> CODEC_CACHE = new ConcurrentHashMap<>();
+
+    private final Class<? extends CommandCustomHeader> headerClass;
+    private final Constructor<? extends CommandCustomHeader> constructor;
+    private final FieldCodec[] fieldCodecs;
+
+    private CommandCustomHeaderCodec(Class<? extends CommandCustomHeader> headerClass) {
+        this.headerClass = headerClass;
+        this.constructor = lookupConstructor(headerClass);
+        this.fieldCodecs = buildFieldCodecs(headerClass);
+    }
+
+    public static CommandCustomHeaderCodec getCodec(Class<? extends CommandCustomHeader> headerClass) {
+        CommandCustomHeaderCodec codec = CODEC_CACHE.get(headerClass);
+        if (codec == null) {
+            codec = CODEC_CACHE.computeIfAbsent(headerClass, clazz -> new CommandCustomHeaderCodec(headerClass));
+        }
+        return codec;
+    }
+
+    /**
+     * @return 新的 header 实例，没有可用的无参构造器时返回 null（与原反射路径一致）
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends CommandCustomHeader> T newInstance() {
+        if (this.constructor == null) {
+            return null;
+        }
+        try {
+            return (T) this.constructor.newInstance();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    public void decode(CommandCustomHeader header, Map<String, String> extFields) {
+        for (FieldCodec fieldCodec : this.fieldCodecs) {
+            try {
+                if (extFields instanceof LazyExtFields && fieldCodec.decodeNumber(header, (LazyExtFields) extFields)) {
+                    continue;
+                }
+                String value = extFields.get(fieldCodec.name);
+                if (null == value) {
+                    if (!fieldCodec.nullable) {
+                        throw new RemotingCommandException("the custom field <" + fieldCodec.name + "> is null");
+                    }
+                    continue;
+                }
+                fieldCodec.set(header, value);
+            } catch (Throwable e) {
+                RemotingCommand.log.error("Failed field [{}] decoding", fieldCodec.name, e);
+            }
+        }
+    }
+
+    public void encode(CommandCustomHeader header, Map<String, String> extFields) {
+        for (FieldCodec fieldCodec : this.fieldCodecs) {
+            String value = null;
+            try {
+                value = fieldCodec.get(header);
+            } catch (Exception e) {
+                RemotingCommand.log.error("Failed to access field [{}]", fieldCodec.name, e);
+            }
+            if (value != null) {
+                extFields.put(fieldCodec.name, value);
+            }
+        }
+    }
+
+    public Class<? extends CommandCustomHeader> getHeaderClass() {
+        return headerClass;
+    }
+
+    static Field[] collectFields(Class<?> headerClass) {
+        Set<Field> fieldSet = new HashSet<>();
+        for (Class<?> clazz = headerClass; clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+            for (Field field : clazz.getDeclaredFields()) {
+                fieldSet.add(field);
+            }
+        }
+        return fieldSet.toArray(new Field[0]);
+    }
+
+    private static Constructor<? extends CommandCustomHeader> lookupConstructor(
+        Class<? extends CommandCustomHeader> headerClass) {
+        try {
+            Constructor<? extends CommandCustomHeader> constructor = headerClass.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return constructor;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static FieldCodec[] buildFieldCodecs(Class<? extends CommandCustomHeader> headerClass) {
+        List<FieldCodec> codecs = new ArrayList<>();
+        for (Field field : collectFields(headerClass)) {
+            if (Modifier.isStatic(field.getModifiers()) || field.getName().startsWith("this")) {
+                continue;
+            }
+            try {
+                field.setAccessible(true);
+            } catch (RuntimeException e) {
+                RemotingCommand.log.error("Failed to access field [{}]", field.getName(), e);
+                continue;
+            }
+            codecs.add(new FieldCodec(field));
+        }
+        return codecs.toArray(new FieldCodec[0]);
+    }
+
+    private enum FieldType {
+        STRING,
+        INT,
+        INTEGER,
+        LONG,
+        LONG_OBJ,
+        BOOLEAN,
+        BOOLEAN_OBJ,
+        DOUBLE,
+        DOUBLE_OBJ,
+        BOUNDARY_TYPE,
+        UNSUPPORTED;
+
+        static FieldType of(Class<?> type) {
+            if (type == String.class) {
+                return STRING;
+            } else if (type == int.class) {
+                return INT;
+            } else if (type == Integer.class) {
+                return INTEGER;
+            } else if (type == long.class) {
+                return LONG;
+            } else if (type == Long.class) {
+                return LONG_OBJ;
+            } else if (type == boolean.class) {
+                return BOOLEAN;
+            } else if (type == Boolean.class) {
+                return BOOLEAN_OBJ;
+            } else if (type == double.class) {
+                return DOUBLE;
+            } else if (type == Double.class) {
+                return DOUBLE_OBJ;
+            } else if (type == BoundaryType.class) {
+                return BOUNDARY_TYPE;
+            }
+            return UNSUPPORTED;
+        }
+    }
+
+    private static final class FieldCodec {
+        private final Field field;
+        private final String name;
+        private final FieldType type;
+        private final boolean nullable;
+
+        FieldCodec(Field field) {
+            this.field = field;
+            this.name = field.getName();
+            this.type = FieldType.of(field.getType());
+            this.nullable = RemotingCommand.isFieldNullable(field);
+        }
+
+        void set(Object target, String value) throws Exception {
+            switch (this.type) {
+                case STRING:
+                    this.field.set(target, value);
+                    break;
+                case INT:
+                    this.field.setInt(target, Integer.parseInt(value));
+                    break;
+                case INTEGER:
+                    this.field.set(target, Integer.valueOf(value));
+                    break;
+                case LONG:
+                    this.field.setLong(target, Long.parseLong(value));
+                    break;
+                case LONG_OBJ:
+                    this.field.set(target, Long.valueOf(value));
+                    break;
+                case BOOLEAN:
+                    this.field.setBoolean(target, Boolean.parseBoolean(value));
+                    break;
+                case BOOLEAN_OBJ:
+                    this.field.set(target, Boolean.valueOf(value));
+                    break;
+                case DOUBLE:
+                    this.field.setDouble(target, Double.parseDouble(value));
+                    break;
+                case DOUBLE_OBJ:
+                    this.field.set(target, Double.valueOf(value));
+                    break;
+                case BOUNDARY_TYPE:
+                    this.field.set(target, BoundaryType.getType(value));
+                    break;
+                default:
+                    throw new RemotingCommandException("the custom field <" + this.name + "> type is not supported");
+            }
+        }
+
+        /**
+         * 数字字段直接从 {@link LazyExtFields} 的字节解析，省去中间 String。
+         *
+         * @return false 表示不是数字字段或值不存在，需要走通用路径
+         */
+        boolean decodeNumber(Object target, LazyExtFields extFields) throws Exception {
+            switch (this.type) {
+                case INT:
+                case INTEGER: {
+                    Integer value = extFields.getInt(this.name);
+                    if (value == null) {
+                        return false;
+                    }
+                    if (this.type == FieldType.INT) {
+                        this.field.setInt(target, value);
+                    } else {
+                        this.field.set(target, value);
+                    }
+                    return true;
+                }
+                case LONG:
+                case LONG_OBJ: {
+                    Long value = extFields.getLong(this.name);
+                    if (value == null) {
+                        return false;
+                    }
+                    if (this.type == FieldType.LONG) {
+                        this.field.setLong(target, value);
+                    } else {
+                        this.field.set(target, value);
+                    }
+                    return true;
+                }
+                default:
+                    return false;
+            }
+        }
+
+        String get(Object target) throws Exception {
+            switch (this.type) {
+                case INT:
+                    return Integer.toString(this.field.getInt(target));
+                case LONG:
+                    return Long.toString(this.field.getLong(target));
+                case BOOLEAN:
+                    return Boolean.toString(this.field.getBoolean(target));
+                case DOUBLE:
+                    return Double.toString(this.field.getDouble(target));
+                default:
+                    Object value = this.field.get(target);
+                    return value != null ? value.toString() : null;
+            }
+        }
+    }
+}
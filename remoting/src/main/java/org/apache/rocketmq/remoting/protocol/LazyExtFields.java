@@ -0,0 +1,450 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.remoting.protocol;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import io.netty.buffer.ByteBuf;
+import org.apache.rocketmq.remoting.exception.RemotingCommandException;
+
+/**
+ * ROCKETMQ 协议头中 extFields 的延迟解码视图。
+ * <p>
+ * 解码时只把 extFields 区域整体拷贝成一个 byte[] 并记录每个 key/value 的偏移，
+ * 不再为每个 key、value 各创建一个 String。{@link #get(Object)} 直接按字节比较 key，
+ * 命中后才把 value 转成 String；{@link #getInt(String)}、{@link #getLong(String)} 则直接从字节解析数字。
+ * <p>
+ * 除 get/containsKey 之外的任何操作（遍历、修改、size 等）都会先把全部数据物化进父类 HashMap，
+ * 之后行为与普通 HashMap 完全一致；和 HashMap 一样不保证并发修改安全。
+ * <p>
+ * 物化本身可能由只读操作（toString、size 等）触发，因此要保证和并发的只读操作互不干扰：
+ * 物化加锁执行，先填满父类 HashMap 再发布 materialized 标志，延迟解码用的数组物化后保留不清空，
+ * 已经走上延迟路径的读线程仍然能读到完整数据。
+ * <p>
+ * 之所以拷贝而不是直接持有帧 ByteBuf：NettyDecoder 在 decode 结束时就会 release 帧，
+ * 而 RemotingCommand 的生命周期跨越业务线程，持有池化内存需要在所有出口额外 release，容易泄漏。
+ */
+public class LazyExtFields extends HashMap<String, String> {
+
+    private static final long serialVersionUID = 4370426128764543829L;
+
+    private transient byte[] data;
+    private transient int[] keyOffsets;
+    private transient int[] keyLengths;
+    private transient int[] valueOffsets;
+    private transient int[] valueLengths;
+    private transient String[] values;
+    private transient int count;
+    private transient volatile boolean materialized;
+
+    private LazyExtFields(byte[] data, int capacity) {
+        super(Math.max(16, capacity * 2));
+        this.data = data;
+        this.keyOffsets = new int[capacity];
+        this.keyLengths = new int[capacity];
+        this.valueOffsets = new int[capacity];
+        this.valueLengths = new int[capacity];
+    }
+
+    /**
+     * 从 byteBuffer 当前 readerIndex 开始读取 len 字节的 extFields，格式与 {@link RocketMQSerializable#mapSerialize} 一致。
+     */
+    public static LazyExtFields decode(ByteBuf byteBuffer, int len) throws RemotingCommandException {
+        byte[] data = new byte[len];
+        byteBuffer.readBytes(data);
+
+        // keySize(2) + valSize(4) 是每个条目的最小长度，据此估算容量，不够时再扩容
+        LazyExtFields fields = new LazyExtFields(data, Math.max(4, Math.min(len / 6, 32)));
+        int index = 0;
+        while (index < len) {
+            if (index + 2 > len) {
+                throw new RemotingCommandException("extFields decode error, truncated key length at " + index);
+            }
+            int keyLen = (short) (((data[index] & 0xFF) << 8) | (data[index + 1] & 0xFF));
+            index += 2;
+            if (keyLen < 0 || keyLen > len - index) {
+                throw new RemotingCommandException("string length exceed limit:" + len);
+            }
+            int keyOffset = index;
+            index += keyLen;
+
+            if (index + 4 > len) {
+                throw new RemotingCommandException("extFields decode error, truncated value length at " + index);
+            }
+            int valueLen = ((data[index] & 0xFF) << 24) | ((data[index + 1] & 0xFF) << 16)
+                | ((data[index + 2] & 0xFF) << 8) | (data[index + 3] & 0xFF);
+            index += 4;
+            if (valueLen < 0 || valueLen > len - index) {
+                throw new RemotingCommandException("string length exceed limit:" + len);
+            }
+            fields.addEntry(keyOffset, keyLen, index, valueLen);
+            index += valueLen;
+        }
+        return fields;
+    }
+
+    private void addEntry(int keyOffset, int keyLen, int valueOffset, int valueLen) {
+        if (this.count == this.keyOffsets.length) {
+            int newCapacity = this.count << 1;
+            this.keyOffsets = Arrays.copyOf(this.keyOffsets, newCapacity);
+            this.keyLengths = Arrays.copyOf(this.keyLengths, newCapacity);
+            this.valueOffsets = Arrays.copyOf(this.valueOffsets, newCapacity);
+            this.valueLengths = Arrays.copyOf(this.valueLengths, newCapacity);
+        }
+        this.keyOffsets[this.count] = keyOffset;
+        this.keyLengths[this.count] = keyLen;
+        this.valueOffsets[this.count] = valueOffset;
+        this.valueLengths[this.count] = valueLen;
+        this.count++;
+    }
+
+    public boolean isMaterialized() {
+        return materialized;
+    }
+
+    /**
+     * 找到 key 对应的条目下标；重复 key 以最后一个为准，和 HashMap#put 的覆盖语义一致。
+     */
+    private int indexOf(Object key) {
+        if (key != null && !(key instanceof String)) {
+            return -1;
+        }
+        String k = (String) key;
+        for (int i = this.count - 1; i >= 0; i--) {
+            if (keyEquals(i, k)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean keyEquals(int i, String key) {
+        int keyLen = this.keyLengths[i];
+        // 长度为 0 的 key 在原实现里被解码成 null
+        if (key == null) {
+            return keyLen == 0;
+        }
+        if (keyLen != key.length()) {
+            // 非 ASCII key 的 UTF-8 长度与 char 长度不同，退化为编码后比较
+            return keyLen > key.length() && bytesEqual(i, key.getBytes(StandardCharsets.UTF_8));
+        }
+        int offset = this.keyOffsets[i];
+        for (int j = 0; j < keyLen; j++) {
+            char c = key.charAt(j);
+            if (c >= 0x80) {
+                return bytesEqual(i, key.getBytes(StandardCharsets.UTF_8));
+            }
+            if (this.data[offset + j] != (byte) c) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean bytesEqual(int i, byte[] key) {
+        if (key.length != this.keyLengths[i]) {
+            return false;
+        }
+        int offset = this.keyOffsets[i];
+        for (int j = 0; j < key.length; j++) {
+            if (this.data[offset + j] != key[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String keyAt(int i) {
+        int keyLen = this.keyLengths[i];
+        return keyLen == 0 ? null : new String(this.data, this.keyOffsets[i], keyLen, StandardCharsets.UTF_8);
+    }
+
+    private String valueAt(int i) {
+        if (this.values == null) {
+            this.values = new String[this.count];
+        }
+        String value = this.values[i];
+        if (value == null && this.valueLengths[i] > 0) {
+            value = new String(this.data, this.valueOffsets[i], this.valueLengths[i], StandardCharsets.UTF_8);
+            this.values[i] = value;
+        }
+        return value;
+    }
+
+    /**
+     * 直接从字节解析 int，不创建中间 String；key 不存在或 value 为空时返回 null。
+     */
+    public Integer getInt(String key) {
+        if (this.materialized) {
+            String value = super.get(key);
+            return value == null ? null : Integer.parseInt(value);
+        }
+        int i = indexOf(key);
+        if (i < 0 || this.valueLengths[i] == 0) {
+            return null;
+        }
+        long value = parseLong(i);
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new NumberFormatException("For input string: \"" + valueAt(i) + "\"");
+        }
+        return (int) value;
+    }
+
+    /**
+     * 直接从字节解析 long，不创建中间 String；key 不存在或 value 为空时返回 null。
+     */
+    public Long getLong(String key) {
+        if (this.materialized) {
+            String value = super.get(key);
+            return value == null ? null : Long.parseLong(value);
+        }
+        int i = indexOf(key);
+        if (i < 0 || this.valueLengths[i] == 0) {
+            return null;
+        }
+        return parseLong(i);
+    }
+
+    private long parseLong(int i) {
+        int offset = this.valueOffsets[i];
+        int end = offset + this.valueLengths[i];
+        boolean negative = false;
+        byte first = this.data[offset];
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            offset++;
+            if (offset == end) {
+                throw new NumberFormatException("For input string: \"" + valueAt(i) + "\"");
+            }
+        }
+        // 超过 18 位时可能溢出，交给 Long.parseLong 处理边界
+        if (end - offset > 18) {
+            return Long.parseLong(valueAt(i));
+        }
+        long result = 0;
+        for (int j = offset; j < end; j++) {
+            int digit = this.data[j] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("For input string: \"" + valueAt(i) + "\"");
+            }
+            result = result * 10 + digit;
+        }
+        return negative ? -result : result;
+    }
+
+    private void materialize() {
+        if (this.materialized) {
+            return;
+        }
+        synchronized (this) {
+            if (this.materialized) {
+                return;
+            }
+            for (int i = 0; i < this.count; i++) {
+                super.put(keyAt(i), valueAt(i));
+            }
+            // 最后发布，看到 true 的线程一定能看到完整的父类 HashMap
+            this.materialized = true;
+        }
+    }
+
+    @Override
+    public String get(Object key) {
+        if (this.materialized) {
+            return super.get(key);
+        }
+        int i = indexOf(key);
+        return i < 0 ? null : valueAt(i);
+    }
+
+    @Override
+    public String getOrDefault(Object key, String defaultValue) {
+        if (this.materialized) {
+            return super.getOrDefault(key, defaultValue);
+        }
+        int i = indexOf(key);
+        return i < 0 ? defaultValue : valueAt(i);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (this.materialized) {
+            return super.containsKey(key);
+        }
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        if (this.materialized) {
+            return super.isEmpty();
+        }
+        return this.count == 0;
+    }
+
+    @Override
+    public int size() {
+        materialize();
+        return super.size();
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        materialize();
+        return super.containsValue(value);
+    }
+
+    @Override
+    public String put(String key, String value) {
+        materialize();
+        return super.put(key, value);
+    }
+
+    @Override
+    public void putAll(Map<? extends String, ? extends String> m) {
+        materialize();
+        super.putAll(m);
+    }
+
+    @Override
+    public String remove(Object key) {
+        materialize();
+        return super.remove(key);
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        materialize();
+        return super.remove(key, value);
+    }
+
+    @Override
+    public void clear() {
+        materialize();
+        super.clear();
+    }
+
+    @Override
+    public Set<String> keySet() {
+        materialize();
+        return super.keySet();
+    }
+
+    @Override
+    public Collection<String> values() {
+        materialize();
+        return super.values();
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        materialize();
+        return super.entrySet();
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super String, ? super String> action) {
+        materialize();
+        super.forEach(action);
+    }
+
+    @Override
+    public void replaceAll(BiFunction<? super String, ? super String, ? extends String> function) {
+        materialize();
+        super.replaceAll(function);
+    }
+
+    @Override
+    public String putIfAbsent(String key, String value) {
+        materialize();
+        return super.putIfAbsent(key, value);
+    }
+
+    @Override
+    public boolean replace(String key, String oldValue, String newValue) {
+        materialize();
+        return super.replace(key, oldValue, newValue);
+    }
+
+    @Override
+    public String replace(String key, String value) {
+        materialize();
+        return super.replace(key, value);
+    }
+
+    @Override
+    public String computeIfAbsent(String key, Function<? super String, ? extends String> mappingFunction) {
+        materialize();
+        return super.computeIfAbsent(key, mappingFunction);
+    }
+
+    @Override
+    public String computeIfPresent(String key,
+        BiFunction<? super String, ? super String, ? extends String> remappingFunction) {
+        materialize();
+        return super.computeIfPresent(key, remappingFunction);
+    }
+
+    @Override
+    public String compute(String key, BiFunction<? super String, ? super String, ? extends String> remappingFunction) {
+        materialize();
+        return super.compute(key, remappingFunction);
+    }
+
+    @Override
+    public String merge(String key, String value,
+        BiFunction<? super String, ? super String, ? extends String> remappingFunction) {
+        materialize();
+        return super.merge(key, value, remappingFunction);
+    }
+
+    @Override
+    public Object clone() {
+        materialize();
+        return super.clone();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        materialize();
+        return super.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        materialize();
+        return super.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        materialize();
+        return super.toString();
+    }
+
+    private Object writeReplace() {
+        return new HashMap<>(this);
+    }
+}
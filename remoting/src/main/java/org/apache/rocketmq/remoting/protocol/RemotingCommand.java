@@ -21,22 +21,16 @@ import com.google.common.base.Stopwatch;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 
-import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Modifier;
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
-import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 import org.apache.commons.lang3.StringUtils;
-import org.apache.rocketmq.common.BoundaryType;
 import org.apache.rocketmq.common.constant.LoggerName;
 import org.apache.rocketmq.logging.org.slf4j.Logger;
 import org.apache.rocketmq.logging.org.slf4j.LoggerFactory;
@@ -67,36 +61,13 @@ public class RemotingCommand {
     static final Logger log = LoggerFactory.getLogger(LoggerName.ROCKETMQ_REMOTING_NAME);
 
     private static final int RPC_TYPE = 0; // 0, REQUEST_COMMAND
+    private static final int BODY_BUF_OWNED = 0; // bodyBuf 仍由调用方持有
+    private static final int BODY_BUF_WRITTEN = 1; // bodyBuf 已交给 channel
+    private static final int BODY_BUF_RELEASED = 2; // bodyBuf 未写出就被调用方释放
+    private static final AtomicIntegerFieldUpdater<RemotingCommand> BODY_BUF_STATE_UPDATER =
+        AtomicIntegerFieldUpdater.newUpdater(RemotingCommand.class, "bodyBufState");
     private static final int RPC_ONEWAY = 1; // 0, RPC
 
-    // Class<? extends CommandCustomHeader> 未知类型通配符，但是属于CommandCustomHeader的子类
-    // 这个集合属于 一个类型 对应 多个 字段
-    private static final Map<Class<? extends CommandCustomHeader>, Field[]> CLASS_HASH_MAP = new HashMap<>();
-    // 这个类叫啥名字 - 集合
-    private static final Map<Class, String> CANONICAL_NAME_CACHE = new HashMap<>();
-    // 1, Oneway
-    // 1, RESPONSE_COMMAND
-    private static final Map<Field, Boolean> NULLABLE_FIELD_CACHE = new HashMap<>();
-    /**
-     * | 类类型    | `getName()`            | `getCanonicalName()`  | `getSimpleName()` |
-     * | ------ | ---------------------- | --------------------- | ----------------- |
-     * | 普通类    | `java.lang.Integer`    | `java.lang.Integer`   | `Integer`         |
-     * | 成员内部类  | `java.util.Map$Entry`  | `java.util.Map.Entry` | `Entry`           |
-     * | 匿名内部类  | `pkg.Outer$1`          | `null`                | `""` (空字符串)       |
-     * | 基本类型数组 | `[I`                   | `int[]`               | `int[]`           |
-     * | 对象类型数组 | `[Ljava.lang.Integer;` | `java.lang.Integer[]` | `Integer[]`       |
-     */
-    private static final String STRING_CANONICAL_NAME = String.class.getCanonicalName();
-    private static final String DOUBLE_CANONICAL_NAME_1 = Double.class.getCanonicalName();
-    private static final String DOUBLE_CANONICAL_NAME_2 = double.class.getCanonicalName();
-    private static final String INTEGER_CANONICAL_NAME_1 = Integer.class.getCanonicalName();
-    private static final String INTEGER_CANONICAL_NAME_2 = int.class.getCanonicalName();
-    private static final String LONG_CANONICAL_NAME_1 = Long.class.getCanonicalName();
-    private static final String LONG_CANONICAL_NAME_2 = long.class.getCanonicalName();
-    private static final String BOOLEAN_CANONICAL_NAME_1 = Boolean.class.getCanonicalName();
-    private static final String BOOLEAN_CANONICAL_NAME_2 = boolean.class.getCanonicalName();
-    private static final String BOUNDARY_TYPE_CANONICAL_NAME = BoundaryType.class.getCanonicalName();
-
     private static volatile int configVersion = -1;
     private static AtomicInteger requestId = new AtomicInteger(0);
     // 序列化类型 - 这里是 JSON
@@ -132,6 +103,14 @@ public class RemotingCommand {
     private SerializeType serializeTypeCurrentRPC = serializeTypeConfigInThisServer;
 
     private transient byte[] body;
+    /**
+     * 直接以 ByteBuf 承载的 body，与 {@link #body} 二选一。
+     * 写出时由 NettyEncoder 把它和编码好的 header 组合成 CompositeByteBuf 发送，不再拷贝到输出缓冲区；
+     * 所有权随 writeAndFlush 一起转交给 channel，写完后由 Netty 释放，因此只能发送一次。
+     * 请求在写出前就失败（连接不可用、限流超时等）时，调用方用 {@link #releaseBodyBuf()} 回收。
+     */
+    private transient ByteBuf bodyBuf;
+    private transient volatile int bodyBufState = BODY_BUF_OWNED;
     private boolean suspended;
     private transient Stopwatch processTimer;
     private transient List<CommandCallback> callbackList;
@@ -199,19 +178,11 @@ public class RemotingCommand {
         setCmdVersion(cmd);
 
         if (classHeader != null) {
-            try {
-                // 通过反射创建类型
-                CommandCustomHeader objectHeader = classHeader.getDeclaredConstructor().newInstance();
-                cmd.customHeader = objectHeader;
-            } catch (InstantiationException e) {
-                return null;
-            } catch (IllegalAccessException e) {
-                return null;
-            } catch (InvocationTargetException e) {
-                return null;
-            } catch (NoSuchMethodException e) {
+            CommandCustomHeader objectHeader = CommandCustomHeaderCodec.getCodec(classHeader).newInstance();
+            if (objectHeader == null) {
                 return null;
             }
+            cmd.customHeader = objectHeader;
         }
 
         return cmd;
@@ -345,10 +316,9 @@ public class RemotingCommand {
 
     public <T extends CommandCustomHeader> T decodeCommandCustomHeaderDirectly(Class<T> classHeader,
                                                                                boolean useFastEncode) throws RemotingCommandException {
-        T objectHeader;
-        try {
-            objectHeader = classHeader.getDeclaredConstructor().newInstance();
-        } catch (Exception e) {
+        CommandCustomHeaderCodec codec = CommandCustomHeaderCodec.getCodec(classHeader);
+        T objectHeader = codec.newInstance();
+        if (objectHeader == null) {
             return null;
         }
 
@@ -359,48 +329,8 @@ public class RemotingCommand {
                 return objectHeader;
             }
 
-            Field[] fields = getClazzFields(classHeader);
-            for (Field field : fields) {
-                if (!Modifier.isStatic(field.getModifiers())) {
-                    String fieldName = field.getName();
-                    if (!fieldName.startsWith("this")) {
-                        try {
-                            String value = this.extFields.get(fieldName);
-                            if (null == value) {
-                                if (!isFieldNullable(field)) {
-                                    throw new RemotingCommandException("the custom field <" + fieldName + "> is null");
-                                }
-                                continue;
-                            }
-
-                            field.setAccessible(true);
-                            String type = getCanonicalName(field.getType());
-                            Object valueParsed;
-
-                            if (type.equals(STRING_CANONICAL_NAME)) {
-                                valueParsed = value;
-                            } else if (type.equals(INTEGER_CANONICAL_NAME_1) || type.equals(INTEGER_CANONICAL_NAME_2)) {
-                                valueParsed = Integer.parseInt(value);
-                            } else if (type.equals(LONG_CANONICAL_NAME_1) || type.equals(LONG_CANONICAL_NAME_2)) {
-                                valueParsed = Long.parseLong(value);
-                            } else if (type.equals(BOOLEAN_CANONICAL_NAME_1) || type.equals(BOOLEAN_CANONICAL_NAME_2)) {
-                                valueParsed = Boolean.parseBoolean(value);
-                            } else if (type.equals(DOUBLE_CANONICAL_NAME_1) || type.equals(DOUBLE_CANONICAL_NAME_2)) {
-                                valueParsed = Double.parseDouble(value);
-                            } else if (type.equals(BOUNDARY_TYPE_CANONICAL_NAME)) {
-                                valueParsed = BoundaryType.getType(value);
-                            } else {
-                                throw new RemotingCommandException("the custom field <" + fieldName + "> type is not supported");
-                            }
-
-                            field.set(objectHeader, valueParsed);
-
-                        } catch (Throwable e) {
-                            log.error("Failed field [{}] decoding", fieldName, e);
-                        }
-                    }
-                }
-            }
+            // 字段类型、可空性都已在 codec 中预先解析好，这里不再逐字段比较类型名
+            codec.decode(objectHeader, this.extFields);
 
             objectHeader.checkFields();
         }
@@ -410,42 +340,11 @@ public class RemotingCommand {
 
     //make it able to test
     Field[] getClazzFields(Class<? extends CommandCustomHeader> classHeader) {
-        Field[] field = CLASS_HASH_MAP.get(classHeader);
-
-        if (field == null) {
-            Set<Field> fieldList = new HashSet<>();
-            for (Class className = classHeader; className != Object.class; className = className.getSuperclass()) {
-                Field[] fields = className.getDeclaredFields();
-                fieldList.addAll(Arrays.asList(fields));
-            }
-            field = fieldList.toArray(new Field[0]);
-            synchronized (CLASS_HASH_MAP) {
-                CLASS_HASH_MAP.put(classHeader, field);
-            }
-        }
-        return field;
-    }
-
-    private boolean isFieldNullable(Field field) {
-        if (!NULLABLE_FIELD_CACHE.containsKey(field)) {
-            Annotation annotation = field.getAnnotation(CFNotNull.class);
-            synchronized (NULLABLE_FIELD_CACHE) {
-                NULLABLE_FIELD_CACHE.put(field, annotation == null);
-            }
-        }
-        return NULLABLE_FIELD_CACHE.get(field);
+        return CommandCustomHeaderCodec.collectFields(classHeader);
     }
 
-    private String getCanonicalName(Class clazz) {
-        String name = CANONICAL_NAME_CACHE.get(clazz);
-
-        if (name == null) {
-            name = clazz.getCanonicalName();
-            synchronized (CANONICAL_NAME_CACHE) {
-                CANONICAL_NAME_CACHE.put(clazz, name);
-            }
-        }
-        return name;
+    static boolean isFieldNullable(Field field) {
+        return field.getAnnotation(CFNotNull.class) == null;
     }
 
     public ByteBuffer encode() {
@@ -457,9 +356,8 @@ public class RemotingCommand {
         length += headerData.length;
 
         // 3> body data length
-        if (this.body != null) {
-            length += body.length;
-        }
+        int bodyLength = bodyLength();
+        length += bodyLength;
 
         ByteBuffer result = ByteBuffer.allocate(4 + length);
 
@@ -475,6 +373,10 @@ public class RemotingCommand {
         // body data;
         if (this.body != null) {
             result.put(this.body);
+        } else if (this.bodyBuf != null) {
+            // 不移动 readerIndex，bodyBuf 仍可交给 NettyEncoder 发送
+            this.bodyBuf.getBytes(this.bodyBuf.readerIndex(), result.array(), result.position(), bodyLength);
+            ((Buffer) result).position(result.position() + bodyLength);
         }
 
         result.flip();
@@ -496,34 +398,15 @@ public class RemotingCommand {
      */
     public void makeCustomHeaderToNet() {
         if (this.customHeader != null) {
-            Field[] fields = getClazzFields(customHeader.getClass());
             if (null == this.extFields) {
                 this.extFields = new HashMap<>();
             }
-
-            for (Field field : fields) {
-                if (!Modifier.isStatic(field.getModifiers())) {
-                    String name = field.getName();
-                    if (!name.startsWith("this")) {
-                        Object value = null;
-                        try {
-                            field.setAccessible(true);
-                            value = field.get(this.customHeader);
-                        } catch (Exception e) {
-                            log.error("Failed to access field [{}]", name, e);
-                        }
-
-                        if (value != null) {
-                            this.extFields.put(name, value.toString());
-                        }
-                    }
-                }
-            }
+            CommandCustomHeaderCodec.getCodec(this.customHeader.getClass()).encode(this.customHeader, this.extFields);
         }
     }
 
     public void fastEncodeHeader(ByteBuf out) {
-        int bodySize = this.body != null ? this.body.length : 0;
+        int bodySize = bodyLength();
         int beginIndex = out.writerIndex();
         // skip 8 bytes
         out.writeLong(0);
@@ -544,7 +427,14 @@ public class RemotingCommand {
     }
 
     public ByteBuffer encodeHeader() {
-        return encodeHeader(this.body != null ? this.body.length : 0);
+        return encodeHeader(bodyLength());
+    }
+
+    private int bodyLength() {
+        if (this.body != null) {
+            return this.body.length;
+        }
+        return this.bodyBuf != null ? this.bodyBuf.readableBytes() : 0;
     }
 
     public ByteBuffer encodeHeader(final int bodyLength) {
@@ -658,6 +548,40 @@ public class RemotingCommand {
         this.body = body;
     }
 
+    @JSONField(serialize = false)
+    public ByteBuf getBodyBuf() {
+        return bodyBuf;
+    }
+
+    /**
+     * 以 ByteBuf 作为 body 发送，调用方不再持有该 ByteBuf 的引用。设置后 {@link #getBody()} 仍为 null。
+     */
+    @JSONField(serialize = false)
+    public void setBodyBuf(ByteBuf bodyBuf) {
+        this.bodyBuf = bodyBuf;
+        this.bodyBufState = BODY_BUF_OWNED;
+    }
+
+    /**
+     * 由 NettyEncoder 在写出前调用，把 bodyBuf 交给 channel。
+     *
+     * @return false 表示 bodyBuf 已被调用方释放或已经写出过，不能再发送
+     */
+    public boolean markBodyBufWritten() {
+        return BODY_BUF_STATE_UPDATER.compareAndSet(this, BODY_BUF_OWNED, BODY_BUF_WRITTEN);
+    }
+
+    /**
+     * 请求结束（收到应答、失败或超时）后调用：bodyBuf 还没交给 channel 时在这里释放，已经写出的由 Netty 释放。
+     * 重复调用没有副作用。
+     */
+    public void releaseBodyBuf() {
+        ByteBuf buf = this.bodyBuf;
+        if (buf != null && BODY_BUF_STATE_UPDATER.compareAndSet(this, BODY_BUF_OWNED, BODY_BUF_RELEASED)) {
+            buf.release();
+        }
+    }
+
     @JSONField(serialize = false)
     public boolean isSuspended() {
         return suspended;
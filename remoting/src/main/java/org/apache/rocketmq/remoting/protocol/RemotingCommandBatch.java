@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.remoting.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.rocketmq.remoting.exception.RemotingCommandException;
+
+/**
+ * 信封命令的编解码。信封是一条 {@link RequestCode#REMOTING_COMMAND_BATCH} 单向请求，body 的格式与连接上的字节流相同：
+ * <pre>
+ * | 子命令 1 的完整帧（4 字节总长度 + header 长度 + header + body）| 子命令 2 的完整帧 | ...
+ * </pre>
+ * 子命令各自保留 opaque、flag 和 extFields，服务端拆开后像单独收到的请求一样分发，RPC hook 与鉴权也逐条执行。
+ */
+public class RemotingCommandBatch {
+
+    private RemotingCommandBatch() {
+    }
+
+    public static boolean isBatch(RemotingCommand cmd) {
+        return cmd.getCode() == RequestCode.REMOTING_COMMAND_BATCH && !cmd.isResponseType();
+    }
+
+    /**
+     * 把多条命令装进一个信封。带 ByteBuf body 的命令不能放进信封，调用方应单独发送
+     */
+    public static RemotingCommand encode(List<RemotingCommand> commands) {
+        ByteBuf out = Unpooled.buffer(commands.size() * 128);
+        for (RemotingCommand cmd : commands) {
+            if (cmd.getBodyBuf() != null) {
+                throw new IllegalArgumentException("command with ByteBuf body cannot be batched, opaque: " + cmd.getOpaque());
+            }
+            cmd.fastEncodeHeader(out);
+            byte[] body = cmd.getBody();
+            if (body != null) {
+                out.writeBytes(body);
+            }
+        }
+        byte[] body = new byte[out.readableBytes()];
+        out.readBytes(body);
+
+        RemotingCommand envelope = RemotingCommand.createRequestCommand(RequestCode.REMOTING_COMMAND_BATCH, null);
+        envelope.markOnewayRPC();
+        envelope.setBody(body);
+        return envelope;
+    }
+
+    public static List<RemotingCommand> decode(RemotingCommand envelope) throws RemotingCommandException {
+        List<RemotingCommand> commands = new ArrayList<>();
+        byte[] body = envelope.getBody();
+        if (body == null) {
+            return commands;
+        }
+        ByteBuf in = Unpooled.wrappedBuffer(body);
+        while (in.isReadable()) {
+            if (in.readableBytes() < 4) {
+                throw new RemotingCommandException("decode batch error, truncated frame length");
+            }
+            int frameLength = in.readInt();
+            if (frameLength < 4 || frameLength > in.readableBytes()) {
+                throw new RemotingCommandException("decode batch error, bad frame length: " + frameLength);
+            }
+            RemotingCommand cmd = RemotingCommand.decode(in.readSlice(frameLength));
+            cmd.setProcessTimer(envelope.getProcessTimer());
+            commands.add(cmd);
+        }
+        return commands;
+    }
+}
@@ -98,6 +98,8 @@ public class RequestCode {
     public static final int GET_ROUTEINFO_BY_TOPIC = 105;
 
     public static final int GET_BROKER_CLUSTER_INFO = 106;
+    // 增量路由查询：客户端带上已持有的各 topic 路由版本，只返回有变化的 topic
+    public static final int GET_ROUTEINFO_DELTA_BY_TOPICS = 107;
     public static final int UPDATE_AND_CREATE_SUBSCRIPTIONGROUP = 200;
     public static final int GET_ALL_SUBSCRIPTIONGROUP_CONFIG = 201;
     public static final int GET_TOPIC_STATS_INFO = 202;
@@ -297,4 +299,10 @@ public class RequestCode {
     public static final int AUTH_DELETE_ACL = 3008;
     public static final int AUTH_GET_ACL = 3009;
     public static final int AUTH_LIST_ACL = 3010;
+
+    // 信封命令：body 里依次放着多条完整编码的命令，服务端拆开后逐条分发，见 RemotingCommandBatch
+    public static final int REMOTING_COMMAND_BATCH = 4001;
+
+    // 增量心跳：只带相对 broker 已确认版本变化了的订阅，body 为 HeartbeatDeltaData
+    public static final int HEART_BEAT_DELTA = 4002;
 }
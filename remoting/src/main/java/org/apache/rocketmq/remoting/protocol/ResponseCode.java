@@ -86,6 +86,9 @@ public class ResponseCode extends RemotingSysResponseCode {
 
     public static final int FLOW_CONTROL = 215;
 
+    // 增量心跳的 baseVersion 与 broker 记录的版本不一致，客户端需要发送全量心跳
+    public static final int HEARTBEAT_DELTA_VERSION_MISMATCH = 216;
+
     public static final int NOT_LEADER_FOR_QUEUE = 501;
 
     public static final int ILLEGAL_OPERATION = 604;
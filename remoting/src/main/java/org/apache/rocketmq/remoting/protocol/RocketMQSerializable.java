@@ -27,7 +27,11 @@ import org.apache.rocketmq.remoting.exception.RemotingCommandException;
 import io.netty.buffer.ByteBuf;
 
 public class RocketMQSerializable {
+    public static final String LAZY_EXT_FIELDS_PROPERTY = "com.rocketmq.remoting.lazyExtFields";
     private static final Charset CHARSET_UTF8 = StandardCharsets.UTF_8;
+    // extFields 延迟解码开关，默认开启，见 LazyExtFields
+    private static final boolean LAZY_EXT_FIELDS_ENABLE =
+        Boolean.parseBoolean(System.getProperty(LAZY_EXT_FIELDS_PROPERTY, "true"));
 
     public static void writeStr(ByteBuf buf, boolean useShortLength, String str) {
         int lenIndex = buf.writerIndex();
@@ -224,7 +228,11 @@ public class RocketMQSerializable {
             if (extFieldsLength > headerLen) {
                 throw new RemotingCommandException("RocketMQ protocol decoding failed, extFields length: " + extFieldsLength + ", but header length: " + headerLen);
             }
-            cmd.setExtFields(mapDeserialize(headerBuffer, extFieldsLength));
+            if (LAZY_EXT_FIELDS_ENABLE) {
+                cmd.setExtFields(LazyExtFields.decode(headerBuffer, extFieldsLength));
+            } else {
+                cmd.setExtFields(mapDeserialize(headerBuffer, extFieldsLength));
+            }
         }
         return cmd;
     }
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.remoting.protocol.body;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.apache.rocketmq.remoting.protocol.RemotingSerializable;
+import org.apache.rocketmq.remoting.protocol.route.TopicRouteData;
+
+public class GetRouteInfoDeltaResponseBody extends RemotingSerializable {
+
+    private long routeEpoch;
+
+    /**
+     * 版本号有变化的 topic 的完整路由，没变化的 topic 不出现
+     */
+    private Map<String/* topic */, TopicRouteData> topicRouteTable = new HashMap<>();
+
+    /**
+     * topicRouteTable 中每个 topic 的新版本号
+     */
+    private Map<String/* topic */, Long/* route version */> topicRouteVersions = new HashMap<>();
+
+    /**
+     * name server 上已经没有路由的 topic
+     */
+    private Set<String> notExistTopics = new HashSet<>();
+
+    public long getRouteEpoch() {
+        return routeEpoch;
+    }
+
+    public void setRouteEpoch(long routeEpoch) {
+        this.routeEpoch = routeEpoch;
+    }
+
+    public Map<String, TopicRouteData> getTopicRouteTable() {
+        return topicRouteTable;
+    }
+
+    public void setTopicRouteTable(Map<String, TopicRouteData> topicRouteTable) {
+        this.topicRouteTable = topicRouteTable;
+    }
+
+    public Map<String, Long> getTopicRouteVersions() {
+        return topicRouteVersions;
+    }
+
+    public void setTopicRouteVersions(Map<String, Long> topicRouteVersions) {
+        this.topicRouteVersions = topicRouteVersions;
+    }
+
+    public Set<String> getNotExistTopics() {
+        return notExistTopics;
+    }
+
+    public void setNotExistTopics(Set<String> notExistTopics) {
+        this.notExistTopics = notExistTopics;
+    }
+}
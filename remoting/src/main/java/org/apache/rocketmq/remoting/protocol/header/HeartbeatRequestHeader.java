@@ -20,15 +20,30 @@ package org.apache.rocketmq.remoting.protocol.header;
 import org.apache.rocketmq.common.action.Action;
 import org.apache.rocketmq.common.action.RocketMQAction;
 import org.apache.rocketmq.common.resource.ResourceType;
+import org.apache.rocketmq.remoting.annotation.CFNullable;
 import org.apache.rocketmq.remoting.exception.RemotingCommandException;
 import org.apache.rocketmq.remoting.protocol.RequestCode;
 import org.apache.rocketmq.remoting.rpc.RpcRequestHeader;
 
 @RocketMQAction(value = RequestCode.HEART_BEAT, resource = ResourceType.GROUP, action = {Action.PUB, Action.SUB})
 public class HeartbeatRequestHeader extends RpcRequestHeader {
+    /**
+     * 这份全量心跳的订阅版本号，之后的增量心跳以它为基准；支持增量心跳的 broker 在响应里确认该版本
+     */
+    @CFNullable
+    private Long subscriptionVersion;
+
     // for namespace
     @Override
     public void checkFields() throws RemotingCommandException {
 
     }
+
+    public Long getSubscriptionVersion() {
+        return subscriptionVersion;
+    }
+
+    public void setSubscriptionVersion(Long subscriptionVersion) {
+        this.subscriptionVersion = subscriptionVersion;
+    }
 }
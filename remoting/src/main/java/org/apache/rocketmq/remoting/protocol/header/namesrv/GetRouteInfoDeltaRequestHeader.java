@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.remoting.protocol.header.namesrv;
+
+import org.apache.rocketmq.common.action.Action;
+import org.apache.rocketmq.common.action.RocketMQAction;
+import org.apache.rocketmq.common.resource.ResourceType;
+import org.apache.rocketmq.remoting.CommandCustomHeader;
+import org.apache.rocketmq.remoting.annotation.CFNullable;
+import org.apache.rocketmq.remoting.exception.RemotingCommandException;
+import org.apache.rocketmq.remoting.protocol.RequestCode;
+
+/**
+ * 增量路由查询的请求头，topic 及其版本号放在 {@link org.apache.rocketmq.remoting.protocol.body.GetRouteInfoDeltaRequestBody} 里。
+ */
+@RocketMQAction(value = RequestCode.GET_ROUTEINFO_DELTA_BY_TOPICS, resource = ResourceType.CLUSTER, action = Action.GET)
+public class GetRouteInfoDeltaRequestHeader implements CommandCustomHeader {
+
+    /**
+     * 客户端持有的版本号来自哪个 name server 实例，与当前实例不一致时版本号全部作废
+     */
+    @CFNullable
+    private Long routeEpoch;
+
+    @CFNullable
+    private Boolean acceptStandardJsonOnly;
+
+    /**
+     * 客户端能解析 {@link org.apache.rocketmq.remoting.protocol.BinaryBodyCodec} 编码的响应体，旧版本 name server 忽略该字段
+     */
+    @CFNullable
+    private Boolean acceptBinaryBody;
+
+    @Override
+    public void checkFields() throws RemotingCommandException {
+    }
+
+    public Long getRouteEpoch() {
+        return routeEpoch;
+    }
+
+    public void setRouteEpoch(Long routeEpoch) {
+        this.routeEpoch = routeEpoch;
+    }
+
+    public Boolean getAcceptStandardJsonOnly() {
+        return acceptStandardJsonOnly;
+    }
+
+    public void setAcceptStandardJsonOnly(Boolean acceptStandardJsonOnly) {
+        this.acceptStandardJsonOnly = acceptStandardJsonOnly;
+    }
+
+    public Boolean getAcceptBinaryBody() {
+        return acceptBinaryBody;
+    }
+
+    public void setAcceptBinaryBody(Boolean acceptBinaryBody) {
+        this.acceptBinaryBody = acceptBinaryBody;
+    }
+}
@@ -38,6 +38,12 @@ public class GetRouteInfoRequestHeader extends TopicRequestHeader {
     @CFNullable
     private Boolean acceptStandardJsonOnly;
 
+    /**
+     * 客户端能解析 {@link org.apache.rocketmq.remoting.protocol.BinaryBodyCodec} 编码的响应体，旧版本 name server 忽略该字段
+     */
+    @CFNullable
+    private Boolean acceptBinaryBody;
+
     @Override
     public void checkFields() throws RemotingCommandException {
     }
@@ -57,4 +63,12 @@ public class GetRouteInfoRequestHeader extends TopicRequestHeader {
     public void setAcceptStandardJsonOnly(Boolean acceptStandardJsonOnly) {
         this.acceptStandardJsonOnly = acceptStandardJsonOnly;
     }
+
+    public Boolean getAcceptBinaryBody() {
+        return acceptBinaryBody;
+    }
+
+    public void setAcceptBinaryBody(Boolean acceptBinaryBody) {
+        this.acceptBinaryBody = acceptBinaryBody;
+    }
 }
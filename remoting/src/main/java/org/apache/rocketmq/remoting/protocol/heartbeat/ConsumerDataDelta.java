@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.remoting.protocol.heartbeat;
+
+import java.util.HashSet;
+import java.util.Set;
+import org.apache.rocketmq.common.consumer.ConsumeFromWhere;
+
+/**
+ * 增量心跳里一个消费组的变化：组属性总是完整带上，订阅只带新增或变化了的，以及取消订阅的 topic
+ */
+public class ConsumerDataDelta {
+    private String groupName;
+    private ConsumeType consumeType;
+    private MessageModel messageModel;
+    private ConsumeFromWhere consumeFromWhere;
+    private boolean unitMode;
+    private Set<SubscriptionData> upsertSubscriptionDataSet = new HashSet<>();
+    private Set<String> removedTopics = new HashSet<>();
+
+    public String getGroupName() {
+        return groupName;
+    }
+
+    public void setGroupName(String groupName) {
+        this.groupName = groupName;
+    }
+
+    public ConsumeType getConsumeType() {
+        return consumeType;
+    }
+
+    public void setConsumeType(ConsumeType consumeType) {
+        this.consumeType = consumeType;
+    }
+
+    public MessageModel getMessageModel() {
+        return messageModel;
+    }
+
+    public void setMessageModel(MessageModel messageModel) {
+        this.messageModel = messageModel;
+    }
+
+    public ConsumeFromWhere getConsumeFromWhere() {
+        return consumeFromWhere;
+    }
+
+    public void setConsumeFromWhere(ConsumeFromWhere consumeFromWhere) {
+        this.consumeFromWhere = consumeFromWhere;
+    }
+
+    public boolean isUnitMode() {
+        return unitMode;
+    }
+
+    public void setUnitMode(boolean unitMode) {
+        this.unitMode = unitMode;
+    }
+
+    public Set<SubscriptionData> getUpsertSubscriptionDataSet() {
+        return upsertSubscriptionDataSet;
+    }
+
+    public void setUpsertSubscriptionDataSet(Set<SubscriptionData> upsertSubscriptionDataSet) {
+        this.upsertSubscriptionDataSet = upsertSubscriptionDataSet;
+    }
+
+    public Set<String> getRemovedTopics() {
+        return removedTopics;
+    }
+
+    public void setRemovedTopics(Set<String> removedTopics) {
+        this.removedTopics = removedTopics;
+    }
+
+    @Override
+    public String toString() {
+        return "ConsumerDataDelta [groupName=" + groupName + ", consumeType=" + consumeType + ", messageModel="
+            + messageModel + ", consumeFromWhere=" + consumeFromWhere + ", unitMode=" + unitMode
+            + ", upsertSubscriptionDataSet=" + upsertSubscriptionDataSet + ", removedTopics=" + removedTopics + "]";
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.remoting.protocol.heartbeat;
+
+import com.alibaba.fastjson.annotation.JSONField;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.rocketmq.remoting.protocol.RemotingSerializable;
+
+/**
+ * 增量心跳（{@link org.apache.rocketmq.remoting.protocol.RequestCode#HEART_BEAT_DELTA}）的请求体：
+ * 相对 broker 已确认的 baseVersion 那份 {@link HeartbeatData}，只带新增、删除或变化了的生产者组、消费组和订阅。
+ * <p>
+ * broker 记着每个客户端最近一次确认的版本号与完整的 HeartbeatData，baseVersion 与之相同时用 {@link #applyTo(HeartbeatData)}
+ * 得到新的完整心跳，并在响应的 {@code HEARTBEAT_SUBSCRIPTION_VERSION} 扩展字段里确认 version；
+ * 不同时返回 {@code HEARTBEAT_DELTA_VERSION_MISMATCH}，客户端改发全量心跳重新同步。
+ */
+public class HeartbeatDeltaData extends RemotingSerializable {
+    private String clientID;
+    private long baseVersion;
+    private long version;
+    private int heartbeatFingerprint;
+    private Set<ProducerData> addedProducerDataSet = new HashSet<>();
+    private Set<String> removedProducerGroups = new HashSet<>();
+    private List<ConsumerDataDelta> consumerDataDeltas = new ArrayList<>();
+    private Set<String> removedConsumerGroups = new HashSet<>();
+
+    /**
+     * 计算 current 相对 base 的变化，baseVersion 与 version 由调用方设置
+     */
+    public static HeartbeatDeltaData diff(HeartbeatData base, HeartbeatData current) {
+        HeartbeatDeltaData delta = new HeartbeatDeltaData();
+        delta.setClientID(current.getClientID());
+        delta.setHeartbeatFingerprint(current.getHeartbeatFingerprint());
+
+        Set<String> baseProducers = producerGroups(base);
+        Set<String> currentProducers = producerGroups(current);
+        for (String group : currentProducers) {
+            if (!baseProducers.contains(group)) {
+                ProducerData producerData = new ProducerData();
+                producerData.setGroupName(group);
+                delta.getAddedProducerDataSet().add(producerData);
+            }
+        }
+        for (String group : baseProducers) {
+            if (!currentProducers.contains(group)) {
+                delta.getRemovedProducerGroups().add(group);
+            }
+        }
+
+        Map<String, ConsumerData> baseConsumers = consumersByGroup(base);
+        Map<String, ConsumerData> currentConsumers = consumersByGroup(current);
+        for (ConsumerData consumerData : currentConsumers.values()) {
+            ConsumerDataDelta consumerDelta = diff(baseConsumers.get(consumerData.getGroupName()), consumerData);
+            if (consumerDelta != null) {
+                delta.getConsumerDataDeltas().add(consumerDelta);
+            }
+        }
+        for (String group : baseConsumers.keySet()) {
+            if (!currentConsumers.containsKey(group)) {
+                delta.getRemovedConsumerGroups().add(group);
+            }
+        }
+        return delta;
+    }
+
+    /**
+     * @return 没有变化时返回 null
+     */
+    private static ConsumerDataDelta diff(ConsumerData base, ConsumerData current) {
+        Map<String, SubscriptionData> baseSubscriptions = base == null ? new HashMap<>() : subscriptionsByTopic(base);
+        Map<String, SubscriptionData> currentSubscriptions = subscriptionsByTopic(current);
+
+        ConsumerDataDelta consumerDelta = new ConsumerDataDelta();
+        consumerDelta.setGroupName(current.getGroupName());
+        consumerDelta.setConsumeType(current.getConsumeType());
+        consumerDelta.setMessageModel(current.getMessageModel());
+        consumerDelta.setConsumeFromWhere(current.getConsumeFromWhere());
+        consumerDelta.setUnitMode(current.isUnitMode());
+        for (SubscriptionData subscriptionData : currentSubscriptions.values()) {
+            if (!subscriptionData.equals(baseSubscriptions.get(subscriptionData.getTopic()))) {
+                consumerDelta.getUpsertSubscriptionDataSet().add(subscriptionData);
+            }
+        }
+        for (String topic : baseSubscriptions.keySet()) {
+            if (!currentSubscriptions.containsKey(topic)) {
+                consumerDelta.getRemovedTopics().add(topic);
+            }
+        }
+
+        boolean groupChanged = base == null
+            || base.getConsumeType() != current.getConsumeType()
+            || base.getMessageModel() != current.getMessageModel()
+            || base.getConsumeFromWhere() != current.getConsumeFromWhere()
+            || base.isUnitMode() != current.isUnitMode();
+        if (!groupChanged && consumerDelta.getUpsertSubscriptionDataSet().isEmpty() && consumerDelta.getRemovedTopics().isEmpty()) {
+            return null;
+        }
+        return consumerDelta;
+    }
+
+    /**
+     * 把增量应用到 base 上，返回新的完整心跳，不修改 base。未变化的 {@link SubscriptionData} 与 base 共用同一个对象
+     */
+    public HeartbeatData applyTo(HeartbeatData base) {
+        HeartbeatData heartbeatData = new HeartbeatData();
+        heartbeatData.setClientID(this.clientID);
+        heartbeatData.setHeartbeatFingerprint(this.heartbeatFingerprint);
+
+        Set<String> producers = producerGroups(base);
+        producers.removeAll(this.removedProducerGroups);
+        for (ProducerData producerData : this.addedProducerDataSet) {
+            producers.add(producerData.getGroupName());
+        }
+        for (String group : producers) {
+            ProducerData producerData = new ProducerData();
+            producerData.setGroupName(group);
+            heartbeatData.getProducerDataSet().add(producerData);
+        }
+
+        Map<String, ConsumerData> consumers = consumersByGroup(base);
+        for (String group : this.removedConsumerGroups) {
+            consumers.remove(group);
+        }
+        for (ConsumerDataDelta consumerDelta : this.consumerDataDeltas) {
+            ConsumerData baseConsumer = consumers.get(consumerDelta.getGroupName());
+            Map<String, SubscriptionData> subscriptions = baseConsumer == null ? new HashMap<>() : subscriptionsByTopic(baseConsumer);
+            for (String topic : consumerDelta.getRemovedTopics()) {
+                subscriptions.remove(topic);
+            }
+            for (SubscriptionData subscriptionData : consumerDelta.getUpsertSubscriptionDataSet()) {
+                subscriptions.put(subscriptionData.getTopic(), subscriptionData);
+            }
+
+            ConsumerData consumerData = new ConsumerData();
+            consumerData.setGroupName(consumerDelta.getGroupName());
+            consumerData.setConsumeType(consumerDelta.getConsumeType());
+            consumerData.setMessageModel(consumerDelta.getMessageModel());
+            consumerData.setConsumeFromWhere(consumerDelta.getConsumeFromWhere());
+            consumerData.setUnitMode(consumerDelta.isUnitMode());
+            consumerData.getSubscriptionDataSet().addAll(subscriptions.values());
+            consumers.put(consumerData.getGroupName(), consumerData);
+        }
+        heartbeatData.getConsumerDataSet().addAll(consumers.values());
+        return heartbeatData;
+    }
+
+    /**
+     * 没有任何变化，只起保活作用
+     */
+    @JSONField(serialize = false)
+    public boolean isEmpty() {
+        return addedProducerDataSet.isEmpty() && removedProducerGroups.isEmpty()
+            && consumerDataDeltas.isEmpty() && removedConsumerGroups.isEmpty();
+    }
+
+    private static Set<String> producerGroups(HeartbeatData heartbeatData) {
+        Set<String> groups = new HashSet<>();
+        if (heartbeatData != null && heartbeatData.getProducerDataSet() != null) {
+            for (ProducerData producerData : heartbeatData.getProducerDataSet()) {
+                groups.add(producerData.getGroupName());
+            }
+        }
+        return groups;
+    }
+
+    private static Map<String, ConsumerData> consumersByGroup(HeartbeatData heartbeatData) {
+        Map<String, ConsumerData> consumers = new HashMap<>();
+        if (heartbeatData != null && heartbeatData.getConsumerDataSet() != null) {
+            for (ConsumerData consumerData : heartbeatData.getConsumerDataSet()) {
+                consumers.put(consumerData.getGroupName(), consumerData);
+            }
+        }
+        return consumers;
+    }
+
+    private static Map<String, SubscriptionData> subscriptionsByTopic(ConsumerData consumerData) {
+        Map<String, SubscriptionData> subscriptions = new HashMap<>();
+        if (consumerData.getSubscriptionDataSet() != null) {
+            for (SubscriptionData subscriptionData : consumerData.getSubscriptionDataSet()) {
+                subscriptions.put(subscriptionData.getTopic(), subscriptionData);
+            }
+        }
+        return subscriptions;
+    }
+
+    public String getClientID() {
+        return clientID;
+    }
+
+    public void setClientID(String clientID) {
+        this.clientID = clientID;
+    }
+
+    public long getBaseVersion() {
+        return baseVersion;
+    }
+
+    public void setBaseVersion(long baseVersion) {
+        this.baseVersion = baseVersion;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public int getHeartbeatFingerprint() {
+        return heartbeatFingerprint;
+    }
+
+    public void setHeartbeatFingerprint(int heartbeatFingerprint) {
+        this.heartbeatFingerprint = heartbeatFingerprint;
+    }
+
+    public Set<ProducerData> getAddedProducerDataSet() {
+        return addedProducerDataSet;
+    }
+
+    public void setAddedProducerDataSet(Set<ProducerData> addedProducerDataSet) {
+        this.addedProducerDataSet = addedProducerDataSet;
+    }
+
+    public Set<String> getRemovedProducerGroups() {
+        return removedProducerGroups;
+    }
+
+    public void setRemovedProducerGroups(Set<String> removedProducerGroups) {
+        this.removedProducerGroups = removedProducerGroups;
+    }
+
+    public List<ConsumerDataDelta> getConsumerDataDeltas() {
+        return consumerDataDeltas;
+    }
+
+    public void setConsumerDataDeltas(List<ConsumerDataDelta> consumerDataDeltas) {
+        this.consumerDataDeltas = consumerDataDeltas;
+    }
+
+    public Set<String> getRemovedConsumerGroups() {
+        return removedConsumerGroups;
+    }
+
+    public void setRemovedConsumerGroups(Set<String> removedConsumerGroups) {
+        this.removedConsumerGroups = removedConsumerGroups;
+    }
+
+    @Override
+    public String toString() {
+        return "HeartbeatDeltaData [clientID=" + clientID + ", baseVersion=" + baseVersion + ", version=" + version
+            + ", addedProducerDataSet=" + addedProducerDataSet + ", removedProducerGroups=" + removedProducerGroups
+            + ", consumerDataDeltas=" + consumerDataDeltas + ", removedConsumerGroups=" + removedConsumerGroups + "]";
+    }
+}
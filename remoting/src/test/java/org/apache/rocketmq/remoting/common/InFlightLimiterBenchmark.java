@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.remoting.common;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 对比 invoke 路径上原先的公平 Semaphore + SemaphoreReleaseOnlyOnce 与 {@link StripedInFlightLimiter}，
+ * 分别在 1 / 8 / 64 个调用线程下做 acquire + release。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InFlightLimiterBenchmark {
+
+    private static final int PERMITS = 65535;
+
+    private final Semaphore fairSemaphore = new Semaphore(PERMITS, true);
+    private final StripedInFlightLimiter stripedLimiter = new StripedInFlightLimiter(PERMITS, 64L * 1024 * 1024);
+
+    @Benchmark
+    @Threads(1)
+    public boolean fairSemaphore1() throws InterruptedException {
+        return fairSemaphore();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean fairSemaphore8() throws InterruptedException {
+        return fairSemaphore();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public boolean fairSemaphore64() throws InterruptedException {
+        return fairSemaphore();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean stripedLimiter1() throws InterruptedException {
+        return stripedLimiter();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean stripedLimiter8() throws InterruptedException {
+        return stripedLimiter();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public boolean stripedLimiter64() throws InterruptedException {
+        return stripedLimiter();
+    }
+
+    private boolean fairSemaphore() throws InterruptedException {
+        boolean acquired = fairSemaphore.tryAcquire(3000, TimeUnit.MILLISECONDS);
+        if (acquired) {
+            new SemaphoreReleaseOnlyOnce(fairSemaphore).release();
+        }
+        return acquired;
+    }
+
+    private boolean stripedLimiter() throws InterruptedException {
+        boolean acquired = stripedLimiter.tryAcquire(1024, 3000, TimeUnit.MILLISECONDS);
+        if (acquired) {
+            stripedLimiter.release(1024);
+        }
+        return acquired;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+            .include(InFlightLimiterBenchmark.class.getSimpleName())
+            .build();
+        new Runner(options).run();
+    }
+}
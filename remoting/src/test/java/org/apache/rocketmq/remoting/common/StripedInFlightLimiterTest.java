@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.remoting.common;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class StripedInFlightLimiterTest {
+
+    @Test
+    public void testPermitsLimit() throws InterruptedException {
+        StripedInFlightLimiter limiter = new StripedInFlightLimiter(100);
+        for (int i = 0; i < 100; i++) {
+            assertThat(limiter.tryAcquire(0)).isTrue();
+        }
+        assertThat(limiter.availablePermits()).isEqualTo(0);
+        assertThat(limiter.tryAcquire(0)).isFalse();
+        assertThat(limiter.tryAcquire(0, 10, TimeUnit.MILLISECONDS)).isFalse();
+
+        limiter.release(0);
+        assertThat(limiter.tryAcquire(0)).isTrue();
+    }
+
+    @Test
+    public void testBytesLimit() {
+        StripedInFlightLimiter limiter = new StripedInFlightLimiter(100, 1000);
+        assertThat(limiter.tryAcquire(600)).isTrue();
+        assertThat(limiter.tryAcquire(600)).isFalse();
+        // 字节不足时数量许可要归还
+        assertThat(limiter.availablePermits()).isEqualTo(99);
+        assertThat(limiter.availableBytes()).isEqualTo(400);
+
+        limiter.release(600);
+        assertThat(limiter.availableBytes()).isEqualTo(1000);
+        // 单个超过上限的请求在没有在途字节时放行
+        assertThat(limiter.tryAcquire(5000)).isTrue();
+        assertThat(limiter.tryAcquire(1)).isFalse();
+    }
+
+    @Test
+    public void testWaiterWokenByRelease() throws InterruptedException {
+        StripedInFlightLimiter limiter = new StripedInFlightLimiter(1);
+        assertThat(limiter.tryAcquire(0)).isTrue();
+
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread waiter = new Thread(() -> {
+            try {
+                if (limiter.tryAcquire(0, 5, TimeUnit.SECONDS)) {
+                    acquired.countDown();
+                }
+            } catch (InterruptedException ignored) {
+            }
+        });
+        waiter.start();
+        Thread.sleep(100);
+        assertThat(limiter.getQueueLength()).isEqualTo(1);
+
+        limiter.release(0);
+        assertThat(acquired.await(3, TimeUnit.SECONDS)).isTrue();
+        waiter.join();
+        assertThat(limiter.getQueueLength()).isEqualTo(0);
+    }
+
+    @Test
+    public void testInterruptedWaiterDoesNotLeak() {
+        StripedInFlightLimiter limiter = new StripedInFlightLimiter(1);
+        assertThat(limiter.tryAcquire(0)).isTrue();
+
+        Thread.currentThread().interrupt();
+        try {
+            limiter.tryAcquire(0, 1, TimeUnit.SECONDS);
+            fail("should be interrupted");
+        } catch (InterruptedException expected) {
+        } finally {
+            Thread.interrupted();
+        }
+        assertThat(limiter.getQueueLength()).isEqualTo(0);
+    }
+
+    @Test
+    public void testConcurrentNeverExceedsLimit() throws InterruptedException {
+        final int permits = 32;
+        StripedInFlightLimiter limiter = new StripedInFlightLimiter(permits);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        CountDownLatch done = new CountDownLatch(16);
+        for (int t = 0; t < 16; t++) {
+            executor.execute(() -> {
+                try {
+                    for (int i = 0; i < 2000; i++) {
+                        if (limiter.tryAcquire(0, 1, TimeUnit.SECONDS)) {
+                            int current = inFlight.incrementAndGet();
+                            maxInFlight.accumulateAndGet(current, Math::max);
+                            inFlight.decrementAndGet();
+                            limiter.release(0);
+                        }
+                    }
+                } catch (InterruptedException ignored) {
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        assertThat(done.await(30, TimeUnit.SECONDS)).isTrue();
+        executor.shutdown();
+        assertThat(maxInFlight.get()).isLessThanOrEqualTo(permits);
+        assertThat(limiter.availablePermits()).isEqualTo(permits);
+    }
+}
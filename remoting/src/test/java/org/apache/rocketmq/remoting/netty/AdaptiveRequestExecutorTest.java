@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.remoting.netty;
+
+import com.google.common.base.Stopwatch;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.rocketmq.remoting.protocol.RemotingCommand;
+import org.apache.rocketmq.remoting.protocol.RemotingSysResponseCode;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class AdaptiveRequestExecutorTest {
+    private AdaptiveRequestExecutor executor;
+
+    @After
+    public void tearDown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testExecuteRequestTask() throws Exception {
+        executor = new AdaptiveRequestExecutor("test", 2, 16, 3000, false);
+        CountDownLatch latch = new CountDownLatch(1);
+        executor.submit(newTask(new EmbeddedChannel(), 10, latch::countDown));
+        assertThat(latch.await(3, TimeUnit.SECONDS)).isTrue();
+        assertThat(executor.isVirtualThread()).isEqualTo(AdaptiveRequestExecutor.newVirtualThreadExecutor() != null);
+    }
+
+    @Test
+    public void testQueueFullRejected() throws Exception {
+        executor = new AdaptiveRequestExecutor("test", 1, 1, 3000, false);
+        CountDownLatch block = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        executor.submit(newTask(new EmbeddedChannel(), 10, () -> {
+            started.countDown();
+            awaitQuietly(block);
+        }));
+        assertThat(started.await(3, TimeUnit.SECONDS)).isTrue();
+
+        executor.submit(newTask(new EmbeddedChannel(), 10, () -> { }));
+        assertThatThrownBy(() -> executor.submit(newTask(new EmbeddedChannel(), 10, () -> { })))
+            .isInstanceOf(RejectedExecutionException.class);
+        // 其他请求码有自己的队列
+        executor.submit(newTask(new EmbeddedChannel(), 11, () -> { }));
+        assertThat(executor.getQueueDepths()).containsEntry(10, 1).containsEntry(11, 1);
+        block.countDown();
+    }
+
+    @Test
+    public void testReconfigureKeepsQueuedRequests() throws Exception {
+        executor = new AdaptiveRequestExecutor("test", 1, 16, 3000, false);
+        executor.configureRequestCode(10, 1, 3000);
+        CountDownLatch block = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        executor.submit(newTask(new EmbeddedChannel(), 11, () -> {
+            started.countDown();
+            awaitQuietly(block);
+        }));
+        assertThat(started.await(3, TimeUnit.SECONDS)).isTrue();
+
+        CountDownLatch done = new CountDownLatch(2);
+        executor.submit(newTask(new EmbeddedChannel(), 10, done::countDown));
+        assertThatThrownBy(() -> executor.submit(newTask(new EmbeddedChannel(), 10, done::countDown)))
+            .isInstanceOf(RejectedExecutionException.class);
+
+        // 调大容量后已排队的请求仍然计数并能被执行
+        executor.configureRequestCode(10, 2, 3000);
+        executor.submit(newTask(new EmbeddedChannel(), 10, done::countDown));
+        assertThat(executor.getQueueDepths()).containsEntry(10, 2);
+        block.countDown();
+        assertThat(done.await(3, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void testExpiredRequestShed() throws Exception {
+        executor = new AdaptiveRequestExecutor("test", 1, 16, 50, false);
+        CountDownLatch block = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        executor.submit(newTask(new EmbeddedChannel(), 10, () -> {
+            started.countDown();
+            awaitQuietly(block);
+        }));
+        assertThat(started.await(3, TimeUnit.SECONDS)).isTrue();
+
+        EmbeddedChannel channel = new EmbeddedChannel();
+        AtomicBoolean executed = new AtomicBoolean(false);
+        executor.submit(newTask(channel, 10, () -> executed.set(true)));
+        Thread.sleep(200);
+        block.countDown();
+
+        long deadline = System.currentTimeMillis() + 3000;
+        RemotingCommand response = null;
+        while (response == null && System.currentTimeMillis() < deadline) {
+            channel.runPendingTasks();
+            response = channel.readOutbound();
+            Thread.sleep(10);
+        }
+        assertThat(response).isNotNull();
+        assertThat(response.getCode()).isEqualTo(RemotingSysResponseCode.SYSTEM_BUSY);
+        assertThat(executed.get()).isFalse();
+    }
+
+    @Test
+    public void testRoundRobinBetweenRequestCodes() throws Exception {
+        executor = new AdaptiveRequestExecutor("test", 1, 16, 3000, false);
+        CountDownLatch block = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        executor.submit(newTask(new EmbeddedChannel(), 10, () -> {
+            started.countDown();
+            awaitQuietly(block);
+        }));
+        assertThat(started.await(3, TimeUnit.SECONDS)).isTrue();
+
+        List<Integer> order = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(4);
+        for (int i = 0; i < 3; i++) {
+            executor.submit(newTask(new EmbeddedChannel(), 10, () -> {
+                order.add(10);
+                done.countDown();
+            }));
+        }
+        executor.submit(newTask(new EmbeddedChannel(), 11, () -> {
+            order.add(11);
+            done.countDown();
+        }));
+        block.countDown();
+        assertThat(done.await(3, TimeUnit.SECONDS)).isTrue();
+        // 请求码 11 不需要等请求码 10 的积压全部执行完
+        assertThat(order.indexOf(11)).isLessThan(3);
+    }
+
+    private static RequestTask newTask(EmbeddedChannel channel, int code, Runnable runnable) {
+        RemotingCommand request = RemotingCommand.createRequestCommand(code, null);
+        request.setProcessTimer(Stopwatch.createStarted());
+        return new RequestTask(runnable, channel, request);
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ignored) {
+        }
+    }
+}
@@ -34,6 +34,7 @@ public class NettyClientConfigTest {
 
 
         System.setProperty(NettySystemConfig.COM_ROCKETMQ_REMOTING_CLIENT_WORKER_SIZE, "1");
+        System.setProperty(NettySystemConfig.COM_ROCKETMQ_REMOTING_CLIENT_SELECTOR_SIZE, "2");
         System.setProperty(NettySystemConfig.COM_ROCKETMQ_REMOTING_CLIENT_CONNECT_TIMEOUT, "2000");
         System.setProperty(NettySystemConfig.COM_ROCKETMQ_REMOTING_CLIENT_CHANNEL_MAX_IDLE_SECONDS, "60");
         System.setProperty(NettySystemConfig.COM_ROCKETMQ_REMOTING_SOCKET_SNDBUF_SIZE, "16383");
@@ -48,6 +49,8 @@ public class NettyClientConfigTest {
             Integer.parseInt(System.getProperty(NettySystemConfig.COM_ROCKETMQ_REMOTING_SOCKET_RCVBUF_SIZE, "65535"));
         NettySystemConfig.clientWorkerSize =
             Integer.parseInt(System.getProperty(NettySystemConfig.COM_ROCKETMQ_REMOTING_CLIENT_WORKER_SIZE, "4"));
+        NettySystemConfig.clientSelectorSize =
+            Integer.parseInt(System.getProperty(NettySystemConfig.COM_ROCKETMQ_REMOTING_CLIENT_SELECTOR_SIZE, "1"));
         NettySystemConfig.connectTimeoutMillis =
             Integer.parseInt(System.getProperty(NettySystemConfig.COM_ROCKETMQ_REMOTING_CLIENT_CONNECT_TIMEOUT, "3000"));
         NettySystemConfig.clientChannelMaxIdleTimeSeconds =
@@ -57,6 +60,7 @@ public class NettyClientConfigTest {
 
         NettyClientConfig changedConfig = new NettyClientConfig();
         assertThat(changedConfig.getClientWorkerThreads()).isEqualTo(1);
+        assertThat(changedConfig.getClientSelectorThreads()).isEqualTo(2);
         assertThat(changedConfig.getClientOnewaySemaphoreValue()).isEqualTo(65535);
         assertThat(changedConfig.getClientAsyncSemaphoreValue()).isEqualTo(65535);
         assertThat(changedConfig.getConnectTimeoutMillis()).isEqualTo(2000);
@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.remoting.netty;
+
+import io.netty.channel.epoll.Epoll;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.rocketmq.remoting.InvokeCallback;
+import org.apache.rocketmq.remoting.protocol.RemotingCommand;
+
+/**
+ * 本机回环压测：同一个 broker 地址开 1 ~ 64 条连接，对比单个 NIO selector、多个 NIO selector 和 epoll 下
+ * 的吞吐（msgs/s）与 p99 延迟。
+ * <p>
+ * 运行方式：{@code java ... NettyClientEventLoopBenchmark [每轮秒数] [IO 线程数]}
+ */
+public class NettyClientEventLoopBenchmark {
+
+    private static final int REQUEST_CODE = 0;
+    private static final int MAX_IN_FLIGHT = 1024;
+    private static final int[] CONNECTIONS = {1, 4, 16, 64};
+    private static final byte[] BODY = new byte[256];
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        NettyServerConfig serverConfig = new NettyServerConfig();
+        serverConfig.setListenPort(0);
+        NettyRemotingServer server = new NettyRemotingServer(serverConfig);
+        ExecutorService processorExecutor = Executors.newFixedThreadPool(4);
+        server.registerProcessor(REQUEST_CODE, new NettyRequestProcessor() {
+            @Override
+            public RemotingCommand processRequest(io.netty.channel.ChannelHandlerContext ctx, RemotingCommand request) {
+                return RemotingCommand.createResponseCommand(0, null);
+            }
+
+            @Override
+            public boolean rejectRequest() {
+                return false;
+            }
+        }, processorExecutor);
+        server.start();
+        String addr = "127.0.0.1:" + server.localListenPort();
+
+        System.out.printf("%-10s %8s %6s %12s %10s%n", "transport", "threads", "conns", "msgs/s", "p99(us)");
+        try {
+            for (int connections : CONNECTIONS) {
+                run(addr, false, 1, connections, seconds);
+                run(addr, false, threads, connections, seconds);
+                if (Epoll.isAvailable()) {
+                    run(addr, true, threads, connections, seconds);
+                }
+            }
+        } finally {
+            server.shutdown();
+            processorExecutor.shutdown();
+        }
+    }
+
+    private static void run(String addr, boolean epoll, int threads, int connections, int seconds) throws Exception {
+        NettyClientConfig config = new NettyClientConfig();
+        config.setUseEpollNativeSelector(epoll);
+        config.setClientSelectorThreads(threads);
+        config.setChannelPoolSize(connections);
+        config.setClientAsyncSemaphoreValue(MAX_IN_FLIGHT * 2);
+        NettyRemotingClient client = new NettyRemotingClient(config);
+        client.start();
+        try {
+            // 预热：建立全部连接并让 JIT 跑一会
+            drive(client, addr, TimeUnit.SECONDS.toNanos(1));
+            long[] latencies = drive(client, addr, TimeUnit.SECONDS.toNanos(seconds));
+            int count = (int) latencies[latencies.length - 1];
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            long p99 = count == 0 ? 0 : sorted[Math.min(count - 1, (int) (count * 0.99))];
+            System.out.printf("%-10s %8d %6d %12d %10d%n", epoll ? "epoll" : "nio", threads, connections,
+                count / seconds, TimeUnit.NANOSECONDS.toMicros(p99));
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    /**
+     * 持续以 MAX_IN_FLIGHT 个在途请求压测 durationNanos，返回每个请求的延迟，最后一位存放请求数
+     */
+    private static long[] drive(NettyRemotingClient client, String addr, long durationNanos) throws Exception {
+        final long[] latencies = new long[8 * 1024 * 1024];
+        final AtomicInteger completed = new AtomicInteger();
+        final Semaphore window = new Semaphore(MAX_IN_FLIGHT);
+        long deadline = System.nanoTime() + durationNanos;
+        while (System.nanoTime() < deadline) {
+            window.acquire();
+            final long begin = System.nanoTime();
+            RemotingCommand request = RemotingCommand.createRequestCommand(REQUEST_CODE, null);
+            request.setBody(BODY);
+            client.invokeAsync(addr, request, 3000, new InvokeCallback() {
+                @Override
+                public void operationComplete(ResponseFuture responseFuture) {
+                }
+
+                @Override
+                public void operationSucceed(RemotingCommand response) {
+                    int i = completed.getAndIncrement();
+                    if (i < latencies.length - 1) {
+                        latencies[i] = System.nanoTime() - begin;
+                    }
+                    window.release();
+                }
+
+                @Override
+                public void operationFail(Throwable throwable) {
+                    window.release();
+                }
+            });
+        }
+        window.acquire(MAX_IN_FLIGHT);
+        latencies[latencies.length - 1] = Math.min(completed.get(), latencies.length - 1);
+        return latencies;
+    }
+}
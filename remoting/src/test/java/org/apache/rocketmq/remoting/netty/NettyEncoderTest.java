@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.remoting.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.nio.charset.StandardCharsets;
+import org.apache.rocketmq.remoting.protocol.RemotingCommand;
+import org.apache.rocketmq.remoting.protocol.SerializeType;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class NettyEncoderTest {
+
+    @Test
+    public void testEncodeWithBodyBuf() {
+        EmbeddedChannel channel = new EmbeddedChannel(new NettyEncoder());
+        byte[] data = "hello rocketmq".getBytes(StandardCharsets.UTF_8);
+        ByteBuf bodyBuf = PooledByteBufAllocator.DEFAULT.directBuffer(data.length);
+        bodyBuf.writeBytes(data);
+
+        RemotingCommand request = RemotingCommand.createRequestCommand(10, null);
+        request.setSerializeTypeCurrentRPC(SerializeType.ROCKETMQ);
+        request.setRemark("remark");
+        request.setBodyBuf(bodyBuf);
+        Assert.assertTrue(channel.writeOutbound(request));
+
+        ByteBuf out = channel.readOutbound();
+        Assert.assertTrue(out instanceof CompositeByteBuf);
+        // the body must be carried as is instead of being copied
+        Assert.assertSame(bodyBuf, ((CompositeByteBuf) out).component(1).unwrap());
+
+        EmbeddedChannel decoderChannel = new EmbeddedChannel(new NettyDecoder());
+        Assert.assertTrue(decoderChannel.writeInbound(out));
+        RemotingCommand decoded = decoderChannel.readInbound();
+        Assert.assertEquals(10, decoded.getCode());
+        Assert.assertEquals("remark", decoded.getRemark());
+        Assert.assertArrayEquals(data, decoded.getBody());
+        Assert.assertEquals(0, bodyBuf.refCnt());
+    }
+
+    @Test
+    public void testEncodeWithByteArrayBody() {
+        EmbeddedChannel channel = new EmbeddedChannel(new NettyEncoder());
+        byte[] data = "hello rocketmq".getBytes(StandardCharsets.UTF_8);
+        RemotingCommand request = RemotingCommand.createRequestCommand(10, null);
+        request.setBody(data);
+        Assert.assertTrue(channel.writeOutbound(request));
+
+        ByteBuf out = channel.readOutbound();
+        EmbeddedChannel decoderChannel = new EmbeddedChannel(new NettyDecoder());
+        Assert.assertTrue(decoderChannel.writeInbound(out));
+        RemotingCommand decoded = decoderChannel.readInbound();
+        Assert.assertArrayEquals(data, decoded.getBody());
+    }
+
+    @Test
+    public void testReleasedBodyBufIsNotWritten() {
+        EmbeddedChannel channel = new EmbeddedChannel(new NettyEncoder());
+        ByteBuf bodyBuf = PooledByteBufAllocator.DEFAULT.directBuffer(16);
+        bodyBuf.writeLong(1L);
+
+        RemotingCommand request = RemotingCommand.createRequestCommand(10, null);
+        request.setBodyBuf(bodyBuf);
+        request.releaseBodyBuf();
+        Assert.assertEquals(0, bodyBuf.refCnt());
+        // releasing twice must not touch the buffer again
+        request.releaseBodyBuf();
+
+        Assert.assertFalse(channel.writeOneOutbound(request).isSuccess());
+        Assert.assertNull(channel.readOutbound());
+    }
+
+    @Test
+    public void testReleaseAfterWriteIsNoop() {
+        EmbeddedChannel channel = new EmbeddedChannel(new NettyEncoder());
+        ByteBuf bodyBuf = PooledByteBufAllocator.DEFAULT.directBuffer(16);
+        bodyBuf.writeLong(1L);
+
+        RemotingCommand request = RemotingCommand.createRequestCommand(10, null);
+        request.setBodyBuf(bodyBuf);
+        Assert.assertTrue(channel.writeOutbound(request));
+        request.releaseBodyBuf();
+        Assert.assertEquals(1, bodyBuf.refCnt());
+
+        ByteBuf out = channel.readOutbound();
+        out.release();
+        Assert.assertEquals(0, bodyBuf.refCnt());
+    }
+}
@@ -16,8 +16,10 @@
  */
 package org.apache.rocketmq.remoting.netty;
 
+import io.netty.channel.embedded.EmbeddedChannel;
 import org.apache.rocketmq.remoting.InvokeCallback;
 import org.apache.rocketmq.remoting.common.SemaphoreReleaseOnlyOnce;
+import org.apache.rocketmq.remoting.exception.RemotingTimeoutException;
 import org.apache.rocketmq.remoting.netty.NettyClientConfig;
 import org.apache.rocketmq.remoting.netty.NettyRemotingAbstract;
 import org.apache.rocketmq.remoting.netty.NettyRemotingClient;
@@ -28,9 +30,13 @@ import org.junit.runner.RunWith;
 import org.mockito.Spy;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
 import static org.junit.Assert.assertNull;
 import static org.mockito.Mockito.when;
 
@@ -173,4 +179,39 @@ public class NettyRemotingAbstractTest {
         semaphore.acquire(1);
         assertThat(semaphore.availablePermits()).isEqualTo(0);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testInvokeTimeoutByTimingWheel() {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        RemotingCommand request = RemotingCommand.createRequestCommand(1, null);
+        long begin = System.currentTimeMillis();
+        CompletableFuture<ResponseFuture> future = remotingAbstract.invoke0(channel, request, 200);
+        assertThat(remotingAbstract.responseTable).containsKey(request.getOpaque());
+
+        Throwable t = catchThrowable(() -> future.get(3, TimeUnit.SECONDS));
+        assertThat(t).isInstanceOf(ExecutionException.class);
+        assertThat(t.getCause()).isInstanceOf(RemotingTimeoutException.class);
+        // 到期即回调，不再等待 1 秒一次的扫描
+        assertThat(System.currentTimeMillis() - begin).isLessThan(1000);
+        assertNull(remotingAbstract.responseTable.get(request.getOpaque()));
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testResponseCancelsTimeout() throws Exception {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        RemotingCommand request = RemotingCommand.createRequestCommand(1, null);
+        CompletableFuture<ResponseFuture> future = remotingAbstract.invoke0(channel, request, 200);
+        ResponseFuture responseFuture = remotingAbstract.responseTable.get(request.getOpaque());
+
+        RemotingCommand response = RemotingCommand.createResponseCommand(0, "Foo");
+        response.setOpaque(request.getOpaque());
+        remotingAbstract.processResponseCommand(null, response);
+
+        assertThat(future.get(3, TimeUnit.SECONDS).getResponseCommand()).isSameAs(response);
+        Thread.sleep(400);
+        assertThat(responseFuture.getResponseCommand()).isSameAs(response);
+        assertNull(remotingAbstract.responseTable.get(request.getOpaque()));
+        channel.finishAndReleaseAll();
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.remoting.netty;
+
+import io.netty.channel.ChannelHandlerContext;
+import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import org.apache.rocketmq.remoting.protocol.RemotingCommand;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class NettyRemotingClientChannelPoolTest {
+    private NettyRemotingServer remotingServer;
+    private NettyRemotingClient remotingClient;
+    private final Set<String> clientAddrs = ConcurrentHashMap.newKeySet();
+
+    @Before
+    public void setUp() {
+        remotingServer = new NettyRemotingServer(new NettyServerConfig());
+        remotingServer.registerProcessor(0, new NettyRequestProcessor() {
+            @Override
+            public RemotingCommand processRequest(ChannelHandlerContext ctx, RemotingCommand request) {
+                clientAddrs.add(ctx.channel().remoteAddress().toString());
+                return RemotingCommand.createResponseCommand(0, null);
+            }
+
+            @Override
+            public boolean rejectRequest() {
+                return false;
+            }
+        }, Executors.newCachedThreadPool());
+        remotingServer.start();
+    }
+
+    @After
+    public void tearDown() {
+        if (remotingClient != null) {
+            remotingClient.shutdown();
+        }
+        remotingServer.shutdown();
+    }
+
+    @Test
+    public void testDefaultSingleChannel() throws Exception {
+        remotingClient = startClient(new NettyClientConfig());
+        invokeTimes(6);
+        assertThat(clientAddrs).hasSize(1);
+    }
+
+    @Test
+    public void testRoundRobinPool() throws Exception {
+        NettyClientConfig config = new NettyClientConfig();
+        config.setChannelPoolSize(3);
+        remotingClient = startClient(config);
+        invokeTimes(6);
+        assertThat(clientAddrs).hasSize(3);
+    }
+
+    @Test
+    public void testLeastPendingPool() throws Exception {
+        NettyClientConfig config = new NettyClientConfig();
+        config.setChannelPoolSize(2);
+        config.setChannelPoolLeastPendingEnable(true);
+        remotingClient = startClient(config);
+        invokeTimes(6);
+        // 同步调用时在途数都是 0，空槽会被优先补建，最终两条连接都会用到
+        assertThat(clientAddrs).hasSize(2);
+    }
+
+    @Test
+    public void testRecreateAfterClose() throws Exception {
+        NettyClientConfig config = new NettyClientConfig();
+        config.setChannelPoolSize(2);
+        remotingClient = startClient(config);
+        invokeTimes(2);
+        remotingClient.closeChannels(Collections.singletonList(addr()));
+        // 最后一条连接关闭后池也被移除
+        assertThat(channelTables()).doesNotContainKey(addr());
+        clientAddrs.clear();
+        invokeTimes(2);
+        assertThat(clientAddrs).hasSize(2);
+        assertThat(channelTables()).containsKey(addr());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, ?> channelTables() throws Exception {
+        Field field = NettyRemotingClient.class.getDeclaredField("channelTables");
+        field.setAccessible(true);
+        return (Map<String, ?>) field.get(remotingClient);
+    }
+
+    private NettyRemotingClient startClient(NettyClientConfig config) {
+        // 其他用例会设置 TLS 系统属性，这里固定走明文
+        config.setUseTLS(false);
+        NettyRemotingClient client = new NettyRemotingClient(config);
+        client.start();
+        return client;
+    }
+
+    private String addr() {
+        return "localhost:" + remotingServer.localListenPort();
+    }
+
+    private void invokeTimes(int times) throws Exception {
+        for (int i = 0; i < times; i++) {
+            RemotingCommand response = remotingClient.invokeSync(addr(), RemotingCommand.createRequestCommand(0, null), 3000);
+            assertThat(response.getCode()).isEqualTo(0);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.remoting.netty;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import java.util.concurrent.Executors;
+import org.apache.rocketmq.remoting.RemotingServer;
+import org.apache.rocketmq.remoting.protocol.RemotingCommand;
+import org.apache.rocketmq.remoting.protocol.ResponseCode;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class NettyRemotingClientEventLoopTest {
+    private static final int REQUEST_CODE = 0;
+
+    private RemotingServer remotingServer;
+    private NettyRemotingClient remotingClient;
+
+    @After
+    public void tearDown() {
+        if (remotingClient != null) {
+            remotingClient.shutdown();
+        }
+        if (remotingServer != null) {
+            remotingServer.shutdown();
+        }
+    }
+
+    @Test
+    public void testInjectedEpollGroupWithoutNativeSelector() throws Exception {
+        Assume.assumeTrue(Epoll.isAvailable());
+        remotingServer = new NettyRemotingServer(new NettyServerConfig());
+        remotingServer.registerProcessor(REQUEST_CODE, new NettyRequestProcessor() {
+            @Override
+            public RemotingCommand processRequest(ChannelHandlerContext ctx, RemotingCommand request) {
+                return RemotingCommand.createResponseCommand(ResponseCode.SUCCESS, null);
+            }
+
+            @Override
+            public boolean rejectRequest() {
+                return false;
+            }
+        }, Executors.newSingleThreadExecutor());
+        remotingServer.start();
+
+        NettyClientConfig clientConfig = new NettyClientConfig();
+        clientConfig.setUseEpollNativeSelector(false);
+        clientConfig.setUseTLS(false);
+        // Channel 类型要跟着传入的 EventLoopGroup 走，否则注册失败
+        remotingClient = new NettyRemotingClient(clientConfig, null, new EpollEventLoopGroup(1), null);
+        remotingClient.start();
+
+        RemotingCommand response = remotingClient.invokeSync("localhost:" + remotingServer.localListenPort(),
+            RemotingCommand.createRequestCommand(REQUEST_CODE, null), 3000);
+        assertThat(response.getCode()).isEqualTo(ResponseCode.SUCCESS);
+    }
+}
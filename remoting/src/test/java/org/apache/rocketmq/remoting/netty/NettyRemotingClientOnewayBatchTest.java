@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.remoting.netty;
+
+import io.netty.channel.ChannelHandlerContext;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.apache.rocketmq.remoting.RPCHook;
+import org.apache.rocketmq.remoting.RemotingServer;
+import org.apache.rocketmq.remoting.protocol.RemotingCommand;
+import org.apache.rocketmq.remoting.protocol.RequestCode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class NettyRemotingClientOnewayBatchTest {
+    private static final int REQUEST_CODE = 0;
+
+    private RemotingServer remotingServer;
+    private NettyRemotingClient remotingClient;
+    private final List<String> received = new CopyOnWriteArrayList<>();
+    private final List<Integer> receivedCodes = new CopyOnWriteArrayList<>();
+    private volatile CountDownLatch latch;
+
+    @Before
+    public void setUp() {
+        remotingServer = new NettyRemotingServer(new NettyServerConfig());
+        remotingServer.registerProcessor(REQUEST_CODE, new NettyRequestProcessor() {
+            @Override
+            public RemotingCommand processRequest(ChannelHandlerContext ctx, RemotingCommand request) {
+                received.add(request.getRemark());
+                latch.countDown();
+                return null;
+            }
+
+            @Override
+            public boolean rejectRequest() {
+                return false;
+            }
+        }, Executors.newSingleThreadExecutor());
+        remotingServer.start();
+
+        NettyClientConfig clientConfig = new NettyClientConfig();
+        clientConfig.setOnewayBatchWindowMillis(1000);
+        clientConfig.setOnewayBatchMaxCommands(8);
+        clientConfig.setUseTLS(false);
+        remotingClient = new NettyRemotingClient(clientConfig);
+        remotingClient.registerRPCHook(new RPCHook() {
+            @Override
+            public void doBeforeRequest(String remoteAddr, RemotingCommand request) {
+                receivedCodes.add(request.getCode());
+            }
+
+            @Override
+            public void doAfterResponse(String remoteAddr, RemotingCommand request, RemotingCommand response) {
+            }
+        });
+        remotingClient.start();
+    }
+
+    @After
+    public void tearDown() {
+        remotingClient.shutdown();
+        remotingServer.shutdown();
+    }
+
+    private RemotingCommand request(int i) {
+        RemotingCommand request = RemotingCommand.createRequestCommand(REQUEST_CODE, null);
+        request.setRemark("r" + i);
+        return request;
+    }
+
+    @Test
+    public void testBatchedRequestsAreDispatchedInOrder() throws Exception {
+        String addr = "localhost:" + remotingServer.localListenPort();
+        latch = new CountDownLatch(20);
+        for (int i = 0; i < 20; i++) {
+            remotingClient.invokeOnewayBatched(addr, request(i), 3000);
+        }
+        assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(received).hasSize(20);
+        for (int i = 0; i < 20; i++) {
+            assertThat(received.get(i)).isEqualTo("r" + i);
+        }
+        // hook 对每条子命令各执行一次
+        assertThat(receivedCodes.stream().filter(code -> code == REQUEST_CODE).count()).isEqualTo(20);
+        // 信封本身不执行 hook
+        assertThat(receivedCodes).doesNotContain(RequestCode.REMOTING_COMMAND_BATCH);
+    }
+
+    @Test
+    public void testShutdownFlushesPendingBatch() throws Exception {
+        String addr = "localhost:" + remotingServer.localListenPort();
+        latch = new CountDownLatch(3);
+        for (int i = 0; i < 3; i++) {
+            remotingClient.invokeOnewayBatched(addr, request(i), 3000);
+        }
+        assertThat(receivedCodes).isEmpty();
+        // shutdown 之后紧接着关闭连接，只能保证窗口内的请求已交给连接写出
+        remotingClient.shutdown();
+        assertThat(receivedCodes.stream().filter(code -> code == REQUEST_CODE).count()).isEqualTo(3);
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.remoting.netty;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.metrics.InstrumentType;
+import io.opentelemetry.sdk.metrics.SdkMeterProvider;
+import io.opentelemetry.sdk.metrics.data.AggregationTemporality;
+import io.opentelemetry.sdk.metrics.data.LongPointData;
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import io.opentelemetry.sdk.metrics.export.MetricExporter;
+import io.opentelemetry.sdk.metrics.export.PeriodicMetricReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.apache.rocketmq.remoting.common.RemotingHelper;
+import org.apache.rocketmq.remoting.metrics.RemotingMetricsManager;
+import org.apache.rocketmq.remoting.protocol.RemotingCommand;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.apache.rocketmq.remoting.metrics.RemotingMetricsConstant.GAUGE_REQUEST_QUEUE_DEPTH;
+import static org.apache.rocketmq.remoting.metrics.RemotingMetricsConstant.LABEL_REQUEST_CODE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class NettyRemotingServerQueueDepthGaugeTest {
+    private final List<MetricData> exported = new CopyOnWriteArrayList<>();
+    private SdkMeterProvider meterProvider;
+    private NettyRemotingServer serverA;
+    private NettyRemotingServer serverB;
+
+    @Before
+    public void setUp() {
+        MetricExporter exporter = new MetricExporter() {
+            @Override
+            public CompletableResultCode export(Collection<MetricData> metrics) {
+                exported.addAll(metrics);
+                return CompletableResultCode.ofSuccess();
+            }
+
+            @Override
+            public CompletableResultCode flush() {
+                return CompletableResultCode.ofSuccess();
+            }
+
+            @Override
+            public CompletableResultCode shutdown() {
+                return CompletableResultCode.ofSuccess();
+            }
+
+            @Override
+            public AggregationTemporality getAggregationTemporality(InstrumentType instrumentType) {
+                return AggregationTemporality.CUMULATIVE;
+            }
+        };
+        meterProvider = SdkMeterProvider.builder()
+            .registerMetricReader(PeriodicMetricReader.builder(exporter).setInterval(1, TimeUnit.HOURS).build())
+            .build();
+        RemotingMetricsManager.initMetrics(meterProvider.get("test"), Attributes::builder);
+    }
+
+    @After
+    public void tearDown() {
+        if (serverA != null) {
+            serverA.shutdown();
+        }
+        if (serverB != null) {
+            serverB.shutdown();
+        }
+        RemotingMetricsManager.initMetrics(OpenTelemetry.noop().getMeter("test"), null);
+        meterProvider.shutdown();
+    }
+
+    @Test
+    public void testGaugeBelongsToOwningServer() {
+        serverA = newServer(10);
+        serverB = newServer(11);
+        assertThat(collectQueueDepthCodes()).containsExactlyInAnyOrder(
+            RemotingHelper.getRequestCodeDesc(10), RemotingHelper.getRequestCodeDesc(11));
+
+        // 关闭一个 server 只撤掉它自己的 gauge
+        serverA.shutdown();
+        serverA = null;
+        assertThat(collectQueueDepthCodes()).containsExactly(RemotingHelper.getRequestCodeDesc(11));
+
+        serverB.shutdown();
+        serverB = null;
+        assertThat(collectQueueDepthCodes()).isEmpty();
+    }
+
+    private NettyRemotingServer newServer(int requestCode) {
+        NettyServerConfig config = new NettyServerConfig();
+        config.setListenPort(0);
+        config.setAdaptiveExecutorEnable(true);
+        NettyRemotingServer server = new NettyRemotingServer(config);
+        server.registerAdaptiveProcessor(requestCode, new NettyRequestProcessor() {
+            @Override
+            public RemotingCommand processRequest(ChannelHandlerContext ctx, RemotingCommand request) {
+                return null;
+            }
+
+            @Override
+            public boolean rejectRequest() {
+                return false;
+            }
+        }, 16, 3000);
+        return server;
+    }
+
+    private List<String> collectQueueDepthCodes() {
+        exported.clear();
+        meterProvider.forceFlush().join(10, TimeUnit.SECONDS);
+        List<String> codes = new ArrayList<>();
+        for (MetricData metric : exported) {
+            if (GAUGE_REQUEST_QUEUE_DEPTH.equals(metric.getName())) {
+                for (LongPointData point : metric.getLongGaugeData().getPoints()) {
+                    codes.add(point.getAttributes().get(AttributeKey.stringKey(LABEL_REQUEST_CODE)));
+                }
+            }
+        }
+        return codes;
+    }
+}
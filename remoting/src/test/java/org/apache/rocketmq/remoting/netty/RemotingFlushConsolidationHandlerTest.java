@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.remoting.netty;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RemotingFlushConsolidationHandlerTest {
+
+    @Test
+    public void testFlushesDuringReadAreMergedUntilReadComplete() {
+        RemotingFlushConsolidationHandler.Policy policy = new RemotingFlushConsolidationHandler.Policy(256, "");
+        final List<Integer> flushedDuringRead = new ArrayList<>();
+        EmbeddedChannel channel = new EmbeddedChannel(new RemotingFlushConsolidationHandler(policy), new ChannelInboundHandlerAdapter() {
+            @Override
+            public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                for (int i = 0; i < 3; i++) {
+                    ctx.channel().writeAndFlush("response-" + i);
+                }
+                flushedDuringRead.add(((EmbeddedChannel) ctx.channel()).outboundMessages().size());
+            }
+        });
+
+        channel.writeInbound("request");
+
+        assertThat(flushedDuringRead).containsExactly(0);
+        assertThat(channel.outboundMessages()).hasSize(3);
+        assertThat(policy.getWrites()).isEqualTo(3);
+        assertThat(policy.getFlushes()).isEqualTo(1);
+        assertThat(policy.getSavedSyscalls()).isEqualTo(2);
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testFlushOutsideReadIsScheduled() {
+        RemotingFlushConsolidationHandler.Policy policy = new RemotingFlushConsolidationHandler.Policy(256, "");
+        EmbeddedChannel channel = new EmbeddedChannel(new RemotingFlushConsolidationHandler(policy));
+
+        channel.pipeline().writeAndFlush("request-0");
+        channel.pipeline().writeAndFlush("request-1");
+        channel.runPendingTasks();
+
+        assertThat(channel.outboundMessages()).hasSize(2);
+        assertThat(policy.getFlushRequests()).isEqualTo(2);
+        assertThat(policy.getFlushes()).isEqualTo(1);
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testMaxPendingFlushes() {
+        RemotingFlushConsolidationHandler.Policy policy = new RemotingFlushConsolidationHandler.Policy(2, "");
+        EmbeddedChannel channel = new EmbeddedChannel(new RemotingFlushConsolidationHandler(policy));
+
+        channel.pipeline().writeAndFlush("request-0");
+        assertThat(channel.outboundMessages()).isEmpty();
+        channel.pipeline().writeAndFlush("request-1");
+        assertThat(channel.outboundMessages()).hasSize(2);
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testRequestCodeNotConsolidatedFlushesImmediately() {
+        RemotingFlushConsolidationHandler.Policy policy = new RemotingFlushConsolidationHandler.Policy(256, "10, 11");
+        final List<Integer> flushedDuringRead = new ArrayList<>();
+        EmbeddedChannel channel = new EmbeddedChannel(new RemotingFlushConsolidationHandler(policy), new ChannelInboundHandlerAdapter() {
+            @Override
+            public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                EmbeddedChannel ch = (EmbeddedChannel) ctx.channel();
+                RemotingFlushConsolidationHandler.writeAndFlush(ch, "consolidated", 10);
+                flushedDuringRead.add(ch.outboundMessages().size());
+                RemotingFlushConsolidationHandler.writeAndFlush(ch, "urgent", 12);
+                flushedDuringRead.add(ch.outboundMessages().size());
+            }
+        });
+
+        channel.writeInbound("request");
+
+        assertThat(flushedDuringRead).containsExactly(0, 2);
+        assertThat(policy.isConsolidated(11)).isTrue();
+        assertThat(policy.isConsolidated(12)).isFalse();
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testWithoutHandlerFlushesImmediately() {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        RemotingFlushConsolidationHandler.writeAndFlush(channel, "request", 10);
+        assertThat(channel.outboundMessages()).hasSize(1);
+        channel.finishAndReleaseAll();
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.remoting.protocol;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.rocketmq.remoting.protocol.heartbeat.HeartbeatData;
+import org.apache.rocketmq.remoting.protocol.route.TopicRouteData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 对比 {@link BinaryBodyCodec} 与 fastjson 编解码路由和心跳 body 的速度，main 里先打印两种编码的字节数。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BinaryBodyCodecBenchmark {
+
+    /**
+     * 路由中的 broker 数，心跳中的生产者/消费者组数
+     */
+    @Param({"4", "32"})
+    private int size;
+
+    private TopicRouteData topicRouteData;
+    private HeartbeatData heartbeatData;
+    private byte[] routeJson;
+    private byte[] routeBinary;
+    private byte[] heartbeatJson;
+    private byte[] heartbeatBinary;
+
+    @Setup
+    public void setup() {
+        topicRouteData = BinaryBodyCodecTest.newTopicRouteData(size);
+        heartbeatData = BinaryBodyCodecTest.newHeartbeatData(size);
+        routeJson = topicRouteData.encode();
+        routeBinary = BinaryBodyCodec.encode(topicRouteData);
+        heartbeatJson = heartbeatData.encode();
+        heartbeatBinary = BinaryBodyCodec.encode(heartbeatData);
+    }
+
+    @Benchmark
+    public byte[] encodeRouteJson() {
+        return topicRouteData.encode();
+    }
+
+    @Benchmark
+    public byte[] encodeRouteBinary() {
+        return BinaryBodyCodec.encode(topicRouteData);
+    }
+
+    @Benchmark
+    public Object decodeRouteJson() {
+        return RemotingSerializable.decode(routeJson, TopicRouteData.class);
+    }
+
+    @Benchmark
+    public Object decodeRouteBinary() {
+        return BinaryBodyCodec.decodeTopicRouteData(routeBinary);
+    }
+
+    @Benchmark
+    public byte[] encodeHeartbeatJson() {
+        return heartbeatData.encode();
+    }
+
+    @Benchmark
+    public byte[] encodeHeartbeatBinary() {
+        return BinaryBodyCodec.encode(heartbeatData);
+    }
+
+    @Benchmark
+    public Object decodeHeartbeatJson() {
+        return RemotingSerializable.decode(heartbeatJson, HeartbeatData.class);
+    }
+
+    @Benchmark
+    public Object decodeHeartbeatBinary() {
+        return BinaryBodyCodec.decodeHeartbeatData(heartbeatBinary);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int size : new int[] {4, 32}) {
+            TopicRouteData route = BinaryBodyCodecTest.newTopicRouteData(size);
+            HeartbeatData heartbeat = BinaryBodyCodecTest.newHeartbeatData(size);
+            System.out.printf("size=%d route json=%dB binary=%dB, heartbeat json=%dB binary=%dB%n", size,
+                route.encode().length, BinaryBodyCodec.encode(route).length,
+                heartbeat.encode().length, BinaryBodyCodec.encode(heartbeat).length);
+        }
+        Options options = new OptionsBuilder()
+            .include(BinaryBodyCodecBenchmark.class.getSimpleName())
+            .build();
+        new Runner(options).run();
+    }
+}
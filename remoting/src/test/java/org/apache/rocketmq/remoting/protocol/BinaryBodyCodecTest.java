@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.remoting.protocol;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.apache.rocketmq.common.consumer.ConsumeFromWhere;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.remoting.protocol.body.GetRouteInfoDeltaResponseBody;
+import org.apache.rocketmq.remoting.protocol.body.LockBatchRequestBody;
+import org.apache.rocketmq.remoting.protocol.heartbeat.ConsumeType;
+import org.apache.rocketmq.remoting.protocol.heartbeat.ConsumerData;
+import org.apache.rocketmq.remoting.protocol.heartbeat.HeartbeatData;
+import org.apache.rocketmq.remoting.protocol.heartbeat.MessageModel;
+import org.apache.rocketmq.remoting.protocol.heartbeat.ProducerData;
+import org.apache.rocketmq.remoting.protocol.heartbeat.SubscriptionData;
+import org.apache.rocketmq.remoting.protocol.route.BrokerData;
+import org.apache.rocketmq.remoting.protocol.route.QueueData;
+import org.apache.rocketmq.remoting.protocol.route.TopicRouteData;
+import org.apache.rocketmq.remoting.protocol.statictopic.TopicQueueMappingInfo;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class BinaryBodyCodecTest {
+
+    static TopicRouteData newTopicRouteData(int brokers) {
+        TopicRouteData topicRouteData = new TopicRouteData();
+        for (int i = 0; i < brokers; i++) {
+            String brokerName = "broker-" + i;
+            QueueData queueData = new QueueData();
+            queueData.setBrokerName(brokerName);
+            queueData.setReadQueueNums(16);
+            queueData.setWriteQueueNums(16);
+            queueData.setPerm(6);
+            queueData.setTopicSysFlag(0);
+            topicRouteData.getQueueDatas().add(queueData);
+
+            HashMap<Long, String> brokerAddrs = new HashMap<>();
+            brokerAddrs.put(0L, "192.168.0." + i + ":10911");
+            brokerAddrs.put(1L, "192.168.1." + i + ":10911");
+            BrokerData brokerData = new BrokerData("DefaultCluster", brokerName, brokerAddrs);
+            brokerData.setZoneName("zone-" + (i % 3));
+            topicRouteData.getBrokerDatas().add(brokerData);
+        }
+        topicRouteData.getFilterServerTable().put("192.168.0.0:10911", Arrays.asList("192.168.0.0:20000"));
+        return topicRouteData;
+    }
+
+    static HeartbeatData newHeartbeatData(int groups) {
+        HeartbeatData heartbeatData = new HeartbeatData();
+        heartbeatData.setClientID("127.0.0.1@12345#1");
+        heartbeatData.setHeartbeatFingerprint(42);
+        for (int i = 0; i < groups; i++) {
+            ProducerData producerData = new ProducerData();
+            producerData.setGroupName("producer-" + i);
+            heartbeatData.getProducerDataSet().add(producerData);
+
+            ConsumerData consumerData = new ConsumerData();
+            consumerData.setGroupName("consumer-" + i);
+            consumerData.setConsumeType(ConsumeType.CONSUME_PASSIVELY);
+            consumerData.setMessageModel(MessageModel.CLUSTERING);
+            consumerData.setConsumeFromWhere(ConsumeFromWhere.CONSUME_FROM_LAST_OFFSET);
+            SubscriptionData subscriptionData = new SubscriptionData("topic-" + i, "TagA || TagB");
+            subscriptionData.getTagsSet().addAll(Arrays.asList("TagA", "TagB"));
+            subscriptionData.getCodeSet().addAll(Arrays.asList("TagA".hashCode(), "TagB".hashCode()));
+            subscriptionData.setSubVersion(1700000000000L + i);
+            consumerData.getSubscriptionDataSet().add(subscriptionData);
+            heartbeatData.getConsumerDataSet().add(consumerData);
+        }
+        return heartbeatData;
+    }
+
+    @Test
+    public void testTopicRouteDataRoundTrip() {
+        TopicRouteData topicRouteData = newTopicRouteData(4);
+        topicRouteData.setOrderTopicConf("broker-0:4;broker-1:4");
+        Map<String, TopicQueueMappingInfo> mapping = new HashMap<>();
+        mapping.put("broker-0", new TopicQueueMappingInfo("topic", 8, "broker-0", 1L));
+        topicRouteData.setTopicQueueMappingByBroker(mapping);
+
+        byte[] binary = BinaryBodyCodec.encode(topicRouteData);
+        assertThat(BinaryBodyCodec.isBinary(binary)).isTrue();
+        TopicRouteData decoded = BinaryBodyCodec.decodeTopicRouteData(binary);
+        assertThat(decoded).isEqualTo(topicRouteData);
+        assertThat(decoded.getBrokerDatas().get(0).getZoneName()).isEqualTo("zone-0");
+        assertThat(decoded.getTopicQueueMappingByBroker().get("broker-0").getTotalQueues()).isEqualTo(8);
+        assertThat(binary.length).isLessThan(topicRouteData.encode().length);
+    }
+
+    @Test
+    public void testNullFields() {
+        TopicRouteData topicRouteData = new TopicRouteData();
+        topicRouteData.setFilterServerTable(null);
+        BrokerData brokerData = new BrokerData();
+        topicRouteData.getBrokerDatas().add(brokerData);
+
+        TopicRouteData decoded = BinaryBodyCodec.decodeTopicRouteData(BinaryBodyCodec.encode(topicRouteData));
+        assertThat(decoded.getOrderTopicConf()).isNull();
+        assertThat(decoded.getFilterServerTable()).isNull();
+        assertThat(decoded.getTopicQueueMappingByBroker()).isNull();
+        assertThat(decoded.getBrokerDatas().get(0).getBrokerAddrs()).isNull();
+        assertThat(decoded.getBrokerDatas().get(0).getBrokerName()).isNull();
+    }
+
+    @Test
+    public void testDecodeFallsBackToJson() {
+        TopicRouteData topicRouteData = newTopicRouteData(2);
+        assertThat(BinaryBodyCodec.isBinary(topicRouteData.encode())).isFalse();
+        assertThat(BinaryBodyCodec.decodeTopicRouteData(topicRouteData.encode())).isEqualTo(topicRouteData);
+
+        HeartbeatData heartbeatData = newHeartbeatData(2);
+        assertSameHeartbeat(BinaryBodyCodec.decodeHeartbeatData(heartbeatData.encode()), heartbeatData);
+    }
+
+    @Test
+    public void testRouteDeltaRoundTrip() {
+        GetRouteInfoDeltaResponseBody delta = new GetRouteInfoDeltaResponseBody();
+        delta.setRouteEpoch(123L);
+        delta.getTopicRouteTable().put("topicA", newTopicRouteData(2));
+        delta.getTopicRouteVersions().put("topicA", 7L);
+        delta.getNotExistTopics().add("topicB");
+
+        GetRouteInfoDeltaResponseBody decoded = BinaryBodyCodec.decodeRouteDelta(BinaryBodyCodec.encode(delta));
+        assertThat(decoded.getRouteEpoch()).isEqualTo(123L);
+        assertThat(decoded.getTopicRouteTable()).isEqualTo(delta.getTopicRouteTable());
+        assertThat(decoded.getTopicRouteVersions()).isEqualTo(delta.getTopicRouteVersions());
+        assertThat(decoded.getNotExistTopics()).containsExactly("topicB");
+    }
+
+    @Test
+    public void testHeartbeatDataRoundTrip() {
+        HeartbeatData heartbeatData = newHeartbeatData(3);
+        heartbeatData.setWithoutSub(true);
+
+        HeartbeatData decoded = BinaryBodyCodec.decodeHeartbeatData(BinaryBodyCodec.encode(heartbeatData));
+        assertSameHeartbeat(decoded, heartbeatData);
+        assertThat(decoded.getHeartbeatFingerprint()).isEqualTo(42);
+        assertThat(decoded.isWithoutSub()).isTrue();
+    }
+
+    private static void assertSameHeartbeat(HeartbeatData actual, HeartbeatData expected) {
+        assertThat(actual.getClientID()).isEqualTo(expected.getClientID());
+        assertThat(actual.getProducerDataSet()).extracting(ProducerData::getGroupName)
+            .containsExactlyInAnyOrderElementsOf(expected.getProducerDataSet().stream().map(ProducerData::getGroupName).collect(Collectors.toList()));
+        assertThat(actual.getConsumerDataSet()).hasSameSizeAs(expected.getConsumerDataSet());
+        for (ConsumerData expectedConsumer : expected.getConsumerDataSet()) {
+            ConsumerData actualConsumer = actual.getConsumerDataSet().stream()
+                .filter(c -> c.getGroupName().equals(expectedConsumer.getGroupName())).findFirst().get();
+            assertThat(actualConsumer.getConsumeType()).isEqualTo(expectedConsumer.getConsumeType());
+            assertThat(actualConsumer.getMessageModel()).isEqualTo(expectedConsumer.getMessageModel());
+            assertThat(actualConsumer.getConsumeFromWhere()).isEqualTo(expectedConsumer.getConsumeFromWhere());
+            assertThat(actualConsumer.isUnitMode()).isEqualTo(expectedConsumer.isUnitMode());
+            assertThat(actualConsumer.getSubscriptionDataSet()).isEqualTo(expectedConsumer.getSubscriptionDataSet());
+        }
+    }
+
+    @Test
+    public void testLockBatchRequestBodyRoundTrip() {
+        LockBatchRequestBody requestBody = new LockBatchRequestBody();
+        requestBody.setConsumerGroup("group");
+        requestBody.setClientId("client");
+        requestBody.setOnlyThisBroker(true);
+        requestBody.getMqSet().add(new MessageQueue("topic", "broker-a", 0));
+        requestBody.getMqSet().add(new MessageQueue("topic", "broker-a", -1));
+
+        LockBatchRequestBody decoded = BinaryBodyCodec.decodeLockBatchRequestBody(BinaryBodyCodec.encode(requestBody));
+        assertThat(decoded.getConsumerGroup()).isEqualTo("group");
+        assertThat(decoded.getClientId()).isEqualTo("client");
+        assertThat(decoded.isOnlyThisBroker()).isTrue();
+        assertThat(decoded.getMqSet()).isEqualTo(requestBody.getMqSet());
+    }
+
+    @Test
+    public void testBadBinaryBody() {
+        byte[] heartbeat = BinaryBodyCodec.encode(newHeartbeatData(1));
+        assertThatThrownBy(() -> BinaryBodyCodec.decodeTopicRouteData(heartbeat))
+            .isInstanceOf(IllegalArgumentException.class);
+
+        byte[] newerVersion = heartbeat.clone();
+        newerVersion[1] = BinaryBodyCodec.VERSION + 1;
+        assertThatThrownBy(() -> BinaryBodyCodec.decodeHeartbeatData(newerVersion))
+            .isInstanceOf(IllegalArgumentException.class);
+
+        byte[] truncated = Arrays.copyOf(BinaryBodyCodec.encode(newTopicRouteData(2)), 20);
+        assertThatThrownBy(() -> BinaryBodyCodec.decodeTopicRouteData(truncated))
+            .isInstanceOf(RuntimeException.class);
+    }
+}
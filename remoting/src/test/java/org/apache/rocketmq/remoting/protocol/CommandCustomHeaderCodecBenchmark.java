@@ -0,0 +1,205 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.remoting.protocol;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.rocketmq.remoting.CommandCustomHeader;
+import org.apache.rocketmq.remoting.annotation.CFNotNull;
+import org.apache.rocketmq.remoting.protocol.header.UpdateConsumerOffsetRequestHeader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 对比 {@link CommandCustomHeaderCodec} 与原先逐字段反射 + canonical name 比较的 header 编解码路径。
+ * 对照组与原实现一样缓存了 Field[]，差别只在每次调用的 setAccessible、类型名比较和装箱反射赋值。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandCustomHeaderCodecBenchmark {
+
+    private UpdateConsumerOffsetRequestHeader header;
+    private HashMap<String, String> extFields;
+
+    @Setup
+    public void setup() {
+        header = new UpdateConsumerOffsetRequestHeader();
+        header.setConsumerGroup("benchmark_group");
+        header.setTopic("benchmark_topic");
+        header.setQueueId(7);
+        header.setCommitOffset(123456789L);
+        header.setBrokerName("broker-a");
+        header.setLo(false);
+        extFields = new HashMap<>();
+        CommandCustomHeaderCodec.getCodec(UpdateConsumerOffsetRequestHeader.class).encode(header, extFields);
+    }
+
+    @Benchmark
+    public Object decodeWithCodec() throws Exception {
+        CommandCustomHeaderCodec codec = CommandCustomHeaderCodec.getCodec(UpdateConsumerOffsetRequestHeader.class);
+        UpdateConsumerOffsetRequestHeader decoded = codec.newInstance();
+        codec.decode(decoded, extFields);
+        decoded.checkFields();
+        return decoded;
+    }
+
+    @Benchmark
+    public Object decodeWithReflection() throws Exception {
+        return reflectiveDecode(UpdateConsumerOffsetRequestHeader.class, extFields);
+    }
+
+    @Benchmark
+    public Object encodeWithCodec() {
+        HashMap<String, String> out = new HashMap<>();
+        CommandCustomHeaderCodec.getCodec(UpdateConsumerOffsetRequestHeader.class).encode(header, out);
+        return out;
+    }
+
+    @Benchmark
+    public Object encodeWithReflection() throws Exception {
+        HashMap<String, String> out = new HashMap<>();
+        for (Field field : getClazzFields(header.getClass())) {
+            if (!Modifier.isStatic(field.getModifiers())) {
+                String name = field.getName();
+                if (!name.startsWith("this")) {
+                    field.setAccessible(true);
+                    Object value = field.get(header);
+                    if (value != null) {
+                        out.put(name, value.toString());
+                    }
+                }
+            }
+        }
+        return out;
+    }
+
+    /*
+     * 以下是原 RemotingCommand#decodeCommandCustomHeaderDirectly / makeCustomHeaderToNet 的反射实现，作为对照组保留在这里。
+     * 与原实现一样按类缓存 Field[]、canonical name 和 @CFNotNull 标记，每次调用仍然逐字段 setAccessible 并比较类型名。
+     */
+    private static final Map<Class<?>, Field[]> CLASS_HASH_MAP = new HashMap<>();
+    private static final Map<Class<?>, String> CANONICAL_NAME_CACHE = new HashMap<>();
+    private static final Map<Field, Boolean> NULLABLE_FIELD_CACHE = new HashMap<>();
+    private static final String STRING_CANONICAL_NAME = String.class.getCanonicalName();
+    private static final String INTEGER_CANONICAL_NAME_1 = Integer.class.getCanonicalName();
+    private static final String INTEGER_CANONICAL_NAME_2 = int.class.getCanonicalName();
+    private static final String LONG_CANONICAL_NAME_1 = Long.class.getCanonicalName();
+    private static final String LONG_CANONICAL_NAME_2 = long.class.getCanonicalName();
+    private static final String BOOLEAN_CANONICAL_NAME_1 = Boolean.class.getCanonicalName();
+    private static final String BOOLEAN_CANONICAL_NAME_2 = boolean.class.getCanonicalName();
+
+    private static <T extends CommandCustomHeader> T reflectiveDecode(Class<T> classHeader,
+        HashMap<String, String> fields) throws Exception {
+        T objectHeader = classHeader.getDeclaredConstructor().newInstance();
+        for (Field field : getClazzFields(classHeader)) {
+            if (Modifier.isStatic(field.getModifiers()) || field.getName().startsWith("this")) {
+                continue;
+            }
+            String value = fields.get(field.getName());
+            if (value == null) {
+                if (!isFieldNullable(field)) {
+                    throw new IllegalStateException("the custom field <" + field.getName() + "> is null");
+                }
+                continue;
+            }
+            field.setAccessible(true);
+            String type = getCanonicalName(field.getType());
+            Object valueParsed;
+            if (type.equals(STRING_CANONICAL_NAME)) {
+                valueParsed = value;
+            } else if (type.equals(INTEGER_CANONICAL_NAME_1) || type.equals(INTEGER_CANONICAL_NAME_2)) {
+                valueParsed = Integer.parseInt(value);
+            } else if (type.equals(LONG_CANONICAL_NAME_1) || type.equals(LONG_CANONICAL_NAME_2)) {
+                valueParsed = Long.parseLong(value);
+            } else if (type.equals(BOOLEAN_CANONICAL_NAME_1) || type.equals(BOOLEAN_CANONICAL_NAME_2)) {
+                valueParsed = Boolean.parseBoolean(value);
+            } else {
+                continue;
+            }
+            field.set(objectHeader, valueParsed);
+        }
+        objectHeader.checkFields();
+        return objectHeader;
+    }
+
+    private static Field[] getClazzFields(Class<?> classHeader) {
+        Field[] field = CLASS_HASH_MAP.get(classHeader);
+        if (field == null) {
+            Set<Field> fieldList = new HashSet<>();
+            for (Class<?> className = classHeader; className != Object.class; className = className.getSuperclass()) {
+                fieldList.addAll(Arrays.asList(className.getDeclaredFields()));
+            }
+            field = fieldList.toArray(new Field[0]);
+            synchronized (CLASS_HASH_MAP) {
+                CLASS_HASH_MAP.put(classHeader, field);
+            }
+        }
+        return field;
+    }
+
+    private static boolean isFieldNullable(Field field) {
+        if (!NULLABLE_FIELD_CACHE.containsKey(field)) {
+            Annotation annotation = field.getAnnotation(CFNotNull.class);
+            synchronized (NULLABLE_FIELD_CACHE) {
+                NULLABLE_FIELD_CACHE.put(field, annotation == null);
+            }
+        }
+        return NULLABLE_FIELD_CACHE.get(field);
+    }
+
+    private static String getCanonicalName(Class<?> clazz) {
+        String name = CANONICAL_NAME_CACHE.get(clazz);
+        if (name == null) {
+            name = clazz.getCanonicalName();
+            synchronized (CANONICAL_NAME_CACHE) {
+                CANONICAL_NAME_CACHE.put(clazz, name);
+            }
+        }
+        return name;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+            .include(CommandCustomHeaderCodecBenchmark.class.getSimpleName())
+            .build();
+        new Runner(options).run();
+    }
+}
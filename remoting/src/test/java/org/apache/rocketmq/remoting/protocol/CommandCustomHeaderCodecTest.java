@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.remoting.protocol;
+
+import java.util.HashMap;
+
+import org.apache.rocketmq.remoting.protocol.header.GetMaxOffsetRequestHeader;
+import org.apache.rocketmq.remoting.protocol.header.UpdateConsumerOffsetRequestHeader;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CommandCustomHeaderCodecTest {
+
+    @Test
+    public void testCodecIsCachedPerClass() {
+        CommandCustomHeaderCodec codec = CommandCustomHeaderCodec.getCodec(UpdateConsumerOffsetRequestHeader.class);
+        assertThat(CommandCustomHeaderCodec.getCodec(UpdateConsumerOffsetRequestHeader.class)).isSameAs(codec);
+        assertThat(codec.getHeaderClass()).isEqualTo(UpdateConsumerOffsetRequestHeader.class);
+    }
+
+    @Test
+    public void testEncodeAndDecodeWithParentFields() {
+        UpdateConsumerOffsetRequestHeader header = new UpdateConsumerOffsetRequestHeader();
+        header.setConsumerGroup("group");
+        header.setTopic("topic");
+        header.setQueueId(3);
+        header.setCommitOffset(1024L);
+        header.setBrokerName("broker-a");
+        header.setLo(true);
+
+        CommandCustomHeaderCodec codec = CommandCustomHeaderCodec.getCodec(UpdateConsumerOffsetRequestHeader.class);
+        HashMap<String, String> extFields = new HashMap<>();
+        codec.encode(header, extFields);
+        assertThat(extFields).containsEntry("consumerGroup", "group")
+            .containsEntry("queueId", "3")
+            .containsEntry("commitOffset", "1024")
+            .containsEntry("bname", "broker-a")
+            .containsEntry("lo", "true")
+            .doesNotContainKey("ns");
+
+        UpdateConsumerOffsetRequestHeader decoded = codec.newInstance();
+        codec.decode(decoded, extFields);
+        assertThat(decoded.getConsumerGroup()).isEqualTo("group");
+        assertThat(decoded.getTopic()).isEqualTo("topic");
+        assertThat(decoded.getQueueId()).isEqualTo(3);
+        assertThat(decoded.getCommitOffset()).isEqualTo(1024L);
+        assertThat(decoded.getBrokerName()).isEqualTo("broker-a");
+        assertThat(decoded.getLo()).isTrue();
+        assertThat(decoded.getNamespace()).isNull();
+    }
+
+    @Test
+    public void testPrimitiveFieldKeepsDefaultWhenAbsent() throws Exception {
+        HashMap<String, String> extFields = new HashMap<>();
+        extFields.put("topic", "topic");
+        extFields.put("queueId", "1");
+
+        RemotingCommand command = RemotingCommand.createRequestCommand(0, null);
+        command.setExtFields(extFields);
+        GetMaxOffsetRequestHeader header = (GetMaxOffsetRequestHeader) command.decodeCommandCustomHeaderDirectly(
+            GetMaxOffsetRequestHeader.class, true);
+        assertThat(header.isCommitted()).isTrue();
+
+        extFields.put("committed", "false");
+        header = (GetMaxOffsetRequestHeader) command.decodeCommandCustomHeaderDirectly(GetMaxOffsetRequestHeader.class, true);
+        assertThat(header.isCommitted()).isFalse();
+    }
+}
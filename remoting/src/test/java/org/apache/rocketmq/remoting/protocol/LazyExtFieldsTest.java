@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.remoting.protocol;
+
+import io.netty.buffer.Unpooled;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.rocketmq.remoting.exception.RemotingCommandException;
+import org.apache.rocketmq.remoting.protocol.header.PullMessageRequestHeader;
+import org.apache.rocketmq.remoting.protocol.header.UpdateConsumerOffsetRequestHeader;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class LazyExtFieldsTest {
+
+    private static LazyExtFields lazy(HashMap<String, String> map) throws RemotingCommandException {
+        byte[] bytes = RocketMQSerializable.mapSerialize(map);
+        return LazyExtFields.decode(Unpooled.wrappedBuffer(bytes), bytes.length);
+    }
+
+    private static RemotingCommand decodeFrame(RemotingCommand command) throws RemotingCommandException {
+        ByteBuffer frame = command.encode();
+        // skip total length, as NettyDecoder does
+        frame.getInt();
+        return RemotingCommand.decode(frame);
+    }
+
+    @Test
+    public void testGetWithoutMaterialize() throws Exception {
+        HashMap<String, String> map = new HashMap<>();
+        map.put("topic", "TopicTest");
+        map.put("queueId", "12");
+        map.put("commitOffset", "-9876543210");
+        map.put("中文", "值");
+
+        LazyExtFields fields = lazy(map);
+        assertThat(fields.get("topic")).isEqualTo("TopicTest");
+        assertThat(fields.get("中文")).isEqualTo("值");
+        assertThat(fields.getInt("queueId")).isEqualTo(12);
+        assertThat(fields.getLong("commitOffset")).isEqualTo(-9876543210L);
+        assertThat(fields.get("absent")).isNull();
+        assertThat(fields.getLong("absent")).isNull();
+        assertThat(fields.containsKey("queueId")).isTrue();
+        assertThat(fields.isEmpty()).isFalse();
+        assertThat(fields.isMaterialized()).isFalse();
+    }
+
+    @Test
+    public void testMaterializeBehavesAsHashMap() throws Exception {
+        HashMap<String, String> map = new HashMap<>();
+        map.put("a", "1");
+        map.put("b", "2");
+
+        LazyExtFields fields = lazy(map);
+        assertThat(fields).isEqualTo(map);
+        assertThat(fields.isMaterialized()).isTrue();
+
+        fields.put("c", "3");
+        assertThat(fields.size()).isEqualTo(3);
+        assertThat(fields.get("c")).isEqualTo("3");
+        assertThat(fields.getInt("a")).isEqualTo(1);
+    }
+
+    @Test
+    public void testConcurrentReadWhileMaterializing() throws Exception {
+        HashMap<String, String> map = new HashMap<>();
+        for (int i = 0; i < 64; i++) {
+            map.put("key" + i, "value" + i);
+        }
+        for (int round = 0; round < 200; round++) {
+            LazyExtFields fields = lazy(map);
+            AtomicReference<Throwable> error = new AtomicReference<>();
+            CountDownLatch start = new CountDownLatch(1);
+            Thread reader = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < 64; i++) {
+                        assertThat(fields.get("key" + i)).isEqualTo("value" + i);
+                        assertThat(fields.containsKey("key" + i)).isTrue();
+                    }
+                } catch (Throwable t) {
+                    error.set(t);
+                }
+            });
+            reader.start();
+            start.countDown();
+            assertThat(fields.toString()).contains("key0=value0");
+            reader.join();
+            assertThat(error.get()).isNull();
+            assertThat(fields.get("key63")).isEqualTo("value63");
+        }
+    }
+
+    @Test
+    public void testInvalidNumber() throws Exception {
+        HashMap<String, String> map = new HashMap<>();
+        map.put("queueId", "abc");
+        map.put("big", "99999999999");
+
+        LazyExtFields fields = lazy(map);
+        assertThatThrownBy(() -> fields.getInt("queueId")).isInstanceOf(NumberFormatException.class);
+        assertThatThrownBy(() -> fields.getInt("big")).isInstanceOf(NumberFormatException.class);
+        assertThat(fields.getLong("big")).isEqualTo(99999999999L);
+    }
+
+    @Test
+    public void testTruncatedData() {
+        byte[] bytes = new byte[] {0, 5, 'a'};
+        assertThatThrownBy(() -> LazyExtFields.decode(Unpooled.wrappedBuffer(bytes), bytes.length))
+            .isInstanceOf(RemotingCommandException.class);
+    }
+
+    @Test
+    public void testDecodeHeaderFromLazyFields() throws Exception {
+        UpdateConsumerOffsetRequestHeader header = new UpdateConsumerOffsetRequestHeader();
+        header.setConsumerGroup("group");
+        header.setTopic("topic");
+        header.setQueueId(1);
+        header.setCommitOffset(100L);
+        RemotingCommand request = RemotingCommand.createRequestCommand(0, header);
+        request.setSerializeTypeCurrentRPC(SerializeType.ROCKETMQ);
+
+        RemotingCommand decoded = decodeFrame(request);
+        assertThat(decoded.getExtFields()).isInstanceOf(LazyExtFields.class);
+
+        UpdateConsumerOffsetRequestHeader decodedHeader = decoded.decodeCommandCustomHeader(UpdateConsumerOffsetRequestHeader.class);
+        assertThat(decodedHeader.getQueueId()).isEqualTo(1);
+        assertThat(decodedHeader.getCommitOffset()).isEqualTo(100L);
+        assertThat(decodedHeader.getConsumerGroup()).isEqualTo("group");
+        assertThat(((LazyExtFields) decoded.getExtFields()).isMaterialized()).isFalse();
+
+        PullMessageRequestHeader pullHeader = new PullMessageRequestHeader();
+        pullHeader.setConsumerGroup("group");
+        pullHeader.setTopic("topic");
+        pullHeader.setQueueId(2);
+        pullHeader.setQueueOffset(3L);
+        pullHeader.setMaxMsgNums(32);
+        pullHeader.setSysFlag(0);
+        pullHeader.setCommitOffset(0L);
+        pullHeader.setSuspendTimeoutMillis(15000L);
+        pullHeader.setSubVersion(1L);
+        RemotingCommand pull = RemotingCommand.createRequestCommand(0, pullHeader);
+        pull.setSerializeTypeCurrentRPC(SerializeType.ROCKETMQ);
+        decoded = decodeFrame(pull);
+        PullMessageRequestHeader decodedPull = decoded.decodeCommandCustomHeader(PullMessageRequestHeader.class);
+        assertThat(decodedPull.getMaxMsgNums()).isEqualTo(32);
+        assertThat(decodedPull.getSuspendTimeoutMillis()).isEqualTo(15000L);
+    }
+}
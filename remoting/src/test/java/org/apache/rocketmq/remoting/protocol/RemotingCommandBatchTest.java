@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.remoting.protocol;
+
+import java.util.Arrays;
+import java.util.List;
+import org.apache.rocketmq.remoting.exception.RemotingCommandException;
+import org.apache.rocketmq.remoting.protocol.header.UpdateConsumerOffsetRequestHeader;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class RemotingCommandBatchTest {
+
+    private static RemotingCommand offsetRequest(long offset) {
+        UpdateConsumerOffsetRequestHeader header = new UpdateConsumerOffsetRequestHeader();
+        header.setConsumerGroup("group");
+        header.setTopic("topic");
+        header.setQueueId(1);
+        header.setCommitOffset(offset);
+        RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.UPDATE_CONSUMER_OFFSET, header);
+        request.markOnewayRPC();
+        return request;
+    }
+
+    @Test
+    public void testEncodeAndDecode() throws RemotingCommandException {
+        RemotingCommand withBody = RemotingCommand.createRequestCommand(RequestCode.UNLOCK_BATCH_MQ, null);
+        withBody.setBody(new byte[] {1, 2, 3});
+        List<RemotingCommand> commands = Arrays.asList(offsetRequest(100), withBody, offsetRequest(200));
+
+        RemotingCommand envelope = RemotingCommandBatch.encode(commands);
+        assertThat(RemotingCommandBatch.isBatch(envelope)).isTrue();
+        assertThat(envelope.isOnewayRPC()).isTrue();
+
+        List<RemotingCommand> decoded = RemotingCommandBatch.decode(envelope);
+        assertThat(decoded).hasSize(3);
+        for (int i = 0; i < commands.size(); i++) {
+            assertThat(decoded.get(i).getCode()).isEqualTo(commands.get(i).getCode());
+            assertThat(decoded.get(i).getOpaque()).isEqualTo(commands.get(i).getOpaque());
+            assertThat(decoded.get(i).isOnewayRPC()).isEqualTo(commands.get(i).isOnewayRPC());
+        }
+        assertThat(decoded.get(0).getExtFields()).containsEntry("commitOffset", "100");
+        assertThat(decoded.get(2).getExtFields()).containsEntry("commitOffset", "200");
+        assertThat(decoded.get(1).getBody()).containsExactly(1, 2, 3);
+    }
+
+    @Test
+    public void testDecodeBadFrameLength() {
+        RemotingCommand envelope = RemotingCommandBatch.encode(Arrays.asList(offsetRequest(1), offsetRequest(2)));
+        byte[] body = envelope.getBody();
+        envelope.setBody(Arrays.copyOf(body, body.length - 1));
+        assertThatThrownBy(() -> RemotingCommandBatch.decode(envelope)).isInstanceOf(RemotingCommandException.class);
+
+        envelope.setBody(new byte[] {0, 0});
+        assertThatThrownBy(() -> RemotingCommandBatch.decode(envelope)).isInstanceOf(RemotingCommandException.class);
+    }
+
+    @Test
+    public void testResponseIsNotBatch() {
+        RemotingCommand response = RemotingCommand.createResponseCommand(RequestCode.REMOTING_COMMAND_BATCH, null);
+        assertThat(RemotingCommandBatch.isBatch(response)).isFalse();
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.remoting.protocol.heartbeat;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.apache.rocketmq.common.consumer.ConsumeFromWhere;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HeartbeatDeltaDataTest {
+
+    private static HeartbeatData heartbeat(String... groupTopics) {
+        HeartbeatData heartbeatData = new HeartbeatData();
+        heartbeatData.setClientID("client");
+        for (String groupTopic : groupTopics) {
+            String[] parts = groupTopic.split(":");
+            ConsumerData consumerData = heartbeatData.getConsumerDataSet().stream()
+                .filter(c -> c.getGroupName().equals(parts[0])).findFirst().orElse(null);
+            if (consumerData == null) {
+                consumerData = new ConsumerData();
+                consumerData.setGroupName(parts[0]);
+                consumerData.setConsumeType(ConsumeType.CONSUME_PASSIVELY);
+                consumerData.setMessageModel(MessageModel.CLUSTERING);
+                consumerData.setConsumeFromWhere(ConsumeFromWhere.CONSUME_FROM_LAST_OFFSET);
+                heartbeatData.getConsumerDataSet().add(consumerData);
+            }
+            SubscriptionData subscriptionData = new SubscriptionData(parts[1], parts.length > 2 ? parts[2] : "*");
+            subscriptionData.setSubVersion(1L);
+            consumerData.getSubscriptionDataSet().add(subscriptionData);
+        }
+        return heartbeatData;
+    }
+
+    private static void addProducer(HeartbeatData heartbeatData, String group) {
+        ProducerData producerData = new ProducerData();
+        producerData.setGroupName(group);
+        heartbeatData.getProducerDataSet().add(producerData);
+    }
+
+    /**
+     * 按组比较消费组属性与订阅，ConsumerData 没有 equals
+     */
+    private static void assertSameHeartbeat(HeartbeatData actual, HeartbeatData expected) {
+        assertThat(actual.getProducerDataSet()).extracting(ProducerData::getGroupName)
+            .containsExactlyInAnyOrderElementsOf(expected.getProducerDataSet().stream().map(ProducerData::getGroupName).collect(Collectors.toList()));
+        Map<String, ConsumerData> actualConsumers = new HashMap<>();
+        actual.getConsumerDataSet().forEach(c -> actualConsumers.put(c.getGroupName(), c));
+        assertThat(actualConsumers).hasSameSizeAs(expected.getConsumerDataSet());
+        for (ConsumerData expectedConsumer : expected.getConsumerDataSet()) {
+            ConsumerData actualConsumer = actualConsumers.get(expectedConsumer.getGroupName());
+            assertThat(actualConsumer).isNotNull();
+            assertThat(actualConsumer.getConsumeType()).isEqualTo(expectedConsumer.getConsumeType());
+            assertThat(actualConsumer.getMessageModel()).isEqualTo(expectedConsumer.getMessageModel());
+            assertThat(actualConsumer.getConsumeFromWhere()).isEqualTo(expectedConsumer.getConsumeFromWhere());
+            assertThat(actualConsumer.getSubscriptionDataSet()).isEqualTo(expectedConsumer.getSubscriptionDataSet());
+        }
+    }
+
+    @Test
+    public void testNoChange() {
+        HeartbeatData base = heartbeat("g1:t1", "g1:t2", "g2:t3");
+        addProducer(base, "p1");
+        HeartbeatData current = heartbeat("g1:t1", "g1:t2", "g2:t3");
+        addProducer(current, "p1");
+
+        HeartbeatDeltaData delta = HeartbeatDeltaData.diff(base, current);
+        assertThat(delta.isEmpty()).isTrue();
+        assertSameHeartbeat(delta.applyTo(base), current);
+    }
+
+    @Test
+    public void testOnlyChangedSubscriptionsAreSent() {
+        HeartbeatData base = heartbeat("g1:t1", "g1:t2", "g2:t3", "g3:t4");
+        addProducer(base, "p1");
+        HeartbeatData current = heartbeat("g1:t1", "g1:t2:TagA", "g1:t5", "g2:t3", "g4:t6");
+        addProducer(current, "p2");
+        current.getConsumerDataSet().stream().filter(c -> c.getGroupName().equals("g2")).findFirst().get()
+            .setMessageModel(MessageModel.BROADCASTING);
+
+        HeartbeatDeltaData delta = HeartbeatDeltaData.diff(base, current);
+        assertThat(delta.isEmpty()).isFalse();
+        assertThat(delta.getAddedProducerDataSet()).extracting(ProducerData::getGroupName).containsExactly("p2");
+        assertThat(delta.getRemovedProducerGroups()).containsExactly("p1");
+        assertThat(delta.getRemovedConsumerGroups()).containsExactly("g3");
+
+        Map<String, ConsumerDataDelta> deltas = new HashMap<>();
+        delta.getConsumerDataDeltas().forEach(d -> deltas.put(d.getGroupName(), d));
+        assertThat(deltas).containsOnlyKeys("g1", "g2", "g4");
+        // g1 里未变化的 t1 不发送
+        assertThat(deltas.get("g1").getUpsertSubscriptionDataSet()).extracting(SubscriptionData::getTopic)
+            .containsExactlyInAnyOrder("t2", "t5");
+        assertThat(deltas.get("g1").getRemovedTopics()).isEmpty();
+        // g2 只有组属性变化
+        assertThat(deltas.get("g2").getUpsertSubscriptionDataSet()).isEmpty();
+        assertThat(deltas.get("g2").getMessageModel()).isEqualTo(MessageModel.BROADCASTING);
+
+        assertSameHeartbeat(delta.applyTo(base), current);
+    }
+
+    @Test
+    public void testRemovedTopic() {
+        HeartbeatData base = heartbeat("g1:t1", "g1:t2");
+        HeartbeatData current = heartbeat("g1:t1");
+
+        HeartbeatDeltaData delta = HeartbeatDeltaData.diff(base, current);
+        assertThat(delta.getConsumerDataDeltas()).hasSize(1);
+        assertThat(delta.getConsumerDataDeltas().get(0).getRemovedTopics()).containsExactly("t2");
+        assertThat(delta.getConsumerDataDeltas().get(0).getUpsertSubscriptionDataSet()).isEmpty();
+        assertSameHeartbeat(delta.applyTo(base), current);
+    }
+
+    @Test
+    public void testEncodeAndDecode() {
+        HeartbeatData base = heartbeat("g1:t1");
+        HeartbeatData current = heartbeat("g1:t1", "g1:t2:TagA || TagB");
+        HeartbeatDeltaData delta = HeartbeatDeltaData.diff(base, current);
+        delta.setBaseVersion(10L);
+        delta.setVersion(11L);
+
+        String json = delta.toJson();
+        assertThat(json).doesNotContain("\"empty\"");
+        HeartbeatDeltaData decoded = HeartbeatDeltaData.decode(delta.encode(), HeartbeatDeltaData.class);
+        assertThat(decoded.getBaseVersion()).isEqualTo(10L);
+        assertThat(decoded.getVersion()).isEqualTo(11L);
+        assertSameHeartbeat(decoded.applyTo(base), current);
+    }
+}